@@ -1,3 +1,6 @@
+-- Migration 1 of Migrations.java, applied by the server on first start. Schema_Version keeps
+-- its checksum, so changes to the schema go in a new migration there, not in this file.
+
 CREATE TABLE IF NOT EXISTS PATIENT (
     Personal_Health_No TEXT PRIMARY KEY,
     NIC TEXT UNIQUE,
@@ -108,19 +111,6 @@ CREATE TABLE IF NOT EXISTS Activity (
     FOREIGN KEY (Personal_Health_No) REFERENCES Patient(Personal_Health_No)
 );
 
--- Update the Activity table
-/*ALTER TABLE Activity ADD COLUMN Entity_Type TEXT DEFAULT 'patient';
-ALTER TABLE Activity ADD COLUMN Entity_ID TEXT;
-ALTER TABLE Activity ADD COLUMN Type TEXT DEFAULT 'general';
-ALTER TABLE Activity ADD COLUMN Status TEXT DEFAULT 'completed';
-ALTER TABLE Activity ADD COLUMN User_ID TEXT;
-
--- Update existing records to use new columns
-UPDATE Activity SET 
-    Entity_Type = 'patient',
-    Entity_ID = Personal_Health_No,
-    Type = 'general',
-    Status = 'completed';*/
 
 
 /*DROP TABLE IF EXISTS Record_Access_Requests;*/
@@ -143,16 +133,6 @@ CREATE TABLE IF NOT EXISTS Record_Access_Requests (
 
 
 
-/*ALTER TABLE Medical_Record ADD COLUMN Summary TEXT;*/
-/*ALTER TABLE Medical_Record ADD COLUMN Type TEXT;*/
-/*ALTER TABLE PATIENT ADD COLUMN auth_token TEXT;*/
-
--- Add Personal_Health_No column
-/*ALTER TABLE Medical_Document ADD COLUMN Personal_Health_No TEXT;*/
-
--- Add foreign key constraint
-/*ALTER TABLE Medical_Document ADD CONSTRAINT fk_document_patient 
-FOREIGN KEY (Personal_Health_No) REFERENCES PATIENT(Personal_Health_No) ON DELETE CASCADE;*/
 
 /*DROP TABLE IF EXISTS Record_Requests;
 DROP TABLE IF EXISTS Shared_Records;*/
@@ -221,5 +201,78 @@ CREATE TABLE IF NOT EXISTS Institute_Professional_Association (
 CREATE INDEX IF NOT EXISTS idx_patient_email ON PATIENT(Email);
 CREATE INDEX IF NOT EXISTS idx_healthcare_professional_email ON Healthcare_Professional(Email);
 CREATE INDEX IF NOT EXISTS idx_institute_email ON Healthcare_Institute(Email);
-CREATE INDEX IF NOT EXISTS idx_medical_document_phn ON Medical_Document(Personal_Health_No);
-CREATE INDEX IF NOT EXISTS idx_activity_entity ON Activity(Entity_Type, Entity_ID);
\ No newline at end of file
+
+-- Keyset pagination of shared records, matching ORDER BY IFNULL(share_date, 0) DESC, record_id DESC
+CREATE INDEX IF NOT EXISTS idx_shared_records_sender_slmc ON Shared_Records(sender_slmc, IFNULL(share_date, 0));
+CREATE INDEX IF NOT EXISTS idx_shared_records_receiver_slmc ON Shared_Records(receiver_slmc, IFNULL(share_date, 0));
+CREATE INDEX IF NOT EXISTS idx_shared_records_sender_institute ON Shared_Records(sender_institute_id, IFNULL(share_date, 0));
+CREATE INDEX IF NOT EXISTS idx_shared_records_receiver_institute ON Shared_Records(receiver_institute_id, IFNULL(share_date, 0));
+-- Analytics rollups, maintained by AnalyticsRollup on every Medical_Record / Appointment write.
+-- Scope is 'professional' (Scope_ID = SLMC_No) or 'institute' (Scope_ID = Health_Institute_Number).
+CREATE TABLE IF NOT EXISTS Analytics_Daily (
+    Scope TEXT NOT NULL,
+    Scope_ID TEXT NOT NULL,
+    Day TEXT NOT NULL,                          -- YYYY-MM-DD
+    Visits INTEGER NOT NULL DEFAULT 0,
+    Visit_Patients INTEGER NOT NULL DEFAULT 0,
+    Appointments INTEGER NOT NULL DEFAULT 0,
+    Appointment_Patients INTEGER NOT NULL DEFAULT 0,
+    Completed_Morning INTEGER NOT NULL DEFAULT 0,
+    Completed_Afternoon INTEGER NOT NULL DEFAULT 0,
+    Completed_Evening INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (Scope, Scope_ID, Day)
+) WITHOUT ROWID;
+
+CREATE TABLE IF NOT EXISTS Analytics_Monthly (
+    Scope TEXT NOT NULL,
+    Scope_ID TEXT NOT NULL,
+    Month TEXT NOT NULL,                        -- YYYY-MM
+    Visits INTEGER NOT NULL DEFAULT 0,
+    Visit_Patients INTEGER NOT NULL DEFAULT 0,
+    Appointments INTEGER NOT NULL DEFAULT 0,
+    Appointment_Patients INTEGER NOT NULL DEFAULT 0,
+    Completed_Morning INTEGER NOT NULL DEFAULT 0,
+    Completed_Afternoon INTEGER NOT NULL DEFAULT 0,
+    Completed_Evening INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (Scope, Scope_ID, Month)
+) WITHOUT ROWID;
+
+CREATE TABLE IF NOT EXISTS Analytics_Totals (
+    Scope TEXT NOT NULL,
+    Scope_ID TEXT NOT NULL,
+    Visits INTEGER NOT NULL DEFAULT 0,
+    Visit_Patients INTEGER NOT NULL DEFAULT 0,
+    Appointments INTEGER NOT NULL DEFAULT 0,
+    Appointment_Patients INTEGER NOT NULL DEFAULT 0,
+    Completed_Morning INTEGER NOT NULL DEFAULT 0,
+    Completed_Afternoon INTEGER NOT NULL DEFAULT 0,
+    Completed_Evening INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (Scope, Scope_ID)
+) WITHOUT ROWID;
+
+-- Reference-counted member sets behind the distinct counts (Grain is 'day', 'month' or 'all')
+CREATE TABLE IF NOT EXISTS Analytics_Member (
+    Scope TEXT NOT NULL,
+    Scope_ID TEXT NOT NULL,
+    Kind TEXT NOT NULL,
+    Grain TEXT NOT NULL,
+    Period TEXT NOT NULL,
+    Member_ID TEXT NOT NULL,
+    Row_Count INTEGER NOT NULL,
+    PRIMARY KEY (Scope, Scope_ID, Kind, Grain, Period, Member_ID)
+) WITHOUT ROWID;
+
+-- HyperLogLog sketch of each Analytics_Member day set, for approximate distinct counts
+CREATE TABLE IF NOT EXISTS Analytics_Sketch (
+    Scope TEXT NOT NULL,
+    Scope_ID TEXT NOT NULL,
+    Kind TEXT NOT NULL,
+    Day TEXT NOT NULL,
+    Sketch BLOB NOT NULL,
+    PRIMARY KEY (Scope, Scope_ID, Kind, Day)
+) WITHOUT ROWID;
+
+CREATE TABLE IF NOT EXISTS Analytics_Rollup_State (
+    Name TEXT PRIMARY KEY,
+    Built_At INTEGER NOT NULL
+);
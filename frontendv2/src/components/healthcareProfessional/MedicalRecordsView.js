@@ -112,12 +112,16 @@ export default function MedicalRecordsView() {
         params: { search: phn }
       });
       
-      if (response.data) {
+      // Only an identifier match comes back as a single patient; otherwise there are
+      // just candidates and the search needs to be more specific
+      if (response.data?.personalHealthNo) {
         setRequestForm(prev => ({
           ...prev,
           personalHealthNo: response.data.personalHealthNo,
           patientName: response.data.name
         }));
+      } else {
+        showNotification('warning', 'No patient with that identifier');
       }
     } catch (error) {
       if (error.response?.status === 404) {
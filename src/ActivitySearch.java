@@ -0,0 +1,444 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// Search-as-you-type over an institute's appointments (purpose, patient and professional name)
+// and medical records (diagnosis, summary and patient name), served from two TextIndexes
+// instead of `LIKE '%x%'` across the Appointment/Patient/Healthcare_Professional join. Each
+// institute's rows get their own index, since every search is scoped to one institute.
+//
+// Like ColumnarStore, the indexes are loaded by the first search and brought up to date
+// before each later one. The write paths report changed appointment and record ids through
+// AnalyticsRollup once they commit, and renamed patients and professionals through their
+// DAOs; only those rows are re-read. A rollup rebuild (e.g. after a bulk import) reloads both.
+public class ActivitySearch {
+    // SQLite's default limit on bound parameters is 999
+    private static final int IDS_PER_QUERY = 500;
+
+    private static final String APPOINTMENT_SQL = """
+        SELECT a.Appointment_ID, a.Personal_Health_No, a.SLMC_No, a.Health_Institute_Number,
+               a.Appointment_Date, a.Appointment_Day, a.Appointment_Minute, a.Purpose, a.Status,
+               p.Name AS Patient_Name, hp.Name AS Professional_Name
+        FROM Appointment a
+        JOIN Patient p ON a.Personal_Health_No = p.Personal_Health_No
+        JOIN Healthcare_Professional hp ON a.SLMC_No = hp.SLMC_No
+        """;
+    private static final String RECORD_SQL = """
+        SELECT r.Record_ID, r.Personal_Health_No, r.SLMC_No, r.Health_Institute_Number,
+               r.Date_of_Visit, r.Diagnosis, r.Summary, p.Name AS Patient_Name
+        FROM Medical_Record r
+        LEFT JOIN Patient p ON r.Personal_Health_No = p.Personal_Health_No
+        """;
+
+    // Filled by the write paths, drained by refresh()
+    private static final Set<Integer> changedAppointments = ConcurrentHashMap.newKeySet();
+    private static final Set<Integer> changedRecords = ConcurrentHashMap.newKeySet();
+    private static final Set<String> renamedPatients = ConcurrentHashMap.newKeySet();
+    private static final Set<String> renamedProfessionals = ConcurrentHashMap.newKeySet();
+    private static volatile boolean reloadRequested = true;
+
+    private static volatile ByInstitute<AppointmentEntry> appointments = newAppointmentIndex();
+    private static volatile ByInstitute<RecordEntry> records = newRecordIndex();
+
+    public static class AppointmentEntry {
+        final int id;
+        final String patientPHN;
+        final String patientName;
+        final String professionalId;
+        final String professionalName;
+        final String instituteId;
+        final String purpose;
+        final String status;
+        final String date;
+        // Sort key of the institute appointment list, newest first
+        final transient long day;
+        final transient int minute;
+
+        AppointmentEntry(ResultSet rs) throws SQLException {
+            id = rs.getInt("Appointment_ID");
+            patientPHN = rs.getString("Personal_Health_No");
+            patientName = rs.getString("Patient_Name");
+            professionalId = rs.getString("SLMC_No");
+            professionalName = rs.getString("Professional_Name");
+            instituteId = rs.getString("Health_Institute_Number");
+            purpose = rs.getString("Purpose");
+            status = rs.getString("Status");
+            date = toDate(rs.getObject("Appointment_Date"));
+            day = rs.getLong("Appointment_Day");
+            minute = rs.getInt("Appointment_Minute");
+        }
+
+        public int getId() {
+            return id;
+        }
+    }
+
+    public static class RecordEntry {
+        final int id;
+        final String patientPHN;
+        final String patientName;
+        final String professionalId;
+        final String instituteId;
+        final String diagnosis;
+        final String summary;
+        final String date;
+
+        RecordEntry(ResultSet rs) throws SQLException {
+            id = rs.getInt("Record_ID");
+            patientPHN = rs.getString("Personal_Health_No");
+            patientName = rs.getString("Patient_Name");
+            professionalId = rs.getString("SLMC_No");
+            instituteId = rs.getString("Health_Institute_Number");
+            diagnosis = rs.getString("Diagnosis");
+            summary = rs.getString("Summary");
+            date = toDate(rs.getObject("Date_of_Visit"));
+        }
+    }
+
+    static void appointmentChanged(int appointmentId) {
+        changedAppointments.add(appointmentId);
+    }
+
+    static void recordChanged(int recordId) {
+        changedRecords.add(recordId);
+    }
+
+    static void patientRenamed(String personalHealthNo) {
+        renamedPatients.add(personalHealthNo);
+    }
+
+    static void professionalRenamed(String slmcNo) {
+        renamedProfessionals.add(slmcNo);
+    }
+
+    static void reloadAll() {
+        reloadRequested = true;
+    }
+
+    // The institute's appointments matching every word of the query, best match first;
+    // status "all" or null matches any status
+    static List<TextIndex.Hit<AppointmentEntry>> searchAppointments(Database database, String instituteId,
+                                                                   String status, String query, int limit)
+            throws SQLException {
+        refresh(database);
+        boolean anyStatus = status == null || status.equals("all");
+        return appointments.search(instituteId, query, limit, anyStatus ? null : entry -> status.equals(entry.status));
+    }
+
+    // Ids of every institute appointment whose purpose, patient name or professional name is
+    // LIKE '%search%', as the institute appointment list filtered before the index existed:
+    // ASCII case-insensitive, with % and _ in search as wildcards. One keyset page of them,
+    // newest first, with the same cursor as AppointmentDAO.streamAppointmentsByInstitute.
+    //
+    // Every field matching the pattern holds its longest run of letters and digits inside one
+    // token, so for runs of 3 or more the index's gram lists narrow the entries to check; shorter
+    // searches walk the institute's entries. Either way only the candidates are LIKE-checked.
+    static Page<Integer> matchAppointments(Database database, String instituteId, String status, String search,
+            String cursor, int limit) throws SQLException {
+        Object[] after = Page.decodeCursor(cursor, 3);
+        refresh(database);
+        boolean anyStatus = status == null || status.equals("all");
+        String pattern = "%" + search + "%";
+        Predicate<AppointmentEntry> matches = entry -> (anyStatus || status.equals(entry.status))
+            && (like(entry.patientName, pattern) || like(entry.professionalName, pattern)
+                || like(entry.purpose, pattern));
+
+        String run = "";
+        for (String token : TextIndex.tokenize(search)) {
+            if (token.length() > run.length()) {
+                run = token;
+            }
+        }
+        List<AppointmentEntry> entries = run.length() >= 3
+            ? appointments.containing(instituteId, run, matches)
+            : appointments.all(instituteId, matches);
+
+        entries.sort(NEWEST_FIRST);
+        List<Integer> ids = new ArrayList<>();
+        AppointmentEntry last = null;
+        for (AppointmentEntry entry : entries) {
+            if (after != null && !isBefore(entry, after)) {
+                continue;
+            }
+            if (ids.size() == limit) {
+                return new Page<>(ids, Page.encodeCursor(last.day, last.minute, last.id));
+            }
+            ids.add(entry.id);
+            last = entry;
+        }
+        return new Page<>(ids, null);
+    }
+
+    // Whether the entry sorts after the (day, minute, id) cursor in NEWEST_FIRST order
+    private static boolean isBefore(AppointmentEntry entry, Object[] cursor) {
+        try {
+            long day = ((Number) cursor[0]).longValue();
+            long minute = ((Number) cursor[1]).longValue();
+            long id = ((Number) cursor[2]).longValue();
+            return entry.day != day ? entry.day < day
+                : entry.minute != minute ? entry.minute < minute
+                : entry.id < id;
+        } catch (ClassCastException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    // The order of AppointmentDAO's institute list
+    private static final Comparator<AppointmentEntry> NEWEST_FIRST = Comparator
+        .comparingLong((AppointmentEntry e) -> e.day)
+        .thenComparingInt(e -> e.minute)
+        .thenComparingInt(e -> e.id)
+        .reversed();
+
+    // SQLite's LIKE without ESCAPE: % is any run of characters, _ any one character, and
+    // letters compare case-insensitively in ASCII only. NULL never matches.
+    static boolean like(String text, String pattern) {
+        if (text == null) {
+            return false;
+        }
+        int t = 0;
+        int p = 0;
+        int starP = -1;
+        int starT = 0;
+        while (t < text.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '%') {
+                starP = p++;
+                starT = t;
+            } else if (p < pattern.length()
+                    && (pattern.charAt(p) == '_' || asciiLower(pattern.charAt(p)) == asciiLower(text.charAt(t)))) {
+                p++;
+                t++;
+            } else if (starP >= 0) {
+                p = starP + 1;
+                t = ++starT;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '%') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private static char asciiLower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    static List<TextIndex.Hit<RecordEntry>> searchRecords(Database database, String instituteId, String query,
+                                                         int limit) throws SQLException {
+        refresh(database);
+        return records.search(instituteId, query, limit, null);
+    }
+
+    // Brings both indexes up to date with committed data
+    static void refresh(Database database) throws SQLException {
+        if (!reloadRequested && changedAppointments.isEmpty() && changedRecords.isEmpty()
+                && renamedPatients.isEmpty() && renamedProfessionals.isEmpty()) {
+            return;
+        }
+        synchronized (ActivitySearch.class) {
+            boolean reload = reloadRequested;
+            reloadRequested = false;
+            if (reload) {
+                // Anything committed from here on is also re-read next time, which is harmless
+                changedAppointments.clear();
+                changedRecords.clear();
+                renamedPatients.clear();
+                renamedProfessionals.clear();
+            }
+            // A reload leaves changes made while it reads for the next refresh
+            List<Integer> appointmentIds = reload ? List.of() : drain(changedAppointments);
+            List<Integer> recordIds = reload ? List.of() : drain(changedRecords);
+            List<String> patients = reload ? List.of() : drain(renamedPatients);
+            List<String> professionals = reload ? List.of() : drain(renamedProfessionals);
+
+            long start = System.nanoTime();
+            try {
+                database.inReadTransaction(conn -> {
+                    if (reload) {
+                        ByInstitute<AppointmentEntry> freshAppointments = newAppointmentIndex();
+                        ByInstitute<RecordEntry> freshRecords = newRecordIndex();
+                        loadAppointments(conn, freshAppointments, "", List.of());
+                        loadRecords(conn, freshRecords, "", List.of());
+                        appointments = freshAppointments;
+                        records = freshRecords;
+                        return null;
+                    }
+                    // Changed rows that do not come back from the re-read were deleted
+                    Set<Integer> found = loadAppointments(conn, appointments, "a.Appointment_ID", appointmentIds);
+                    for (int id : appointmentIds) {
+                        if (!found.contains(id)) {
+                            appointments.remove(id);
+                        }
+                    }
+                    found = loadRecords(conn, records, "r.Record_ID", recordIds);
+                    for (int id : recordIds) {
+                        if (!found.contains(id)) {
+                            records.remove(id);
+                        }
+                    }
+                    loadAppointments(conn, appointments, "a.Personal_Health_No", patients);
+                    loadAppointments(conn, appointments, "a.SLMC_No", professionals);
+                    loadRecords(conn, records, "r.Personal_Health_No", patients);
+                    return null;
+                });
+            } catch (SQLException | RuntimeException e) {
+                // Which changes made it in cannot be told apart, so start over next time
+                reloadRequested = true;
+                throw e;
+            }
+            if (reload) {
+                Log.info("activity search index loaded", "appointments", appointments.size(),
+                    "records", records.size(), "ms", (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+    }
+
+    // Every row when column is empty, otherwise the rows whose column is one of keys; returns
+    // the ids it indexed
+    private static Set<Integer> loadAppointments(Connection conn, ByInstitute<AppointmentEntry> index, String column,
+                                                 List<?> keys) throws SQLException {
+        Set<Integer> loaded = new HashSet<>();
+        for (List<?> chunk : chunks(column, keys)) {
+            try (PreparedStatement pstmt = conn.prepareStatement(APPOINTMENT_SQL + where(column, chunk))) {
+                bind(pstmt, chunk);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        AppointmentEntry entry = new AppointmentEntry(rs);
+                        index.put(entry.id, entry.instituteId, entry);
+                        loaded.add(entry.id);
+                    }
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private static Set<Integer> loadRecords(Connection conn, ByInstitute<RecordEntry> index, String column,
+                                            List<?> keys) throws SQLException {
+        Set<Integer> loaded = new HashSet<>();
+        for (List<?> chunk : chunks(column, keys)) {
+            try (PreparedStatement pstmt = conn.prepareStatement(RECORD_SQL + where(column, chunk))) {
+                bind(pstmt, chunk);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        RecordEntry entry = new RecordEntry(rs);
+                        index.put(entry.id, entry.instituteId, entry);
+                        loaded.add(entry.id);
+                    }
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private static List<List<?>> chunks(String column, List<?> keys) {
+        List<List<?>> chunks = new ArrayList<>();
+        if (column.isEmpty()) {
+            chunks.add(List.of());
+            return chunks;
+        }
+        for (int i = 0; i < keys.size(); i += IDS_PER_QUERY) {
+            chunks.add(keys.subList(i, Math.min(keys.size(), i + IDS_PER_QUERY)));
+        }
+        return chunks;
+    }
+
+    private static String where(String column, List<?> keys) {
+        if (keys.isEmpty()) {
+            return "";
+        }
+        return " WHERE " + column + " IN (" + "?,".repeat(keys.size() - 1) + "?)";
+    }
+
+    private static void bind(PreparedStatement pstmt, List<?> keys) throws SQLException {
+        for (int i = 0; i < keys.size(); i++) {
+            pstmt.setObject(i + 1, keys.get(i));
+        }
+    }
+
+    private static <T> List<T> drain(Collection<T> changed) {
+        Set<T> drained = new HashSet<>();
+        for (T key : changed) {
+            drained.add(key);
+        }
+        changed.removeAll(drained);
+        return new ArrayList<>(drained);
+    }
+
+    private static String toDate(Object value) {
+        LocalDate date = AnalyticsRollup.toLocalDate(value);
+        return date != null ? date.toString() : null;
+    }
+
+    private static ByInstitute<AppointmentEntry> newAppointmentIndex() {
+        return new ByInstitute<>(() -> new TextIndex<>(
+            e -> new String[] {e.purpose, e.patientName, e.professionalName}, 3f, 2f, 2f));
+    }
+
+    private static ByInstitute<RecordEntry> newRecordIndex() {
+        return new ByInstitute<>(() -> new TextIndex<>(
+            e -> new String[] {e.diagnosis, e.summary, e.patientName}, 3f, 2f, 2f));
+    }
+
+    // One TextIndex per institute, so a search only walks that institute's rows instead of
+    // filtering everyone's. Tracks each row's institute to move it when that changes.
+    private static class ByInstitute<V> {
+        private final Supplier<TextIndex<V>> factory;
+        private final Map<String, TextIndex<V>> indexes = new ConcurrentHashMap<>();
+        private final Map<Integer, String> instituteOf = new ConcurrentHashMap<>();
+
+        ByInstitute(Supplier<TextIndex<V>> factory) {
+            this.factory = factory;
+        }
+
+        synchronized void put(int id, String instituteId, V value) {
+            String institute = instituteId != null ? instituteId : "";
+            String previous = instituteOf.put(id, institute);
+            if (previous != null && !previous.equals(institute)) {
+                indexes.get(previous).remove(String.valueOf(id));
+            }
+            indexes.computeIfAbsent(institute, k -> factory.get()).put(String.valueOf(id), value);
+        }
+
+        synchronized void remove(int id) {
+            String previous = instituteOf.remove(id);
+            if (previous != null) {
+                indexes.get(previous).remove(String.valueOf(id));
+            }
+        }
+
+        List<TextIndex.Hit<V>> search(String instituteId, String query, int limit, Predicate<V> filter) {
+            TextIndex<V> index = indexes.get(instituteId);
+            return index != null ? index.search(query, limit, filter) : Collections.emptyList();
+        }
+
+        List<V> all(String instituteId, Predicate<V> filter) {
+            TextIndex<V> index = indexes.get(instituteId);
+            return index != null ? index.all(filter) : new ArrayList<>();
+        }
+
+        List<V> containing(String instituteId, String run, Predicate<V> filter) {
+            TextIndex<V> index = indexes.get(instituteId);
+            return index != null ? index.containing(run, filter) : new ArrayList<>();
+        }
+
+        int size() {
+            return instituteOf.size();
+        }
+    }
+}
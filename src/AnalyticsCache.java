@@ -0,0 +1,175 @@
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import com.google.gson.Gson;
+
+// Response cache for the dashboard analytics, which every open portal tab polls.
+//
+// Entries are the serialized JSON of one dashboard for one entity (a professional's SLMC_No
+// or an institute's Health_Institute_Number) and one window (range, days, exact mode...).
+// AnalyticsRollup invalidates an entity's entries once a transaction that changed its
+// Medical_Record or Appointment rows commits, so a cached answer is never older than the
+// last committed write; the TTL only bounds how long an entry lives without being read.
+//
+// A per-entity generation guards against the race where a dashboard computed from a snapshot
+// taken before a commit finishes after the invalidation: its result is returned but not stored.
+// Partial results (see AnalyticsDAO) are never stored either.
+//
+// Tune with -Dumrs.analytics.cacheEntries=N (0 disables), -Dumrs.analytics.cacheMaxBytes=N and
+// -Dumrs.analytics.cacheTtlMillis=N.
+public class AnalyticsCache {
+    private static final int MAX_ENTRIES = Integer.getInteger("umrs.analytics.cacheEntries", 1000);
+    private static final long MAX_BYTES = Long.getLong("umrs.analytics.cacheMaxBytes", 16L * 1024 * 1024);
+    private static final long TTL_MILLIS = Long.getLong("umrs.analytics.cacheTtlMillis", 30000);
+    // Rough per-entry bookkeeping cost on top of the key and JSON characters
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private static final Gson gson = new Gson();
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private static final Map<String, Set<String>> keysByEntity = new HashMap<>();
+    private static final Map<String, Long> generations = new HashMap<>();
+    private static long epoch;
+    private static long bytes;
+
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+    private static long invalidations;
+
+    public interface Loader {
+        Map<String, Object> load() throws SQLException;
+    }
+
+    // Cached JSON for (scope, scopeId, window), computing and storing it on a miss
+    static String get(String scope, String scopeId, String window, Loader loader) throws SQLException {
+        if (MAX_ENTRIES <= 0) {
+            return gson.toJson(loader.load());
+        }
+        String entity = entity(scope, scopeId);
+        String key = entity + "|" + window;
+        long seenEpoch;
+        long seenGeneration;
+        synchronized (AnalyticsCache.class) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits++;
+                return entry.json;
+            }
+            if (entry != null) {
+                remove(key);
+            }
+            misses++;
+            seenEpoch = epoch;
+            seenGeneration = generations.getOrDefault(entity, 0L);
+        }
+
+        Map<String, Object> value = loader.load();
+        String json = gson.toJson(value);
+        if (Boolean.TRUE.equals(value.get("partial"))) {
+            return json;
+        }
+
+        synchronized (AnalyticsCache.class) {
+            if (seenEpoch == epoch && seenGeneration == generations.getOrDefault(entity, 0L)) {
+                remove(key);
+                Entry entry = new Entry(entity, json, System.currentTimeMillis() + TTL_MILLIS,
+                    ENTRY_OVERHEAD_BYTES + key.length() + json.length());
+                entries.put(key, entry);
+                keysByEntity.computeIfAbsent(entity, k -> new HashSet<>()).add(key);
+                bytes += entry.size;
+                evictOverflow();
+            }
+        }
+        return json;
+    }
+
+    // Drops every cached window of one entity
+    static synchronized void invalidate(String scope, String scopeId) {
+        String entity = entity(scope, scopeId);
+        generations.merge(entity, 1L, Long::sum);
+        Set<String> keys = keysByEntity.get(entity);
+        if (keys != null) {
+            for (String key : new HashSet<>(keys)) {
+                remove(key);
+                invalidations++;
+            }
+        }
+    }
+
+    // After a rollup rebuild every entity may have changed
+    static synchronized void invalidateAll() {
+        epoch++;
+        invalidations += entries.size();
+        entries.clear();
+        keysByEntity.clear();
+        generations.clear();
+        bytes = 0;
+    }
+
+    public static synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("entries", entries.size());
+        metrics.put("maxEntries", MAX_ENTRIES);
+        metrics.put("estimatedBytes", bytes);
+        metrics.put("maxBytes", MAX_BYTES);
+        metrics.put("ttlMillis", TTL_MILLIS);
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        metrics.put("evictions", evictions);
+        metrics.put("invalidations", invalidations);
+        return metrics;
+    }
+
+    private static String entity(String scope, String scopeId) {
+        return scope + ":" + scopeId;
+    }
+
+    private static void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > MAX_ENTRIES || bytes > MAX_BYTES) && eldest.hasNext()) {
+            Map.Entry<String, Entry> next = eldest.next();
+            eldest.remove();
+            forget(next.getKey(), next.getValue());
+            evictions++;
+        }
+    }
+
+    private static void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            forget(key, entry);
+        }
+    }
+
+    private static void forget(String key, Entry entry) {
+        bytes -= entry.size;
+        Set<String> keys = keysByEntity.get(entry.entity);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByEntity.remove(entry.entity);
+            }
+        }
+    }
+
+    private static class Entry {
+        final String entity;
+        final String json;
+        final long expiresAt;
+        final long size;
+
+        Entry(String entity, String json, long expiresAt, long size) {
+            this.entity = entity;
+            this.json = json;
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+    }
+}
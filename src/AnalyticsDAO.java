@@ -1,120 +1,104 @@
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.*;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+// Dashboard analytics for professionals and institutes. Everything here reads the rollup
+// tables maintained by AnalyticsRollup, never Medical_Record or Appointment directly.
+//
+// Distinct patient and professional counts over day windows come from HyperLogLog sketches
+// (within a few percent) unless the caller asks for exact counts; the response's
+// "exactCounts" flag says which. Monthly and all-time unique counts are always exact.
+//
+// The sections of a dashboard are independent, so each runs in its own read transaction on
+// a shared worker pool and the request waits for all of them up to a deadline. Sections that
+// miss it are left out, listed under "timedOut", and the response is marked "partial".
+// Tune with -Dumrs.analytics.threads=N and -Dumrs.analytics.deadlineMillis=N.
 public class AnalyticsDAO {
-    private static HikariDataSource dataSource;
-    private static final int BUSY_TIMEOUT_MS = 30000; // 30 seconds
+    private static final long DEADLINE_MILLIS = Long.getLong("umrs.analytics.deadlineMillis", 2000);
+    private static final ExecutorService workers = newWorkerPool(
+        Integer.getInteger("umrs.analytics.threads", Runtime.getRuntime().availableProcessors()));
 
-    static {
-        initializeDataSource();
-    }
+    private final Database database;
 
-    private static void initializeDataSource() {
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:sqlite:db/umrs.db");
-        config.setMaximumPoolSize(5);
-        config.setMinimumIdle(1);
-        config.addDataSourceProperty("journal_mode", "WAL");
-        config.addDataSourceProperty("busy_timeout", String.valueOf(BUSY_TIMEOUT_MS));
-        config.addDataSourceProperty("foreign_keys", "ON");
-        config.addDataSourceProperty("synchronous", "NORMAL");
-        config.addDataSourceProperty("cache_size", "-2000");
-        config.addDataSourceProperty("temp_store", "MEMORY");
-        dataSource = new HikariDataSource(config);
+    public AnalyticsDAO(Database database) {
+        this.database = database;
     }
 
     public Map<String, Object> getAnalytics(String slmcNo, int months) throws SQLException {
+        return getAnalytics(slmcNo, months, AnalyticsRollup.EXACT_DISTINCT_DEFAULT);
+    }
+
+    public Map<String, Object> getAnalytics(String slmcNo, int months, boolean exact) throws SQLException {
         Map<String, Object> analytics = new HashMap<>();
-        
-        try (Connection conn = dataSource.getConnection()) {
-            analytics.put("summaryStats", getSummaryStats(conn, slmcNo));
-            analytics.put("monthlyTrends", getMonthlyTrends(conn, slmcNo, months));
-            analytics.put("genderDistribution", getGenderDistribution(conn, slmcNo));
-            analytics.put("visitTimes", getVisitTimeDistribution(conn, slmcNo));
+        analytics.put("exactCounts", exact);
+
+        FanOut fanOut = new FanOut();
+        fanOut.submit("summaryStats", conn -> getSummaryStats(conn, slmcNo, exact));
+        fanOut.submit("monthlyTrends", conn -> getMonthlyTrends(conn, slmcNo, months));
+        fanOut.submit("genderDistribution", conn -> getGenderDistribution(conn, slmcNo));
+        fanOut.submit("visitTimes", conn -> getVisitTimeDistribution(conn, slmcNo));
+
+        try {
+            fanOut.await(analytics);
         } catch (SQLException e) {
-            System.err.println("Error getting analytics: " + e.getMessage());
+            Log.error("Error getting analytics: " + e.getMessage());
             throw e;
         }
-        
+
         return analytics;
     }
 
-    private Map<String, Object> getSummaryStats(Connection conn, String slmcNo) throws SQLException {
+    private Map<String, Object> getSummaryStats(Connection conn, String slmcNo, boolean exact) throws SQLException {
         Map<String, Object> summaryStats = new HashMap<>();
-        
-        // Total Patients
-        String totalPatientsSQL = """
-            SELECT COUNT(DISTINCT Personal_Health_No) as total 
-            FROM Medical_Record 
-            WHERE SLMC_No = ?
-        """;
-        try (PreparedStatement pstmt = conn.prepareStatement(totalPatientsSQL)) {
-            pstmt.setString(1, slmcNo);
-            ResultSet rs = pstmt.executeQuery();
-            summaryStats.put("totalPatients", rs.next() ? rs.getInt("total") : 0);
-        }
-        
-        // Total Visits
-        String totalVisitsSQL = """
-            SELECT COUNT(*) as total 
-            FROM Medical_Record 
-            WHERE SLMC_No = ?
+        LocalDate today = LocalDate.now();
+
+        // Total Patients, Total Visits and Today's Visits in one lookup of the two rollup rows
+        String countersSQL = """
+            SELECT
+                IFNULL(t.Visit_Patients, 0) as totalPatients,
+                IFNULL(t.Visits, 0) as totalVisits,
+                IFNULL(d.Visits, 0) as todayVisits
+            FROM (SELECT ? as Scope, ? as Scope_ID) k
+            LEFT JOIN Analytics_Totals t ON t.Scope = k.Scope AND t.Scope_ID = k.Scope_ID
+            LEFT JOIN Analytics_Daily d ON d.Scope = k.Scope AND d.Scope_ID = k.Scope_ID AND d.Day = ?
         """;
-        try (PreparedStatement pstmt = conn.prepareStatement(totalVisitsSQL)) {
-            pstmt.setString(1, slmcNo);
+        try (PreparedStatement pstmt = conn.prepareStatement(countersSQL)) {
+            pstmt.setString(1, AnalyticsRollup.PROFESSIONAL);
+            pstmt.setString(2, slmcNo);
+            pstmt.setString(3, today.toString());
             ResultSet rs = pstmt.executeQuery();
-            summaryStats.put("totalVisits", rs.next() ? rs.getInt("total") : 0);
+            boolean found = rs.next();
+            summaryStats.put("totalPatients", found ? rs.getInt("totalPatients") : 0);
+            summaryStats.put("totalVisits", found ? rs.getInt("totalVisits") : 0);
+            summaryStats.put("todayVisits", found ? rs.getInt("todayVisits") : 0);
         }
-        
+
         // Active Patients (last 30 days)
-        String activePatientsSql = """
-            SELECT COUNT(DISTINCT Personal_Health_No) as total 
-            FROM Medical_Record 
-            WHERE SLMC_No = ? 
-            AND Date_of_Visit >= date('now', '-30 days')
-        """;
-        try (PreparedStatement pstmt = conn.prepareStatement(activePatientsSql)) {
-            pstmt.setString(1, slmcNo);
-            ResultSet rs = pstmt.executeQuery();
-            summaryStats.put("activePatients", rs.next() ? rs.getInt("total") : 0);
-        }
-        
-        // Today's Visits
-        String todayVisitsSQL = """
-            SELECT COUNT(*) as total 
-            FROM Medical_Record 
-            WHERE SLMC_No = ? 
-            AND Date_of_Visit = date('now')
-        """;
-        try (PreparedStatement pstmt = conn.prepareStatement(todayVisitsSQL)) {
-            pstmt.setString(1, slmcNo);
-            ResultSet rs = pstmt.executeQuery();
-            summaryStats.put("todayVisits", rs.next() ? rs.getInt("total") : 0);
-        }
-        
+        summaryStats.put("activePatients", countMembers(conn, AnalyticsRollup.PROFESSIONAL, slmcNo,
+            AnalyticsRollup.VISIT_PATIENT, today.minusDays(30), today, exact));
+
         return summaryStats;
     }
 
     private List<Map<String, Object>> getMonthlyTrends(Connection conn, String slmcNo, int months) throws SQLException {
         List<Map<String, Object>> monthlyTrends = new ArrayList<>();
-        
+
         String monthlyTrendsSQL = """
-            SELECT 
-                strftime('%Y-%m', Date_of_Visit) as month,
-                COUNT(*) as visitCount,
-                COUNT(DISTINCT Personal_Health_No) as uniquePatients
-            FROM Medical_Record 
-            WHERE SLMC_No = ? 
-            AND Date_of_Visit >= date('now', ?) 
-            GROUP BY strftime('%Y-%m', Date_of_Visit)
-            ORDER BY month DESC
+            SELECT Month as month, Visits as visitCount, Visit_Patients as uniquePatients
+            FROM Analytics_Monthly
+            WHERE Scope = ? AND Scope_ID = ?
+            AND Month >= ?
+            AND Visits > 0
+            ORDER BY Month DESC
         """;
-        
+
         try (PreparedStatement pstmt = conn.prepareStatement(monthlyTrendsSQL)) {
-            pstmt.setString(1, slmcNo);
-            pstmt.setString(2, String.format("-%d months", months));
+            pstmt.setString(1, AnalyticsRollup.PROFESSIONAL);
+            pstmt.setString(2, slmcNo);
+            pstmt.setString(3, YearMonth.now().minusMonths(months).toString());
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 Map<String, Object> trend = new HashMap<>();
@@ -124,25 +108,29 @@ public class AnalyticsDAO {
                 monthlyTrends.add(trend);
             }
         }
-        
+
         return monthlyTrends;
     }
 
     private List<Map<String, Object>> getGenderDistribution(Connection conn, String slmcNo) throws SQLException {
         List<Map<String, Object>> genderDistribution = new ArrayList<>();
-        
+
+        // The all-time member set holds each of the professional's patients exactly once
         String genderSQL = """
-            SELECT 
+            SELECT
                 p.Gender as gender,
-                COUNT(DISTINCT m.Personal_Health_No) as count
-            FROM Medical_Record m
-            JOIN Patient p ON m.Personal_Health_No = p.Personal_Health_No
-            WHERE m.SLMC_No = ?
+                COUNT(*) as count
+            FROM Analytics_Member m
+            JOIN Patient p ON m.Member_ID = p.Personal_Health_No
+            WHERE m.Scope = ? AND m.Scope_ID = ? AND m.Kind = ? AND m.Grain = ?
             GROUP BY p.Gender
         """;
-        
+
         try (PreparedStatement pstmt = conn.prepareStatement(genderSQL)) {
-            pstmt.setString(1, slmcNo);
+            pstmt.setString(1, AnalyticsRollup.PROFESSIONAL);
+            pstmt.setString(2, slmcNo);
+            pstmt.setString(3, AnalyticsRollup.VISIT_PATIENT);
+            pstmt.setString(4, AnalyticsRollup.ALL);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 Map<String, Object> gender = new HashMap<>();
@@ -151,194 +139,134 @@ public class AnalyticsDAO {
                 genderDistribution.add(gender);
             }
         }
-        
+
         return genderDistribution;
     }
 
     private List<Map<String, Object>> getVisitTimeDistribution(Connection conn, String slmcNo) throws SQLException {
         List<Map<String, Object>> visitTimes = new ArrayList<>();
-        
-        String visitTimeSQL = """
-            SELECT 
-                CASE 
-                    WHEN strftime('%H', Appointment_Time) < '12' THEN 'Morning'
-                    WHEN strftime('%H', Appointment_Time) < '17' THEN 'Afternoon'
-                    ELSE 'Evening'
-                END as timeSlot,
-                COUNT(*) as count
-            FROM Appointment 
-            WHERE SLMC_No = ?
-            AND Status = 'completed'
-            GROUP BY timeSlot
-            ORDER BY 
-                CASE timeSlot
-                    WHEN 'Morning' THEN 1
-                    WHEN 'Afternoon' THEN 2
-                    WHEN 'Evening' THEN 3
-                END
-        """;
-        
-        try (PreparedStatement pstmt = conn.prepareStatement(visitTimeSQL)) {
-            pstmt.setString(1, slmcNo);
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
+
+        Map<String, Integer> totals = getTotals(conn, AnalyticsRollup.PROFESSIONAL, slmcNo);
+        for (String slot : AnalyticsRollup.TIME_SLOTS) {
+            int count = totals.getOrDefault("Completed_" + slot, 0);
+            if (count > 0) {
                 Map<String, Object> timeSlot = new HashMap<>();
-                timeSlot.put("timeSlot", rs.getString("timeSlot"));
-                timeSlot.put("count", rs.getInt("count"));
+                timeSlot.put("timeSlot", slot);
+                timeSlot.put("count", count);
                 visitTimes.add(timeSlot);
             }
         }
-        
+
         // If no data is found, provide default time slots with 0 counts
         if (visitTimes.isEmpty()) {
-            String[] defaultSlots = {"Morning", "Afternoon", "Evening"};
-            for (String slot : defaultSlots) {
+            for (String slot : AnalyticsRollup.TIME_SLOTS) {
                 Map<String, Object> timeSlot = new HashMap<>();
                 timeSlot.put("timeSlot", slot);
                 timeSlot.put("count", 0);
                 visitTimes.add(timeSlot);
             }
         }
-        
+
         return visitTimes;
     }
 
     public Map<String, Object> getInstituteAnalytics(String instituteId, int days) throws SQLException {
+        return getInstituteAnalytics(instituteId, days, AnalyticsRollup.EXACT_DISTINCT_DEFAULT);
+    }
+
+    public Map<String, Object> getInstituteAnalytics(String instituteId, int days, boolean exact) throws SQLException {
         Map<String, Object> analytics = new HashMap<>();
-        
-        try (Connection conn = dataSource.getConnection()) {
-            // Get main statistics
-            analytics.putAll(getInstituteSummaryStats(conn, instituteId, days));
-            
-            // Get trends
-            analytics.putAll(getInstituteTrends(conn, instituteId, days));
-            
-            // Get department statistics
-            analytics.put("departmentStats", getDepartmentStats(conn, instituteId, days));
-            
-            return analytics;
+        analytics.put("exactCounts", exact);
+        LocalDate today = LocalDate.now();
+
+        // The summary and the trends share the current period, so it is computed once.
+        // Everything from `days` ago onwards, including appointments booked for later dates.
+        FanOut fanOut = new FanOut();
+        fanOut.submit("current", conn -> getInstitutePeriod(conn, instituteId, today.minusDays(days),
+            LocalDate.MAX, exact));
+        fanOut.submit("previous", conn -> getInstitutePeriod(conn, instituteId, today.minusDays(days * 2L),
+            today.minusDays(days), exact));
+        fanOut.submit("departmentStats", conn -> getDepartmentStats(conn, instituteId, days, exact));
+
+        Map<String, Object> sections = new HashMap<>();
+        try {
+            fanOut.await(sections);
         } catch (SQLException e) {
-            System.err.println("Error getting institute analytics: " + e.getMessage());
+            Log.error("Error getting institute analytics: " + e.getMessage());
             throw e;
         }
-    }
 
-    private Map<String, Object> getInstituteSummaryStats(Connection conn, String instituteId, int days) throws SQLException {
-        Map<String, Object> stats = new HashMap<>();
-        
-        String sql = """
-            SELECT 
-                COUNT(DISTINCT p.Personal_Health_No) as totalPatients,
-                COUNT(DISTINCT hp.SLMC_No) as totalProfessionals,
-                COUNT(DISTINCT a.Appointment_ID) as totalAppointments
-            FROM Healthcare_Institute hi
-            LEFT JOIN Healthcare_Professional hp ON hi.Health_Institute_Number = hp.Health_Institute_Number
-            LEFT JOIN Appointment a ON hi.Health_Institute_Number = a.Health_Institute_Number
-            LEFT JOIN Patient p ON a.Personal_Health_No = p.Personal_Health_No
-            WHERE hi.Health_Institute_Number = ?
-            AND (a.Appointment_Date IS NULL OR a.Appointment_Date >= date('now', ?))
-        """;
-        
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, instituteId);
-            pstmt.setString(2, String.format("-%d days", days));
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                stats.put("totalPatients", rs.getInt("totalPatients"));
-                stats.put("totalProfessionals", rs.getInt("totalProfessionals"));
-                stats.put("totalAppointments", rs.getInt("totalAppointments"));
-                stats.put("patientSatisfaction", 0); // Placeholder since we don't have feedback data
+        PeriodStats current = (PeriodStats) sections.get("current");
+        PeriodStats previous = (PeriodStats) sections.get("previous");
+        if (current != null) {
+            analytics.putAll(getInstituteSummaryStats(current));
+            if (previous != null) {
+                analytics.putAll(getInstituteTrends(current, previous));
             }
         }
-        
+        if (sections.containsKey("departmentStats")) {
+            analytics.put("departmentStats", sections.get("departmentStats"));
+        }
+        analytics.put("partial", sections.get("partial"));
+        analytics.put("timedOut", sections.get("timedOut"));
+        return analytics;
+    }
+
+    private Map<String, Object> getInstituteSummaryStats(PeriodStats current) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalPatients", current.patients);
+        stats.put("totalProfessionals", current.professionals);
+        stats.put("totalAppointments", current.appointments);
+        stats.put("patientSatisfaction", 0); // Placeholder since we don't have feedback data
         return stats;
     }
 
-    private Map<String, Object> getInstituteTrends(Connection conn, String instituteId, int days) throws SQLException {
+    private Map<String, Object> getInstituteTrends(PeriodStats current, PeriodStats previous) {
         Map<String, Object> trends = new HashMap<>();
-        
-        String sql = """
-            WITH CurrentPeriod AS (
-                SELECT 
-                    COUNT(DISTINCT p.Personal_Health_No) as patients,
-                    COUNT(DISTINCT hp.SLMC_No) as professionals,
-                    COUNT(DISTINCT a.Appointment_ID) as appointments
-                FROM Healthcare_Institute hi
-                LEFT JOIN Healthcare_Professional hp ON hi.Health_Institute_Number = hp.Health_Institute_Number
-                LEFT JOIN Appointment a ON hi.Health_Institute_Number = a.Health_Institute_Number
-                LEFT JOIN Patient p ON a.Personal_Health_No = p.Personal_Health_No
-                WHERE hi.Health_Institute_Number = ?
-                AND a.Appointment_Date >= date('now', ?)
-            ),
-            PreviousPeriod AS (
-                SELECT 
-                    COUNT(DISTINCT p.Personal_Health_No) as patients,
-                    COUNT(DISTINCT hp.SLMC_No) as professionals,
-                    COUNT(DISTINCT a.Appointment_ID) as appointments
-                FROM Healthcare_Institute hi
-                LEFT JOIN Healthcare_Professional hp ON hi.Health_Institute_Number = hp.Health_Institute_Number
-                LEFT JOIN Appointment a ON hi.Health_Institute_Number = a.Health_Institute_Number
-                LEFT JOIN Patient p ON a.Personal_Health_No = p.Personal_Health_No
-                WHERE hi.Health_Institute_Number = ?
-                AND a.Appointment_Date BETWEEN date('now', ?) AND date('now', ?)
-            )
-            SELECT 
-                ROUND(((c.patients - p.patients) * 100.0 / NULLIF(p.patients, 0)), 1) as patientsTrend,
-                ROUND(((c.professionals - p.professionals) * 100.0 / NULLIF(p.professionals, 0)), 1) as professionalsTrend,
-                ROUND(((c.appointments - p.appointments) * 100.0 / NULLIF(p.appointments, 0)), 1) as appointmentsTrend
-            FROM CurrentPeriod c, PreviousPeriod p
-        """;
-        
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, instituteId);
-            pstmt.setString(2, String.format("-%d days", days));
-            pstmt.setString(3, instituteId);
-            pstmt.setString(4, String.format("-%d days", days * 2));
-            pstmt.setString(5, String.format("-%d days", days));
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                trends.put("patientsTrend", rs.getDouble("patientsTrend"));
-                trends.put("professionalsTrend", rs.getDouble("professionalsTrend"));
-                trends.put("appointmentsTrend", rs.getDouble("appointmentsTrend"));
-                trends.put("satisfactionTrend", 0.0); // Placeholder since we don't have feedback data
-            }
-        }
-        
+        trends.put("patientsTrend", percentChange(current.patients, previous.patients));
+        trends.put("professionalsTrend", percentChange(current.professionals, previous.professionals));
+        trends.put("appointmentsTrend", percentChange(current.appointments, previous.appointments));
+        trends.put("satisfactionTrend", 0.0); // Placeholder since we don't have feedback data
         return trends;
     }
 
-    private List<Map<String, Object>> getDepartmentStats(Connection conn, String instituteId, int days) throws SQLException {
+    private List<Map<String, Object>> getDepartmentStats(Connection conn, String instituteId, int days, boolean exact)
+            throws SQLException {
         List<Map<String, Object>> departmentStats = new ArrayList<>();
-        
+        String from = LocalDate.now().minusDays(days).toString();
+
+        // Healthcare_Professional only supplies the specialty of each professional at the
+        // institute; the numbers come from the professionals' own rollups
         String sql = """
-            SELECT 
+            SELECT
                 hp.Specialty as name,
-                COUNT(DISTINCT p.Personal_Health_No) as patients,
                 COUNT(DISTINCT hp.SLMC_No) as professionals,
-                COUNT(DISTINCT a.Appointment_ID) as appointments
+                IFNULL(SUM((SELECT SUM(d.Appointments) FROM Analytics_Daily d
+                            WHERE d.Scope = ? AND d.Scope_ID = hp.SLMC_No AND d.Day >= ?)), 0) as appointments
             FROM Healthcare_Professional hp
-            LEFT JOIN Appointment a ON hp.SLMC_No = a.SLMC_No
-            LEFT JOIN Patient p ON a.Personal_Health_No = p.Personal_Health_No
             WHERE hp.Health_Institute_Number = ?
-            AND (a.Appointment_Date IS NULL OR a.Appointment_Date >= date('now', ?))
             AND hp.Specialty IS NOT NULL
             GROUP BY hp.Specialty
         """;
-        
+        Map<String, Integer> patientsBySpecialty = exact
+            ? getExactPatientsBySpecialty(conn, instituteId, from)
+            : getApproximatePatientsBySpecialty(conn, instituteId, from);
+
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, instituteId);
-            pstmt.setString(2, String.format("-%d days", days));
+            pstmt.setString(1, AnalyticsRollup.PROFESSIONAL);
+            pstmt.setString(2, from);
+            pstmt.setString(3, instituteId);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 Map<String, Object> dept = new HashMap<>();
                 dept.put("name", rs.getString("name"));
-                dept.put("patients", rs.getInt("patients"));
+                dept.put("patients", patientsBySpecialty.getOrDefault(rs.getString("name"), 0));
                 dept.put("professionals", rs.getInt("professionals"));
                 dept.put("appointments", rs.getInt("appointments"));
                 dept.put("satisfaction", 0); // Placeholder since we don't have feedback data
                 departmentStats.add(dept);
             }
-            
+
             // If no results, add a default entry
             if (departmentStats.isEmpty()) {
                 Map<String, Object> defaultDept = new HashMap<>();
@@ -350,7 +278,190 @@ public class AnalyticsDAO {
                 departmentStats.add(defaultDept);
             }
         }
-        
+
         return departmentStats;
     }
-}
\ No newline at end of file
+
+    private Map<String, Integer> getExactPatientsBySpecialty(Connection conn, String instituteId, String from)
+            throws SQLException {
+        String sql = """
+            SELECT hp.Specialty as name, COUNT(DISTINCT m.Member_ID) as patients
+            FROM Healthcare_Professional hp
+            JOIN Analytics_Member m ON m.Scope = ? AND m.Scope_ID = hp.SLMC_No
+                AND m.Kind = ? AND m.Grain = ? AND m.Period >= ?
+            WHERE hp.Health_Institute_Number = ?
+            AND hp.Specialty IS NOT NULL
+            GROUP BY hp.Specialty
+        """;
+
+        Map<String, Integer> patientsBySpecialty = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, AnalyticsRollup.PROFESSIONAL);
+            pstmt.setString(2, AnalyticsRollup.APPOINTMENT_PATIENT);
+            pstmt.setString(3, AnalyticsRollup.DAY);
+            pstmt.setString(4, from);
+            pstmt.setString(5, instituteId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                patientsBySpecialty.put(rs.getString("name"), rs.getInt("patients"));
+            }
+        }
+        return patientsBySpecialty;
+    }
+
+    // Same numbers from the professionals' per-day sketches, merged per specialty
+    private Map<String, Integer> getApproximatePatientsBySpecialty(Connection conn, String instituteId, String from)
+            throws SQLException {
+        String sql = """
+            SELECT hp.Specialty as name, s.Sketch as sketch
+            FROM Healthcare_Professional hp
+            JOIN Analytics_Sketch s ON s.Scope = ? AND s.Scope_ID = hp.SLMC_No
+                AND s.Kind = ? AND s.Day >= ?
+            WHERE hp.Health_Institute_Number = ?
+            AND hp.Specialty IS NOT NULL
+        """;
+
+        Map<String, List<byte[]>> sketchesBySpecialty = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, AnalyticsRollup.PROFESSIONAL);
+            pstmt.setString(2, AnalyticsRollup.APPOINTMENT_PATIENT);
+            pstmt.setString(3, from);
+            pstmt.setString(4, instituteId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                sketchesBySpecialty.computeIfAbsent(rs.getString("name"), k -> new ArrayList<>())
+                    .add(rs.getBytes("sketch"));
+            }
+        }
+
+        Map<String, Integer> patientsBySpecialty = new HashMap<>();
+        for (Map.Entry<String, List<byte[]>> entry : sketchesBySpecialty.entrySet()) {
+            patientsBySpecialty.put(entry.getKey(), (int) AnalyticsRollup.mergeSketches(entry.getValue()).estimate());
+        }
+        return patientsBySpecialty;
+    }
+
+    // Distinct patients, distinct professionals and appointments at an institute between two
+    // days (inclusive)
+    private PeriodStats getInstitutePeriod(Connection conn, String instituteId, LocalDate from, LocalDate to,
+                                           boolean exact) throws SQLException {
+        PeriodStats stats = new PeriodStats();
+        stats.patients = countMembers(conn, AnalyticsRollup.INSTITUTE, instituteId,
+            AnalyticsRollup.APPOINTMENT_PATIENT, from, to, exact);
+        stats.professionals = countMembers(conn, AnalyticsRollup.INSTITUTE, instituteId,
+            AnalyticsRollup.APPOINTMENT_PROFESSIONAL, from, to, exact);
+
+        String sql = """
+            SELECT IFNULL(SUM(Appointments), 0) as appointments
+            FROM Analytics_Daily
+            WHERE Scope = ? AND Scope_ID = ? AND Day BETWEEN ? AND ?
+        """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, AnalyticsRollup.INSTITUTE);
+            pstmt.setString(2, instituteId);
+            pstmt.setString(3, from.toString());
+            pstmt.setString(4, AnalyticsRollup.dayKey(to));
+            ResultSet rs = pstmt.executeQuery();
+            stats.appointments = rs.next() ? rs.getInt("appointments") : 0;
+        }
+        return stats;
+    }
+
+    // Distinct members of a kind over a range of days, from the per-day sketches or member sets
+    private int countMembers(Connection conn, String scope, String scopeId, String kind,
+                             LocalDate from, LocalDate to, boolean exact) throws SQLException {
+        return AnalyticsRollup.countDistinct(conn, scope, List.of(scopeId), kind, from, to, exact);
+    }
+
+    private Map<String, Integer> getTotals(Connection conn, String scope, String scopeId) throws SQLException {
+        Map<String, Integer> totals = new HashMap<>();
+        String sql = "SELECT * FROM Analytics_Totals WHERE Scope = ? AND Scope_ID = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, scope);
+            pstmt.setString(2, scopeId);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    if (meta.getColumnName(i).startsWith("Scope")) {
+                        continue;
+                    }
+                    totals.put(meta.getColumnName(i), rs.getInt(i));
+                }
+            }
+        }
+        return totals;
+    }
+
+    // Same rounding as before; no previous data means no trend
+    private static double percentChange(int current, int previous) {
+        if (previous == 0) {
+            return 0.0;
+        }
+        return Math.round((current - previous) * 1000.0 / previous) / 10.0;
+    }
+
+    private static ExecutorService newWorkerPool(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "umrs-analytics-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // The independent sections of one dashboard request, each in its own read transaction
+    private class FanOut {
+        private final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEADLINE_MILLIS);
+        private final Map<String, Future<?>> sections = new LinkedHashMap<>();
+
+        void submit(String name, Database.SqlWork<?> work) {
+            sections.put(name, workers.submit(() -> database.inReadTransaction(work)));
+        }
+
+        // Puts each finished section into results under its name, plus "partial" and
+        // "timedOut". A section that fails (rather than runs late) fails the whole request.
+        void await(Map<String, Object> results) throws SQLException {
+            List<String> timedOut = new ArrayList<>();
+            try {
+                for (Map.Entry<String, Future<?>> section : sections.entrySet()) {
+                    long remaining = deadline - System.nanoTime();
+                    try {
+                        Object value = section.getValue().get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                        results.put(section.getKey(), value);
+                    } catch (TimeoutException e) {
+                        // A section still waiting for a worker is dropped; one already running
+                        // finishes in the background and returns its connection as usual
+                        section.getValue().cancel(false);
+                        timedOut.add(section.getKey());
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof SQLException) {
+                            throw (SQLException) cause;
+                        }
+                        throw new SQLException("Analytics section " + section.getKey() + " failed", cause);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for analytics", e);
+            } finally {
+                // No-op for finished sections; drops queued ones when we gave up early
+                sections.values().forEach(future -> future.cancel(false));
+            }
+
+            if (!timedOut.isEmpty()) {
+                Log.warn("analytics sections timed out", "sections", String.join(",", timedOut),
+                    "deadlineMillis", DEADLINE_MILLIS);
+            }
+            results.put("partial", !timedOut.isEmpty());
+            results.put("timedOut", timedOut);
+        }
+    }
+
+    private static class PeriodStats {
+        int patients;
+        int professionals;
+        int appointments;
+    }
+}
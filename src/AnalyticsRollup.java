@@ -0,0 +1,508 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Daily and monthly rollups behind the professional and institute analytics dashboards.
+//
+// Every write to Medical_Record or Appointment adjusts the rollup rows for the record's
+// professional (SLMC_No) and institute (Health_Institute_Number) in the same transaction,
+// so AnalyticsDAO reads a handful of pre-aggregated rows instead of scanning and joining the
+// base tables on every dashboard load.
+//
+//  - Analytics_Daily / Analytics_Monthly / Analytics_Totals hold plain counters per scope
+//    and period (visits, appointments, completed appointments by time of day) and the number
+//    of distinct patients in that period.
+//  - Analytics_Member keeps who was counted in each period with a reference count, so distinct
+//    counts go up on a patient's first row in a period and down when their last row goes away.
+//    Its day rows are the exact answer for distinct counts over arbitrary day windows.
+//  - Analytics_Sketch holds a HyperLogLog sketch of each day's member set, so the same
+//    windowed counts can be answered approximately by merging a few small blobs instead of a
+//    COUNT(DISTINCT) over the member rows. Exact counting stays available for audits.
+//
+// Writers call add* after inserting or updating a row and remove* before updating or deleting
+// it; both take the row id and read the row themselves, on the caller's connection. Both also
+// schedule the AnalyticsCache invalidation for the row's professional and institute, and
+// tell ColumnarStore and ActivitySearch which row to re-read.
+//
+// The tables are part of db/schema.sql; a change to their layout is a new migration that
+// alters them and runs rebuild().
+public class AnalyticsRollup {
+    static final String PROFESSIONAL = "professional";
+    static final String INSTITUTE = "institute";
+
+    // Member kinds
+    static final String VISIT_PATIENT = "visit_patient";
+    static final String APPOINTMENT_PATIENT = "appointment_patient";
+    static final String APPOINTMENT_PROFESSIONAL = "appointment_professional";
+
+    // Member grains
+    static final String DAY = "day";
+    static final String MONTH = "month";
+    static final String ALL = "all";
+
+    static final String[] TIME_SLOTS = {"Morning", "Afternoon", "Evening"};
+
+    // -Dumrs.analytics.hllPrecision=N (4-16): sketch registers are 2^N bytes at most, standard
+    // error about 1.04 / sqrt(2^N). Existing sketches keep their precision; merges fold down.
+    static final int SKETCH_PRECISION = Math.max(HyperLogLog.MIN_PRECISION,
+        Math.min(HyperLogLog.MAX_PRECISION, Integer.getInteger("umrs.analytics.hllPrecision", 12)));
+    // -Dumrs.analytics.exactDistinct=true makes exact counting the default for every request
+    static final boolean EXACT_DISTINCT_DEFAULT = Boolean.getBoolean("umrs.analytics.exactDistinct");
+
+    private static final String RECORD_COLUMNS =
+        "SELECT Personal_Health_No, SLMC_No, Health_Institute_Number, Date_of_Visit FROM Medical_Record";
+    private static final String APPOINTMENT_COLUMNS =
+        "SELECT Personal_Health_No, SLMC_No, Health_Institute_Number, Appointment_Date, Appointment_Time, Status "
+            + "FROM Appointment";
+
+    // Recomputes every rollup from Medical_Record and Appointment; migration 7 runs it once to
+    // fill the tables migration 1 created. Runs in the caller's transaction and returns the
+    // number of base rows folded in.
+    static int rebuild(Connection conn) throws SQLException {
+        long start = System.nanoTime();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM Analytics_Daily");
+            stmt.execute("DELETE FROM Analytics_Monthly");
+            stmt.execute("DELETE FROM Analytics_Totals");
+            stmt.execute("DELETE FROM Analytics_Member");
+            stmt.execute("DELETE FROM Analytics_Sketch");
+        }
+
+        int records = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(RECORD_COLUMNS);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                applyRecord(conn, rs, 1);
+                records++;
+            }
+        }
+        int appointments = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(APPOINTMENT_COLUMNS);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                applyAppointment(conn, rs, 1);
+                appointments++;
+            }
+        }
+
+        Database.afterCommit(conn, AnalyticsCache::invalidateAll);
+        Database.afterCommit(conn, ColumnarStore::reloadAll);
+        Database.afterCommit(conn, ActivitySearch::reloadAll);
+        Log.info("analytics rollups rebuilt", "records", records, "appointments", appointments,
+            "ms", (System.nanoTime() - start) / 1_000_000);
+        return records + appointments;
+    }
+
+    static void addRecord(Connection conn, int recordId) throws SQLException {
+        applyRecord(conn, recordId, 1);
+    }
+
+    // Adds every record above afterId, i.e. the rows a bulk import chunk has just inserted in
+    // this transaction, so imports keep the rollups current without a full rebuild
+    static int addRecordsAfter(Connection conn, long afterId) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        Set<String> professionals = new HashSet<>();
+        Set<String> institutes = new HashSet<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT Record_ID, Personal_Health_No, SLMC_No, Health_Institute_Number, Date_of_Visit "
+                    + "FROM Medical_Record WHERE Record_ID > ? ORDER BY Record_ID")) {
+            pstmt.setLong(1, afterId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt("Record_ID"));
+                    applyRecord(conn, rs, 1);
+                    if (rs.getString("SLMC_No") != null) {
+                        professionals.add(rs.getString("SLMC_No"));
+                    }
+                    if (rs.getString("Health_Institute_Number") != null) {
+                        institutes.add(rs.getString("Health_Institute_Number"));
+                    }
+                }
+            }
+        }
+        Database.afterCommit(conn, () -> {
+            for (int id : ids) {
+                ColumnarStore.recordChanged(id);
+                ActivitySearch.recordChanged(id);
+            }
+            professionals.forEach(slmcNo -> AnalyticsCache.invalidate(PROFESSIONAL, slmcNo));
+            institutes.forEach(instituteId -> AnalyticsCache.invalidate(INSTITUTE, instituteId));
+        });
+        return ids.size();
+    }
+
+    static void removeRecord(Connection conn, int recordId) throws SQLException {
+        applyRecord(conn, recordId, -1);
+    }
+
+    static void addAppointment(Connection conn, int appointmentId) throws SQLException {
+        applyAppointment(conn, appointmentId, 1);
+    }
+
+    static void removeAppointment(Connection conn, int appointmentId) throws SQLException {
+        applyAppointment(conn, appointmentId, -1);
+    }
+
+    private static void applyRecord(Connection conn, int recordId, int delta) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(RECORD_COLUMNS + " WHERE Record_ID = ?")) {
+            pstmt.setInt(1, recordId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    applyRecord(conn, rs, delta);
+                    invalidateCache(conn, rs);
+                }
+            }
+        }
+        Database.afterCommit(conn, () -> {
+            ColumnarStore.recordChanged(recordId);
+            ActivitySearch.recordChanged(recordId);
+        });
+    }
+
+    private static void applyAppointment(Connection conn, int appointmentId, int delta) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(APPOINTMENT_COLUMNS + " WHERE Appointment_ID = ?")) {
+            pstmt.setInt(1, appointmentId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    applyAppointment(conn, rs, delta);
+                    invalidateCache(conn, rs);
+                }
+            }
+        }
+        Database.afterCommit(conn, () -> {
+            ColumnarStore.appointmentChanged(appointmentId);
+            ActivitySearch.appointmentChanged(appointmentId);
+        });
+    }
+
+    // The row's professional and institute dashboards are stale once this transaction commits
+    private static void invalidateCache(Connection conn, ResultSet row) throws SQLException {
+        String slmcNo = row.getString("SLMC_No");
+        String instituteId = row.getString("Health_Institute_Number");
+        Database.afterCommit(conn, () -> {
+            if (slmcNo != null) {
+                AnalyticsCache.invalidate(PROFESSIONAL, slmcNo);
+            }
+            if (instituteId != null) {
+                AnalyticsCache.invalidate(INSTITUTE, instituteId);
+            }
+        });
+    }
+
+    private static void applyRecord(Connection conn, ResultSet row, int delta) throws SQLException {
+        LocalDate day = toLocalDate(row.getObject("Date_of_Visit"));
+        String phn = row.getString("Personal_Health_No");
+        if (day == null || phn == null) {
+            return; // cannot be bucketed
+        }
+        String[][] scopes = {
+            {PROFESSIONAL, row.getString("SLMC_No")},
+            {INSTITUTE, row.getString("Health_Institute_Number")}
+        };
+        for (String[] scope : scopes) {
+            if (scope[1] == null) {
+                continue;
+            }
+            bump(conn, scope[0], scope[1], day, "Visits", delta);
+            member(conn, scope[0], scope[1], VISIT_PATIENT, day, phn, delta, "Visit_Patients");
+        }
+    }
+
+    private static void applyAppointment(Connection conn, ResultSet row, int delta) throws SQLException {
+        LocalDate day = toLocalDate(row.getObject("Appointment_Date"));
+        String phn = row.getString("Personal_Health_No");
+        if (day == null || phn == null) {
+            return;
+        }
+        String slmcNo = row.getString("SLMC_No");
+        String slot = "completed".equalsIgnoreCase(row.getString("Status"))
+            ? timeSlot(row.getObject("Appointment_Time"))
+            : null;
+        String[][] scopes = {
+            {PROFESSIONAL, slmcNo},
+            {INSTITUTE, row.getString("Health_Institute_Number")}
+        };
+        for (String[] scope : scopes) {
+            if (scope[1] == null) {
+                continue;
+            }
+            bump(conn, scope[0], scope[1], day, "Appointments", delta);
+            member(conn, scope[0], scope[1], APPOINTMENT_PATIENT, day, phn, delta, "Appointment_Patients");
+            if (slot != null) {
+                bump(conn, scope[0], scope[1], day, "Completed_" + slot, delta);
+            }
+            if (INSTITUTE.equals(scope[0]) && slmcNo != null) {
+                member(conn, scope[0], scope[1], APPOINTMENT_PROFESSIONAL, day, slmcNo, delta, null);
+            }
+        }
+    }
+
+    // Adds delta to one counter column in the day, month and total rows of a scope
+    private static void bump(Connection conn, String scope, String scopeId, LocalDate day,
+                             String column, int delta) throws SQLException {
+        bump(conn, "Analytics_Daily", "Day", day.toString(), scope, scopeId, column, delta);
+        bump(conn, "Analytics_Monthly", "Month", YearMonth.from(day).toString(), scope, scopeId, column, delta);
+        bump(conn, "Analytics_Totals", null, null, scope, scopeId, column, delta);
+    }
+
+    private static void bump(Connection conn, String table, String periodColumn, String period,
+                             String scope, String scopeId, String column, int delta) throws SQLException {
+        String keys = periodColumn != null ? "Scope, Scope_ID, " + periodColumn : "Scope, Scope_ID";
+        String sql = "INSERT INTO " + table + " (" + keys + ", " + column + ") VALUES (?, ?, "
+            + (periodColumn != null ? "?, " : "") + "?) ON CONFLICT (" + keys + ") DO UPDATE SET "
+            + column + " = " + column + " + excluded." + column;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            pstmt.setString(i++, scope);
+            pstmt.setString(i++, scopeId);
+            if (periodColumn != null) {
+                pstmt.setString(i++, period);
+            }
+            pstmt.setInt(i, delta);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // Reference-counts memberId in the day, month and all-time member sets of a scope, and
+    // moves distinctColumn when the member enters or leaves a set
+    private static void member(Connection conn, String scope, String scopeId, String kind, LocalDate day,
+                               String memberId, int delta, String distinctColumn) throws SQLException {
+        String[][] grains = {
+            {DAY, day.toString(), "Analytics_Daily", "Day"},
+            {MONTH, YearMonth.from(day).toString(), "Analytics_Monthly", "Month"},
+            {ALL, "", "Analytics_Totals", null}
+        };
+        for (String[] grain : grains) {
+            boolean changed = delta > 0
+                ? enter(conn, scope, scopeId, kind, grain[0], grain[1], memberId)
+                : leave(conn, scope, scopeId, kind, grain[0], grain[1], memberId);
+            if (changed && distinctColumn != null) {
+                bump(conn, grain[2], grain[3], grain[1], scope, scopeId, distinctColumn, delta);
+            }
+            if (changed && DAY.equals(grain[0])) {
+                if (delta > 0) {
+                    addToSketch(conn, scope, scopeId, kind, grain[1], memberId);
+                } else {
+                    // A sketch cannot forget a value; redo the day from its member set
+                    rebuildSketch(conn, scope, scopeId, kind, grain[1]);
+                }
+            }
+        }
+    }
+
+    private static void addToSketch(Connection conn, String scope, String scopeId, String kind, String day,
+                                    String memberId) throws SQLException {
+        HyperLogLog sketch = null;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT Sketch FROM Analytics_Sketch WHERE Scope = ? AND Scope_ID = ? AND Kind = ? AND Day = ?")) {
+            setSketchKey(pstmt, scope, scopeId, kind, day);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    sketch = HyperLogLog.fromBytes(rs.getBytes("Sketch"));
+                }
+            }
+        }
+        if (sketch == null) {
+            sketch = new HyperLogLog(SKETCH_PRECISION);
+        }
+        // Ranks are at least 1, so a new sketch always changes and gets stored
+        if (sketch.add(memberId)) {
+            saveSketch(conn, scope, scopeId, kind, day, sketch);
+        }
+    }
+
+    private static void rebuildSketch(Connection conn, String scope, String scopeId, String kind, String day)
+            throws SQLException {
+        HyperLogLog sketch = new HyperLogLog(SKETCH_PRECISION);
+        boolean empty = true;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT Member_ID FROM Analytics_Member "
+                    + "WHERE Scope = ? AND Scope_ID = ? AND Kind = ? AND Grain = 'day' AND Period = ?")) {
+            setSketchKey(pstmt, scope, scopeId, kind, day);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    sketch.add(rs.getString("Member_ID"));
+                    empty = false;
+                }
+            }
+        }
+        if (empty) {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "DELETE FROM Analytics_Sketch WHERE Scope = ? AND Scope_ID = ? AND Kind = ? AND Day = ?")) {
+                setSketchKey(pstmt, scope, scopeId, kind, day);
+                pstmt.executeUpdate();
+            }
+        } else {
+            saveSketch(conn, scope, scopeId, kind, day, sketch);
+        }
+    }
+
+    private static void saveSketch(Connection conn, String scope, String scopeId, String kind, String day,
+                                   HyperLogLog sketch) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT OR REPLACE INTO Analytics_Sketch (Scope, Scope_ID, Kind, Day, Sketch) VALUES (?, ?, ?, ?, ?)")) {
+            setSketchKey(pstmt, scope, scopeId, kind, day);
+            pstmt.setBytes(5, sketch.toBytes());
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static void setSketchKey(PreparedStatement pstmt, String scope, String scopeId, String kind,
+                                     String day) throws SQLException {
+        pstmt.setString(1, scope);
+        pstmt.setString(2, scopeId);
+        pstmt.setString(3, kind);
+        pstmt.setString(4, day);
+    }
+
+    // Distinct members of a kind across one or more scopes between two days (inclusive).
+    // Approximate mode merges the per-day sketches; exact mode counts the member rows.
+    static int countDistinct(Connection conn, String scope, List<String> scopeIds, String kind,
+                             LocalDate from, LocalDate to, boolean exact) throws SQLException {
+        if (scopeIds.isEmpty()) {
+            return 0;
+        }
+        String in = String.join(", ", Collections.nCopies(scopeIds.size(), "?"));
+        String sql = exact
+            ? "SELECT COUNT(DISTINCT Member_ID) FROM Analytics_Member WHERE Scope = ? AND Scope_ID IN (" + in
+                + ") AND Kind = ? AND Grain = 'day' AND Period BETWEEN ? AND ?"
+            : "SELECT Sketch FROM Analytics_Sketch WHERE Scope = ? AND Scope_ID IN (" + in
+                + ") AND Kind = ? AND Day BETWEEN ? AND ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            pstmt.setString(i++, scope);
+            for (String scopeId : scopeIds) {
+                pstmt.setString(i++, scopeId);
+            }
+            pstmt.setString(i++, kind);
+            pstmt.setString(i++, from.toString());
+            pstmt.setString(i, dayKey(to));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (exact) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+                List<byte[]> sketches = new ArrayList<>();
+                while (rs.next()) {
+                    sketches.add(rs.getBytes(1));
+                }
+                return (int) mergeSketches(sketches).estimate();
+            }
+        }
+    }
+
+    // LocalDate.MAX stands for "no upper bound"; its ISO form does not sort like a day key
+    static String dayKey(LocalDate day) {
+        return day.equals(LocalDate.MAX) ? "9999-12-31" : day.toString();
+    }
+
+    // Union of serialized sketches at the lowest precision among them
+    static HyperLogLog mergeSketches(List<byte[]> sketches) {
+        int precision = SKETCH_PRECISION;
+        for (byte[] data : sketches) {
+            precision = Math.min(precision, data[1]);
+        }
+        HyperLogLog union = new HyperLogLog(precision);
+        for (byte[] data : sketches) {
+            union.merge(data);
+        }
+        return union;
+    }
+
+    // True when the member was not in the set before
+    private static boolean enter(Connection conn, String scope, String scopeId, String kind, String grain,
+                                 String period, String memberId) throws SQLException {
+        String update = "UPDATE Analytics_Member SET Row_Count = Row_Count + 1 "
+            + "WHERE Scope = ? AND Scope_ID = ? AND Kind = ? AND Grain = ? AND Period = ? AND Member_ID = ?";
+        if (executeMemberKey(conn, update, scope, scopeId, kind, grain, period, memberId) > 0) {
+            return false;
+        }
+        String insert = "INSERT INTO Analytics_Member (Scope, Scope_ID, Kind, Grain, Period, Member_ID, Row_Count) "
+            + "VALUES (?, ?, ?, ?, ?, ?, 1)";
+        executeMemberKey(conn, insert, scope, scopeId, kind, grain, period, memberId);
+        return true;
+    }
+
+    // True when this was the member's last row in the set
+    private static boolean leave(Connection conn, String scope, String scopeId, String kind, String grain,
+                                 String period, String memberId) throws SQLException {
+        String update = "UPDATE Analytics_Member SET Row_Count = Row_Count - 1 "
+            + "WHERE Scope = ? AND Scope_ID = ? AND Kind = ? AND Grain = ? AND Period = ? AND Member_ID = ? "
+            + "AND Row_Count > 1";
+        if (executeMemberKey(conn, update, scope, scopeId, kind, grain, period, memberId) > 0) {
+            return false;
+        }
+        String delete = "DELETE FROM Analytics_Member "
+            + "WHERE Scope = ? AND Scope_ID = ? AND Kind = ? AND Grain = ? AND Period = ? AND Member_ID = ?";
+        return executeMemberKey(conn, delete, scope, scopeId, kind, grain, period, memberId) > 0;
+    }
+
+    private static int executeMemberKey(Connection conn, String sql, String... key) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < key.length; i++) {
+                pstmt.setString(i + 1, key[i]);
+            }
+            return pstmt.executeUpdate();
+        }
+    }
+
+    // Dates are stored as epoch millis by the JDBC driver; seed rows and bulk import input may be ISO text
+    static LocalDate toLocalDate(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return Instant.ofEpochMilli(((Number) value).longValue()).atZone(ZoneId.systemDefault()).toLocalDate();
+        }
+        String text = value.toString().trim();
+        try {
+            if (!text.isEmpty() && text.chars().allMatch(Character::isDigit)) {
+                return Instant.ofEpochMilli(Long.parseLong(text)).atZone(ZoneId.systemDefault()).toLocalDate();
+            }
+            return LocalDate.parse(text.length() > 10 ? text.substring(0, 10) : text);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Times are stored as epoch millis on 1970-01-01 by the JDBC driver; imported rows may hold
+    // "HH:mm" or "HH:mm:ss" text
+    static LocalTime toLocalTime(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return Instant.ofEpochMilli(((Number) value).longValue()).atZone(ZoneId.systemDefault()).toLocalTime();
+        }
+        String text = value.toString().trim();
+        try {
+            if (!text.isEmpty() && text.chars().allMatch(Character::isDigit)) {
+                return Instant.ofEpochMilli(Long.parseLong(text)).atZone(ZoneId.systemDefault()).toLocalTime();
+            }
+            return LocalTime.parse(text.length() == 5 ? text + ":00" : text.substring(0, Math.min(8, text.length())));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Morning before 12:00, Afternoon before 17:00, Evening after; null when the time is unreadable
+    static String timeSlot(Object value) {
+        LocalTime time = toLocalTime(value);
+        if (time == null) {
+            return null;
+        }
+        int hour = time.getHour();
+        return hour < 12 ? TIME_SLOTS[0] : hour < 17 ? TIME_SLOTS[1] : TIME_SLOTS[2];
+    }
+}
@@ -1,64 +1,127 @@
+import java.io.IOException;
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CompletableFuture;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 public class AppointmentDAO {
-    private static HikariDataSource dataSource;
-    private static final int BUSY_TIMEOUT_MS = 30000; // 30 seconds
+    private final Database database;
 
-    static {
-        initializeDataSource();
+    // Appointment_Date and Appointment_Time keep whatever the driver or an import wrote (epoch
+    // millis or ISO text), so queries filter and sort on Appointment_Day (days since 1970-01-01)
+    // and Appointment_Minute (minutes since midnight) instead, both in the server's time zone.
+    // Comparing those directly lets SQLite range-scan the indexes; date(Appointment_Date)
+    // cannot use an index and never matched millis anyway.
+    // A date or time that cannot be read is stored as UNKNOWN rather than NULL, because a NULL
+    // in a keyset cursor makes the row-value comparison NULL and ends the listing early.
+    static final int UNKNOWN = -1;
+
+    // The hot reads, kept here so QueryPlanAdvisor can check their plans at startup
+    static final String BY_PROFESSIONAL_SQL =
+        "SELECT * FROM Appointment WHERE SLMC_No = ? ORDER BY Appointment_Day, Appointment_Minute";
+    static final String PENDING_SQL = "SELECT * FROM Appointment WHERE SLMC_No = ? AND Status = 'Pending' " +
+        "ORDER BY Appointment_Day, Appointment_Minute";
+    static final String BY_PATIENT_SQL =
+        "SELECT * FROM Appointment WHERE Personal_Health_No = ? ORDER BY Appointment_Day, Appointment_Minute";
+    // Parameters: institute, today()
+    static final String TODAY_COUNT_SQL = """
+            SELECT COUNT(*) as count 
+            FROM Appointment 
+            WHERE Health_Institute_Number = ? 
+            AND Appointment_Day = ?
+            AND Status != 'cancelled'
+        """;
+    // Parameters: SLMC number, today()
+    static final String UPCOMING_SQL = """
+            SELECT * FROM Appointment 
+            WHERE SLMC_No = ? 
+            AND Appointment_Day >= ?
+            AND Status != 'cancelled'
+            ORDER BY Appointment_Day, Appointment_Minute
+        """;
+    // Parameters: PHN, today()
+    static final String UPCOMING_FOR_PATIENT_SQL = "SELECT * FROM Appointment " +
+        "WHERE Personal_Health_No = ? " +
+        "AND Appointment_Day >= ? " +
+        "AND Status != 'cancelled' " +
+        "ORDER BY Appointment_Day, Appointment_Minute";
+
+    // The institute appointment list, newest first. Parameters: institute, the status if
+    // byStatus, the cursor's (day, minute, id) if afterCursor, then limit + 1
+    static String instituteListSql(boolean byStatus, boolean afterCursor) {
+        return INSTITUTE_LIST_SELECT + " WHERE a.Health_Institute_Number = ?" +
+            (byStatus ? " AND a.Status = ?" : "") +
+            (afterCursor ? " AND (a.Appointment_Day, a.Appointment_Minute, a.Appointment_ID) < (?, ?, ?)" : "") +
+            INSTITUTE_LIST_ORDER + " LIMIT ?";
     }
 
-    private static void initializeDataSource() {
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:sqlite:db/umrs.db");
-        config.setMaximumPoolSize(5);
-        config.setMinimumIdle(1);
-        config.addDataSourceProperty("journal_mode", "WAL");
-        config.addDataSourceProperty("busy_timeout", String.valueOf(BUSY_TIMEOUT_MS));
-        dataSource = new HikariDataSource(config);
+    // The same list restricted to the ids a ?search matched. Parameters: the ids, then the
+    // institute; the unary + keeps SQLite on the primary key instead of the institute's index.
+    static String instituteListByIdsSql(int ids) {
+        return INSTITUTE_LIST_SELECT + " WHERE a.Appointment_ID IN (" +
+            String.join(", ", java.util.Collections.nCopies(ids, "?")) + ") AND +a.Health_Institute_Number = ?" +
+            INSTITUTE_LIST_ORDER;
     }
 
+    private static final String INSTITUTE_LIST_SELECT =
+        "SELECT a.*, p.Name AS patient_name, hp.Name AS professional_name FROM Appointment a " +
+        "JOIN Patient p ON a.Personal_Health_No = p.Personal_Health_No " +
+        "JOIN Healthcare_Professional hp ON a.SLMC_No = hp.SLMC_No";
+    private static final String INSTITUTE_LIST_ORDER =
+        " ORDER BY a.Appointment_Day DESC, a.Appointment_Minute DESC, a.Appointment_ID DESC";
+    // Ids bound per IN list by streamAppointmentsByIds
+    private static final int IDS_PER_QUERY = 500;
+
+    public AppointmentDAO(Database database) {
+        this.database = database;
+    }
+
+    // Goes through the group commit writer, so concurrent bookings share one commit
     public void insertAppointment(Appointment appointment) throws SQLException {
+        int id = database.getGroupCommitWriter().submitAndWait(conn -> insertRow(conn, appointment));
+        appointment.setAppointmentID(id);
+    }
+
+    // Writes one row on a connection whose transaction is managed by the caller
+    static int insertRow(Connection conn, Appointment appointment) throws SQLException {
         String sql = "INSERT INTO Appointment (Personal_Health_No, SLMC_No, Health_Institute_Number, " +
-                    "Appointment_Date, Appointment_Time, Purpose, Status, Notes) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+                    "Appointment_Date, Appointment_Time, Purpose, Status, Notes, Appointment_Day, Appointment_Minute) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-        try (Connection conn = dataSource.getConnection()) {
-            conn.setAutoCommit(false);
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setString(1, appointment.getPersonalHealthNo());
-                pstmt.setString(2, appointment.getSlmcNo());
-                pstmt.setString(3, appointment.getHealthInstituteNumber());
-                pstmt.setDate(4, appointment.getAppointmentDate());
-                pstmt.setTime(5, appointment.getAppointmentTime());
-                pstmt.setString(6, appointment.getPurpose());
-                pstmt.setString(7, appointment.getStatus());
-                pstmt.setString(8, appointment.getNotes());
-                
-                pstmt.executeUpdate();
-                conn.commit();
-            } catch (SQLException e) {
-                try {
-                    conn.rollback();
-                } catch (SQLException re) {
-                    e.addSuppressed(re);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, appointment.getPersonalHealthNo());
+            pstmt.setString(2, appointment.getSlmcNo());
+            pstmt.setString(3, appointment.getHealthInstituteNumber());
+            pstmt.setDate(4, appointment.getAppointmentDate());
+            pstmt.setTime(5, appointment.getAppointmentTime());
+            pstmt.setString(6, appointment.getPurpose());
+            pstmt.setString(7, appointment.getStatus());
+            pstmt.setString(8, appointment.getNotes());
+            pstmt.setLong(9, epochDay(appointment.getAppointmentDate()));
+            pstmt.setInt(10, minuteOfDay(appointment.getAppointmentTime()));
+
+            pstmt.executeUpdate();
+            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    int appointmentId = generatedKeys.getInt(1);
+                    AnalyticsRollup.addAppointment(conn, appointmentId);
+                    return appointmentId;
                 }
-                throw e;
             }
+            throw new SQLException("Inserting appointment returned no generated key");
         }
     }
 
     // Get appointments for a healthcare professional
     public Vector<Appointment> getAppointmentsByProfessional(String slmcNo) {
         Vector<Appointment> appointments = new Vector<>();
-        String sql = "SELECT * FROM Appointment WHERE SLMC_No = ? ORDER BY Appointment_Date, Appointment_Time";
+        String sql = BY_PROFESSIONAL_SQL;
         
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, slmcNo);
             ResultSet rs = pstmt.executeQuery();
@@ -67,20 +130,141 @@ public class AppointmentDAO {
                 appointments.add(mapResultSetToAppointment(rs));
             }
         } catch (SQLException e) {
-            System.err.println("Error in getAppointmentsByProfessional: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error in getAppointmentsByProfessional: " + e.getMessage(), e);
         }
         
         return appointments;
     }
 
+    // One keyset page of a professional's appointments with the patient's name, newest first,
+    // as GET /api/professional/appointments returns them. Page.ALL = everything.
+    public Page<Map<String, Object>> getAppointmentsByProfessionalPage(String slmcNo, String cursor, int limit)
+            throws SQLException {
+        Object[] after = Page.decodeCursor(cursor, 3);
+        String sql = professionalPageSql(after != null);
+
+        try (Connection conn = database.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int paramIndex = 1;
+            pstmt.setString(paramIndex++, slmcNo);
+            if (after != null) {
+                for (Object key : after) {
+                    pstmt.setObject(paramIndex++, key);
+                }
+            }
+            pstmt.setInt(paramIndex, limit + 1);
+
+            List<Map<String, Object>> appointments = new ArrayList<>();
+            Object[] last = null;
+            boolean hasMore = false;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (appointments.size() == limit) {
+                        hasMore = true;
+                        break;
+                    }
+                    last = new Object[] {
+                        rs.getObject("Appointment_Day"), rs.getObject("Appointment_Minute"), rs.getObject("Appointment_ID")
+                    };
+                    Map<String, Object> appointment = new HashMap<>();
+                    appointment.put("id", rs.getInt("Appointment_ID"));
+                    appointment.put("patientPHN", rs.getString("Personal_Health_No"));
+                    appointment.put("patientName", rs.getString("patient_name"));
+                    appointment.put("appointmentDate", rs.getDate("Appointment_Date").toString());
+                    appointment.put("appointmentTime", rs.getTime("Appointment_Time").toString());
+                    appointment.put("purpose", rs.getString("Purpose"));
+                    appointment.put("status", rs.getString("Status"));
+                    appointment.put("notes", rs.getString("Notes"));
+                    appointment.put("healthInstituteNumber", rs.getString("Health_Institute_Number"));
+                    appointments.add(appointment);
+                }
+            }
+            return new Page<>(appointments, hasMore ? Page.encodeCursor(last) : null);
+        }
+    }
+
+    static String professionalPageSql(boolean afterCursor) {
+        return "SELECT a.*, p.Name AS patient_name FROM Appointment a " +
+            "JOIN Patient p ON a.Personal_Health_No = p.Personal_Health_No WHERE a.SLMC_No = ?" +
+            (afterCursor ? " AND (a.Appointment_Day, a.Appointment_Minute, a.Appointment_ID) < (?, ?, ?)" : "") +
+            " ORDER BY a.Appointment_Day DESC, a.Appointment_Minute DESC, a.Appointment_ID DESC LIMIT ?";
+    }
+
+    // Callback for streamed institute list rows (the columns of instituteListSql); lets the
+    // route write each appointment out as soon as it is read
+    public interface RowHandler {
+        void handle(ResultSet rs) throws SQLException, IOException;
+    }
+
+    // One keyset page of an institute's appointments, newest first, handed over row by row.
+    // status null or "all" = any status; Page.ALL = everything. Returns the cursor of the next
+    // page, or null on the last.
+    public String streamAppointmentsByInstitute(String instituteId, String status, String cursor, int limit,
+            RowHandler handler) throws SQLException, IOException {
+        Object[] after = Page.decodeCursor(cursor, 3);
+        boolean byStatus = status != null && !status.equals("all");
+        String sql = instituteListSql(byStatus, after != null);
+
+        try (Connection conn = database.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int paramIndex = 1;
+            pstmt.setString(paramIndex++, instituteId);
+            if (byStatus) {
+                pstmt.setString(paramIndex++, status);
+            }
+            if (after != null) {
+                for (Object key : after) {
+                    pstmt.setObject(paramIndex++, key);
+                }
+            }
+            pstmt.setInt(paramIndex, limit + 1);
+
+            int count = 0;
+            Object[] last = null;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (count == limit) {
+                        return Page.encodeCursor(last);
+                    }
+                    last = new Object[] {
+                        rs.getObject("Appointment_Day"), rs.getObject("Appointment_Minute"), rs.getObject("Appointment_ID")
+                    };
+                    handler.handle(rs);
+                    count++;
+                }
+            }
+        }
+        return null;
+    }
+
+    // The rows of the given institute appointments, newest first, handed over row by row;
+    // ids the institute does not own are skipped
+    public void streamAppointmentsByIds(String instituteId, List<Integer> ids, RowHandler handler)
+            throws SQLException, IOException {
+        try (Connection conn = database.getReadConnection()) {
+            for (int from = 0; from < ids.size(); from += IDS_PER_QUERY) {
+                List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + IDS_PER_QUERY));
+                try (PreparedStatement pstmt = conn.prepareStatement(instituteListByIdsSql(chunk.size()))) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setInt(i + 1, chunk.get(i));
+                    }
+                    pstmt.setString(chunk.size() + 1, instituteId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            handler.handle(rs);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     // Get pending appointment requests
     public Vector<Appointment> getPendingAppointments(String slmcNo) {
-        String sql = "SELECT * FROM Appointment WHERE SLMC_No = ? AND Status = 'Pending' " +
-                     "ORDER BY Appointment_Date, Appointment_Time";
+        String sql = PENDING_SQL;
         Vector<Appointment> appointments = new Vector<>();
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, slmcNo);
             ResultSet rs = pstmt.executeQuery();
@@ -89,8 +273,7 @@ public class AppointmentDAO {
                 appointments.add(mapResultSetToAppointment(rs));
             }
         } catch (SQLException e) {
-            System.err.println("Error in getPendingAppointments: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error in getPendingAppointments: " + e.getMessage(), e);
         }
 
         return appointments;
@@ -100,7 +283,7 @@ public class AppointmentDAO {
     public Appointment getAppointmentById(int appointmentId) {
         String sql = "SELECT * FROM Appointment WHERE Appointment_ID = ?";
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, appointmentId);
             ResultSet rs = pstmt.executeQuery();
@@ -109,8 +292,7 @@ public class AppointmentDAO {
                 return mapResultSetToAppointment(rs);
             }
         } catch (SQLException e) {
-            System.err.println("Error in getAppointmentById: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error in getAppointmentById: " + e.getMessage(), e);
         }
 
         return null;
@@ -118,12 +300,13 @@ public class AppointmentDAO {
 
     public void updateAppointment(Appointment appointment) throws SQLException {
         String sql = "UPDATE Appointment SET SLMC_No = ?, Health_Institute_Number = ?, " +
-                    "Appointment_Date = ?, Appointment_Time = ?, Purpose = ?, Status = ?, Notes = ? " +
-                    "WHERE Appointment_ID = ?";
+                    "Appointment_Date = ?, Appointment_Time = ?, Purpose = ?, Status = ?, Notes = ?, " +
+                    "Appointment_Day = ?, Appointment_Minute = ? WHERE Appointment_ID = ?";
 
-        try (Connection conn = dataSource.getConnection()) {
-            conn.setAutoCommit(false);
+        database.inWriteTransaction(conn -> {
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                // The old row leaves the analytics rollups and the new one enters them
+                AnalyticsRollup.removeAppointment(conn, appointment.getAppointmentID());
                 pstmt.setString(1, appointment.getSlmcNo());
                 pstmt.setString(2, appointment.getHealthInstituteNumber());
                 pstmt.setDate(3, appointment.getAppointmentDate());
@@ -131,29 +314,25 @@ public class AppointmentDAO {
                 pstmt.setString(5, appointment.getPurpose());
                 pstmt.setString(6, appointment.getStatus());
                 pstmt.setString(7, appointment.getNotes());
-                pstmt.setInt(8, appointment.getAppointmentID());
+                pstmt.setLong(8, epochDay(appointment.getAppointmentDate()));
+                pstmt.setInt(9, minuteOfDay(appointment.getAppointmentTime()));
+                pstmt.setInt(10, appointment.getAppointmentID());
                 
                 int rowsAffected = pstmt.executeUpdate();
                 if (rowsAffected == 0) {
                     throw new SQLException("Appointment not found with ID: " + appointment.getAppointmentID());
                 }
-                conn.commit();
-            } catch (SQLException e) {
-                try {
-                    conn.rollback();
-                } catch (SQLException re) {
-                    e.addSuppressed(re);
-                }
-                throw e;
+                AnalyticsRollup.addAppointment(conn, appointment.getAppointmentID());
             }
-        }
+            return null;
+        });
     }
 
     public Vector<Appointment> getAppointmentsByPatient(String personalHealthNo) {
-        String sql = "SELECT * FROM Appointment WHERE Personal_Health_No = ? ORDER BY Appointment_Date, Appointment_Time";
+        String sql = BY_PATIENT_SQL;
         Vector<Appointment> appointments = new Vector<>();
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, personalHealthNo);
             ResultSet rs = pstmt.executeQuery();
@@ -162,8 +341,7 @@ public class AppointmentDAO {
                 appointments.add(mapResultSetToAppointment(rs));
             }
         } catch (SQLException e) {
-            System.err.println("Error in getAppointmentsByPatient: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error in getAppointmentsByPatient: " + e.getMessage(), e);
         }
 
         return appointments;
@@ -173,21 +351,14 @@ public class AppointmentDAO {
     public void deleteAppointment(int appointmentID) throws SQLException {
         String sql = "DELETE FROM Appointment WHERE Appointment_ID = ?";
 
-        try (Connection conn = dataSource.getConnection()) {
-            conn.setAutoCommit(false);
+        database.inWriteTransaction(conn -> {
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                AnalyticsRollup.removeAppointment(conn, appointmentID);
                 pstmt.setInt(1, appointmentID);
                 pstmt.executeUpdate();
-                conn.commit();
-            } catch (SQLException e) {
-                try {
-                    conn.rollback();
-                } catch (SQLException re) {
-                    e.addSuppressed(re);
-                }
-                throw e;
             }
-        }
+            return null;
+        });
     }
 
     private Appointment mapResultSetToAppointment(ResultSet rs) throws SQLException {
@@ -205,66 +376,114 @@ public class AppointmentDAO {
     }
 
     public int getTodayAppointmentsCount(String instituteId) {
-        String sql = """
-            SELECT COUNT(*) as count 
-            FROM Appointment 
-            WHERE Health_Institute_Number = ? 
-            AND date(Appointment_Date) = date('now')
-            AND Status != 'cancelled'
-        """;
+        String sql = TODAY_COUNT_SQL;
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, instituteId);
+            pstmt.setLong(2, today());
             ResultSet rs = pstmt.executeQuery();
             return rs.next() ? rs.getInt("count") : 0;
         } catch (SQLException e) {
-            System.err.println("Error getting today's appointment count: " + e.getMessage());
+            Log.error("Error getting today's appointment count: " + e.getMessage());
             return 0;
         }
     }
 
     public Vector<Appointment> getUpcomingAppointments(String slmcNo) {
-        String sql = """
-            SELECT * FROM Appointment 
-            WHERE SLMC_No = ? 
-            AND date(Appointment_Date) >= date('now')
-            AND Status != 'cancelled'
-            ORDER BY Appointment_Date, Appointment_Time
-        """;
+        String sql = UPCOMING_SQL;
         
         Vector<Appointment> appointments = new Vector<>();
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, slmcNo);
+            pstmt.setLong(2, today());
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 appointments.add(mapResultSetToAppointment(rs));
             }
         } catch (SQLException e) {
-            System.err.println("Error getting upcoming appointments: " + e.getMessage());
+            Log.error("Error getting upcoming appointments: " + e.getMessage());
         }
         return appointments;
     }
 
     public Vector<Appointment> getUpcomingAppointmentsForPatient(String personalHealthNo) {
-        String sql = "SELECT * FROM Appointment " +
-                     "WHERE Personal_Health_No = ? " +
-                     "AND date(Appointment_Date) >= date('now') " +
-                     "AND Status != 'cancelled' " +
-                     "ORDER BY Appointment_Date, Appointment_Time";
+        String sql = UPCOMING_FOR_PATIENT_SQL;
         
         Vector<Appointment> appointments = new Vector<>();
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, personalHealthNo);
+            pstmt.setLong(2, today());
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 appointments.add(mapResultSetToAppointment(rs));
             }
         } catch (SQLException e) {
-            System.err.println("Error getting upcoming appointments for patient: " + e.getMessage());
+            Log.error("Error getting upcoming appointments for patient: " + e.getMessage());
         }
         return appointments;
     }
+
+    // Today as an Appointment_Day value
+    static long today() {
+        return LocalDate.now().toEpochDay();
+    }
+
+    static long epochDay(java.sql.Date date) {
+        return date != null ? date.toLocalDate().toEpochDay() : UNKNOWN;
+    }
+
+    static int minuteOfDay(Time time) {
+        if (time == null) {
+            return UNKNOWN;
+        }
+        LocalTime local = time.toLocalTime();
+        return local.getHour() * 60 + local.getMinute();
+    }
+
+    // Fills Appointment_Day / Appointment_Minute for rows written before those columns existed.
+    // A date or time that cannot be read is written as UNKNOWN.
+    // Reads by id in chunks so the update never runs under an open cursor on the same table.
+    static int backfillDayColumns(Connection conn) throws SQLException {
+        int filled = 0;
+        int unreadable = 0;
+        long afterId = 0;
+        try (PreparedStatement select = conn.prepareStatement(
+                "SELECT Appointment_ID, Appointment_Date, Appointment_Time FROM Appointment " +
+                "WHERE Appointment_ID > ? AND Appointment_Day IS NULL ORDER BY Appointment_ID LIMIT 10000");
+             PreparedStatement update = conn.prepareStatement(
+                "UPDATE Appointment SET Appointment_Day = ?, Appointment_Minute = ? WHERE Appointment_ID = ?")) {
+            while (true) {
+                select.setLong(1, afterId);
+                int rows = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        afterId = rs.getLong("Appointment_ID");
+                        LocalDate date = AnalyticsRollup.toLocalDate(rs.getObject("Appointment_Date"));
+                        LocalTime time = AnalyticsRollup.toLocalTime(rs.getObject("Appointment_Time"));
+                        if (date == null || time == null) {
+                            unreadable++;
+                        }
+                        update.setLong(1, date != null ? date.toEpochDay() : UNKNOWN);
+                        update.setInt(2, time != null ? time.getHour() * 60 + time.getMinute() : UNKNOWN);
+                        update.setLong(3, afterId);
+                        update.addBatch();
+                        filled++;
+                    }
+                }
+                update.executeBatch();
+                if (rows == 0) {
+                    break;
+                }
+            }
+        }
+        if (unreadable > 0) {
+            Log.warn("appointments with unreadable dates or times set to UNKNOWN", "rows", unreadable);
+        }
+        Log.info("appointment day columns filled", "rows", filled);
+        return filled;
+    }
 }
@@ -0,0 +1,145 @@
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Random;
+
+// Appointment date queries before and after migration 6 (Appointment_Day / Appointment_Minute):
+// EXPLAIN QUERY PLAN and median latency of each, plus how long the migration itself takes.
+// Runs against a scratch database so db/umrs.db is never touched. Run from the repository root,
+// since migration 1 reads db/schema.sql.
+//
+//   javac -d bin -cp "lib/*" src/*.java
+//   java -cp "bin;lib/*" AppointmentDayBenchmark [rows]
+public class AppointmentDayBenchmark {
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        File dbFile = File.createTempFile("umrs-bench", ".db");
+        dbFile.deleteOnExit();
+        Database database = Database.open("jdbc:sqlite:" + dbFile.getAbsolutePath());
+
+        try (Connection conn = database.getWriteConnection()) {
+            Migrations.migrate(conn, 5);
+            long start = System.nanoTime();
+            fill(conn, rows);
+            System.out.println(String.format("Inserted %d appointments in %.1f s", rows, seconds(start)));
+            analyze(conn);
+
+            long today = AppointmentDAO.today();
+            System.out.println("Before:");
+            measure(conn, "institute today count", """
+                SELECT COUNT(*) FROM Appointment WHERE Health_Institute_Number = ?
+                AND date(Appointment_Date) = date('now') AND Status != 'cancelled'
+                """, "INS042");
+            measure(conn, "professional upcoming", """
+                SELECT * FROM Appointment WHERE SLMC_No = ? AND date(Appointment_Date) >= date('now')
+                AND Status != 'cancelled' ORDER BY Appointment_Date, Appointment_Time
+                """, "SLMC42");
+            measure(conn, "patient upcoming", """
+                SELECT * FROM Appointment WHERE Personal_Health_No = ? AND Appointment_Date >= CURRENT_DATE
+                ORDER BY Appointment_Date ASC, Appointment_Time ASC
+                """, "PHN42");
+            measure(conn, "institute list", """
+                SELECT a.*, datetime(a.Appointment_Date || ' ' || a.Appointment_Time) as appointment_datetime
+                FROM Appointment a WHERE a.Health_Institute_Number = ? AND a.Status = ?
+                ORDER BY a.Appointment_Date DESC, a.Appointment_Time DESC
+                """, "INS042", "Pending");
+
+            start = System.nanoTime();
+            Migrations.migrate(conn);
+            System.out.println(String.format("Migration 6: %.1f s", seconds(start)));
+            analyze(conn);
+
+            System.out.println("After:");
+            measure(conn, "institute today count", AppointmentDAO.TODAY_COUNT_SQL, "INS042", today);
+            measure(conn, "professional upcoming", AppointmentDAO.UPCOMING_SQL, "SLMC42", today);
+            measure(conn, "patient upcoming", AppointmentDAO.UPCOMING_FOR_PATIENT_SQL, "PHN42", today);
+            measure(conn, "institute list", """
+                SELECT a.* FROM Appointment a WHERE a.Health_Institute_Number = ? AND a.Status = ?
+                ORDER BY a.Appointment_Day DESC, a.Appointment_Minute DESC
+                """, "INS042", "Pending");
+        } finally {
+            database.close();
+            new File(dbFile.getAbsolutePath() + "-wal").delete();
+            new File(dbFile.getAbsolutePath() + "-shm").delete();
+        }
+    }
+
+    // Two years back and one ahead; every tenth row holds ISO text, as a bulk import would
+    private static void fill(Connection conn, int rows) throws SQLException {
+        String[] statuses = {"Scheduled", "Completed", "cancelled", "Pending"};
+        Random random = new Random(1);
+        LocalDate today = LocalDate.now();
+        ZoneId zone = ZoneId.systemDefault();
+        Database.inTransaction(conn, c -> {
+            try (PreparedStatement pstmt = c.prepareStatement("INSERT INTO Appointment (Personal_Health_No, "
+                    + "SLMC_No, Health_Institute_Number, Appointment_Date, Appointment_Time, Purpose, Status) "
+                    + "VALUES (?, ?, ?, ?, ?, 'Benchmark', ?)")) {
+                for (int i = 0; i < rows; i++) {
+                    LocalDate date = today.plusDays(random.nextInt(1096) - 730);
+                    LocalTime time = LocalTime.of(8 + random.nextInt(12), 15 * random.nextInt(4));
+                    pstmt.setString(1, "PHN" + random.nextInt(100_000));
+                    pstmt.setString(2, "SLMC" + random.nextInt(2000));
+                    pstmt.setString(3, String.format("INS%03d", random.nextInt(200)));
+                    if (i % 10 == 0) {
+                        pstmt.setString(4, date.toString());
+                        pstmt.setString(5, time.toString());
+                    } else {
+                        pstmt.setLong(4, date.atStartOfDay(zone).toInstant().toEpochMilli());
+                        pstmt.setLong(5, time.atDate(LocalDate.EPOCH).atZone(zone).toInstant().toEpochMilli());
+                    }
+                    pstmt.setString(6, statuses[random.nextInt(statuses.length)]);
+                    pstmt.addBatch();
+                    if (i % 10_000 == 9_999) {
+                        pstmt.executeBatch();
+                    }
+                }
+                pstmt.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    private static void analyze(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ANALYZE");
+        }
+    }
+
+    private static void measure(Connection conn, String label, String sql, Object... params) throws SQLException {
+        QueryPlanAdvisor.Finding finding = QueryPlanAdvisor.explain(conn, label, sql);
+        double[] millis = new double[RUNS];
+        int count = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setObject(i + 1, params[i]);
+            }
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                count = 0;
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        count++;
+                    }
+                }
+                millis[run] = (System.nanoTime() - start) / 1_000_000.0;
+            }
+        }
+        Arrays.sort(millis);
+        System.out.println(String.format("  %-24s %8.2f ms  %6d rows  %s",
+            label, millis[RUNS / 2], count, String.join(" | ", finding.plan)));
+    }
+
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1_000_000_000.0;
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.File;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Random;
+
+// Bulk import throughput in rows/sec, the onboarding target being 50k rows/sec: a CSV import of
+// patients, then an NDJSON import of their medical records, each through BulkImporter exactly
+// as POST /api/admin/import/:target runs it. Runs against a scratch database so db/umrs.db is
+// never touched. Run from the repository root, since migration 1 reads db/schema.sql.
+//
+//   javac -d bin -cp "lib/*" src/*.java
+//   java -cp "bin;lib/*" BulkImportBenchmark [patients] [records]
+public class BulkImportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int patients = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int records = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+
+        File dbFile = File.createTempFile("umrs-bench", ".db");
+        dbFile.deleteOnExit();
+        Database database = Database.open("jdbc:sqlite:" + dbFile.getAbsolutePath());
+
+        try {
+            try (Connection conn = database.getWriteConnection()) {
+                Migrations.migrate(conn);
+                Database.inTransaction(conn, c -> {
+                    try (Statement stmt = c.createStatement()) {
+                        stmt.execute("INSERT INTO Healthcare_Institute (Health_Institute_Number, Name) VALUES ('INS001', 'Bench')");
+                        for (int i = 0; i < 50; i++) {
+                            stmt.execute("INSERT INTO Healthcare_Professional (SLMC_No, Name, Health_Institute_Number) "
+                                + "VALUES ('SLMC" + i + "', 'Dr " + i + "', 'INS001')");
+                        }
+                    }
+                    return null;
+                });
+            }
+
+            BulkImporter importer = new BulkImporter(database);
+            Random random = new Random(1);
+
+            StringBuilder csv = new StringBuilder("Personal_Health_No,NIC,Name,Date_of_Birth,Gender,Height,Weight\n");
+            for (int i = 0; i < patients; i++) {
+                csv.append("PHN").append(i).append(',')
+                    .append(900_000_000L + i).append("V,")
+                    .append("\"Patient, ").append(i).append("\",")
+                    .append(LocalDate.of(1940, 1, 1).plusDays(random.nextInt(25_000))).append(',')
+                    .append(i % 2 == 0 ? "F" : "M").append(',')
+                    .append(150 + random.nextInt(40)).append(',')
+                    .append(50 + random.nextInt(50)).append('\n');
+            }
+            report("patients (CSV)", importer.importRows(null, "patients", "csv", new StringReader(csv.toString()), false));
+            csv = null;
+
+            StringBuilder ndjson = new StringBuilder();
+            LocalDate today = LocalDate.now();
+            for (int i = 0; i < records; i++) {
+                ndjson.append("{\"personalHealthNo\":\"PHN").append(random.nextInt(patients))
+                    .append("\",\"slmcNo\":\"SLMC").append(random.nextInt(50))
+                    .append("\",\"healthInstituteNumber\":\"INS001\",\"dateOfVisit\":\"")
+                    .append(today.minusDays(random.nextInt(3650)))
+                    .append("\",\"diagnosis\":\"Diagnosis ").append(random.nextInt(500))
+                    .append("\",\"treatment\":\"Rest\"}\n");
+            }
+            report("medical records (NDJSON)", importer.importRows(null, "medical-records", "ndjson",
+                new StringReader(ndjson.toString()), false));
+        } finally {
+            database.close();
+            new File(dbFile.getAbsolutePath() + "-wal").delete();
+            new File(dbFile.getAbsolutePath() + "-shm").delete();
+        }
+    }
+
+    private static void report(String label, BulkImporter.ImportProgress progress) {
+        System.out.println(String.format("%-26s %9d rows  %10.0f rows/sec  %s",
+            label, progress.getRowsImported(), progress.getRowsPerSecond(), progress.getStatus()));
+    }
+}
@@ -0,0 +1,471 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+// Streaming bulk import for onboarding a hospital's history into PATIENT and Medical_Record.
+// Input (NDJSON or CSV) is parsed one chunk at a time off the writer lane, and each parsed chunk
+// is written with batched prepared statements in one transaction on it, so a slow upload never
+// holds the writer. The target table keeps its indexes: it is live, and the hot reads need them.
+public class BulkImporter {
+    private static final int BATCH_ROWS = Integer.getInteger("umrs.import.batchRows", 1000);
+    private static final int CHUNK_ROWS = Integer.getInteger("umrs.import.chunkRows", 5000);
+    // Finished imports stay pollable for this long
+    private static final long RETAIN_MILLIS = Long.getLong("umrs.import.retainMinutes", 60) * 60_000;
+
+    // Only these tables can be bulk loaded; the key is the URL segment
+    private static final Map<String, String> TARGETS = Map.of(
+        "patients", "PATIENT",
+        "medical-records", "Medical_Record"
+    );
+
+    // How PatientDAO and MedicalRecordDAO store each column, so imported rows sort and compare
+    // like the rows the DAOs write. Columns not listed are text.
+    private enum Storage { TEXT, REAL, DATE_TEXT, DATE_MILLIS }
+
+    private static final Map<String, Map<String, Storage>> STORAGE = Map.of(
+        // PatientDAO writes Date_of_Birth with setString and the measurements with setFloat
+        "PATIENT", Map.of(
+            "Date_of_Birth", Storage.DATE_TEXT,
+            "Height", Storage.REAL,
+            "Weight", Storage.REAL,
+            "BMI", Storage.REAL),
+        // MedicalRecordDAO writes Date_of_Visit with setDate, which the driver stores as epoch millis
+        "Medical_Record", Map.of(
+            "Date_of_Visit", Storage.DATE_MILLIS)
+    );
+
+    // Rows without these are rejected; the DAOs never write them empty
+    private static final Map<String, List<String>> REQUIRED = Map.of(
+        "PATIENT", List.of("Personal_Health_No"),
+        "Medical_Record", List.of("Personal_Health_No", "Date_of_Visit")
+    );
+
+    private final Database database;
+    private final Map<String, ImportProgress> imports = new ConcurrentHashMap<>();
+    // One import at a time, so imports cannot crowd every other write off the writer lane
+    private final AtomicBoolean importRunning = new AtomicBoolean();
+
+    // Thrown when an import is started while another one is running
+    public static class ImportRunning extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ImportRunning() {
+            super("Another import is already running");
+        }
+    }
+
+    public BulkImporter(Database database) {
+        this.database = database;
+    }
+
+    public static boolean isSupportedTarget(String target) {
+        return TARGETS.containsKey(target);
+    }
+
+    public ImportProgress getProgress(String importId) {
+        pruneFinished();
+        return imports.get(importId);
+    }
+
+    private void pruneFinished() {
+        long cutoff = System.currentTimeMillis() - RETAIN_MILLIS;
+        imports.values().removeIf(progress -> progress.finishedAt != 0 && progress.finishedAt < cutoff);
+    }
+
+    // Imports everything readable from the reader. Rows are committed every CHUNK_ROWS, so a
+    // failure leaves earlier chunks in place and the progress says how far the import got.
+    // Callers that want to poll progress while the upload runs pass their own importId.
+    // Malformed input and an importId that is already in use throw IllegalArgumentException.
+    public ImportProgress importRows(String importId, String target, String format, Reader input,
+                                     boolean skipConflicts) throws SQLException, IOException {
+        String table = TARGETS.get(target);
+        if (table == null) {
+            throw new IllegalArgumentException("Unsupported import target: " + target);
+        }
+        if (!importRunning.compareAndSet(false, true)) {
+            throw new ImportRunning();
+        }
+
+        pruneFinished();
+        ImportProgress progress = new ImportProgress(
+            importId != null ? importId : UUID.randomUUID().toString(), target, format);
+        // A client-chosen id must not take over another import's progress entry
+        if (imports.putIfAbsent(progress.importId, progress) != null) {
+            importRunning.set(false);
+            throw new IllegalArgumentException("Import id already in use: " + progress.importId);
+        }
+
+        try {
+            RowSource rows = "csv".equalsIgnoreCase(format)
+                ? new CsvRowSource(new BufferedReader(input))
+                : new NdjsonRowSource(new BufferedReader(input));
+
+            Map<String, Object> firstRow = rows.next();
+            if (firstRow == null) {
+                progress.finish("completed", null);
+                return progress;
+            }
+
+            List<String> columns = matchColumns(table, firstRow.keySet());
+            if (columns.isEmpty()) {
+                throw new IllegalArgumentException("No input field matches a column of " + table);
+            }
+            for (String required : REQUIRED.get(table)) {
+                if (!columns.contains(required)) {
+                    throw new IllegalArgumentException("Input has no " + required + " field");
+                }
+            }
+            Map<String, Storage> storage = STORAGE.get(table);
+            List<String> required = REQUIRED.get(table);
+            String sql = (skipConflicts ? "INSERT OR IGNORE INTO " : "INSERT INTO ") + table
+                + " (" + String.join(", ", columns) + ") VALUES ("
+                + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+
+            progress.status = "importing";
+
+            Map<String, Object> pending = firstRow;
+            while (pending != null) {
+                // Parse before taking the writer; the upload may be slow
+                List<Object[]> chunk = new ArrayList<>();
+                while (pending != null && chunk.size() < CHUNK_ROWS) {
+                    long rowNumber = ++progress.rowsRead;
+                    Object[] values = new Object[columns.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        String column = columns.get(i);
+                        values[i] = convert(pending.get(normalize(column)),
+                            storage.getOrDefault(column, Storage.TEXT), column, rowNumber);
+                        if (values[i] == null && required.contains(column)) {
+                            throw new IllegalArgumentException("Row " + rowNumber + " has no " + column);
+                        }
+                    }
+                    chunk.add(values);
+                    pending = rows.next();
+                }
+                database.inWriteTransaction(conn -> writeChunk(conn, table, sql, chunk, progress));
+                Log.info("import chunk committed", "importId", progress.importId,
+                    "rows", progress.rowsImported, "rowsPerSec", String.format("%.0f", progress.getRowsPerSecond()));
+            }
+
+            progress.finish("completed", null);
+            return progress;
+        } catch (SQLException | IOException | RuntimeException e) {
+            progress.finish("failed", e.getMessage());
+            throw e;
+        } finally {
+            try {
+                // Imported patients bypass PatientDAO, so the search index reloads from the table
+                if ("PATIENT".equals(table) && progress.rowsImported > 0) {
+                    PatientSearch.reloadAll();
+                }
+                // The planner statistics no longer describe the table
+                if (progress.rowsImported > 0) {
+                    DbMaintenance.requestAnalyze();
+                }
+            } finally {
+                importRunning.set(false);
+            }
+        }
+    }
+
+    // Writes one parsed chunk in batches of BATCH_ROWS. Imported records bypass
+    // MedicalRecordDAO, so the chunk's own transaction also adds them to the analytics rollups.
+    private Void writeChunk(Connection conn, String table, String sql, List<Object[]> chunk,
+                            ImportProgress progress) throws SQLException {
+        long lastRecordId = 0;
+        if ("Medical_Record".equals(table)) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT IFNULL(MAX(Record_ID), 0) FROM Medical_Record")) {
+                lastRecordId = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int inBatch = 0;
+            for (Object[] values : chunk) {
+                for (int i = 0; i < values.length; i++) {
+                    pstmt.setObject(i + 1, values[i]);
+                }
+                pstmt.addBatch();
+                if (++inBatch == BATCH_ROWS) {
+                    pstmt.executeBatch();
+                    progress.rowsImported += inBatch;
+                    inBatch = 0;
+                }
+            }
+            if (inBatch > 0) {
+                pstmt.executeBatch();
+                progress.rowsImported += inBatch;
+            }
+        }
+        if ("Medical_Record".equals(table)) {
+            AnalyticsRollup.addRecordsAfter(conn, lastRecordId);
+        }
+        return null;
+    }
+
+    // Table columns that the input supplies, matched case- and underscore-insensitively so
+    // both Personal_Health_No and personalHealthNo work. Record_ID is always generated.
+    private List<String> matchColumns(String table, Set<String> inputFields) throws SQLException {
+        return database.inReadTransaction(conn -> {
+            List<String> columns = new ArrayList<>();
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+                while (rs.next()) {
+                    String column = rs.getString("name");
+                    if (!column.equals("Record_ID") && inputFields.contains(normalize(column))) {
+                        columns.add(column);
+                    }
+                }
+            }
+            return columns;
+        });
+    }
+
+    // The input value in the column's storage type; blank text is NULL
+    private static Object convert(Object value, Storage storage, String column, long rowNumber) {
+        if (value == null || (value instanceof String && ((String) value).isBlank())) {
+            return null;
+        }
+        switch (storage) {
+            case REAL:
+                if (value instanceof Number) {
+                    return ((Number) value).doubleValue();
+                }
+                try {
+                    return Double.parseDouble(value.toString().trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Row " + rowNumber + ": " + column + " is not a number");
+                }
+            case DATE_TEXT:
+            case DATE_MILLIS:
+                LocalDate date = AnalyticsRollup.toLocalDate(value);
+                if (date == null) {
+                    throw new IllegalArgumentException("Row " + rowNumber + ": " + column + " is not a date");
+                }
+                return storage == Storage.DATE_TEXT ? (Object) date.toString() : (Object) java.sql.Date.valueOf(date).getTime();
+            default:
+                return value.toString();
+        }
+    }
+
+    private static String normalize(String field) {
+        return field.replace("_", "").toLowerCase();
+    }
+
+    // Progress of one import, kept for GET /api/admin/imports/:id
+    public static class ImportProgress {
+        private final String importId;
+        private final String target;
+        private final String format;
+        private final long startedAt = System.currentTimeMillis();
+        private volatile String status = "starting";
+        private volatile long rowsRead;
+        private volatile long rowsImported;
+        private volatile long finishedAt;
+        private volatile String error;
+
+        ImportProgress(String importId, String target, String format) {
+            this.importId = importId;
+            this.target = target;
+            this.format = format;
+        }
+
+        void finish(String status, String error) {
+            this.status = status;
+            this.error = error;
+            this.finishedAt = System.currentTimeMillis();
+        }
+
+        public String getImportId() {
+            return importId;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public long getRowsImported() {
+            return rowsImported;
+        }
+
+        public double getRowsPerSecond() {
+            long end = finishedAt == 0 ? System.currentTimeMillis() : finishedAt;
+            long elapsed = Math.max(1, end - startedAt);
+            return rowsImported * 1000.0 / elapsed;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("importId", importId);
+            map.put("target", target);
+            map.put("format", format);
+            map.put("status", status);
+            map.put("rowsRead", rowsRead);
+            map.put("rowsImported", rowsImported);
+            map.put("rowsPerSecond", Math.round(getRowsPerSecond()));
+            map.put("error", error);
+            return map;
+        }
+    }
+
+    // One parsed input row keyed by normalized field name
+    private interface RowSource {
+        Map<String, Object> next() throws IOException;
+    }
+
+    private static class NdjsonRowSource implements RowSource {
+        private final BufferedReader reader;
+        private long lineNumber;
+
+        NdjsonRowSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Map<String, Object> next() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonElement parsed;
+                try {
+                    parsed = JsonParser.parseString(line);
+                } catch (JsonParseException e) {
+                    throw new IllegalArgumentException("Line " + lineNumber + " is not valid JSON", e);
+                }
+                if (!parsed.isJsonObject()) {
+                    throw new IllegalArgumentException("Line " + lineNumber + " is not a JSON object");
+                }
+                JsonObject json = parsed.getAsJsonObject();
+                Map<String, Object> row = new HashMap<>();
+                for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+                    row.put(normalize(entry.getKey()), toValue(entry.getValue()));
+                }
+                return row;
+            }
+            return null;
+        }
+
+        private static Object toValue(JsonElement element) {
+            if (element == null || element.isJsonNull()) {
+                return null;
+            }
+            if (!element.isJsonPrimitive()) {
+                return element.toString();
+            }
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isNumber()) {
+                double number = primitive.getAsDouble();
+                return number == Math.rint(number) && !primitive.getAsString().contains(".")
+                    ? (Object) primitive.getAsLong()
+                    : (Object) number;
+            }
+            if (primitive.isBoolean()) {
+                return primitive.getAsBoolean() ? 1 : 0;
+            }
+            return primitive.getAsString();
+        }
+    }
+
+    // RFC 4180 CSV: first record is the header, quoted fields may contain commas,
+    // doubled quotes and line breaks. Empty fields are imported as NULL.
+    private static class CsvRowSource implements RowSource {
+        private final BufferedReader reader;
+        private List<String> header;
+
+        CsvRowSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Map<String, Object> next() throws IOException {
+            if (header == null) {
+                List<String> names = readRecord();
+                if (names == null) {
+                    return null;
+                }
+                header = new ArrayList<>();
+                for (String name : names) {
+                    header.add(normalize(name.trim()));
+                }
+            }
+            List<String> values;
+            do {
+                values = readRecord();
+            } while (values != null && values.size() == 1 && values.get(0).isEmpty());
+            if (values == null) {
+                return null;
+            }
+
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 0; i < header.size() && i < values.size(); i++) {
+                String value = values.get(i);
+                row.put(header.get(i), value.isEmpty() ? null : value);
+            }
+            return row;
+        }
+
+        private List<String> readRecord() throws IOException {
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+
+            while (c != -1) {
+                if (quoted) {
+                    if (c == '"') {
+                        reader.mark(1);
+                        int next = reader.read();
+                        if (next == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            if (next != -1) {
+                                reader.reset();
+                            }
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = reader.read();
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+// Optional in-memory column store of Medical_Record and Appointment for the cross-institute
+// month-end reports, which would otherwise re-scan both row tables for every GROUP BY.
+//
+// Each fact table is held as parallel primitive int columns: patient, professional and
+// institute ids are dictionary-encoded to dense codes, and dates are stored as epoch days
+// plus a month index. A report is a tight loop over those arrays, split into chunks that
+// run on the common fork-join pool; distinct counts are bitsets over the dictionary codes,
+// OR-ed together when the chunks are merged.
+//
+// The snapshot refreshes incrementally before each report. Rows above the loaded id
+// high-water mark are appended, rows changed through the DAOs (reported by AnalyticsRollup
+// once the write commits) are re-read and their old position tombstoned, and a rollup
+// rebuild (e.g. after a bulk import) triggers a full reload.
+//
+// Enable with -Dumrs.analytics.columnar=true; reports are served under /api/admin/reports.
+public class ColumnarStore {
+    static final boolean ENABLED = Boolean.getBoolean("umrs.analytics.columnar");
+    private static final int CHUNK_ROWS = 32 * 1024;
+
+    private static final String RECORD_SQL =
+        "SELECT Record_ID, Personal_Health_No, SLMC_No, Health_Institute_Number, Date_of_Visit FROM Medical_Record";
+    private static final String APPOINTMENT_SQL =
+        "SELECT Appointment_ID, Personal_Health_No, SLMC_No, Health_Institute_Number, Appointment_Date FROM Appointment";
+
+    // Filled by the write path, drained by refresh()
+    private static final Set<Integer> changedRecords = ConcurrentHashMap.newKeySet();
+    private static final Set<Integer> changedAppointments = ConcurrentHashMap.newKeySet();
+    private static volatile boolean reloadRequested = true;
+
+    private final Database database;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Dictionary patients;
+    private Dictionary professionals;
+    private Dictionary institutes;
+    private Dictionary specialties;
+    private int[] specialtyOfProfessional;
+    private FactTable visits;
+    private FactTable appointments;
+    private long lastRefreshMillis;
+    private int lastRefreshRows;
+
+    public ColumnarStore(Database database) {
+        this.database = database;
+        reset();
+    }
+
+    static void recordChanged(int recordId) {
+        if (ENABLED) {
+            changedRecords.add(recordId);
+        }
+    }
+
+    static void appointmentChanged(int appointmentId) {
+        if (ENABLED) {
+            changedAppointments.add(appointmentId);
+        }
+    }
+
+    static void reloadAll() {
+        reloadRequested = true;
+    }
+
+    // Brings the snapshot up to date with committed data
+    public void refresh() throws SQLException {
+        lock.writeLock().lock();
+        try {
+            long start = System.nanoTime();
+            boolean reload = reloadRequested;
+            reloadRequested = false;
+            if (reload) {
+                reset();
+                changedRecords.clear();
+                changedAppointments.clear();
+            }
+            List<Integer> records = drain(changedRecords);
+            List<Integer> appointmentIds = drain(changedAppointments);
+            int before = visits.size + appointments.size;
+
+            try {
+                database.inReadTransaction(conn -> {
+                    loadProfessionals(conn);
+                    load(conn, visits, RECORD_SQL, "Record_ID", "Date_of_Visit", records);
+                    load(conn, appointments, APPOINTMENT_SQL, "Appointment_ID", "Appointment_Date", appointmentIds);
+                    return null;
+                });
+            } catch (SQLException | RuntimeException e) {
+                // Partially applied changes cannot be told apart, so start over next time
+                reloadRequested = true;
+                throw e;
+            }
+
+            lastRefreshRows = visits.size + appointments.size - before;
+            lastRefreshMillis = (System.nanoTime() - start) / 1_000_000;
+            if (reload) {
+                Log.info("columnar snapshot loaded", "visits", visits.live, "appointments", appointments.live,
+                    "ms", lastRefreshMillis);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Visits and distinct patients per institute and month, for every institute
+    public List<Map<String, Object>> getMonthlyTrends(YearMonth from, YearMonth to) throws SQLException {
+        refresh();
+        lock.readLock().lock();
+        try {
+            int firstMonth = monthIndex(from);
+            int months = monthIndex(to) - firstMonth + 1;
+            if (months <= 0) {
+                return new ArrayList<>();
+            }
+            FactTable table = visits;
+            int[] month = table.month;
+            int[] institute = table.institute;
+            GroupStats stats = scan(table, institutes.size() * months, row -> {
+                int offset = month[row] - firstMonth;
+                if (offset < 0 || offset >= months || institute[row] < 0) {
+                    return -1;
+                }
+                return institute[row] * months + offset;
+            });
+
+            List<Map<String, Object>> trends = new ArrayList<>();
+            for (int group = 0; group < stats.counts.length; group++) {
+                if (stats.counts[group] == 0) {
+                    continue;
+                }
+                Map<String, Object> trend = new HashMap<>();
+                trend.put("instituteId", institutes.value(group / months));
+                trend.put("month", from.plusMonths(group % months).toString());
+                trend.put("visitCount", stats.counts[group]);
+                trend.put("uniquePatients", stats.distinctPatients(group));
+                trends.add(trend);
+            }
+            return trends;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Appointments, distinct patients and distinct professionals per institute and specialty
+    // of the professional seen, between two days (inclusive)
+    public List<Map<String, Object>> getDepartmentStats(LocalDate from, LocalDate to) throws SQLException {
+        refresh();
+        lock.readLock().lock();
+        try {
+            int firstDay = (int) from.toEpochDay();
+            int lastDay = (int) to.toEpochDay();
+            int specialtyCount = specialties.size();
+            int[] specialtyOf = specialtyOfProfessional;
+            FactTable table = appointments;
+            int[] day = table.day;
+            int[] institute = table.institute;
+            int[] professional = table.professional;
+            GroupStats stats = scan(table, institutes.size() * specialtyCount, row -> {
+                if (day[row] < firstDay || day[row] > lastDay || institute[row] < 0 || professional[row] < 0
+                        || professional[row] >= specialtyOf.length || specialtyOf[professional[row]] < 0) {
+                    return -1;
+                }
+                return institute[row] * specialtyCount + specialtyOf[professional[row]];
+            });
+
+            List<Map<String, Object>> departments = new ArrayList<>();
+            for (int group = 0; group < stats.counts.length; group++) {
+                if (stats.counts[group] == 0) {
+                    continue;
+                }
+                Map<String, Object> dept = new HashMap<>();
+                dept.put("instituteId", institutes.value(group / specialtyCount));
+                dept.put("name", specialties.value(group % specialtyCount));
+                dept.put("appointments", stats.counts[group]);
+                dept.put("patients", stats.distinctPatients(group));
+                dept.put("professionals", stats.distinctProfessionals(group));
+                departments.add(dept);
+            }
+            return departments;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> metrics = new HashMap<>();
+            metrics.put("visits", visits.live);
+            metrics.put("appointments", appointments.live);
+            metrics.put("tombstones", (visits.size - visits.live) + (appointments.size - appointments.live));
+            metrics.put("patients", patients.size());
+            metrics.put("professionals", professionals.size());
+            metrics.put("institutes", institutes.size());
+            metrics.put("estimatedBytes", visits.estimatedBytes() + appointments.estimatedBytes());
+            metrics.put("lastRefreshMillis", lastRefreshMillis);
+            metrics.put("lastRefreshRows", lastRefreshRows);
+            return metrics;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void reset() {
+        patients = new Dictionary();
+        professionals = new Dictionary();
+        institutes = new Dictionary();
+        specialties = new Dictionary();
+        specialtyOfProfessional = new int[0];
+        visits = new FactTable();
+        appointments = new FactTable();
+    }
+
+    // Healthcare_Professional is small and specialties change without going through the
+    // fact tables, so the mapping is re-read on every refresh
+    private void loadProfessionals(Connection conn) throws SQLException {
+        Map<Integer, Integer> mapping = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT SLMC_No, Specialty FROM Healthcare_Professional WHERE Specialty IS NOT NULL");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                mapping.put(professionals.code(rs.getString("SLMC_No")), specialties.code(rs.getString("Specialty")));
+            }
+        }
+        int[] specialtyOf = new int[professionals.size()];
+        Arrays.fill(specialtyOf, -1);
+        mapping.forEach((professional, specialty) -> specialtyOf[professional] = specialty);
+        specialtyOfProfessional = specialtyOf;
+    }
+
+    private void load(Connection conn, FactTable table, String select, String idColumn, String dateColumn,
+                      List<Integer> changedIds) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(select + " WHERE " + idColumn + " = ?")) {
+            for (int id : changedIds) {
+                table.remove(id);
+                pstmt.setInt(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        append(table, rs, idColumn, dateColumn);
+                    }
+                }
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                select + " WHERE " + idColumn + " > ? ORDER BY " + idColumn)) {
+            pstmt.setInt(1, table.highWater);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    append(table, rs, idColumn, dateColumn);
+                }
+            }
+        }
+    }
+
+    private void append(FactTable table, ResultSet rs, String idColumn, String dateColumn) throws SQLException {
+        int id = rs.getInt(idColumn);
+        table.highWater = Math.max(table.highWater, id);
+        LocalDate date = AnalyticsRollup.toLocalDate(rs.getObject(dateColumn));
+        String phn = rs.getString("Personal_Health_No");
+        if (date == null || phn == null) {
+            return; // cannot be bucketed, same as the rollups
+        }
+        table.append(id, patients.code(phn), professionals.codeOrMissing(rs.getString("SLMC_No")),
+            institutes.codeOrMissing(rs.getString("Health_Institute_Number")),
+            (int) date.toEpochDay(), monthIndex(YearMonth.from(date)));
+    }
+
+    // Splits the table into chunks, scans them in parallel and merges the partial results.
+    // grouper returns the group of a live row, or -1 to skip it.
+    private static GroupStats scan(FactTable table, int groups, RowGrouper grouper) {
+        int size = table.size;
+        BitSet deleted = table.deleted;
+        int[] patient = table.patient;
+        int[] professional = table.professional;
+        int chunks = (size + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        return IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            GroupStats partial = new GroupStats(groups);
+            int end = Math.min(size, (chunk + 1) * CHUNK_ROWS);
+            for (int row = chunk * CHUNK_ROWS; row < end; row++) {
+                if (deleted.get(row)) {
+                    continue;
+                }
+                int group = grouper.group(row);
+                if (group >= 0) {
+                    partial.add(group, patient[row], professional[row]);
+                }
+            }
+            return partial;
+        }).reduce(GroupStats::merge).orElseGet(() -> new GroupStats(groups));
+    }
+
+    private static int monthIndex(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private static List<Integer> drain(Set<Integer> ids) {
+        List<Integer> drained = new ArrayList<>();
+        for (Integer id : ids) {
+            if (ids.remove(id)) {
+                drained.add(id);
+            }
+        }
+        return drained;
+    }
+
+    private interface RowGrouper {
+        int group(int row);
+    }
+
+    // Dense int codes for the distinct values of one id column
+    private static class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        int codeOrMissing(String value) {
+            return value == null ? -1 : code(value);
+        }
+
+        String value(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    // One fact table as parallel int columns. Updated or deleted rows are tombstoned in place
+    // and their new version, if any, is appended.
+    private static class FactTable {
+        int size;
+        int live;
+        int highWater;
+        int[] id = new int[1024];
+        int[] patient = new int[1024];
+        int[] professional = new int[1024];
+        int[] institute = new int[1024];
+        int[] day = new int[1024];
+        int[] month = new int[1024];
+        final BitSet deleted = new BitSet();
+        final Map<Integer, Integer> positions = new HashMap<>();
+
+        void append(int rowId, int patientCode, int professionalCode, int instituteCode, int epochDay, int monthIndex) {
+            remove(rowId);
+            if (size == id.length) {
+                int capacity = size + (size >> 1);
+                id = Arrays.copyOf(id, capacity);
+                patient = Arrays.copyOf(patient, capacity);
+                professional = Arrays.copyOf(professional, capacity);
+                institute = Arrays.copyOf(institute, capacity);
+                day = Arrays.copyOf(day, capacity);
+                month = Arrays.copyOf(month, capacity);
+            }
+            id[size] = rowId;
+            patient[size] = patientCode;
+            professional[size] = professionalCode;
+            institute[size] = instituteCode;
+            day[size] = epochDay;
+            month[size] = monthIndex;
+            positions.put(rowId, size);
+            size++;
+            live++;
+        }
+
+        void remove(int rowId) {
+            Integer position = positions.remove(rowId);
+            if (position != null) {
+                deleted.set(position);
+                live--;
+            }
+        }
+
+        long estimatedBytes() {
+            // six int columns, the tombstone bitset and roughly 48 bytes per id map entry
+            return 6L * 4 * id.length + deleted.size() / 8 + 48L * positions.size();
+        }
+    }
+
+    // Per-group row counts with distinct patients and professionals as bitsets over their codes
+    private static class GroupStats {
+        final int[] counts;
+        final BitSet[] patients;
+        final BitSet[] professionals;
+
+        GroupStats(int groups) {
+            counts = new int[groups];
+            patients = new BitSet[groups];
+            professionals = new BitSet[groups];
+        }
+
+        void add(int group, int patient, int professional) {
+            counts[group]++;
+            bits(patients, group).set(patient);
+            if (professional >= 0) {
+                bits(professionals, group).set(professional);
+            }
+        }
+
+        GroupStats merge(GroupStats other) {
+            for (int group = 0; group < counts.length; group++) {
+                counts[group] += other.counts[group];
+                or(patients, other.patients, group);
+                or(professionals, other.professionals, group);
+            }
+            return this;
+        }
+
+        int distinctPatients(int group) {
+            return patients[group] == null ? 0 : patients[group].cardinality();
+        }
+
+        int distinctProfessionals(int group) {
+            return professionals[group] == null ? 0 : professionals[group].cardinality();
+        }
+
+        private static BitSet bits(BitSet[] sets, int group) {
+            if (sets[group] == null) {
+                sets[group] = new BitSet();
+            }
+            return sets[group];
+        }
+
+        private static void or(BitSet[] into, BitSet[] from, int group) {
+            if (from[group] == null) {
+                return;
+            }
+            if (into[group] == null) {
+                into[group] = from[group];
+            } else {
+                into[group].or(from[group]);
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+// Single shared database subsystem. Main creates it once and hands it to every DAO,
+// so the whole server runs against db/umrs.db through two lanes:
+//  - a read lane with several query_only connections sharing WAL snapshots
+//  - a write lane with exactly one connection, since SQLite only allows one writer
+public class Database {
+    private static final String JDBC_URL = "jdbc:sqlite:db/umrs.db";
+    private static final int BUSY_TIMEOUT_MS = 30000; // 30 seconds
+
+    private static Database instance;
+
+    // Actions waiting for the current thread's write transaction to commit
+    private static final ThreadLocal<List<Runnable>> afterCommit = ThreadLocal.withInitial(ArrayList::new);
+
+    private final Lane readLane;
+    private final Lane writeLane;
+    private final GroupCommitWriter groupCommitWriter;
+
+    private Database(String jdbcUrl, int readPoolSize, int maxQueuedReads, int maxQueuedWrites) {
+        HikariConfig readConfig = baseConfig(jdbcUrl, "umrs-read");
+        readConfig.setMaximumPoolSize(readPoolSize);
+        readConfig.setMinimumIdle(Math.min(2, readPoolSize));
+        readConfig.setConnectionInitSql("PRAGMA query_only = ON");
+        // Readers must not take the write lock when they open a transaction
+        readConfig.addDataSourceProperty("transaction_mode", "DEFERRED");
+        this.readLane = new Lane("read", new HikariDataSource(readConfig), maxQueuedReads);
+
+        // A single writer connection serializes writes inside the JVM, so they queue here
+        // instead of spinning on SQLITE_BUSY inside the driver.
+        HikariConfig writeConfig = baseConfig(jdbcUrl, "umrs-write");
+        writeConfig.setMaximumPoolSize(1);
+        writeConfig.setMinimumIdle(1);
+        this.writeLane = new Lane("write", new HikariDataSource(writeConfig), maxQueuedWrites);
+
+        this.groupCommitWriter = new GroupCommitWriter(
+            this,
+            Long.getLong("umrs.db.groupCommitMillis", 2),
+            Integer.getInteger("umrs.db.groupCommitBatch", 64),
+            maxQueuedWrites * 10
+        );
+    }
+
+    private static HikariConfig baseConfig(String jdbcUrl, String poolName) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setJdbcUrl(jdbcUrl);
+        config.setConnectionTimeout(30000);      // 30 seconds
+        config.setIdleTimeout(300000);           // 5 minutes
+        config.setMaxLifetime(900000);           // 15 minutes
+
+        // The sqlite driver applies these PRAGMAs when it opens each physical connection,
+        // so borrowing a connection from the pool never has to re-issue them.
+        config.addDataSourceProperty("journal_mode", "WAL");
+        config.addDataSourceProperty("synchronous", "NORMAL");
+        config.addDataSourceProperty("cache_size", "-2000");       // 2MB cache
+        config.addDataSourceProperty("busy_timeout", String.valueOf(BUSY_TIMEOUT_MS));
+        config.addDataSourceProperty("temp_store", "MEMORY");
+        config.addDataSourceProperty("mmap_size", "30000000000");  // 30GB memory-mapped I/O
+        config.addDataSourceProperty("foreign_keys", "ON");
+        config.addDataSourceProperty("transaction_mode", "IMMEDIATE");
+        return config;
+    }
+
+    // Lane sizes can be tuned per hospital with -Dumrs.db.readPoolSize=N,
+    // -Dumrs.db.maxQueuedReads=N and -Dumrs.db.maxQueuedWrites=N; the group commit
+    // window with -Dumrs.db.groupCommitMillis=N and -Dumrs.db.groupCommitBatch=N; prepared
+    // statements kept per connection with -Dumrs.db.statementCacheSize=N
+    public static synchronized Database getInstance() {
+        if (instance == null) {
+            instance = open(JDBC_URL);
+        }
+        return instance;
+    }
+
+    // A standalone database on another file, for benchmarks and tools that must not touch db/umrs.db
+    static Database open(String jdbcUrl) {
+        return new Database(
+            jdbcUrl,
+            Integer.getInteger("umrs.db.readPoolSize", Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger("umrs.db.maxQueuedReads", 200),
+            Integer.getInteger("umrs.db.maxQueuedWrites", 100)
+        );
+    }
+
+    // Connection for SELECTs; the connection is query_only and rejects writes
+    public Connection getReadConnection() throws SQLException {
+        return readLane.acquire();
+    }
+
+    // The single writer connection; callers hold it only for the duration of one transaction
+    public Connection getWriteConnection() throws SQLException {
+        return writeLane.acquire();
+    }
+
+    // Batches single-row inserts from concurrent requests into one commit
+    public GroupCommitWriter getGroupCommitWriter() {
+        return groupCommitWriter;
+    }
+
+    // Unit of work run against a borrowed connection inside one transaction
+    public interface SqlWork<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    // Runs several SELECTs against one consistent snapshot
+    public <T> T inReadTransaction(SqlWork<T> work) throws SQLException {
+        try (Connection conn = getReadConnection()) {
+            return runInTransaction(conn, work);
+        }
+    }
+
+    // Runs a group of writes atomically on the writer connection
+    public <T> T inWriteTransaction(SqlWork<T> work) throws SQLException {
+        try (Connection conn = getWriteConnection()) {
+            return runInTransaction(conn, work);
+        }
+    }
+
+    // Runs work as one transaction on a connection the caller already holds. If the caller
+    // has a transaction open, work simply joins it.
+    static <T> T inTransaction(Connection conn, SqlWork<T> work) throws SQLException {
+        if (!conn.getAutoCommit()) {
+            return work.run(conn);
+        }
+        return runInTransaction(conn, work);
+    }
+
+    // Commits on success, rolls back on any failure, and always hands the connection
+    // back to the pool in auto-commit mode so the next request starts clean
+    private static <T> T runInTransaction(Connection conn, SqlWork<T> work) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            T result = work.run(conn);
+            conn.commit();
+            runAfterCommit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            discardAfterCommit();
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // Runs action once the transaction open on conn commits, or right away in auto-commit
+    // mode. Nothing runs if the transaction rolls back. Used to invalidate caches only after
+    // readers can actually see the change.
+    static void afterCommit(Connection conn, Runnable action) throws SQLException {
+        if (conn.getAutoCommit()) {
+            action.run();
+        } else {
+            afterCommit.get().add(action);
+        }
+    }
+
+    // For code that commits by hand instead of through runInTransaction
+    static void runAfterCommit() {
+        List<Runnable> actions = afterCommit.get();
+        if (actions.isEmpty()) {
+            return;
+        }
+        List<Runnable> toRun = new ArrayList<>(actions);
+        actions.clear();
+        for (Runnable action : toRun) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                Log.error("After-commit action failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    static void discardAfterCommit() {
+        afterCommit.get().clear();
+    }
+
+    // Position in this thread's pending actions, for rolling back to a savepoint
+    static int afterCommitMark() {
+        return afterCommit.get().size();
+    }
+
+    // Drops the actions added since afterCommitMark(), i.e. by work a savepoint rolled back
+    static void discardAfterCommitSince(int mark) {
+        List<Runnable> actions = afterCommit.get();
+        actions.subList(mark, actions.size()).clear();
+    }
+
+    // Snapshot of both lanes, used by /api/admin/db-metrics to size the pools
+    public Map<String, Object> getPoolMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("read", readLane.getMetrics());
+        metrics.put("write", writeLane.getMetrics());
+        metrics.put("groupCommit", groupCommitWriter.getMetrics());
+        metrics.put("statementCache", StatementCache.getMetrics());
+        return metrics;
+    }
+
+    public void close() {
+        groupCommitWriter.close();
+        readLane.close();
+        writeLane.close();
+    }
+
+    // A pool plus a bounded wait queue. Requests past the queue limit fail fast instead of
+    // piling up behind a slow lane, and every borrow records how long it waited.
+    private static class Lane {
+        private final String name;
+        private final HikariDataSource pool;
+        private final int maxQueued;
+
+        private final AtomicInteger queued = new AtomicInteger();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder borrowCount = new LongAdder();
+        private final LongAdder waitTimeNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        Lane(String name, HikariDataSource pool, int maxQueued) {
+            this.name = name;
+            this.pool = pool;
+            this.maxQueued = maxQueued;
+        }
+
+        Connection acquire() throws SQLException {
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                rejected.increment();
+                throw new SQLException("Database " + name + " queue is full (" + maxQueued + " waiting)");
+            }
+            long start = System.nanoTime();
+            Connection conn;
+            try {
+                conn = pool.getConnection();
+            } finally {
+                long waited = System.nanoTime() - start;
+                queued.decrementAndGet();
+                borrowCount.increment();
+                waitTimeNanos.add(waited);
+                maxWaitNanos.accumulateAndGet(waited, Math::max);
+            }
+            try {
+                return StatementCache.wrap(conn);
+            } catch (SQLException | RuntimeException e) {
+                conn.close();
+                throw e;
+            }
+        }
+
+        Map<String, Object> getMetrics() {
+            Map<String, Object> metrics = new HashMap<>();
+            HikariPoolMXBean mx = pool.getHikariPoolMXBean();
+            if (mx != null) {
+                metrics.put("activeConnections", mx.getActiveConnections());
+                metrics.put("idleConnections", mx.getIdleConnections());
+                metrics.put("totalConnections", mx.getTotalConnections());
+                metrics.put("threadsAwaitingConnection", mx.getThreadsAwaitingConnection());
+            }
+            metrics.put("maximumPoolSize", pool.getMaximumPoolSize());
+            metrics.put("queueDepth", queued.get());
+            metrics.put("maxQueued", maxQueued);
+            metrics.put("rejected", rejected.sum());
+
+            long count = borrowCount.sum();
+            metrics.put("borrowCount", count);
+            metrics.put("avgWaitMillis", count == 0 ? 0.0 : waitTimeNanos.sum() / (double) count / 1_000_000.0);
+            metrics.put("maxWaitMillis", maxWaitNanos.get() / 1_000_000.0);
+            return metrics;
+        }
+
+        void close() {
+            if (!pool.isClosed()) {
+                pool.close();
+            }
+        }
+    }
+}
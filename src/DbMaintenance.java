@@ -0,0 +1,84 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the query planner's statistics current without paying for ANALYZE at boot, where its
+// cost grew with the database.
+//
+//  - every -Dumrs.db.optimizeIntervalMinutes (default 360) a background thread runs
+//    PRAGMA optimize, which re-analyzes only the tables whose statistics look stale
+//  - after large writes (migrations, bulk imports, or -Dumrs.db.analyzeAfterRows rows through
+//    the group commit writer, default 50000) it runs a full ANALYZE a little later instead
+// Both run with PRAGMA analysis_limit (-Dumrs.db.analysisLimit, default 1000 rows per index),
+// so they hold the writer connection for a bounded time whatever the table sizes.
+public class DbMaintenance {
+    private static final long INTERVAL_MINUTES = Long.getLong("umrs.db.optimizeIntervalMinutes", 360);
+    private static final long ANALYZE_AFTER_ROWS = Long.getLong("umrs.db.analyzeAfterRows", 50_000);
+    private static final int ANALYSIS_LIMIT = Integer.getInteger("umrs.db.analysisLimit", 1000);
+    // Lets a burst of writes finish before the statistics are taken
+    private static final long ANALYZE_DELAY_SECONDS = 30;
+
+    private static ScheduledExecutorService scheduler;
+    private static Database database;
+    private static final AtomicLong rowsSinceAnalyze = new AtomicLong();
+    private static final AtomicBoolean analyzeQueued = new AtomicBoolean();
+
+    static synchronized void start(Database db) {
+        if (scheduler != null) {
+            return;
+        }
+        database = db;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "umrs-db-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (INTERVAL_MINUTES > 0) {
+            scheduler.scheduleWithFixedDelay(() -> run(false), INTERVAL_MINUTES, INTERVAL_MINUTES, TimeUnit.MINUTES);
+        }
+        // An ANALYZE requested before start (by the startup migrations) runs now
+        if (analyzeQueued.get()) {
+            scheduler.schedule(() -> run(true), ANALYZE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    // Counts rows written outside a bulk operation; enough of them queue an ANALYZE
+    static void rowsWritten(long rows) {
+        if (rows > 0 && rowsSinceAnalyze.addAndGet(rows) >= ANALYZE_AFTER_ROWS) {
+            requestAnalyze();
+        }
+    }
+
+    // Queues one full ANALYZE; further requests before it runs are folded into it. A request
+    // made before start is kept and scheduled by start.
+    static synchronized void requestAnalyze() {
+        if (!analyzeQueued.compareAndSet(false, true) || scheduler == null) {
+            return;
+        }
+        scheduler.schedule(() -> run(true), ANALYZE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static void run(boolean full) {
+        if (full) {
+            analyzeQueued.set(false);
+        }
+        long start = System.nanoTime();
+        try (Connection conn = database.getWriteConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA analysis_limit = " + ANALYSIS_LIMIT);
+            stmt.execute(full ? "ANALYZE" : "PRAGMA optimize");
+            if (full) {
+                rowsSinceAnalyze.set(0);
+            }
+            Log.info("database statistics refreshed", "mode", full ? "analyze" : "optimize",
+                "ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException | RuntimeException e) {
+            Log.error("Database maintenance failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Throughput of appointment inserts, one commit per insert vs. group commit.
+// Runs against a scratch database so db/umrs.db is never touched. Run from the repository
+// root, since migration 1 reads db/schema.sql.
+//
+//   javac -d bin -cp "lib/*" src/*.java
+//   java -cp "bin;lib/*" GroupCommitBenchmark [threads] [insertsPerThread]
+public class GroupCommitBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int insertsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 250;
+
+        File dbFile = File.createTempFile("umrs-bench", ".db");
+        dbFile.deleteOnExit();
+        Database database = Database.open("jdbc:sqlite:" + dbFile.getAbsolutePath());
+
+        try {
+            createSchema(database, threads);
+
+            System.out.println("Threads: " + threads + ", inserts per thread: " + insertsPerThread);
+
+            // Warm up the JIT and the connection before measuring
+            run(database, threads, 50, false);
+            run(database, threads, 50, true);
+
+            double single = run(database, threads, insertsPerThread, false);
+            double grouped = run(database, threads, insertsPerThread, true);
+
+            System.out.println(String.format("Single commit: %10.1f inserts/sec", single));
+            System.out.println(String.format("Group commit:  %10.1f inserts/sec", grouped));
+            System.out.println(String.format("Speedup:       %10.2fx", grouped / single));
+            System.out.println("Writer metrics: " + database.getGroupCommitWriter().getMetrics());
+        } finally {
+            database.close();
+            new File(dbFile.getAbsolutePath() + "-wal").delete();
+            new File(dbFile.getAbsolutePath() + "-shm").delete();
+        }
+    }
+
+    // The real schema, so inserts also maintain the analytics rollups as in production, plus
+    // the institute, professionals and patients the sample appointments point at
+    private static void createSchema(Database database, int threads) throws SQLException {
+        Migrations.migrate(database);
+        database.inWriteTransaction(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("INSERT INTO Healthcare_Institute (Health_Institute_Number, Name) VALUES ('INS001', 'Bench')");
+                for (int i = 0; i < 20; i++) {
+                    stmt.execute("INSERT INTO Healthcare_Professional (SLMC_No, Name, Health_Institute_Number) "
+                        + "VALUES ('SLMC" + i + "', 'Dr " + i + "', 'INS001')");
+                }
+                for (int t = 0; t < threads; t++) {
+                    stmt.execute("INSERT INTO PATIENT (Personal_Health_No, Name) VALUES ('PHN" + t + "', 'Patient " + t + "')");
+                }
+            }
+            return null;
+        });
+    }
+
+    // Returns inserts per second across all threads
+    private static double run(Database database, int threads, int insertsPerThread, boolean grouped)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+
+            for (int t = 0; t < threads; t++) {
+                int threadNo = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < insertsPerThread; i++) {
+                        Appointment appointment = sampleAppointment(threadNo, i);
+                        if (grouped) {
+                            database.getGroupCommitWriter()
+                                .submitAndWait(conn -> AppointmentDAO.insertRow(conn, appointment));
+                        } else {
+                            database.inWriteTransaction(conn -> AppointmentDAO.insertRow(conn, appointment));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            return threads * insertsPerThread / seconds;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Appointment sampleAppointment(int threadNo, int i) {
+        Appointment appointment = new Appointment();
+        appointment.setPersonalHealthNo("PHN" + threadNo);
+        appointment.setSlmcNo("SLMC" + (i % 20));
+        appointment.setHealthInstituteNumber("INS001");
+        appointment.setAppointmentDate(new java.sql.Date(System.currentTimeMillis()));
+        appointment.setAppointmentTime(new java.sql.Time(System.currentTimeMillis()));
+        appointment.setPurpose("Benchmark");
+        appointment.setStatus("Scheduled");
+        appointment.setNotes("");
+        return appointment;
+    }
+}
@@ -0,0 +1,207 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Group commit for single-row inserts. Callers hand over an insert and get a future for its
+// generated ID; one background thread collects whatever arrives within a few milliseconds and
+// runs the whole batch in one transaction on the writer connection, so a burst of inserts
+// pays for one WAL commit instead of one each.
+public class GroupCommitWriter {
+
+    // One insert; returns the generated key of the row it wrote
+    public interface Insert {
+        int run(Connection conn) throws SQLException;
+    }
+
+    private static class PendingInsert {
+        final Insert insert;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        PendingInsert(Insert insert) {
+            this.insert = insert;
+        }
+    }
+
+    private final Database database;
+    private final long maxDelayNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingInsert> queue;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public GroupCommitWriter(Database database, long maxDelayMillis, int maxBatchSize, int maxQueued) {
+        this.database = database;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new LinkedBlockingQueue<>(maxQueued);
+        this.worker = new Thread(this::runLoop, "umrs-group-commit");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // Queues an insert for the next batch. The future fails if the queue is full,
+    // the writer is shut down, or this particular insert is rejected by the database.
+    public CompletableFuture<Integer> submit(Insert insert) {
+        PendingInsert pending = new PendingInsert(insert);
+        if (!running) {
+            pending.result.completeExceptionally(new SQLException("Group commit writer is closed"));
+        } else if (!queue.offer(pending)) {
+            pending.result.completeExceptionally(new SQLException("Group commit queue is full"));
+        } else if (!running && queue.remove(pending)) {
+            // Lost a race with close(); the worker may already have drained the queue
+            pending.result.completeExceptionally(new SQLException("Group commit writer is closed"));
+        }
+        return pending.result;
+    }
+
+    // Blocking form of submit() for callers that need the ID before they can respond
+    public int submitAndWait(Insert insert) throws SQLException {
+        try {
+            return submit(insert).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for group commit", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException("Group commit failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private void runLoop() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingInsert first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Keep collecting until the window closes or the batch is full
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    PendingInsert next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                commitBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        failRemaining();
+    }
+
+    private void commitBatch(List<PendingInsert> batch) {
+        List<PendingInsert> written = new ArrayList<>(batch.size());
+        List<Integer> ids = new ArrayList<>(batch.size());
+
+        try (Connection conn = database.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (PendingInsert pending : batch) {
+                    // A savepoint per row keeps one bad row from failing everyone else's insert
+                    Savepoint savepoint = conn.setSavepoint();
+                    int afterCommitMark = Database.afterCommitMark();
+                    try {
+                        int id = pending.insert.run(conn);
+                        conn.releaseSavepoint(savepoint);
+                        written.add(pending);
+                        ids.add(id);
+                    } catch (SQLException | RuntimeException e) {
+                        conn.rollback(savepoint);
+                        conn.releaseSavepoint(savepoint);
+                        // The row's cache invalidations are for a write that no longer exists
+                        Database.discardAfterCommitSince(afterCommitMark);
+                        failures.increment();
+                        pending.result.completeExceptionally(e);
+                    }
+                }
+                conn.commit();
+                Database.runAfterCommit();
+            } catch (SQLException e) {
+                Database.discardAfterCommit();
+                try {
+                    conn.rollback();
+                } catch (SQLException re) {
+                    e.addSuppressed(re);
+                }
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            Log.error("Group commit of " + batch.size() + " inserts failed: " + e.getMessage());
+            for (PendingInsert pending : batch) {
+                if (pending.result.completeExceptionally(e)) {
+                    failures.increment();
+                }
+            }
+            return;
+        }
+
+        batches.increment();
+        inserts.add(written.size());
+        DbMaintenance.rowsWritten(written.size());
+        for (int i = 0; i < written.size(); i++) {
+            written.get(i).result.complete(ids.get(i));
+        }
+    }
+
+    private void failRemaining() {
+        PendingInsert pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new SQLException("Group commit writer is closed"));
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        long batchCount = batches.sum();
+        long insertCount = inserts.sum();
+        metrics.put("batches", batchCount);
+        metrics.put("inserts", insertCount);
+        metrics.put("failures", failures.sum());
+        metrics.put("queueDepth", queue.size());
+        metrics.put("avgBatchSize", batchCount == 0 ? 0.0 : insertCount / (double) batchCount);
+        return metrics;
+    }
+
+    // Stops accepting work, flushes what is already queued, then returns
+    public void close() {
+        running = false;
+        try {
+            worker.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -12,10 +12,10 @@ public class HealthcareInstituteDAO {
         try {
             if (conn != null && !conn.isClosed()) {
                 conn.close();
-                //System.out.println("Connection closed.");
+                //Log.debug("Connection closed.");
             }
         } catch (SQLException e) {
-            System.out.println("Error closing connection: " + e.getMessage());
+            Log.error("Error closing connection: " + e.getMessage());
         }
     }
 
@@ -35,7 +35,7 @@ public class HealthcareInstituteDAO {
             if (result <= 0) {
                 throw new SQLException("Failed to insert healthcare institute");
             }
-            System.out.println("Healthcare Institute inserted successfully.");
+            Log.debug("Healthcare Institute inserted successfully.");
         }
     }
 
@@ -59,7 +59,7 @@ public class HealthcareInstituteDAO {
                 );
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
 
         return institute;
@@ -77,9 +77,9 @@ public class HealthcareInstituteDAO {
             pstmt.setString(5, institute.getType());
             pstmt.setString(6, institute.getHealthInstituteNumber());
             pstmt.executeUpdate();
-            System.out.println("Healthcare Institute updated successfully.");
+            Log.debug("Healthcare Institute updated successfully.");
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
     }
 
@@ -90,9 +90,9 @@ public class HealthcareInstituteDAO {
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, healthInstituteNumber);
             pstmt.executeUpdate();
-            System.out.println("Healthcare Institute deleted successfully.");
+            Log.debug("Healthcare Institute deleted successfully.");
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
     }
 
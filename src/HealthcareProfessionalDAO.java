@@ -14,10 +14,10 @@ public class HealthcareProfessionalDAO {
         try {
             if (conn != null && !conn.isClosed()) {
                 conn.close();
-                //System.out.println("Connection closed.");
+                //Log.debug("Connection closed.");
             }
         } catch (SQLException e) {
-            System.out.println("Error closing connection: " + e.getMessage());
+            Log.error("Error closing connection: " + e.getMessage());
         }
     }
 
@@ -40,7 +40,7 @@ public class HealthcareProfessionalDAO {
             if (result <= 0) {
                 throw new SQLException("Failed to insert healthcare professional");
             }
-            System.out.println("Healthcare Professional inserted successfully.");
+            Log.debug("Healthcare Professional inserted successfully.");
         }
     }
 
@@ -66,7 +66,7 @@ public class HealthcareProfessionalDAO {
                 professional.setRole(rs.getString("Role"));
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
 
         return professional;
@@ -87,9 +87,11 @@ public class HealthcareProfessionalDAO {
             pstmt.setString(8, professional.getRole());
             pstmt.setString(9, professional.getSlmcNo());
             pstmt.executeUpdate();
-            System.out.println("Healthcare Professional updated successfully.");
+            String slmcNo = professional.getSlmcNo();
+            Database.afterCommit(conn, () -> ActivitySearch.professionalRenamed(slmcNo));
+            Log.debug("Healthcare Professional updated successfully.");
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
     }
 
@@ -100,9 +102,9 @@ public class HealthcareProfessionalDAO {
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, slmcNo);
             pstmt.executeUpdate();
-            System.out.println("Healthcare Professional deleted successfully.");
+            Log.debug("Healthcare Professional deleted successfully.");
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
     }
 
@@ -120,35 +122,37 @@ public class HealthcareProfessionalDAO {
         return analytics;
     }
 
+    // Reads the professional's rollups; distinct patients come from the per-day sketches
+    // unless -Dumrs.analytics.exactDistinct is set
     private Map<String, Integer> getSummaryStats(String slmcNo, int months) throws SQLException {
         Map<String, Integer> stats = new HashMap<>();
-        
+        java.time.LocalDate today = java.time.LocalDate.now();
+        List<String> scopeIds = List.of(slmcNo);
+        boolean exact = AnalyticsRollup.EXACT_DISTINCT_DEFAULT;
+
+        stats.put("totalPatients", AnalyticsRollup.countDistinct(conn, AnalyticsRollup.PROFESSIONAL, scopeIds,
+            AnalyticsRollup.VISIT_PATIENT, today.minusMonths(months), today, exact));
+        stats.put("activePatients", AnalyticsRollup.countDistinct(conn, AnalyticsRollup.PROFESSIONAL, scopeIds,
+            AnalyticsRollup.VISIT_PATIENT, today.minusDays(30), today, exact));
+
         String sql = """
-            SELECT 
-                COUNT(DISTINCT mr.Personal_Health_No) as total_patients,
-                COUNT(*) as total_visits,
-                COUNT(DISTINCT CASE 
-                    WHEN mr.Date_of_Visit >= date('now', '-30 days') 
-                    THEN mr.Personal_Health_No 
-                    END) as active_patients,
-                COUNT(DISTINCT CASE 
-                    WHEN mr.Date_of_Visit = date('now') 
-                    THEN mr.Record_ID 
-                    END) as today_visits
-            FROM Medical_Record mr
-            WHERE mr.SLMC_No = ?
-            AND mr.Date_of_Visit >= date('now', ? || ' months')
+            SELECT
+                IFNULL(SUM(Visits), 0) as total_visits,
+                IFNULL(SUM(CASE WHEN Day = ? THEN Visits END), 0) as today_visits
+            FROM Analytics_Daily
+            WHERE Scope = ? AND Scope_ID = ? AND Day BETWEEN ? AND ?
         """;
         
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, slmcNo);
-            pstmt.setInt(2, -months);
+            pstmt.setString(1, today.toString());
+            pstmt.setString(2, AnalyticsRollup.PROFESSIONAL);
+            pstmt.setString(3, slmcNo);
+            pstmt.setString(4, today.minusMonths(months).toString());
+            pstmt.setString(5, today.toString());
             
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
-                stats.put("totalPatients", rs.getInt("total_patients"));
                 stats.put("totalVisits", rs.getInt("total_visits"));
-                stats.put("activePatients", rs.getInt("active_patients"));
                 stats.put("todayVisits", rs.getInt("today_visits"));
             }
         }
@@ -0,0 +1,168 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+// Worker threads for the embedded Jetty server. Spark's defaults ignore the hardware, so the
+// pool is sized here at startup and handed to Jetty before the first route is mapped.
+//
+//   -Dumrs.http.threads=platform|virtual   (default platform)
+//   -Dumrs.http.minThreads=N               (default 8)
+//   -Dumrs.http.maxThreads=N               (default 8 per core, 32..200)
+//   -Dumrs.http.idleTimeoutMillis=N        (default 60000)
+//
+// In virtual mode each request runs on its own virtual thread (Java 21+), so handlers blocked
+// waiting for a database lane do not hold a platform thread. Jetty's acceptor and selector
+// loops stay on a small platform pool. On older JVMs virtual mode falls back to platform.
+public class HttpServerConfig {
+    public static final String MODE_PLATFORM = "platform";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private static ThreadPool threadPool;
+    private static String mode;
+
+    // Must run before port() and the first route, while Spark has not started Jetty yet
+    public static synchronized void apply() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int minThreads = Integer.getInteger("umrs.http.minThreads", 8);
+        int maxThreads = Integer.getInteger("umrs.http.maxThreads", Math.max(32, Math.min(200, cores * 8)));
+        maxThreads = Math.max(maxThreads, minThreads);
+        int idleTimeoutMillis = Integer.getInteger("umrs.http.idleTimeoutMillis", 60000);
+        String requested = System.getProperty("umrs.http.threads", MODE_PLATFORM).trim().toLowerCase();
+
+        ThreadFactory virtualThreads = MODE_VIRTUAL.equals(requested) ? virtualThreadFactory() : null;
+        if (virtualThreads != null) {
+            threadPool = new VirtualThreadPool(virtualThreads, idleTimeoutMillis);
+            mode = MODE_VIRTUAL;
+        } else {
+            if (MODE_VIRTUAL.equals(requested)) {
+                Log.warn("virtual threads need Java 21 or newer, using platform threads",
+                    "java", System.getProperty("java.version"));
+            }
+            QueuedThreadPool pool = new QueuedThreadPool(maxThreads, minThreads, idleTimeoutMillis);
+            pool.setName("umrs-http");
+            threadPool = pool;
+            mode = MODE_PLATFORM;
+        }
+
+        EmbeddedServers.add(EmbeddedServers.defaultIdentifier(),
+            new EmbeddedJettyFactory().withThreadPool(threadPool));
+        Log.info("http thread pool configured", "mode", mode,
+            "minThreads", minThreads, "maxThreads", maxThreads, "idleTimeoutMillis", idleTimeoutMillis);
+    }
+
+    public static synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        if (threadPool == null) {
+            return metrics;
+        }
+        metrics.put("mode", mode);
+        metrics.put("threads", threadPool.getThreads());
+        metrics.put("idleThreads", threadPool.getIdleThreads());
+        metrics.put("lowOnThreads", threadPool.isLowOnThreads());
+        if (threadPool instanceof QueuedThreadPool) {
+            QueuedThreadPool pool = (QueuedThreadPool) threadPool;
+            metrics.put("minThreads", pool.getMinThreads());
+            metrics.put("maxThreads", pool.getMaxThreads());
+            metrics.put("busyThreads", pool.getBusyThreads());
+            metrics.put("queuedJobs", pool.getQueueSize());
+        } else if (threadPool instanceof VirtualThreadPool) {
+            metrics.putAll(((VirtualThreadPool) threadPool).getMetrics());
+        }
+        return metrics;
+    }
+
+    // Thread.ofVirtual().name("umrs-vt-", 0).factory(), looked up reflectively so the code
+    // still compiles and runs on Java 17; returns null when virtual threads are unavailable
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "umrs-vt-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Starts a new virtual thread per request task. Jetty 9.4 also runs its acceptors and
+    // selectors as never-ending executor tasks; those block in native accept/select calls,
+    // which would pin a carrier thread for good, so they go to a small platform pool instead.
+    static class VirtualThreadPool extends ContainerLifeCycle implements ThreadPool {
+        private final ThreadFactory virtualThreads;
+        private final QueuedThreadPool ioThreads;
+        private final AtomicInteger activeTasks = new AtomicInteger();
+        private final LongAdder startedTasks = new LongAdder();
+
+        VirtualThreadPool(ThreadFactory virtualThreads, int idleTimeoutMillis) {
+            this.virtualThreads = virtualThreads;
+            int selectors = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+            // acceptor + selectors + headroom for Jetty's own housekeeping tasks
+            this.ioThreads = new QueuedThreadPool(selectors + 8, 2, idleTimeoutMillis);
+            this.ioThreads.setName("umrs-http-io");
+            addBean(ioThreads);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (isJettyLoop(task)) {
+                ioThreads.execute(task);
+                return;
+            }
+            if (!isRunning()) {
+                throw new RejectedExecutionException("HTTP thread pool is not running");
+            }
+            activeTasks.incrementAndGet();
+            startedTasks.increment();
+            virtualThreads.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    activeTasks.decrementAndGet();
+                }
+            }).start();
+        }
+
+        private static boolean isJettyLoop(Runnable task) {
+            String type = task.getClass().getName();
+            return type.startsWith("org.eclipse.jetty.io.ManagedSelector")
+                || type.startsWith("org.eclipse.jetty.server.AbstractConnector");
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            ioThreads.join();
+        }
+
+        @Override
+        public int getThreads() {
+            return ioThreads.getThreads() + activeTasks.get();
+        }
+
+        @Override
+        public int getIdleThreads() {
+            return ioThreads.getIdleThreads();
+        }
+
+        // There is no upper bound to run out of; the database lanes do the throttling
+        @Override
+        public boolean isLowOnThreads() {
+            return false;
+        }
+
+        Map<String, Object> getMetrics() {
+            Map<String, Object> metrics = new HashMap<>();
+            metrics.put("activeVirtualThreads", activeTasks.get());
+            metrics.put("startedVirtualThreads", startedTasks.sum());
+            metrics.put("ioThreads", ioThreads.getThreads());
+            return metrics;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Load test for the HTTP worker pool modes. Start the server once per mode, then run this
+// against it with the same arguments and compare the two reports:
+//
+//   java -cp "bin;lib/*" -Dumrs.http.threads=platform Main
+//   java -cp "bin;lib/*" HttpThreadBenchmark [clients] [requestsPerClient] [baseUrl]
+//
+//   java -cp "bin;lib/*" -Dumrs.http.threads=virtual Main      (Java 21+)
+//   java -cp "bin;lib/*" HttpThreadBenchmark [clients] [requestsPerClient] [baseUrl]
+//
+// Each client loops over the read-heavy routes the portals hit most, so most of the time is
+// spent blocked on JDBC, which is where the two modes differ.
+public class HttpThreadBenchmark {
+    private static final String[] ROUTES = {
+        "/api/patient/medical-records/by-phn/PHN7115075",
+        "/api/patient/dashboard?personalHealthNo=PHN7115075",
+        "/api/institute/appointments?instituteId=INS256",
+        "/api/professional/appointments?slmcNo=SLMC0113",
+        "/api/institute/dashboard-stats?instituteId=INS256"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        String baseUrl = args.length > 2 ? args[2] : "http://localhost:8080";
+
+        HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .executor(Executors.newFixedThreadPool(32))
+            .build();
+
+        String before = fetch(client, baseUrl + "/api/admin/http-metrics");
+        System.out.println("Server pool: " + before);
+        System.out.println("Clients: " + clients + ", requests per client: " + requestsPerClient);
+
+        // Warm up the JIT, the connection pools and the SQLite page cache
+        run(client, baseUrl, Math.min(clients, 16), 20);
+
+        Result result = run(client, baseUrl, clients, requestsPerClient);
+        System.out.println(String.format("Throughput: %10.1f req/sec", result.requestsPerSecond));
+        System.out.println(String.format("Latency p50: %8.1f ms", result.percentile(50)));
+        System.out.println(String.format("Latency p99: %8.1f ms", result.percentile(99)));
+        System.out.println(String.format("Latency max: %8.1f ms", result.percentile(100)));
+        System.out.println("Errors (non-2xx or I/O): " + result.errors);
+        System.out.println("Server pool after run: " + fetch(client, baseUrl + "/api/admin/http-metrics"));
+        System.exit(0);
+    }
+
+    private static Result run(HttpClient client, String baseUrl, int clients, int requestsPerClient)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        AtomicInteger errors = new AtomicInteger();
+        long[][] latencies = new long[clients][requestsPerClient];
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+
+            for (int c = 0; c < clients; c++) {
+                int clientNo = c;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        String route = ROUTES[(clientNo + i) % ROUTES.length];
+                        HttpRequest request = HttpRequest.newBuilder()
+                            .uri(URI.create(baseUrl + route))
+                            .timeout(Duration.ofSeconds(60))
+                            .GET()
+                            .build();
+                        long sent = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() / 100 != 2) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[clientNo][i] = System.nanoTime() - sent;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            return new Result(latencies, clients * requestsPerClient / seconds, errors.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String fetch(HttpClient client, String url) {
+        try {
+            return client.send(HttpRequest.newBuilder().uri(URI.create(url)).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        } catch (Exception e) {
+            return "unavailable (" + e.getMessage() + ")";
+        }
+    }
+
+    private static class Result {
+        final long[] sortedNanos;
+        final double requestsPerSecond;
+        final int errors;
+
+        Result(long[][] latencies, double requestsPerSecond, int errors) {
+            this.sortedNanos = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+            this.requestsPerSecond = requestsPerSecond;
+            this.errors = errors;
+        }
+
+        double percentile(int p) {
+            int index = Math.min(sortedNanos.length - 1, (int) Math.ceil(p / 100.0 * sortedNanos.length) - 1);
+            return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import java.nio.charset.StandardCharsets;
+
+// HyperLogLog distinct-count sketch (Flajolet et al.), used for the unique-patient metrics.
+//
+// A sketch of precision p has m = 2^p one-byte registers and estimates the number of distinct
+// values added with a standard error of about 1.04 / sqrt(m): 1.6% at p = 12, 0.8% at p = 14.
+// Sketches merge by taking the register-wise maximum, so one sketch per scope and day can be
+// combined into any date range or group of scopes without touching the underlying rows.
+// Sketches of different precision still merge; the result has the lower of the two.
+//
+// Serialized form: [format, precision, data...]. Format 0 is the dense register array;
+// format 1 is sparse (index high byte, index low byte, rank) triples for the non-zero
+// registers, which keeps the typical per-day sketch of a few dozen patients tiny.
+public class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    private static final byte DENSE = 0;
+    private static final byte SPARSE = 1;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between "
+                + MIN_PRECISION + " and " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    // Returns true if the sketch changed
+    public boolean add(String value) {
+        long hash = hash64(value);
+        int index = (int) (hash >>> (64 - precision));
+        // Rank: position of the first 1 bit in the remaining 64 - p bits, sentinel bit included
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+            return true;
+        }
+        return false;
+    }
+
+    // Folds other into this sketch. other must have the same or a higher precision.
+    public void merge(HyperLogLog other) {
+        if (other.precision < precision) {
+            throw new IllegalArgumentException("Cannot merge a precision " + other.precision
+                + " sketch into a precision " + precision + " sketch");
+        }
+        int shift = other.precision - precision;
+        for (int j = 0; j < other.registers.length; j++) {
+            byte rank = other.registers[j];
+            if (rank == 0) {
+                continue;
+            }
+            if (shift > 0) {
+                // The low `shift` bits of the old index become the leading bits of the value
+                // that the rank is counted over at the lower precision
+                int dropped = j & ((1 << shift) - 1);
+                rank = dropped != 0
+                    ? (byte) (Integer.numberOfLeadingZeros(dropped) - (32 - shift) + 1)
+                    : (byte) (rank + shift);
+            }
+            int index = j >>> shift;
+            if (rank > registers[index]) {
+                registers[index] = rank;
+            }
+        }
+    }
+
+    // Same as merge(fromBytes(data)) but reads sparse sketches of equal precision in place,
+    // which is the common case when summing up per-day sketches
+    public void merge(byte[] data) {
+        if (data != null && data.length >= 2 && data[0] == SPARSE && data[1] == precision
+                && (data.length - 2) % 3 == 0) {
+            for (int pos = 2; pos < data.length; pos += 3) {
+                int index = ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+                if (index < registers.length && data[pos + 2] > registers[index]) {
+                    registers[index] = data[pos + 2];
+                }
+            }
+            return;
+        }
+        merge(fromBytes(data));
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : registers) {
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        // Small cardinalities: linear counting over the empty registers is more accurate
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public byte[] toBytes() {
+        int nonZero = 0;
+        for (byte rank : registers) {
+            if (rank != 0) {
+                nonZero++;
+            }
+        }
+        if (nonZero * 3 < registers.length) {
+            byte[] out = new byte[2 + nonZero * 3];
+            out[0] = SPARSE;
+            out[1] = (byte) precision;
+            int pos = 2;
+            for (int j = 0; j < registers.length; j++) {
+                if (registers[j] != 0) {
+                    out[pos++] = (byte) (j >>> 8);
+                    out[pos++] = (byte) j;
+                    out[pos++] = registers[j];
+                }
+            }
+            return out;
+        }
+        byte[] out = new byte[2 + registers.length];
+        out[0] = DENSE;
+        out[1] = (byte) precision;
+        System.arraycopy(registers, 0, out, 2, registers.length);
+        return out;
+    }
+
+    public static HyperLogLog fromBytes(byte[] data) {
+        if (data == null || data.length < 2) {
+            throw new IllegalArgumentException("Not a HyperLogLog sketch");
+        }
+        HyperLogLog sketch = new HyperLogLog(data[1]);
+        if (data[0] == DENSE && data.length == 2 + sketch.registers.length) {
+            System.arraycopy(data, 2, sketch.registers, 0, sketch.registers.length);
+        } else if (data[0] == SPARSE && (data.length - 2) % 3 == 0) {
+            for (int pos = 2; pos < data.length; pos += 3) {
+                int index = ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+                if (index >= sketch.registers.length) {
+                    throw new IllegalArgumentException("Corrupt HyperLogLog sketch");
+                }
+                sketch.registers[index] = data[pos + 2];
+            }
+        } else {
+            throw new IllegalArgumentException("Corrupt HyperLogLog sketch");
+        }
+        return sketch;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16: return 0.673;
+            case 32: return 0.697;
+            case 64: return 0.709;
+            default: return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    // 64-bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 fmix64 avalanche so
+    // that every output bit depends on every input bit
+    static long hash64(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,29 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import com.google.gson.stream.JsonWriter;
+import spark.Response;
+
+// Writes a JSON response straight to the servlet output stream, row by row, instead of
+// building the whole body as one String. Memory stays flat no matter how many rows match.
+//
+// Usage in a route: open the writer, write the document, call finish(), return "" so Spark
+// appends nothing. Anything that can still fail with a proper status code (validation,
+// counts, auth) must run before open(), since the status is sent with the first flush.
+public class JsonStreamer {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    public static JsonWriter open(Response res) throws IOException {
+        res.type("application/json");
+        BufferedWriter out = new BufferedWriter(
+            new OutputStreamWriter(res.raw().getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+        return new JsonWriter(out);
+    }
+
+    // Flushes what is left in the buffer. The servlet stream itself is left open for Spark.
+    public static String finish(JsonWriter writer) throws IOException {
+        writer.flush();
+        return "";
+    }
+}
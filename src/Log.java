@@ -0,0 +1,364 @@
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Leveled, structured logging that never blocks a request thread.
+//
+// Callers only build an event and drop it into a fixed-size ring buffer; one daemon thread
+// formats events as logfmt lines (ts=... level=... req=... msg="..." key=value) and writes
+// them to stdout in batches. When the ring is full the event is dropped and counted rather
+// than making the request wait.
+//
+// Each request gets a context (id, method, path, sampled flag) from beginRequest(). Routes
+// can be sampled so only a fraction of their requests log at DEBUG/INFO; WARN and ERROR are
+// always written. Configure with -Dumrs.log.level=DEBUG|INFO|WARN|ERROR and
+// -Dumrs.log.sample=/api/auth/login=0.1,/api/patient/medical-records=0.25
+public final class Log {
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final int RING_SIZE = Integer.highestOneBit(
+        Math.max(1024, Integer.getInteger("umrs.log.bufferSize", 16384)));
+    private static final int BATCH_SIZE = 512;
+
+    private static volatile Level threshold = parseLevel(System.getProperty("umrs.log.level", "INFO"));
+
+    // Route prefix -> fraction of requests that log below WARN
+    private static final Map<String, Double> sampleRates = new ConcurrentHashMap<>();
+    private static final ThreadLocal<RequestContext> currentRequest = new ThreadLocal<>();
+    private static final AtomicLong requestIds = new AtomicLong();
+
+    // Multi-producer / single-consumer ring: producers claim a slot with an atomic counter and
+    // publish by writing the slot; the writer thread reads slots in order and clears them.
+    private static final AtomicReferenceArray<Event> ring = new AtomicReferenceArray<>(RING_SIZE);
+    private static final AtomicLong claimed = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long consumed;
+    private static final Thread writerThread;
+    private static volatile boolean running = true;
+
+    static {
+        parseSampleRates(System.getProperty("umrs.log.sample", ""));
+        writerThread = new Thread(Log::drainLoop, "umrs-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::shutdown, "umrs-log-flush"));
+    }
+
+    private Log() {
+    }
+
+    // --- configuration ---
+
+    public static void setLevel(Level level) {
+        threshold = level;
+    }
+
+    public static boolean isDebugEnabled() {
+        return enabled(Level.DEBUG);
+    }
+
+    // Sample requests whose path starts with routePrefix at the given rate (0.0 - 1.0).
+    // A -Dumrs.log.sample entry for the same prefix takes precedence.
+    public static void setDefaultSampleRate(String routePrefix, double rate) {
+        sampleRates.putIfAbsent(routePrefix, rate);
+    }
+
+    // --- per-request context ---
+
+    public static void beginRequest(String method, String path) {
+        boolean sampled = ThreadLocalRandom.current().nextDouble() < sampleRateFor(path);
+        currentRequest.set(new RequestContext(
+            Long.toString(requestIds.incrementAndGet(), 36), method, path, System.nanoTime(), sampled));
+    }
+
+    // Writes the access line for the request and clears the context
+    public static void endRequest(int status) {
+        RequestContext ctx = currentRequest.get();
+        if (ctx == null) {
+            return;
+        }
+        double millis = (System.nanoTime() - ctx.startNanos) / 1_000_000.0;
+        Level level = status >= 500 ? Level.WARN : Level.INFO;
+        log(level, "request completed", null,
+            "method", ctx.method, "path", ctx.path, "status", status, "ms", String.format("%.1f", millis));
+        currentRequest.remove();
+    }
+
+    // --- logging ---
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message, null);
+    }
+
+    // The message is only built when it will actually be written; use this for anything that
+    // concatenates request bodies, rows or other large values
+    public static void debug(Supplier<String> message) {
+        if (shouldLog(Level.DEBUG)) {
+            log(Level.DEBUG, message.get(), null);
+        }
+    }
+
+    public static void info(String message, Object... keyValues) {
+        log(Level.INFO, message, null, keyValues);
+    }
+
+    public static void warn(String message, Object... keyValues) {
+        log(Level.WARN, message, null, keyValues);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message, null);
+    }
+
+    public static void error(String message, Throwable error) {
+        log(Level.ERROR, message, error);
+    }
+
+    private static void log(Level level, String message, Throwable error, Object... keyValues) {
+        if (!shouldLog(level)) {
+            return;
+        }
+        RequestContext ctx = currentRequest.get();
+        publish(new Event(System.currentTimeMillis(), level, Thread.currentThread().getName(),
+            ctx != null ? ctx.id : null, message, error, keyValues));
+    }
+
+    private static boolean enabled(Level level) {
+        return level.ordinal() >= threshold.ordinal();
+    }
+
+    private static boolean shouldLog(Level level) {
+        if (!enabled(level)) {
+            return false;
+        }
+        if (level.ordinal() >= Level.WARN.ordinal()) {
+            return true;
+        }
+        RequestContext ctx = currentRequest.get();
+        return ctx == null || ctx.sampled;
+    }
+
+    private static double sampleRateFor(String path) {
+        double rate = 1.0;
+        int longestMatch = -1;
+        for (Map.Entry<String, Double> entry : sampleRates.entrySet()) {
+            String prefix = entry.getKey();
+            if (path != null && path.startsWith(prefix) && prefix.length() > longestMatch) {
+                longestMatch = prefix.length();
+                rate = entry.getValue();
+            }
+        }
+        return rate;
+    }
+
+    // --- ring buffer ---
+
+    private static void publish(Event event) {
+        long slot;
+        do {
+            slot = claimed.get();
+            if (slot - consumed >= RING_SIZE) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(slot, slot + 1));
+        ring.set((int) (slot & (RING_SIZE - 1)), event);
+    }
+
+    private static void drainLoop() {
+        Writer out = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 64 * 1024);
+        List<Event> batch = new ArrayList<>(BATCH_SIZE);
+        long reportedDrops = 0;
+
+        while (running || consumed < claimed.get()) {
+            long next = consumed;
+            // Collect published events in order; a claimed slot may still be empty for a moment
+            while (batch.size() < BATCH_SIZE && next < claimed.get()) {
+                int index = (int) (next & (RING_SIZE - 1));
+                Event event = ring.get(index);
+                if (event == null) {
+                    break;
+                }
+                ring.set(index, null);
+                batch.add(event);
+                next++;
+            }
+            consumed = next;
+
+            try {
+                for (Event event : batch) {
+                    event.writeTo(out);
+                }
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    new Event(System.currentTimeMillis(), Level.WARN, "umrs-log-writer", null,
+                        "log events dropped, ring buffer full", null,
+                        new Object[] {"dropped", drops - reportedDrops}).writeTo(out);
+                    reportedDrops = drops;
+                }
+                if (!batch.isEmpty()) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // stdout is gone; nothing sensible left to log to
+            }
+
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(2_000_000); // 2 ms
+            }
+            batch.clear();
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            // ignore on shutdown
+        }
+    }
+
+    private static void shutdown() {
+        running = false;
+        try {
+            writerThread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- parsing ---
+
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    private static void parseSampleRates(String spec) {
+        for (String entry : spec.split(",")) {
+            int eq = entry.lastIndexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            try {
+                sampleRates.put(entry.substring(0, eq).trim(), Double.parseDouble(entry.substring(eq + 1).trim()));
+            } catch (NumberFormatException e) {
+                // skip malformed entries
+            }
+        }
+    }
+
+    private static final class RequestContext {
+        final String id;
+        final String method;
+        final String path;
+        final long startNanos;
+        final boolean sampled;
+
+        RequestContext(String id, String method, String path, long startNanos, boolean sampled) {
+            this.id = id;
+            this.method = method;
+            this.path = path;
+            this.startNanos = startNanos;
+            this.sampled = sampled;
+        }
+    }
+
+    private static final class Event {
+        final long timestamp;
+        final Level level;
+        final String thread;
+        final String requestId;
+        final String message;
+        final Throwable error;
+        final Object[] keyValues;
+
+        Event(long timestamp, Level level, String thread, String requestId,
+              String message, Throwable error, Object[] keyValues) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.thread = thread;
+            this.requestId = requestId;
+            this.message = message;
+            this.error = error;
+            this.keyValues = keyValues;
+        }
+
+        // Formatting happens here on the writer thread, not on the request thread
+        void writeTo(Writer out) throws IOException {
+            StringBuilder line = new StringBuilder(160);
+            line.append("ts=").append(Instant.ofEpochMilli(timestamp))
+                .append(" level=").append(level)
+                .append(" thread=").append(thread);
+            if (requestId != null) {
+                line.append(" req=").append(requestId);
+            }
+            line.append(" msg=");
+            quote(line, message);
+            if (keyValues != null) {
+                for (int i = 0; i + 1 < keyValues.length; i += 2) {
+                    line.append(' ').append(keyValues[i]).append('=');
+                    quote(line, String.valueOf(keyValues[i + 1]));
+                }
+            }
+            if (error != null) {
+                line.append(" error=");
+                quote(line, error.toString());
+            }
+            line.append('\n');
+            out.write(line.toString());
+
+            if (error != null) {
+                StringWriter trace = new StringWriter();
+                error.printStackTrace(new PrintWriter(trace));
+                out.write(trace.toString());
+            }
+        }
+
+        private static void quote(StringBuilder line, String value) {
+            if (value == null) {
+                line.append("null");
+                return;
+            }
+            boolean plain = !value.isEmpty();
+            for (int i = 0; i < value.length() && plain; i++) {
+                char c = value.charAt(i);
+                plain = c > ' ' && c != '"' && c != '=';
+            }
+            if (plain) {
+                line.append(value);
+                return;
+            }
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"': line.append("\\\""); break;
+                    case '\\': line.append("\\\\"); break;
+                    case '\n': line.append("\\n"); break;
+                    case '\r': line.append("\\r"); break;
+                    case '\t': line.append("\\t"); break;
+                    default: line.append(c);
+                }
+            }
+            line.append('"');
+        }
+    }
+}
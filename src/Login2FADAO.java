@@ -1,27 +1,9 @@
 import java.security.SecureRandom;
 import java.sql.*;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 public class Login2FADAO {
-    private static HikariDataSource dataSource;
-    private static final int BUSY_TIMEOUT_MS = 30000; // 30 seconds
     private Connection conn;
 
-    static {
-        initializeDataSource();
-    }
-
-    private static void initializeDataSource() {
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:sqlite:db/umrs.db");
-        config.setMaximumPoolSize(5);
-        config.setMinimumIdle(1);
-        config.addDataSourceProperty("journal_mode", "WAL");
-        config.addDataSourceProperty("busy_timeout", String.valueOf(BUSY_TIMEOUT_MS));
-        dataSource = new HikariDataSource(config);
-    }
-
     public Login2FADAO(Connection conn) {
         this.conn = conn;
     }
@@ -43,19 +25,30 @@ public class Login2FADAO {
             pstmt.setString(8, login.getLastTwoFACode());
             pstmt.setTimestamp(9, new Timestamp(login.getTwoFACodeTimestamp().getTime()));
             pstmt.executeUpdate();
-            System.out.println("Login entry inserted successfully.");
+            Log.debug("Login entry inserted successfully.");
         } catch (SQLException e) {
-            System.out.println("Error inserting login entry: " + e.getMessage());
+            Log.error("Error inserting login entry: " + e.getMessage());
         }
     }
 
     // Retrieve a login entry by username
     public Login2FA getLoginByUsername(String username) {
-        String sql = "SELECT * FROM Login_2FA WHERE Login_Username = ?";
+        return findLogin("SELECT * FROM Login_2FA WHERE Login_Username = ?", username, null);
+    }
+
+    // Retrieve the login entry for a username on one portal, as the login check needs it
+    public Login2FA getLoginByUsername(String username, String portalType) {
+        return findLogin("SELECT * FROM Login_2FA WHERE Login_Username = ? AND Portal_Type = ?", username, portalType);
+    }
+
+    private Login2FA findLogin(String sql, String username, String portalType) {
         Login2FA login = null;
 
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, username);
+            if (portalType != null) {
+                pstmt.setString(2, portalType);
+            }
             ResultSet rs = pstmt.executeQuery();
 
             if (rs.next()) {
@@ -73,42 +66,42 @@ public class Login2FADAO {
                 login.setTwoFACodeTimestamp(timestamp != null ? 
                                             new java.util.Date(timestamp.getTime()) : 
                                             new java.util.Date());
-                System.out.println("User found: " + login.getLoginUsername());
+                Log.debug("User found: " + login.getLoginUsername());
             } else {
-                System.out.println("No user found with username: " + username);
+                Log.debug(() -> "No user found with username: " + username);
             }
         } catch (SQLException e) {
-            System.out.println("Error retrieving login by username: " + e.getMessage());
+            Log.error("Error retrieving login by username: " + e.getMessage());
         }
 
         return login;
     }
 
-    // Signup a new user
-    public boolean signup(Login2FA newUser, String portalType) throws SQLException {
-        System.out.println("Starting Login2FA signup process...");
-        
-        // Get the raw password BEFORE any modifications
+    // Replaces newUser's raw password with its hash and a fresh salt. Signup calls this before
+    // it takes the writer connection, so PBKDF2 never runs while every other write waits.
+    public static void hashNewPassword(Login2FA newUser) throws SQLException {
         String rawPassword = newUser.getLoginPassword();
-        System.out.println("Raw password received for hashing"); // Debug log
-        
         if (rawPassword == null || rawPassword.trim().isEmpty()) {
             throw new SQLException("Password cannot be null or empty");
         }
 
-        // Generate salt and hash password
         byte[] salt = new byte[16];
-        SecureRandom random = new SecureRandom();
-        random.nextBytes(salt);
-        
-        // Debug logs
-        System.out.println("Salt generated, hashing password...");
-        String hashedPassword = PasswordUtil.hashPassword(rawPassword, salt);
-        System.out.println("Password hashed successfully");
-        
-        // Set the hashed password and salt
-        newUser.setLoginPassword(hashedPassword);
+        new SecureRandom().nextBytes(salt);
+        newUser.setLoginPassword(PasswordUtil.hashPassword(rawPassword, salt));
         newUser.setSalt(salt);
+        Log.debug("Password hashed successfully");
+    }
+
+    // Signup a new user whose password was already hashed by hashNewPassword
+    public boolean signup(Login2FA newUser, String portalType) throws SQLException {
+        Log.debug("Starting Login2FA signup process...");
+
+        String hashedPassword = newUser.getLoginPassword();
+        byte[] salt = newUser.getSalt();
+        if (hashedPassword == null || salt == null) {
+            throw new SQLException("Password must be hashed before signup");
+        }
+
         newUser.setPortalType(portalType);
         newUser.setUserIdentifier(newUser.getLoginUsername());
 
@@ -125,23 +118,25 @@ public class Login2FADAO {
             pstmt.setString(6, newUser.getPortalType());
             pstmt.setString(7, newUser.getTwoFAPreference());
             
-            System.out.println("Executing Login2FA insert with hashed password");
+            Log.debug("Executing Login2FA insert with hashed password");
             int result = pstmt.executeUpdate();
             
             if (result > 0) {
-                System.out.println("Login2FA entry created successfully with hashed password");
+                Log.debug("Login2FA entry created successfully with hashed password");
+                String username = newUser.getLoginUsername();
+                Database.afterCommit(conn, () -> LoginService.loginCreated(username, portalType));
                 return true;
             }
             return false;
         } catch (SQLException e) {
-            System.err.println("Error in Login2FA signup: " + e.getMessage());
+            Log.error("Error in Login2FA signup: " + e.getMessage());
             throw e;
         }
     }
 
     // Login method
     public boolean login(String username, String password, String portalType) {
-        System.out.println("\n=== Attempting Database Login ===");
+        Log.debug("=== Attempting Database Login ===");
         String sql = "SELECT * FROM Login_2FA WHERE Login_Username = ? AND Portal_Type = ?";
         
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -154,20 +149,42 @@ public class Login2FADAO {
                 String storedPassword = rs.getString("Login_Password");
                 byte[] salt = rs.getBytes("Salt");
                 
-                // Hash the provided password with the stored salt
-                String hashedPassword = PasswordUtil.hashPassword(password, salt);
-                
-                // Compare the hashed passwords
-                boolean matches = storedPassword.equals(hashedPassword);
+                // Hash the provided password the way the stored one was hashed and compare
+                boolean matches = PasswordUtil.verifyPassword(password, storedPassword, salt);
+                if (matches && PasswordUtil.needsRehash(storedPassword)) {
+                    upgradePasswordHash(Database.getInstance(), username, password);
+                }
                 return matches;
             }
         } catch (SQLException e) {
-            System.out.println("Database error during login:");
-            e.printStackTrace();
+            Log.error("Database error during login:", e);
         }
         return false;
     }
 
+    // Re-hashes a just-verified password at the current work factor. Login runs on a
+    // read-only connection, so this goes through the writer; a failure only means the
+    // upgrade is retried on the next login.
+    static void upgradePasswordHash(Database database, String username, String password) {
+        byte[] salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        String hashedPassword = PasswordUtil.hashPassword(password, salt);
+        try {
+            database.inWriteTransaction(writeConn -> {
+                try (PreparedStatement pstmt = writeConn.prepareStatement(
+                        "UPDATE Login_2FA SET Login_Password = ?, Salt = ? WHERE Login_Username = ?")) {
+                    pstmt.setString(1, hashedPassword);
+                    pstmt.setBytes(2, salt);
+                    pstmt.setString(3, username);
+                    return pstmt.executeUpdate();
+                }
+            });
+            Log.info("password hash upgraded", "iterations", PasswordHasher.ITERATIONS);
+        } catch (SQLException e) {
+            Log.warn("password hash upgrade failed", "error", e.getMessage());
+        }
+    }
+
     // Method to generate a random 6-digit 2FA code
     public String generateTwoFACode() {
         SecureRandom random = new SecureRandom();
@@ -175,32 +192,31 @@ public class Login2FADAO {
         return String.valueOf(code);
         }
 
+    // Starts a 2FA challenge with this code; it is held by TwoFactorStore, not Login_2FA
     public void storeLastTwoFACode(String username, String code) {
-        String sql = "UPDATE Login_2FA SET Last_TwoFA_Code = ? WHERE Login_Username = ?";
-        
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, code);
-            pstmt.setString(2, username);
-            pstmt.executeUpdate();
-            System.out.println("Stored 2FA code for user: " + username);
-        } catch (SQLException e) {
-            System.out.println("Error storing 2FA code: " + e.getMessage());
-        }
+        TwoFactorStore.issue(username, code);
+        Log.debug(() -> "Stored 2FA code for user: " + username);
+    }
+
+    // Checks a submitted code against the user's pending challenge
+    public TwoFactorStore.Outcome verifyTwoFACode(String username, String code) {
+        TwoFactorStore.Outcome outcome = TwoFactorStore.verify(username, code);
+        Log.debug(() -> "2FA verification for user: " + username + " -> " + outcome);
+        return outcome;
     }
 
     public void enableTwoFA(String username) {
-        String code = AuthUtils.generateTwoFACode(); // Generate the 2FA code
-        
-        String sql = "UPDATE Login_2FA SET TwoFA_Enabled = ?, Last_TwoFA_Code = ? WHERE Login_Username = ?";
+        String sql = "UPDATE Login_2FA SET TwoFA_Enabled = ? WHERE Login_Username = ?";
         
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setBoolean(1, true);
-            pstmt.setString(2, code); // Store the generated code
-            pstmt.setString(3, username);
+            pstmt.setString(2, username);
             pstmt.executeUpdate();
-            System.out.println("2FA enabled for user: " + username + " with code: " + code);
+            // The first code is a challenge like any other
+            TwoFactorStore.issue(username, AuthUtils.generateTwoFACode());
+            Log.debug(() -> "2FA enabled for user: " + username);
         } catch (SQLException e) {
-            System.out.println("Error enabling 2FA: " + e.getMessage());
+            Log.error("Error enabling 2FA: " + e.getMessage());
         }
     }
 
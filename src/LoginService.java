@@ -0,0 +1,173 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The login pipeline behind /api/auth/login and /login:
+//  1. token-bucket rate limits per client IP and per username, so credential-stuffing bursts
+//     get 429s instead of password hashes
+//  2. a negative cache of usernames that do not exist, answered without touching SQLite
+//  3. one Login_2FA read for the credential row, on a connection released before hashing
+//  4. verification on the hashing pool, with the hash upgraded if the work factor went up
+// The row that was verified is what the caller returns as the user, minus the secrets.
+//
+// Tune with -Dumrs.auth.ipBurst / -Dumrs.auth.ipPerMinute (default 20 / 60),
+// -Dumrs.auth.userBurst / -Dumrs.auth.userPerMinute (default 5 / 10) and
+// -Dumrs.auth.unknownUserCacheSize / -Dumrs.auth.unknownUserTtlMillis (default 10000 / 60000).
+public class LoginService {
+    private static final RateLimiter byIp = new RateLimiter(
+        Integer.getInteger("umrs.auth.ipBurst", 20), Integer.getInteger("umrs.auth.ipPerMinute", 60));
+    private static final RateLimiter byUsername = new RateLimiter(
+        Integer.getInteger("umrs.auth.userBurst", 5), Integer.getInteger("umrs.auth.userPerMinute", 10));
+
+    private static final int UNKNOWN_CACHE_SIZE = Integer.getInteger("umrs.auth.unknownUserCacheSize", 10000);
+    private static final long UNKNOWN_TTL_MILLIS = Long.getLong("umrs.auth.unknownUserTtlMillis", 60000);
+    // portal:username -> when the miss expires; access-ordered so the oldest is evicted first
+    private static final LinkedHashMap<String, Long> unknownUsers = new LinkedHashMap<>(256, 0.75f, true);
+
+    // Thrown when a client or username is over its attempt budget
+    public static class RateLimited extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final long retryAfterSeconds;
+
+        RateLimited(long retryAfterSeconds) {
+            super("Too many login attempts, try again later");
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    // The verified Login_2FA row with password and salt cleared, or null for bad credentials
+    static Login2FA authenticate(Database database, String username, String password, String portalType,
+                                 String clientIp) throws SQLException {
+        long now = System.nanoTime();
+        long wait = Math.max(byIp.tryAcquire(clientIp, now), byUsername.tryAcquire(username, now));
+        if (wait > 0) {
+            Log.warn("login rate limited", "ip", clientIp);
+            throw new RateLimited(Math.max(1, (wait + 999_999_999L) / 1_000_000_000L));
+        }
+
+        String cacheKey = portalType + ":" + username;
+        if (isKnownUnknown(cacheKey)) {
+            return null;
+        }
+
+        Login2FA login;
+        try (Connection conn = database.getReadConnection()) {
+            login = new Login2FADAO(conn).getLoginByUsername(username, portalType);
+        }
+        if (login == null) {
+            rememberUnknown(cacheKey);
+            return null;
+        }
+
+        if (!PasswordUtil.verifyPassword(password, login.getLoginPassword(), login.getSalt())) {
+            return null;
+        }
+        if (PasswordUtil.needsRehash(login.getLoginPassword())) {
+            Login2FADAO.upgradePasswordHash(database, username, password);
+        }
+        login.setLoginPassword(null);
+        login.setSalt(null);
+        return login;
+    }
+
+    // Called once a new login row is committed, so the username stops being "unknown"
+    static void loginCreated(String username, String portalType) {
+        synchronized (unknownUsers) {
+            unknownUsers.remove(portalType + ":" + username);
+        }
+    }
+
+    private static boolean isKnownUnknown(String key) {
+        synchronized (unknownUsers) {
+            Long expiresAt = unknownUsers.get(key);
+            if (expiresAt == null) {
+                return false;
+            }
+            if (expiresAt > System.currentTimeMillis()) {
+                return true;
+            }
+            unknownUsers.remove(key);
+            return false;
+        }
+    }
+
+    private static void rememberUnknown(String key) {
+        if (UNKNOWN_CACHE_SIZE <= 0) {
+            return;
+        }
+        synchronized (unknownUsers) {
+            unknownUsers.put(key, System.currentTimeMillis() + UNKNOWN_TTL_MILLIS);
+            Iterator<Long> eldest = unknownUsers.values().iterator();
+            while (unknownUsers.size() > UNKNOWN_CACHE_SIZE && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    // One token bucket per key: `burst` attempts at once, refilled at `perMinute`
+    private static class RateLimiter {
+        // Full buckets carry no state worth keeping, so they are dropped past this many keys
+        private static final int PURGE_SIZE = 50_000;
+
+        private final double capacity;
+        private final double tokensPerNano;
+        private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+        RateLimiter(int burst, int perMinute) {
+            this.capacity = Math.max(1, burst);
+            this.tokensPerNano = Math.max(1, perMinute) / 60_000_000_000.0;
+        }
+
+        // 0 if an attempt is allowed now, otherwise the nanoseconds until one would be
+        long tryAcquire(String key, long now) {
+            if (key == null) {
+                return 0;
+            }
+            if (buckets.size() > PURGE_SIZE) {
+                purgeFull(now);
+            }
+            Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity, now));
+            synchronized (bucket) {
+                double tokens = bucket.tokensAt(now, capacity, tokensPerNano);
+                bucket.refilledAt = now;
+                if (tokens >= 1) {
+                    bucket.tokens = tokens - 1;
+                    return 0;
+                }
+                bucket.tokens = tokens;
+                return (long) Math.ceil((1 - tokens) / tokensPerNano);
+            }
+        }
+
+        private void purgeFull(long now) {
+            buckets.values().removeIf(bucket -> {
+                synchronized (bucket) {
+                    return bucket.tokensAt(now, capacity, tokensPerNano) >= capacity;
+                }
+            });
+        }
+    }
+
+    private static class Bucket {
+        double tokens;
+        long refilledAt;
+
+        Bucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+
+        double tokensAt(long now, double capacity, double tokensPerNano) {
+            return Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        }
+    }
+}
@@ -21,15 +21,23 @@ import java.text.SimpleDateFormat;
 import java.util.stream.Collectors;
 import java.util.List;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonParser;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.Vector;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 
 import javax.servlet.MultipartConfigElement;
 import javax.servlet.ServletException;
@@ -37,12 +45,10 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import javax.servlet.http.Part;
 import java.io.InputStream;
+import java.io.IOException;
 import java.nio.file.StandardCopyOption;
 import java.util.Random;
 import java.util.Base64;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-import java.util.TimeZone;
 import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
 import java.util.concurrent.CompletableFuture;
@@ -69,87 +75,81 @@ import java.text.ParseException;
 
 public class Main { 
     private static SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-    private static Connection[] connHolder = new Connection[1];
     private static final Gson gson = new GsonBuilder()
         .setLenient()
         .create();
     private static final String UPLOAD_DIR = "uploads";
-    private static HikariDataSource dataSource;
-    private static final Object DB_LOCK = new Object();
+    private static Database database;
     private static RecordAccessDAO recordAccessDAO;
     private static RecordSharingDAO recordSharingDAO;
+    private static BulkImporter bulkImporter;
+    private static ColumnarStore columnarStore;
 
-    // Initialize the connection pool
-    private static void initializeDataSource() {
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:sqlite:db/umrs.db");
-        config.setMaximumPoolSize(10);          // Reduced pool size
-        config.setMinimumIdle(5);               // Reduced idle connections
-        config.setConnectionTimeout(30000);      // 30 seconds
-        config.setIdleTimeout(300000);          // 5 minutes
-        config.setMaxLifetime(900000);          // 15 minutes
-        config.setConnectionTestQuery("SELECT 1");
-        
-        // SQLite specific optimizations
-        config.addDataSourceProperty("journal_mode", "WAL");       // Write-Ahead Logging
-        config.addDataSourceProperty("synchronous", "NORMAL");     // Better performance with acceptable safety
-        config.addDataSourceProperty("cache_size", "-2000");      // 2MB cache
-        config.addDataSourceProperty("busy_timeout", "30000");    // 30 second timeout
-        config.addDataSourceProperty("temp_store", "MEMORY");     // Store temp tables in memory
-        config.addDataSourceProperty("mmap_size", "30000000000"); // 30GB memory-mapped I/O
-        
-        // Add these new properties
-        config.addDataSourceProperty("foreign_keys", "ON");
-        config.addDataSourceProperty("default_timeout", "30000");
-        config.addDataSourceProperty("transaction_mode", "IMMEDIATE");
-        
-        dataSource = new HikariDataSource(config);
-    }
-
-    // getConnection method
-    private static Connection getConnection() throws SQLException {
-        synchronized (DB_LOCK) {
-            Connection conn = getPooledConnection();
-            try (Statement stmt = conn.createStatement()) {
-                stmt.execute("PRAGMA busy_timeout = 30000");
-                stmt.execute("PRAGMA temp_store = MEMORY");
-                stmt.execute("PRAGMA cache_size = -2000");
-            }
-            return conn;
+    // Read-only connection for SELECTs - PRAGMAs are applied once per physical connection by Database
+    private static Connection getReadConnection() throws SQLException {
+        if (database == null) {
+            throw new SQLException("Database not initialized");
         }
+        return database.getReadConnection();
     }
 
-    private static Connection getPooledConnection() throws SQLException {
-        if (dataSource == null) {
-            throw new SQLException("DataSource not initialized");
+    // The single serialized writer connection; hold it only for one transaction
+    private static Connection getWriteConnection() throws SQLException {
+        if (database == null) {
+            throw new SQLException("Database not initialized");
         }
-        Connection conn = dataSource.getConnection();
-        conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
-        return conn;
+        return database.getWriteConnection();
     }
 
     public static void main(String[] args) {
-        // Initialize HikariCP first
-        initializeDataSource();
-        System.out.println("DataSource initialized: " + (dataSource != null));
+        // Initialize the shared database pool first
+        database = Database.getInstance();
+        Log.info("Database initialized");
+
+        // Bring the schema up to date before any route can query it. Connection PRAGMAs are
+        // set by Database and statistics are refreshed by DbMaintenance, not here.
+        try (Connection conn = getWriteConnection()) {
+            if (Migrations.migrate(conn) > 0) {
+                DbMaintenance.requestAnalyze();
+            }
+
+            // Warn about hot queries that scan or sort without an index
+            QueryPlanAdvisor.check(conn);
+        } catch (SQLException | IllegalStateException e) {
+            Log.error("Database migration failed: " + e.getMessage(), e);
+            System.exit(1);
+        }
+        DbMaintenance.start(database);
+
+        // Login and the record list are the hottest routes; only a sample of their requests
+        // logs below WARN unless -Dumrs.log.sample says otherwise
+        Log.setDefaultSampleRate("/api/auth/login", 0.1);
+        Log.setDefaultSampleRate("/api/patient/medical-records/by-phn", 0.25);
         
-        // Initialize RecordAccessDAO after dataSource
-        recordAccessDAO = new RecordAccessDAO(dataSource); // Pass dataSource to constructor
+        // Initialize RecordAccessDAO after database
+        recordAccessDAO = new RecordAccessDAO(database); // Pass database to constructor
         
-        // Initialize RecordSharingDAO after dataSource
-        recordSharingDAO = new RecordSharingDAO(dataSource);
+        // Initialize RecordSharingDAO after database
+        recordSharingDAO = new RecordSharingDAO(database);
+
+        bulkImporter = new BulkImporter(database);
+
+        // Loaded lazily by the first report
+        if (ColumnarStore.ENABLED) {
+            columnarStore = new ColumnarStore(database);
+        }
         
-        String url = "jdbc:sqlite:db/umrs.db";
         
         // 1. Configure static files FIRST
         try {
             Files.createDirectories(Paths.get(UPLOAD_DIR));
             staticFiles.externalLocation(UPLOAD_DIR);
         } catch (Exception e) {
-            System.err.println("Could not create upload directory! " + e.getMessage());
+            Log.error("Could not create upload directory! " + e.getMessage());
         }
 
-        // 2. Set up port
+        // 2. Size the worker pool and set up port
+        HttpServerConfig.apply();
         port(8080);
 
         // 3. Configure CORS with proper lambda syntax
@@ -171,6 +171,7 @@ public class Main {
             response.header("Access-Control-Allow-Origin", "http://localhost:3000");
             response.header("Access-Control-Allow-Methods", "GET,POST,PUT,DELETE,OPTIONS");
             response.header("Access-Control-Allow-Headers", "Content-Type,Authorization,X-Requested-With,Content-Length,Accept,Origin");
+            response.header("Access-Control-Expose-Headers", "X-Next-Cursor");
             
             if (request.requestMethod().equals("OPTIONS")) {
                 halt(200);
@@ -189,29 +190,35 @@ public class Main {
         });
 
         // Database connection setup
-        try {
-            Class.forName("org.sqlite.JDBC");
-            connHolder[0] = DriverManager.getConnection(url);
-            if (connHolder[0] != null) {
-                System.out.println("Connected to the database.");
-                // Test the connection
-                try (PreparedStatement pstmt = connHolder[0].prepareStatement("SELECT 1");
-                     ResultSet rs = pstmt.executeQuery()) {
-                    if (rs.next()) {
-                        System.out.println("Database connection test successful.");
-                    }
-                }
+        try (Connection conn = getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT 1");
+             ResultSet rs = pstmt.executeQuery()) {
+            Log.info("Connected to the database.");
+            if (rs.next()) {
+                Log.info("Database connection test successful.");
             }
-            
-        } catch (ClassNotFoundException | SQLException e) {
-            System.out.println("Database connection error: " + e.getMessage());
-            e.printStackTrace();
+        } catch (SQLException e) {
+            Log.error("Database connection error: " + e.getMessage(), e);
             return; // Exit if unable to connect to the database
         }
         
-        // Add this at the beginning of each route
-        before((request, response) -> {
-            System.out.println("Received request: " + request.url());
+        // Request context for the logger: id, sampling decision and an access line per request
+        before((request, response) -> Log.beginRequest(request.requestMethod(), request.pathInfo()));
+        afterAfter((request, response) -> Log.endRequest(response.raw().getStatus()));
+
+        // Session from the signed bearer token, checked without touching the database.
+        // Routes read it with SessionTokens.fromRequest(req).
+        before("/api/*", (request, response) -> {
+            String authorization = request.headers("Authorization");
+            SessionTokens.Session session = authorization != null && authorization.startsWith("Bearer ")
+                ? SessionTokens.verify(authorization.substring("Bearer ".length()))
+                : null;
+            if (session != null) {
+                request.attribute(SessionTokens.ATTRIBUTE, session);
+            } else if (SessionTokens.REQUIRED && !request.pathInfo().startsWith("/api/auth/")) {
+                response.type("application/json");
+                halt(401, gson.toJson(new ApiResponse("error", "Authentication required")));
+            }
         });
 
         // This should beBEFORE any other route definitions, right after the CORS setup (Cross-origin resource sharing (CORS))
@@ -219,31 +226,59 @@ public class Main {
 
         // endpoint for medical records by PHN
         get("/api/patient/medical-records/by-phn/:personalHealthNo", (req, res) -> {
-            System.out.println("\n=== Medical Records Endpoint Hit ===");
-            System.out.println("Request path: " + req.pathInfo());
-            System.out.println("PHN Parameter: " + req.params(":personalHealthNo"));
+            Log.debug("=== Medical Records Endpoint Hit ===");
+            Log.debug(() -> "Request path: " + req.pathInfo());
+            Log.debug(() -> "PHN Parameter: " + req.params(":personalHealthNo"));
             
             res.type("application/json");
             try {
                 String personalHealthNo = req.params(":personalHealthNo");
-                System.out.println("Attempting to fetch records for PHN: " + personalHealthNo);
+                Log.debug(() -> "Attempting to fetch records for PHN: " + personalHealthNo);
                 
                 if (personalHealthNo == null || personalHealthNo.isEmpty()) {
                     res.status(400);
                     return gson.toJson(new ApiResponse("error", "Personal Health Number is required"));
                 }
 
-                MedicalRecordDAO recordDAO = new MedicalRecordDAO(connHolder[0]);
-                List<MedicalRecord> records = recordDAO.getRecordsByPHN(personalHealthNo);
-                
-                System.out.println("Found " + records.size() + " records for PHN: " + personalHealthNo);
-                String jsonResponse = gson.toJson(records);
-                System.out.println("Sending response: " + jsonResponse);
-                return jsonResponse;
+                // Keyset paging: ?limit=N&cursor=<X-Next-Cursor from the previous page>; without either, every row
+                String cursor = req.queryParams("cursor");
+                int limit = Page.size(req.queryParams("limit"), cursor);
+
+                try (Connection conn = getReadConnection()) {
+                    MedicalRecordDAO recordDAO = new MedicalRecordDAO(conn);
+                    if (limit != Page.ALL) {
+                        // A page is at most Page.MAX_SIZE rows: read one more than the page, so
+                        // the next cursor comes from the same query as the rows it follows
+                        List<MedicalRecord> records = new ArrayList<>();
+                        recordDAO.streamRecordsByPHN(personalHealthNo, cursor, limit + 1, records::add);
+                        if (records.size() > limit) {
+                            records = records.subList(0, limit);
+                            res.header("X-Next-Cursor", Page.encodeCursor(records.get(limit - 1).getRecordID()));
+                        }
+                        return gson.toJson(records);
+                    }
+
+                    // The whole history has no next page, so rows go straight from the
+                    // ResultSet to the response and never sit in memory as one list or String
+                    JsonWriter writer = JsonStreamer.open(res);
+                    writer.beginArray();
+                    int count = recordDAO.streamRecordsByPHN(personalHealthNo, cursor, limit,
+                        record -> gson.toJson(record, MedicalRecord.class, writer));
+                    writer.endArray();
+
+                    Log.debug(() -> "Streamed " + count + " records for PHN: " + personalHealthNo);
+                    return JsonStreamer.finish(writer);
+                }
                 
+            } catch (IllegalArgumentException e) {
+                res.status(400);
+                return gson.toJson(new ApiResponse("error", e.getMessage()));
             } catch (Exception e) {
-                System.err.println("Error in medical records endpoint: " + e.getMessage());
-                e.printStackTrace();
+                Log.error("Error in medical records endpoint: " + e.getMessage(), e);
+                if (res.raw().isCommitted()) {
+                    return ""; // Part of the array is already on the wire; the client sees a truncated body
+                }
+                res.raw().resetBuffer();
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -272,8 +307,8 @@ public class Main {
 
         // Update the login route to match frontend expectations
         post("/api/auth/login", (req, res) -> {
-            System.out.println("\n=== Login Attempt ===");
-            System.out.println("Request received: " + req.body());
+            Log.debug("=== Login Attempt ===");
+            Log.debug("Login request received");
             
             try {
                 JsonObject jsonBody = JsonParser.parseString(req.body()).getAsJsonObject();
@@ -281,43 +316,63 @@ public class Main {
                 String password = jsonBody.get("password").getAsString();
                 String portalType = jsonBody.get("portalType").getAsString();
 
-                System.out.println("Username: " + username);
-                System.out.println("Portal Type: " + portalType);
+                Log.debug(() -> "Username: " + username);
+                Log.debug(() -> "Portal Type: " + portalType);
 
-                // Use the shared connection from connHolder
-                Login2FADAO login2FADAO = new Login2FADAO(connHolder[0]);
-                boolean isAuthenticated = login2FADAO.login(username, password, portalType);
+                // One Login_2FA read; the verified row is the user we return
+                Login2FA userLogin = LoginService.authenticate(database, username, password, portalType, req.ip());
+                boolean isAuthenticated = userLogin != null;
 
-                System.out.println("Authentication result: " + isAuthenticated);
+                Log.debug(() -> "Authentication result: " + isAuthenticated);
 
                 if (isAuthenticated) {
-                    // Get user details using the same connection
-                    Login2FA userLogin = login2FADAO.getLoginByUsername(username);
-                    
                     Map<String, Object> responseMap = new HashMap<>();
                     responseMap.put("status", "success");
                     responseMap.put("message", "Login successful");
-                    responseMap.put("token", "mock-jwt-token-" + username);
+                    responseMap.put("token", issueToken(userLogin));
                     responseMap.put("user", userLogin);
                     
                     String response = gson.toJson(responseMap);
-                    System.out.println("Sending success response: " + response);
+                    Log.debug(() -> "Sending success response: " + response);
                     return response;
                 }
 
                 res.status(401);
                 String response = gson.toJson(new ApiResponse("error", "Invalid credentials"));
-                System.out.println("Sending error response: " + response);
+                Log.error("Sending error response: " + response);
                 return response;
                 
+            } catch (PasswordHasher.Busy e) {
+                return tooManyRequests(res, e);
+            } catch (LoginService.RateLimited e) {
+                return tooManyRequests(res, e);
             } catch (Exception e) {
-                System.out.println("Login error occurred:");
-                e.printStackTrace();
+                Log.error("Login error occurred:", e);
                 res.status(400);
                 return gson.toJson(new ApiResponse("error", "Login failed: " + e.getMessage()));
             }
         });
         
+        // Who the bearer token belongs to, straight from its claims
+        get("/api/auth/session", (req, res) -> {
+            res.type("application/json");
+            SessionTokens.Session session = SessionTokens.fromRequest(req);
+            if (session == null) {
+                res.status(401);
+                return gson.toJson(new ApiResponse("error", "No valid session"));
+            }
+            return gson.toJson(session);
+        });
+
+        post("/api/auth/logout", (req, res) -> {
+            res.type("application/json");
+            SessionTokens.Session session = SessionTokens.fromRequest(req);
+            if (session != null) {
+                SessionTokens.revoke(session);
+            }
+            return gson.toJson(new ApiResponse("success", "Logged out"));
+        });
+
         post("/login", (req, res) -> {
             res.type("application/json");
             try {
@@ -326,17 +381,13 @@ public class Main {
                 String password = jsonBody.get("password").getAsString();
                 String portalType = jsonBody.get("portalType").getAsString();
                 
-                Login2FADAO login2FADAO = new Login2FADAO(connHolder[0]);
-                boolean isAuthenticated = login2FADAO.login(username, password, portalType);
+                Login2FA userLogin = LoginService.authenticate(database, username, password, portalType, req.ip());
                 
-                if (isAuthenticated) {
-                    // Get user details from Login_2FA
-                    Login2FA userLogin = login2FADAO.getLoginByUsername(username);
-                    
+                if (userLogin != null) {
                     Map<String, Object> responseMap = new HashMap<>();
                     responseMap.put("status", "success");
                     responseMap.put("message", "Login successful");
-                    responseMap.put("token", "mock-jwt-token-" + username);
+                    responseMap.put("token", issueToken(userLogin));
                     responseMap.put("user", userLogin);
                     
                     return gson.toJson(responseMap);
@@ -344,9 +395,12 @@ public class Main {
                     res.status(401);
                     return gson.toJson(new ApiResponse("error", "Invalid credentials"));
                 }
+            } catch (PasswordHasher.Busy e) {
+                return tooManyRequests(res, e);
+            } catch (LoginService.RateLimited e) {
+                return tooManyRequests(res, e);
             } catch (Exception e) {
-                System.out.println("Login error occurred:");
-                e.printStackTrace();
+                Log.error("Login error occurred:", e);
                 
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Login failed: " + e.getMessage()));
@@ -360,10 +414,7 @@ public class Main {
             
             try {
                 JsonObject jsonBody = gson.fromJson(req.body(), JsonObject.class);
-                System.out.println("Received signup request for " + userType + ": " + jsonBody);
-                
-                conn = dataSource.getConnection();
-                conn.setAutoCommit(false);
+                Log.debug(() -> "Received signup request for " + userType);
                 
                 // Create Login2FA object first with password
                 Login2FA login2FA = new Login2FA();
@@ -372,6 +423,12 @@ public class Main {
                 login2FA.setPortalType(userType);
                 login2FA.setLastTwoFACode(generateSecret());
                 login2FA.setLoginPassword(jsonBody.get("password").getAsString());  // Set password early
+
+                // Hash before taking the writer, which every other write is waiting on
+                Login2FADAO.hashNewPassword(login2FA);
+
+                conn = getWriteConnection();
+                conn.setAutoCommit(false);
                 
                 String identifier = null;
                 
@@ -452,6 +509,7 @@ public class Main {
 
                         if (loginCreated) {
                             conn.commit();
+                            Database.runAfterCommit();
                             return gson.toJson(new ApiResponse("success", 
                                 userType + " registration successful. Your identifier is: " + identifier,
                                 identifier));
@@ -463,13 +521,15 @@ public class Main {
                 } catch (Exception e) {
                     if (conn != null) {
                         conn.rollback();
+                        Database.discardAfterCommit();
                     }
                     throw e;
                 }
                 
+            } catch (PasswordHasher.Busy e) {
+                return tooManyRequests(res, e);
             } catch (Exception e) {
-                System.err.println("Error in signup endpoint: " + e.getMessage());
-                e.printStackTrace();
+                Log.error("Error in signup endpoint: " + e.getMessage(), e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Registration failed: " + e.getMessage()));
             } finally {
@@ -478,7 +538,7 @@ public class Main {
                         conn.setAutoCommit(true);
                         conn.close();
                     } catch (SQLException e) {
-                        System.err.println("Error closing connection: " + e.getMessage());
+                        Log.error("Error closing connection: " + e.getMessage());
                     }
                 }
             }
@@ -487,21 +547,24 @@ public class Main {
         // Add these new routes
         get("/api/patient/recent-prescription", (req, res) -> {
             String personalHealthNo = req.queryParams("personalHealthNo");
-            MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(connHolder[0]);
-            List<MedicalRecord> prescriptions = medicalRecordDAO.getRecentPrescriptions(personalHealthNo);
+            List<MedicalRecord> prescriptions;
+            try (Connection conn = getReadConnection()) {
+                MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(conn);
+                prescriptions = medicalRecordDAO.getRecentPrescriptions(personalHealthNo);
+            }
             return gson.toJson(prescriptions);
         });
 
         get("/api/patient/activities", (req, res) -> {
             String personalHealthNo = req.queryParams("personalHealthNo");
-            System.out.println("Fetching activities for personalHealthNo: " + personalHealthNo);
-            MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(connHolder[0]);
-            try {
+            Log.debug(() -> "Fetching activities for personalHealthNo: " + personalHealthNo);
+            try (Connection conn = getReadConnection()) {
+                MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(conn);
                 List<MedicalRecord> activities = medicalRecordDAO.getRecentRecords(personalHealthNo, 10);
-                System.out.println("Retrieved " + activities.size() + " activities");
+                Log.debug(() -> "Retrieved " + activities.size() + " activities");
                 return gson.toJson(activities);
             } catch (SQLException e) {
-                System.out.println("Error retrieving recent records: " + e.getMessage());
+                Log.error("Error retrieving recent records: " + e.getMessage());
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Database error: " + e.getMessage()));
             }
@@ -509,8 +572,8 @@ public class Main {
 
         get("/api/patient/recent-test", (req, res) -> {
             String personalHealthNo = req.queryParams("personalHealthNo");
-            MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(connHolder[0]);
-            try {
+            try (Connection conn = getReadConnection()) {
+                MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(conn);
                 MedicalRecord recentTest = medicalRecordDAO.getRecentRecordByType(personalHealthNo, "Test");
                 return gson.toJson(recentTest);
             } catch (SQLException e) {
@@ -521,8 +584,8 @@ public class Main {
 
         get("/api/patient/recent-medical-record", (req, res) -> {
             String personalHealthNo = req.queryParams("personalHealthNo");
-            MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(connHolder[0]);
-            try {
+            try (Connection conn = getReadConnection()) {
+                MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(conn);
                 MedicalRecord recentRecord = medicalRecordDAO.getRecentRecord(personalHealthNo);
                 return gson.toJson(recentRecord);
             } catch (SQLException e) {
@@ -533,9 +596,22 @@ public class Main {
 
         // API endpoint to get patient data
         get("/api/patient", (req, res) -> {
+            // A patient session reads its own record; ?personalHealthNo may only repeat it
+            SessionTokens.Session session = SessionTokens.fromRequest(req);
             String personalHealthNo = req.queryParams("personalHealthNo");
-            PatientDAO patientDAO = new PatientDAO(connHolder[0]);
-            Patient patient = patientDAO.getPatient(personalHealthNo);
+            if (session != null && "patient".equals(session.getUserType())) {
+                if (personalHealthNo != null && !personalHealthNo.equals(session.getIdentifier())) {
+                    res.type("application/json");
+                    res.status(403);
+                    return gson.toJson(new ApiResponse("error", "Not allowed to read another patient's record"));
+                }
+                personalHealthNo = session.getIdentifier();
+            }
+            Patient patient;
+            try (Connection conn = getReadConnection()) {
+                PatientDAO patientDAO = new PatientDAO(conn);
+                patient = patientDAO.getPatient(personalHealthNo);
+            }
             if (patient != null) {
                 return gson.toJson(patient);
             } else {
@@ -547,8 +623,11 @@ public class Main {
         // API endpoint to get recent diagnosis from medical records
         get("/api/patient/recent-diagnosis", (req, res) -> {
             String personalHealthNo = req.queryParams("personalHealthNo");
-            MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(connHolder[0]);
-            List<MedicalRecord> diagnoses = medicalRecordDAO.getRecentDiagnoses(personalHealthNo);
+            List<MedicalRecord> diagnoses;
+            try (Connection conn = getReadConnection()) {
+                MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(conn);
+                diagnoses = medicalRecordDAO.getRecentDiagnoses(personalHealthNo);
+            }
             return gson.toJson(diagnoses);
         });
 
@@ -556,12 +635,15 @@ public class Main {
         get("/api/patient/ongoing-prescriptions", (req, res) -> {
             String personalHealthNo = req.queryParams("personalHealthNo");
             try {
-                MedicalRecordDAO recordDAO = new MedicalRecordDAO(connHolder[0]);
-                List<MedicalRecord> prescriptions = recordDAO.getRecordsByType(personalHealthNo, "Prescription");
+                List<MedicalRecord> prescriptions;
+                try (Connection conn = getReadConnection()) {
+                    MedicalRecordDAO recordDAO = new MedicalRecordDAO(conn);
+                    prescriptions = recordDAO.getRecordsByType(personalHealthNo, "Prescription");
+                }
                 return gson.toJson(prescriptions);
             } catch (SQLException e) {
                 // Log the error
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 // Return an error response
                 return "Error: Unable to retrieve prescriptions due to a database error.";
             }
@@ -570,57 +652,18 @@ public class Main {
         // Add this new route for creating medical records
         post("/api/patient/medical-records", (req, res) -> {
             res.type("application/json");
-            System.out.println("Inserting medical record from patient portal");
+            Log.debug("Inserting medical record from patient portal");
             
             try {
                 String requestBody = req.body();
                 MedicalRecord record = gson.fromJson(requestBody, MedicalRecord.class);
-                System.out.println("Inserting medical record with PHN: " + record.getPersonalHealthNo());
-                
-                // Get a fresh connection from the pool
-                try (Connection conn = getConnection()) {
-                    // Set timeout and isolation level
-                    try (Statement stmt = conn.createStatement()) {
-                        stmt.execute("PRAGMA busy_timeout = 60000");  // 60 second timeout
-                        stmt.execute("PRAGMA journal_mode = WAL");
-                    }
-                    
-                    conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-                    conn.setAutoCommit(false);
-                    
-                    // Create DAO with this connection
-                    MedicalRecordDAO recordDAO = new MedicalRecordDAO(conn);
-                    
-                    // Insert with retry logic
-                    int maxRetries = 3;
-                    int retryCount = 0;
-                    boolean success = false;
-                    
-                    while (!success && retryCount < maxRetries) {
-                        try {
-                            recordDAO.insertMedicalRecord(record);
-                            conn.commit();
-                            success = true;
-                        } catch (SQLException e) {
-                            if (e.getMessage().contains("database is locked") && retryCount < maxRetries - 1) {
-                                System.out.println("Database locked, retrying... (attempt " + (retryCount + 1) + ")");
-                                retryCount++;
-                                Thread.sleep(1000); // Wait 1 second before retrying
-                                conn.rollback();
-                            } else {
-                                throw e;
-                            }
-                        }
-                    }
-                    
-                    if (success) {
-                        return gson.toJson(new ApiResponse("success", "Record added successfully"));
-                    } else {
-                        throw new SQLException("Failed to insert record after " + maxRetries + " attempts");
-                    }
-                }
+                Log.debug(() -> "Inserting medical record with PHN: " + record.getPersonalHealthNo());
+                
+                // Concurrent inserts are batched into one commit by the group commit writer
+                int recordId = MedicalRecordDAO.insertMedicalRecordGrouped(database.getGroupCommitWriter(), record).get();
+                return gson.toJson(new ApiResponse("success", "Record added successfully", recordId));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to create medical record: " + e.getMessage()));
             }
@@ -629,8 +672,8 @@ public class Main {
         // Route to get a specific medical record
         get("/api/patient/medical-records/:id", (req, res) -> {
             String id = req.params(":id");
-            MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(connHolder[0]);
-            try {
+            try (Connection conn = getReadConnection()) {
+                MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(conn);
                 MedicalRecord record = medicalRecordDAO.getMedicalRecordById(id);
                 if (record != null) {
                     return gson.toJson(record);
@@ -652,8 +695,8 @@ public class Main {
             MedicalRecord updatedRecord = gson.fromJson(jsonBody, MedicalRecord.class);
             updatedRecord.setRecordId(Integer.parseInt(id));
 
-            MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(connHolder[0]);
-            try {
+            try (Connection conn = getWriteConnection()) {
+                MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(conn);
                 boolean updated = medicalRecordDAO.updateMedicalRecord(updatedRecord);
                 if (updated) {
                     return gson.toJson(new ApiResponse("success", "Medical record updated successfully"));
@@ -670,8 +713,8 @@ public class Main {
         // Route to delete a medical record
         delete("/api/patient/medical-records/:id", (req, res) -> {
             String id = req.params(":id");
-            MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(connHolder[0]);
-            try {
+            try (Connection conn = getWriteConnection()) {
+                MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(conn);
                 boolean deleted = medicalRecordDAO.deleteMedicalRecord(id);
                 if (deleted) {
                     return gson.toJson(new ApiResponse("success", "Medical record deleted successfully"));
@@ -687,27 +730,33 @@ public class Main {
 
         // Error handling
         exception(Exception.class, (e, req, res) -> {
-            e.printStackTrace(); // Print full stack trace for debugging
+            Log.error("Unhandled exception", e); // Print full stack trace for debugging
             res.status(500);
             res.body(gson.toJson(new ApiResponse("error", "Internal server error: " + e.getMessage())));
         });
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
-                if (connHolder[0] != null) connHolder[0].close();
-            } catch (SQLException e) {
-                System.out.println("Error closing database connection: " + e.getMessage());
+                database.close();
+            } catch (Exception e) {
+                Log.error("Error closing database connection: " + e.getMessage());
             }
         }));
 
         get("/api/current-user", (req, res) -> {
             res.type("application/json");
             String username = req.queryParams("username");
+            SessionTokens.Session session = SessionTokens.fromRequest(req);
+            // A patient's token already names their PHN, so skip the Login_2FA join
+            String phn = session != null && "patient".equals(session.getUserType()) ? session.getIdentifier() : null;
             
-            if (username != null && !username.isEmpty()) {
+            if (phn != null || (username != null && !username.isEmpty())) {
                 try {
-                    PatientDAO patientDAO = new PatientDAO(connHolder[0]);
-                    Patient patient = patientDAO.getPatientByUsername(username);
+                    Patient patient;
+                    try (Connection conn = getReadConnection()) {
+                        PatientDAO patientDAO = new PatientDAO(conn);
+                        patient = phn != null ? patientDAO.getPatient(phn) : patientDAO.getPatientByUsername(username);
+                    }
                     
                     if (patient != null) {
                         return gson.toJson(patient);
@@ -726,18 +775,17 @@ public class Main {
         });
 
      
-        try {
-            Statement stmt = connHolder[0].createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type='table' AND name='PATIENT'");
+        try (Connection conn = getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type='table' AND name='PATIENT'")) {
             if (!rs.next()) {
-                System.err.println("PATIENT table does not exist in the database!");
+                Log.warn("PATIENT table does not exist in the database!");
                 // Optionally, you could create the table here if it doesn't exist
             } else {
-                System.out.println("PATIENT table exists in the database.");
+                Log.info("PATIENT table exists in the database.");
             }
         } catch (SQLException e) {
-            System.err.println("Error checking for PATIENT table: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error checking for PATIENT table: " + e.getMessage(), e);
         }
 
         // Add this endpoint to handle patient data requests
@@ -751,8 +799,11 @@ public class Main {
                 }
 
                 // Get patient data from database
-                PatientDAO patientDAO = new PatientDAO(connHolder[0]);
-                Patient patient = patientDAO.getPatient(personalHealthNo);
+                Patient patient;
+                try (Connection conn = getReadConnection()) {
+                    PatientDAO patientDAO = new PatientDAO(conn);
+                    patient = patientDAO.getPatient(personalHealthNo);
+                }
 
                 if (patient == null) {
                     res.status(404);
@@ -761,7 +812,7 @@ public class Main {
 
                 return gson.toJson(patient);
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -777,17 +828,17 @@ public class Main {
                 return gson.toJson(new ApiResponse("error", "Personal Health Number is required"));
             }
 
-            System.out.println("\n=== Fetching Patient Records ===");
-            System.out.println("PHN: " + phn);
+            Log.debug("=== Fetching Patient Records ===");
+            Log.debug(() -> "PHN: " + phn);
             
-            try (Connection conn = getConnection()) {
+            try (Connection conn = getReadConnection()) {
                 conn.setAutoCommit(false);
                 conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
                 
                 // Get all records including newly added ones
                 MedicalRecordDAO recordDAO = new MedicalRecordDAO(conn);
                 List<MedicalRecord> allRecords = recordDAO.getRecordsByPHN(phn); // Using the same method name pattern
-                System.out.println("Retrieved " + allRecords.size() + " total records");
+                Log.debug(() -> "Retrieved " + allRecords.size() + " total records");
 
                 conn.commit();
                 
@@ -797,8 +848,7 @@ public class Main {
                 return gson.toJson(response);
 
             } catch (Exception e) {
-                System.err.println("Error fetching patient records: " + e.getMessage());
-                e.printStackTrace();
+                Log.error("Error fetching patient records: " + e.getMessage(), e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch records"));
             }
@@ -809,15 +859,18 @@ public class Main {
             res.type("application/json");
             try {
                 String personalHealthNo = req.queryParams("personalHealthNo");
-                System.out.println("PHN received: " + personalHealthNo);
+                Log.debug(() -> "PHN received: " + personalHealthNo);
 
                 if (personalHealthNo == null || personalHealthNo.isEmpty()) {
                     res.status(400);
                     return gson.toJson(new ApiResponse("error", "Personal Health Number is required"));
                 }
 
-                PatientDAO patientDAO = new PatientDAO(connHolder[0]);
-                Patient patient = patientDAO.getPatientByPHN(personalHealthNo);
+                Patient patient;
+                try (Connection conn = getReadConnection()) {
+                    PatientDAO patientDAO = new PatientDAO(conn);
+                    patient = patientDAO.getPatientByPHN(personalHealthNo);
+                }
 
                 if (patient != null) {
                     Map<String, Object> dashboardData = new HashMap<>();
@@ -829,8 +882,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Patient not found"));
                 }
             } catch (Exception e) {
-                System.out.println("Error in dashboard endpoint: " + e.getMessage());
-                e.printStackTrace();
+                Log.error("Error in dashboard endpoint: " + e.getMessage(), e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch dashboard data"));
             }
@@ -846,8 +898,11 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Personal Health Number is required"));
                 }
 
-                PatientDAO patientDAO = new PatientDAO(connHolder[0]);
-                Patient patient = patientDAO.getPatient(personalHealthNo);
+                Patient patient;
+                try (Connection conn = getReadConnection()) {
+                    PatientDAO patientDAO = new PatientDAO(conn);
+                    patient = patientDAO.getPatient(personalHealthNo);
+                }
 
                 if (patient != null) {
                     return gson.toJson(patient);
@@ -856,7 +911,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Patient not found"));
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -867,26 +922,29 @@ public class Main {
             res.type("application/json");
             try {
                 String personalHealthNo = req.params(":personalHealthNo");
-                System.out.println("Fetching documents for PHN: " + personalHealthNo);
+                Log.debug(() -> "Fetching documents for PHN: " + personalHealthNo);
                 
                 if (personalHealthNo == null || personalHealthNo.isEmpty()) {
                     res.status(400);
                     return gson.toJson(new ApiResponse("error", "Personal Health Number is required"));
                 }
 
-                MedicalDocumentDAO documentDAO = new MedicalDocumentDAO(connHolder[0]);
-                Vector<MedicalDocument> documents = documentDAO.getDocumentsByPatient(personalHealthNo);
+                Vector<MedicalDocument> documents;
+                try (Connection conn = getReadConnection()) {
+                    MedicalDocumentDAO documentDAO = new MedicalDocumentDAO(conn);
+                    documents = documentDAO.getDocumentsByPatient(personalHealthNo);
+                }
                 
                 // Debug logging
-                System.out.println("Fetched documents: " + documents.size());
+                Log.debug(() -> "Fetched documents: " + documents.size());
                 for (MedicalDocument doc : documents) {
-                    System.out.println("Document ID: " + doc.getDocumentID() + 
+                    Log.debug(() -> "Document ID: " + doc.getDocumentID() + 
                                         ", Record ID: " + doc.getRecordID());
                 }
                 
                 return gson.toJson(documents);
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -903,11 +961,11 @@ public class Main {
                 String personalHealthNo = req.raw().getParameter("personalHealthNo");
 
                 // Debug logging
-                System.out.println("Received upload request with:");
-                System.out.println("Record ID: " + recordId);
-                System.out.println("Document Type: " + documentType);
-                System.out.println("PHN: " + personalHealthNo);
-                System.out.println("File name: " + (filePart != null ? filePart.getSubmittedFileName() : "no file"));
+                Log.debug("Received upload request with:");
+                Log.debug(() -> "Record ID: " + recordId);
+                Log.debug(() -> "Document Type: " + documentType);
+                Log.debug(() -> "PHN: " + personalHealthNo);
+                Log.debug(() -> "File name: " + (filePart != null ? filePart.getSubmittedFileName() : "no file"));
 
                 // Validation
                 if (recordId == null || recordId.trim().isEmpty()) {
@@ -949,13 +1007,14 @@ public class Main {
                 );
 
                 // Save to database
-                MedicalDocumentDAO documentDAO = new MedicalDocumentDAO(connHolder[0]);
-                documentDAO.insertMedicalDocument(document);
+                try (Connection conn = getWriteConnection()) {
+                    MedicalDocumentDAO documentDAO = new MedicalDocumentDAO(conn);
+                    documentDAO.insertMedicalDocument(document);
+                }
 
                 return gson.toJson(new ApiResponse("success", "Document uploaded successfully"));
             } catch (Exception e) {
-                System.err.println("Error in document upload: " + e.getMessage());
-                e.printStackTrace();
+                Log.error("Error in document upload: " + e.getMessage(), e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Upload failed: " + e.getMessage()));
             }
@@ -965,11 +1024,13 @@ public class Main {
             res.type("application/json");
             try {
                 int documentId = Integer.parseInt(req.params(":id"));
-                MedicalDocumentDAO documentDAO = new MedicalDocumentDAO(connHolder[0]);
-                documentDAO.deleteMedicalDocument(documentId);
+                try (Connection conn = getWriteConnection()) {
+                    MedicalDocumentDAO documentDAO = new MedicalDocumentDAO(conn);
+                    documentDAO.deleteMedicalDocument(documentId);
+                }
                 return gson.toJson(new ApiResponse("success", "Document deleted successfully"));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Delete failed: " + e.getMessage()));
             }
@@ -1016,7 +1077,7 @@ public class Main {
                     jsonRequest.get("notes").getAsString() : ""
                 );
                 
-                AppointmentDAO appointmentDAO = new AppointmentDAO();
+                AppointmentDAO appointmentDAO = new AppointmentDAO(database);
                 appointmentDAO.insertAppointment(appointment);
                 
                 return gson.toJson(new ApiResponse("success", "Appointment created successfully"));
@@ -1024,7 +1085,7 @@ public class Main {
                 res.status(400);
                 return gson.toJson(new ApiResponse("error", "Invalid date format: " + e.getMessage()));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to create appointment: " + e.getMessage()));
             }
@@ -1070,7 +1131,7 @@ public class Main {
                     jsonRequest.get("healthInstituteNumber").getAsString() : ""
                 );
 
-                AppointmentDAO appointmentDAO = new AppointmentDAO();
+                AppointmentDAO appointmentDAO = new AppointmentDAO(database);
                 appointmentDAO.insertAppointment(appointment);
                 
                 return gson.toJson(new ApiResponse("success", "Appointment created successfully"));
@@ -1078,7 +1139,7 @@ public class Main {
                 res.status(400);
                 return gson.toJson(new ApiResponse("error", "Invalid date format: " + e.getMessage()));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to create appointment: " + e.getMessage()));
             }
@@ -1092,7 +1153,7 @@ public class Main {
                 JsonObject jsonRequest = JsonParser.parseString(req.body()).getAsJsonObject();
                 String status = jsonRequest.get("status").getAsString();
                 
-                AppointmentDAO appointmentDAO = new AppointmentDAO();
+                AppointmentDAO appointmentDAO = new AppointmentDAO(database);
                 Appointment appointment = appointmentDAO.getAppointmentById(appointmentId);
                 
                 if (appointment != null) {
@@ -1104,7 +1165,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Appointment not found"));
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to update appointment status: " + e.getMessage()));
             }
@@ -1120,7 +1181,7 @@ public class Main {
                 return gson.toJson(new ApiResponse("error", "Personal Health Number is required"));
             }
 
-            AppointmentDAO appointmentDAO = new AppointmentDAO();
+            AppointmentDAO appointmentDAO = new AppointmentDAO(database);
             Vector<Appointment> appointments = appointmentDAO.getAppointmentsByPatient(personalHealthNo);
             
             List<Map<String, Object>> formattedAppointments = new ArrayList<>();
@@ -1145,7 +1206,7 @@ public class Main {
             res.type("application/json");
             String personalHealthNo = req.params(":personalHealthNo");
             
-            try (Connection conn = getConnection()) {
+            try (Connection conn = getReadConnection()) {
                 String sql = "SELECT * FROM Appointment WHERE Personal_Health_No = ?";
                 try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                     pstmt.setString(1, personalHealthNo);
@@ -1153,18 +1214,18 @@ public class Main {
                     
                     // Debug print all fields
                     while (rs.next()) {
-                        System.out.println("Found appointment:");
-                        System.out.println("ID: " + rs.getInt("Appointment_ID"));
-                        System.out.println("PHN: " + rs.getString("Personal_Health_No"));
-                        System.out.println("Date: " + rs.getDate("Appointment_Date"));
-                        System.out.println("Time: " + rs.getTime("Appointment_Time"));
-                        System.out.println("Status: " + rs.getString("Status"));
-                        System.out.println("-------------------");
+                        Log.debug("Found appointment:");
+                        Log.debug("ID: " + rs.getInt("Appointment_ID"));
+                        Log.debug("PHN: " + rs.getString("Personal_Health_No"));
+                        Log.debug("Date: " + rs.getDate("Appointment_Date"));
+                        Log.debug("Time: " + rs.getTime("Appointment_Time"));
+                        Log.debug("Status: " + rs.getString("Status"));
+                        Log.debug("-------------------");
                     }
                 }
                 return "{\"message\": \"Debug info printed to console\"}";
             } catch (SQLException e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 return "{\"error\": \"" + e.getMessage() + "\"}";
             }
         });
@@ -1174,7 +1235,7 @@ public class Main {
             res.type("application/json");
             String personalHealthNo = req.params(":personalHealthNo");
             
-            try (Connection conn = getConnection()) {
+            try (Connection conn = getReadConnection()) {
                 String sql = "SELECT * FROM Appointment WHERE Personal_Health_No = ?";
                 try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                     pstmt.setString(1, personalHealthNo);
@@ -1199,11 +1260,11 @@ public class Main {
                         debug.append("No appointments found for this patient.");
                     }
                     
-                    System.out.println(debug.toString());
+                    Log.debug(() -> debug.toString());
                     return "{\"message\": \"Check server console for debug output\"}";
                 }
             } catch (SQLException e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 return "{\"error\": \"" + e.getMessage() + "\"}";
             }
         });
@@ -1212,7 +1273,7 @@ public class Main {
         get("/api/debug/table-info", (req, res) -> {
             res.type("application/json");
             
-            try (Connection conn = getConnection()) {
+            try (Connection conn = getReadConnection()) {
                 // Just check for existing data
                 Statement stmt = conn.createStatement();
                 
@@ -1220,13 +1281,13 @@ public class Main {
                 ResultSet count = stmt.executeQuery("SELECT COUNT(*) as count FROM Appointment");
                 count.next();
                 int totalRecords = count.getInt("count");
-                System.out.println("\nTotal appointments in database: " + totalRecords);
+                Log.debug(() -> "Total appointments in database: " + totalRecords);
                 
                 // Show sample data
                 ResultSet data = stmt.executeQuery("SELECT * FROM Appointment");
-                System.out.println("\nAll appointments:");
+                Log.debug("All appointments:");
                 while (data.next()) {
-                    System.out.println(
+                    Log.debug(
                         "ID: " + data.getInt("Appointment_ID") + 
                         ", PHN: " + data.getString("Personal_Health_No") +
                         ", Date: " + data.getDate("Appointment_Date") +
@@ -1237,7 +1298,7 @@ public class Main {
                 
                 return "{\"message\": \"Found " + totalRecords + " appointments. Check server console.\"}";
             } catch (SQLException e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 return "{\"error\": \"" + e.getMessage() + "\"}";
             }
         });
@@ -1247,20 +1308,20 @@ public class Main {
             res.type("application/json");
             String phn = req.params(":phn");
             
-            try (Connection conn = getConnection()) {
-                System.out.println("Checking appointments for PHN: " + phn);
+            try (Connection conn = getReadConnection()) {
+                Log.debug(() -> "Checking appointments for PHN: " + phn);
                 
                 String sql = "SELECT * FROM Appointment WHERE Personal_Health_No = ?";
                 try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                     pstmt.setString(1, phn);
-                    System.out.println("Executing query: " + sql + " with PHN: " + phn);
+                    Log.debug(() -> "Executing query: " + sql + " with PHN: " + phn);
                     
                     ResultSet rs = pstmt.executeQuery();
                     int count = 0;
                     
                     while (rs.next()) {
                         count++;
-                        System.out.println(String.format(
+                        Log.debug(String.format(
                             "Found appointment %d:\n" +
                             "ID: %d\n" +
                             "PHN: %s\n" +
@@ -1279,7 +1340,7 @@ public class Main {
                         ));
                     }
                     
-                    System.out.println("Total appointments found: " + count);
+                    Log.debug("Total appointments found: " + count);
                     return "{\"message\": \"Found " + count + " appointments. Check server console for details.\"}";
                 }
             } catch (SQLException e) {
@@ -1292,8 +1353,8 @@ public class Main {
                     e.getSQLState(),
                     e.getErrorCode()
                 );
-                System.out.println(errorMsg);
-                e.printStackTrace();
+                Log.debug(() -> errorMsg);
+                Log.error("Unhandled exception", e);
                 return "{\"error\": \"" + e.getMessage() + "\"}";
             }
         });
@@ -1308,8 +1369,11 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "SLMC Number is required"));
                 }
 
-                HealthcareProfessionalDAO professionalDAO = new HealthcareProfessionalDAO(connHolder[0]);
-                HealthcareProfessional professional = professionalDAO.getHealthcareProfessional(slmcNo);
+                HealthcareProfessional professional;
+                try (Connection conn = getReadConnection()) {
+                    HealthcareProfessionalDAO professionalDAO = new HealthcareProfessionalDAO(conn);
+                    professional = professionalDAO.getHealthcareProfessional(slmcNo);
+                }
 
                 if (professional != null) {
                     Map<String, Object> stats = new HashMap<>();
@@ -1327,7 +1391,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Healthcare Professional not found"));
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -1335,50 +1399,16 @@ public class Main {
 
         // Add these endpoints after the existing ones
         // Endpoint for requesting record access
-        get("/api/professional/patient-lookup", (req, res) -> {
-            res.type("application/json");
-            String searchTerm = req.queryParams("search");
-            
-            try (Connection conn = getConnection()) {
-                conn.setAutoCommit(true);
-                
-                String sql = "SELECT Personal_Health_No, Name, Date_of_Birth " +
-                            "FROM Patient " +
-                            "WHERE Personal_Health_No LIKE ? OR Name LIKE ?";
-                
-                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                    String searchPattern = "%" + searchTerm + "%";
-                    pstmt.setString(1, searchPattern);
-                    pstmt.setString(2, searchPattern);
-                    
-                    ResultSet rs = pstmt.executeQuery();
-                    
-                    if (rs.next()) {
-                        Map<String, Object> patient = new HashMap<>();
-                        patient.put("personalHealthNo", rs.getString("Personal_Health_No"));
-                        patient.put("name", rs.getString("Name"));
-                        patient.put("dateOfBirth", rs.getString("Date_of_Birth"));
-                        return gson.toJson(patient);
-                    } else {
-                        res.status(404);
-                        return gson.toJson(new ApiResponse("error", "Patient not found"));
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                res.status(500);
-                return gson.toJson(new ApiResponse("error", "Database error: " + e.getMessage()));
-            }
-        });
+        get("/api/professional/patient-lookup", Main::patientLookup);
 
         post("/api/professional/request-access", (req, res) -> {
             res.type("application/json");
             try {
                 String requestBody = req.body();
-                System.out.println("Request body: " + requestBody);
+                Log.debug(() -> "Request body: " + requestBody);
                 
                 JsonObject jsonRequest = JsonParser.parseString(requestBody).getAsJsonObject();
-                System.out.println("Parsed JSON request: " + jsonRequest);
+                Log.debug(() -> "Parsed JSON request: " + jsonRequest);
                 
                 RecordAccess recordAccess = new RecordAccess();
                 recordAccess.setPhn(jsonRequest.get("personalHealthNo").getAsString());
@@ -1412,45 +1442,39 @@ public class Main {
                 return gson.toJson(new ApiResponse("error", "SLMC number is required"));
             }
 
-            System.out.println("Fetching records for SLMC: " + slmcNo);
+            Log.debug(() -> "Fetching records for SLMC: " + slmcNo);
             
-            try (Connection conn = getConnection()) {
-                // Configure connection
-                conn.setAutoCommit(false);
-                conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
-                
-                // Disable statement cache
-                try (Statement stmt = conn.createStatement()) {
-                    stmt.execute("PRAGMA cache_size = 0");
-                    stmt.execute("PRAGMA temp_store = MEMORY");
-                }
-
-                // Get records
-                MedicalRecordDAO recordDAO = new MedicalRecordDAO(conn);
-                List<MedicalRecord> medicalRecords = recordDAO.getRecordsByProfessional(slmcNo);
-                System.out.println("Retrieved " + medicalRecords.size() + " medical records");
+            try {
+                // Get one keyset page of records (?limit=N&cursor=<nextCursor from the previous page>;
+                // without either, every record)
+                String cursor = req.queryParams("cursor");
+                int limit = Page.size(req.queryParams("limit"), cursor);
+                Page<MedicalRecord> recordPage = database.inReadTransaction(conn ->
+                    new MedicalRecordDAO(conn).getRecordsByProfessionalPage(slmcNo, cursor, limit));
+                List<MedicalRecord> medicalRecords = recordPage.getItems();
+                Log.debug(() -> "Retrieved " + medicalRecords.size() + " medical records");
 
                 // Get access records
                 List<Map<String, Object>> accessedRecords = new ArrayList<>();
                 if (recordAccessDAO != null) {
                     Map<String, List<Map<String, Object>>> accessData = recordAccessDAO.getRecordsData(slmcNo);
                     accessedRecords = accessData.get("accessedRecords");
-                    System.out.println("Retrieved " + accessedRecords.size() + " access records");
+                    Log.debug("Retrieved " + accessedRecords.size() + " access records");
                 }
 
-                // Commit transaction
-                conn.commit();
-                
                 // Build response
                 Map<String, Object> response = new HashMap<>();
                 response.put("medicalRecords", medicalRecords);
+                response.put("nextCursor", recordPage.getNextCursor());
                 response.put("accessedRecords", accessedRecords);
                 
                 return gson.toJson(response);
 
+            } catch (IllegalArgumentException e) {
+                res.status(400);
+                return gson.toJson(new ApiResponse("error", e.getMessage()));
             } catch (Exception e) {
-                System.err.println("Error fetching professional records: " + e.getMessage());
-                e.printStackTrace();
+                Log.error("Error fetching professional records: " + e.getMessage(), e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch records"));
             }
@@ -1463,10 +1487,18 @@ public class Main {
             String type = "PROFESSIONAL";
             
             try {
-                List<RecordSharing> records = recordSharingDAO.getSharedRecords(id, type);
-                return gson.toJson(records);
+                // Keyset paging: ?limit=N&cursor=<X-Next-Cursor from the previous page>; without either, every row
+                Page<RecordSharing> page = recordSharingDAO.getSharedRecordsPage(
+                    id, type, req.queryParams("cursor"), Page.size(req.queryParams("limit"), req.queryParams("cursor")));
+                if (page.getNextCursor() != null) {
+                    res.header("X-Next-Cursor", page.getNextCursor());
+                }
+                return gson.toJson(page.getItems());
+            } catch (IllegalArgumentException e) {
+                res.status(400);
+                return gson.toJson(new ApiResponse("error", e.getMessage()));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch shared records"));
             }
@@ -1478,10 +1510,18 @@ public class Main {
             String type = "INSTITUTE";
             
             try {
-                List<RecordSharing> records = recordSharingDAO.getSharedRecords(id, type);
-                return gson.toJson(records);
+                // Keyset paging: ?limit=N&cursor=<X-Next-Cursor from the previous page>; without either, every row
+                Page<RecordSharing> page = recordSharingDAO.getSharedRecordsPage(
+                    id, type, req.queryParams("cursor"), Page.size(req.queryParams("limit"), req.queryParams("cursor")));
+                if (page.getNextCursor() != null) {
+                    res.header("X-Next-Cursor", page.getNextCursor());
+                }
+                return gson.toJson(page.getItems());
+            } catch (IllegalArgumentException e) {
+                res.status(400);
+                return gson.toJson(new ApiResponse("error", e.getMessage()));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch shared records"));
             }
@@ -1500,7 +1540,7 @@ public class Main {
                 List<RecordRequest> requests = recordSharingDAO.getRecordRequests(userIdentifier, "PROFESSIONAL");
                 return gson.toJson(requests);
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch record requests"));
             }
@@ -1515,7 +1555,7 @@ public class Main {
                 List<RecordRequest> requests = recordSharingDAO.getRecordRequests(id, type);
                 return gson.toJson(requests);
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch record requests"));
             }
@@ -1523,7 +1563,7 @@ public class Main {
 
         post("/api/professional/request-record", (req, res) -> {
             res.type("application/json");
-            System.out.println("Received request body: " + req.body());
+            Log.debug(() -> "Received request body: " + req.body());
             
             try {
                 JsonObject requestBody = JsonParser.parseString(req.body()).getAsJsonObject();
@@ -1566,10 +1606,10 @@ public class Main {
                 request.setPurpose(getStringFromJson(requestBody, "purpose"));
                 request.setStatus("pending");
                 
-                System.out.println("Created request object: " + request.toString());
+                Log.debug(() -> "Created request object: " + request.toString());
                 
                 // Save the request using RecordSharingDAO
-                RecordSharingDAO recordSharingDAO = new RecordSharingDAO(dataSource);
+                RecordSharingDAO recordSharingDAO = new RecordSharingDAO(database);
                 boolean success = recordSharingDAO.createRecordRequest(request);
                 
                 if (success) {
@@ -1580,8 +1620,8 @@ public class Main {
                 }
                 
             } catch (Exception e) {
-                e.printStackTrace();
-                System.err.println("Error processing request: " + e.getMessage());
+                Log.error("Unhandled exception", e);
+                Log.error("Error processing request: " + e.getMessage());
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -1616,7 +1656,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Failed to create record request"));
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -1663,7 +1703,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Failed to share record"));
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -1710,7 +1750,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Failed to share record"));
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -1721,7 +1761,7 @@ public class Main {
         get("/api/professional/appointments", (req, res) -> {
             res.type("application/json");
             String slmcNo = req.queryParams("slmcNo");
-            System.out.println("Fetching appointments for SLMC: " + slmcNo);
+            Log.debug(() -> "Fetching appointments for SLMC: " + slmcNo);
             
             if (slmcNo == null || slmcNo.isEmpty()) {
                 res.status(400);
@@ -1731,46 +1771,24 @@ public class Main {
             }
 
             try {
-                String sql = """
-                    SELECT 
-                        a.*,
-                        p.Name as patient_name
-                    FROM Appointment a
-                    JOIN Patient p ON a.Personal_Health_No = p.Personal_Health_No
-                    WHERE a.SLMC_No = ?
-                    ORDER BY a.Appointment_Date DESC, a.Appointment_Time DESC
-                """;
-                
-                List<Map<String, Object>> appointments = new ArrayList<>();
-                
-                try (Connection conn = getConnection();
-                    PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                    
-                    pstmt.setString(1, slmcNo);
-                    ResultSet rs = pstmt.executeQuery();
-                    
-                    while (rs.next()) {
-                        Map<String, Object> appointment = new HashMap<>();
-                        appointment.put("id", rs.getInt("Appointment_ID"));
-                        appointment.put("patientPHN", rs.getString("Personal_Health_No"));
-                        appointment.put("patientName", rs.getString("patient_name"));
-                        appointment.put("appointmentDate", rs.getDate("Appointment_Date").toString());
-                        appointment.put("appointmentTime", rs.getTime("Appointment_Time").toString());
-                        appointment.put("purpose", rs.getString("Purpose"));
-                        appointment.put("status", rs.getString("Status"));
-                        appointment.put("notes", rs.getString("Notes"));
-                        appointment.put("healthInstituteNumber", rs.getString("Health_Institute_Number"));
-                        
-                        appointments.add(appointment);
-                    }
+                // Keyset paging: ?limit=N&cursor=<X-Next-Cursor from the previous page>; without either, every row
+                int limit = Page.size(req.queryParams("limit"), req.queryParams("cursor"));
+                Page<Map<String, Object>> page = new AppointmentDAO(database)
+                    .getAppointmentsByProfessionalPage(slmcNo, req.queryParams("cursor"), limit);
+
+                Log.debug(() -> "Found " + page.getItems().size() + " appointments");
+                if (page.getNextCursor() != null) {
+                    res.header("X-Next-Cursor", page.getNextCursor());
                 }
+                return gson.toJson(page.getItems());
                 
-                System.out.println("Found " + appointments.size() + " appointments");
-                return gson.toJson(appointments);
-                
+            } catch (IllegalArgumentException e) {
+                res.status(400);
+                Map<String, String> error = new HashMap<>();
+                error.put("error", e.getMessage());
+                return gson.toJson(error);
             } catch (SQLException e) {
-                System.err.println("Database error: " + e.getMessage());
-                e.printStackTrace();
+                Log.error("Database error: " + e.getMessage(), e);
                 res.status(500);
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "Failed to fetch appointments: " + e.getMessage());
@@ -1788,11 +1806,11 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "SLMC number is required"));
                 }
 
-                AppointmentDAO appointmentDAO = new AppointmentDAO();
+                AppointmentDAO appointmentDAO = new AppointmentDAO(database);
                 Vector<Appointment> requests = appointmentDAO.getPendingAppointments(slmcNo);
                 return gson.toJson(requests);
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch appointment requests"));
             }
@@ -1837,7 +1855,7 @@ public class Main {
                     jsonRequest.get("healthInstituteNumber").getAsString() : ""
                 );
 
-                AppointmentDAO appointmentDAO = new AppointmentDAO();
+                AppointmentDAO appointmentDAO = new AppointmentDAO(database);
                 appointmentDAO.insertAppointment(appointment);
                 
                 return gson.toJson(new ApiResponse("success", "Appointment created successfully"));
@@ -1845,7 +1863,7 @@ public class Main {
                 res.status(400);
                 return gson.toJson(new ApiResponse("error", "Invalid date format: " + e.getMessage()));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to create appointment: " + e.getMessage()));
             }
@@ -1857,7 +1875,7 @@ public class Main {
                 int appointmentId = Integer.parseInt(req.params(":id"));
                 JsonObject jsonRequest = JsonParser.parseString(req.body()).getAsJsonObject();
                 
-                AppointmentDAO appointmentDAO = new AppointmentDAO();
+                AppointmentDAO appointmentDAO = new AppointmentDAO(database);
                 Appointment appointment = appointmentDAO.getAppointmentById(appointmentId);
                 
                 if (appointment == null) {
@@ -1886,7 +1904,7 @@ public class Main {
                 
                 return gson.toJson(new ApiResponse("success", "Appointment updated successfully"));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to update appointment: " + e.getMessage()));
             }
@@ -1899,7 +1917,7 @@ public class Main {
                 JsonObject jsonRequest = JsonParser.parseString(req.body()).getAsJsonObject();
                 String status = jsonRequest.get("status").getAsString();
                 
-                AppointmentDAO appointmentDAO = new AppointmentDAO();
+                AppointmentDAO appointmentDAO = new AppointmentDAO(database);
                 Appointment appointment = appointmentDAO.getAppointmentById(appointmentId);
                 
                 if (appointment != null) {
@@ -1911,7 +1929,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Appointment not found"));
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to update appointment status: " + e.getMessage()));
             }
@@ -1928,7 +1946,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Institute Number is required"));
                 }
 
-                conn = getConnection();
+                conn = getReadConnection();
                 Map<String, Object> dashboardData = new HashMap<>();
 
                 // Get basic institute info
@@ -1961,8 +1979,9 @@ public class Main {
 
                 // Count today's appointments
                 try (PreparedStatement pstmt = conn.prepareStatement(
-                        "SELECT COUNT(*) FROM Appointment WHERE Health_Institute_Number = ? AND Appointment_Date = DATE('now')")) {
+                        "SELECT COUNT(*) FROM Appointment WHERE Health_Institute_Number = ? AND Appointment_Day = ?")) {
                     pstmt.setString(1, instituteNumber);
+                    pstmt.setLong(2, AppointmentDAO.today());
                     ResultSet rs = pstmt.executeQuery();
                     stats.put("todayAppointments", rs.next() ? rs.getInt(1) : 0);
                 }
@@ -1979,7 +1998,7 @@ public class Main {
                 return gson.toJson(dashboardData);
 
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", e.getMessage()));
             } finally {
@@ -1987,7 +2006,7 @@ public class Main {
                     try {
                         conn.close();
                     } catch (SQLException e) {
-                        System.err.println("Error closing connection: " + e.getMessage());
+                        Log.error("Error closing connection: " + e.getMessage());
                     }
                 }
             }
@@ -2008,7 +2027,7 @@ public class Main {
                 List<Map<String, Object>> professionals = staffDAO.getInstituteProfessionals(instituteNumber);
                 return gson.toJson(professionals);
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch professionals"));
             }
@@ -2032,7 +2051,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Professional not found or already associated"));
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -2057,7 +2076,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Professional not found"));
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -2070,7 +2089,7 @@ public class Main {
             
             try {
                 String sql = "SELECT SLMC_No, Name, Specialty, Role FROM Healthcare_Professional WHERE SLMC_No = ?";
-                try (Connection conn = getConnection();
+                try (Connection conn = getReadConnection();
                      PreparedStatement pstmt = conn.prepareStatement(sql)) {
                     
                     pstmt.setString(1, slmcNo);
@@ -2089,7 +2108,7 @@ public class Main {
                     }
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -2099,7 +2118,7 @@ public class Main {
         get("/api/institute/medical-records/:phn", (req, res) -> {
             res.type("application/json");
             String phn = req.params(":phn");
-            System.out.println("Institute endpoint - Fetching records for PHN: " + phn);
+            Log.debug(() -> "Institute endpoint - Fetching records for PHN: " + phn);
 
             try {
                 // Use the same query as professional endpoint
@@ -2111,7 +2130,7 @@ public class Main {
                     ORDER BY r.Date DESC
                 """;
 
-                try (Connection conn = dataSource.getConnection();
+                try (Connection conn = getReadConnection();
                      PreparedStatement pstmt = conn.prepareStatement(sql)) {
                     
                     pstmt.setString(1, phn);
@@ -2130,12 +2149,11 @@ public class Main {
                         records.add(record);
                     }
                     
-                    System.out.println("Retrieved " + records.size() + " records for PHN: " + phn);
+                    Log.debug(() -> "Retrieved " + records.size() + " records for PHN: " + phn);
                     return gson.toJson(records);
                 }
             } catch (Exception e) {
-                System.err.println("Error fetching medical records: " + e.getMessage());
-                e.printStackTrace();
+                Log.error("Error fetching medical records: " + e.getMessage(), e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch medical records"));
             }
@@ -2153,64 +2171,32 @@ public class Main {
         get("/api/institute/records-data", (req, res) -> {
             res.type("application/json");
             String instituteId = req.queryParams("instituteId");
-            System.out.println("Received records-data request for Institute: " + instituteId);
+            Log.debug(() -> "Received records-data request for Institute: " + instituteId);
 
             try {
-                RecordAccessDAO accessDAO = new RecordAccessDAO(dataSource);
+                RecordAccessDAO accessDAO = new RecordAccessDAO(database);
                 Map<String, List<Map<String, Object>>> response = accessDAO.getInstituteRecordsData(instituteId);
-                System.out.println("Fetched " + response.get("accessedRecords").size() + " accessed records for institute " + instituteId);
+                Log.debug(() -> "Fetched " + response.get("accessedRecords").size() + " accessed records for institute " + instituteId);
                 return gson.toJson(response);
             } catch (Exception e) {
-                System.err.println("Error fetching institute records: " + e.getMessage());
-                e.printStackTrace();
+                Log.error("Error fetching institute records: " + e.getMessage(), e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch records"));
             }
         });
 
         // Add patient lookup endpoint
-        get("/api/institute/patient-lookup", (req, res) -> {
-            res.type("application/json");
-            String searchTerm = req.queryParams("search");
-            
-            if (searchTerm == null || searchTerm.isEmpty()) {
-                res.status(400);
-                return gson.toJson(new ApiResponse("error", "Search term is required"));
-            }
-
-            try (Connection conn = getConnection()) {
-                String sql = "SELECT Personal_Health_No, Name FROM PATIENT WHERE Personal_Health_No = ?";
-                
-                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                    pstmt.setString(1, searchTerm);
-                    ResultSet rs = pstmt.executeQuery();
-                    
-                    if (rs.next()) {
-                        Map<String, String> patient = new HashMap<>();
-                        patient.put("personalHealthNo", rs.getString("Personal_Health_No"));
-                        patient.put("name", rs.getString("Name"));
-                        return gson.toJson(patient);
-                    } else {
-                        res.status(404);
-                        return gson.toJson(new ApiResponse("error", "Patient not found"));
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                res.status(500);
-                return gson.toJson(new ApiResponse("error", "Database error: " + e.getMessage()));
-            }
-        });
+        get("/api/institute/patient-lookup", Main::patientLookup);
 
         // Add request access endpoint for institutes
         post("/api/institute/request-access", (req, res) -> {
             res.type("application/json");
             try {
                 String requestBody = req.body();
-                System.out.println("Request body: " + requestBody);
+                Log.debug(() -> "Request body: " + requestBody);
                 
                 JsonObject jsonRequest = JsonParser.parseString(requestBody).getAsJsonObject();
-                System.out.println("Parsed JSON request: " + jsonRequest);
+                Log.debug(() -> "Parsed JSON request: " + jsonRequest);
                 
                 RecordAccess recordAccess = new RecordAccess();
                 recordAccess.setPhn(jsonRequest.get("personalHealthNo").getAsString());
@@ -2243,7 +2229,7 @@ public class Main {
                 return gson.toJson(new ApiResponse("error", "Institute ID is required"));
             }
 
-            try (Connection conn = getConnection()) {
+            try (Connection conn = getReadConnection()) {
                 String sql = 
                     "SELECT sr.*, mr.*, p.Name as patientName " +
                     "FROM Shared_Records sr " +
@@ -2276,7 +2262,7 @@ public class Main {
                 
                 return gson.toJson(sharedRecords);
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch shared records: " + e.getMessage()));
             }
@@ -2289,88 +2275,103 @@ public class Main {
             String status = req.queryParams("status");
             String search = req.queryParams("search");
             
-            System.out.println("Fetching appointments for institute: " + instituteId);
+            Log.debug(() -> "Fetching appointments for institute: " + instituteId);
             
             try {
-                Map<String, Object> response = new HashMap<>();
-                AppointmentDAO appointmentDAO = new AppointmentDAO();
-
-                // Get appointments with joined data
-                String sql = """
-                    SELECT 
-                        a.*,
-                        p.Name as patient_name,
-                        hp.Name as professional_name,
-                        a.Appointment_Date,
-                        a.Appointment_Time,
-                        datetime(a.Appointment_Date || ' ' || a.Appointment_Time) as appointment_datetime
-                    FROM Appointment a
-                    JOIN Patient p ON a.Personal_Health_No = p.Personal_Health_No
-                    JOIN Healthcare_Professional hp ON a.SLMC_No = hp.SLMC_No
-                    WHERE a.Health_Institute_Number = ?
-                """;
+                AppointmentDAO appointmentDAO = new AppointmentDAO(database);
+                // Counted before streaming starts so a failure here can still return a 500
+                int todayCount = appointmentDAO.getTodayAppointmentsCount(instituteId);
+
+                // Keyset paging as on the other lists: ?limit=N&cursor=<X-Next-Cursor from the
+                // previous page>; without either, every row
+                String cursor = req.queryParams("cursor");
+                int limit = Page.size(req.queryParams("limit"), cursor);
+
+                // The page of appointments whose names or purpose match ?search, found in the
+                // search index; /api/institute/search is the ranked variant
+                Page<Integer> matched = search != null && !search.isEmpty()
+                    ? ActivitySearch.matchAppointments(database, instituteId, status, search, cursor, limit)
+                    : null;
+
+                // A page is at most Page.MAX_SIZE rows, so it is built in memory and its next
+                // cursor goes out as a header before the body; the unpaged list has no next page
+                // and each row is written to the response as it is read
+                StringWriter buffer = limit == Page.ALL ? null : new StringWriter();
+                JsonWriter writer = buffer == null ? JsonStreamer.open(res) : new JsonWriter(buffer);
+                DateTimeFormatter isoUtc = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+                    .withZone(ZoneOffset.UTC);
+                writer.beginObject();
+                writer.name("appointments").beginArray();
+                String nextCursor;
+                if (matched == null) {
+                    nextCursor = appointmentDAO.streamAppointmentsByInstitute(instituteId, status, cursor, limit,
+                        rs -> writeInstituteAppointment(writer, rs, isoUtc));
+                } else {
+                    appointmentDAO.streamAppointmentsByIds(instituteId, matched.getItems(),
+                        rs -> writeInstituteAppointment(writer, rs, isoUtc));
+                    nextCursor = matched.getNextCursor();
+                }
+                writer.endArray();
+                writer.name("todayCount").value(todayCount);
+                writer.endObject();
 
-                if (status != null && !status.equals("all")) {
-                    sql += " AND a.Status = ?";
+                Log.debug(() -> "Listed appointments for institute: " + instituteId);
+                if (buffer == null) {
+                    return JsonStreamer.finish(writer);
                 }
-                if (search != null && !search.isEmpty()) {
-                    sql += " AND (p.Name LIKE ? OR hp.Name LIKE ? OR a.Purpose LIKE ?)";
+                if (nextCursor != null) {
+                    res.header("X-Next-Cursor", nextCursor);
                 }
-                sql += " ORDER BY a.Appointment_Date DESC, a.Appointment_Time DESC";
-
-                List<Map<String, Object>> appointments = new ArrayList<>();
-                try (PreparedStatement pstmt = connHolder[0].prepareStatement(sql)) {
-                    int paramIndex = 1;
-                    pstmt.setString(paramIndex++, instituteId);
-                    
-                    if (status != null && !status.equals("all")) {
-                        pstmt.setString(paramIndex++, status);
-                    }
-                    if (search != null && !search.isEmpty()) {
-                        String searchPattern = "%" + search + "%";
-                        pstmt.setString(paramIndex++, searchPattern);
-                        pstmt.setString(paramIndex++, searchPattern);
-                        pstmt.setString(paramIndex++, searchPattern);
-                    }
-
-                    ResultSet rs = pstmt.executeQuery();
-                    while (rs.next()) {
-                        Map<String, Object> appointment = new HashMap<>();
-                        appointment.put("id", rs.getInt("Appointment_ID"));
-                        appointment.put("patientPHN", rs.getString("Personal_Health_No"));
-                        appointment.put("patientName", rs.getString("patient_name"));
-                        appointment.put("professionalId", rs.getString("SLMC_No"));
-                        appointment.put("professionalName", rs.getString("professional_name"));
-                        appointment.put("purpose", rs.getString("Purpose"));
-                        appointment.put("status", rs.getString("Status"));
-                        
-                        // Format the date and time properly
-                        java.sql.Date appointmentDate = rs.getDate("Appointment_Date");
-                        java.sql.Time appointmentTime = rs.getTime("Appointment_Time");
-                        
-                        if (appointmentDate != null && appointmentTime != null) {
-                            // Format as ISO string
-                            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-                            sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-                            java.util.Date combinedDate = new java.util.Date(
-                                appointmentDate.getTime() + appointmentTime.getTime() % (24*60*60*1000)
-                            );
-                            appointment.put("dateTime", sdf.format(combinedDate));
-                        }
-                        
-                        appointments.add(appointment);
-                        System.out.println("Appointment datetime: " + appointment.get("dateTime"));
-                    }
+                writer.flush();
+                return buffer.toString();
+            } catch (IllegalArgumentException e) {
+                res.status(400);
+                return gson.toJson(new ApiResponse("error", e.getMessage()));
+            } catch (Exception e) {
+                Log.error("Unhandled exception", e);
+                if (res.raw().isCommitted()) {
+                    return ""; // Part of the body is already on the wire
                 }
+                res.raw().resetBuffer();
+                res.status(500);
+                return gson.toJson(new ApiResponse("error", "Failed to fetch appointments: " + e.getMessage()));
+            }
+        });
 
-                response.put("appointments", appointments);
-                response.put("todayCount", appointmentDAO.getTodayAppointmentsCount(instituteId));
-                
+        // Search-as-you-type over the institute's appointments and medical records
+        get("/api/institute/search", (req, res) -> {
+            res.type("application/json");
+            String instituteId = req.queryParams("instituteId");
+            String query = req.queryParams("q");
+            if (instituteId == null || query == null || query.trim().isEmpty()) {
+                res.status(400);
+                return gson.toJson(new ApiResponse("error", "instituteId and q are required"));
+            }
+
+            try {
+                int limit = req.queryParams("limit") == null ? 10 : Page.size(req.queryParams("limit"));
+                JsonObject response = new JsonObject();
+                JsonArray appointments = new JsonArray();
+                for (TextIndex.Hit<ActivitySearch.AppointmentEntry> hit
+                        : ActivitySearch.searchAppointments(database, instituteId, req.queryParams("status"), query, limit)) {
+                    JsonObject item = gson.toJsonTree(hit.value).getAsJsonObject();
+                    item.addProperty("score", hit.score);
+                    appointments.add(item);
+                }
+                JsonArray records = new JsonArray();
+                for (TextIndex.Hit<ActivitySearch.RecordEntry> hit
+                        : ActivitySearch.searchRecords(database, instituteId, query, limit)) {
+                    JsonObject item = gson.toJsonTree(hit.value).getAsJsonObject();
+                    item.addProperty("score", hit.score);
+                    records.add(item);
+                }
+                response.add("appointments", appointments);
+                response.add("records", records);
                 return gson.toJson(response);
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
-                return gson.toJson(new ApiResponse("error", "Failed to fetch appointments: " + e.getMessage()));
+                return gson.toJson(new ApiResponse("error", "Search failed: " + e.getMessage()));
             }
         });
 
@@ -2378,7 +2379,7 @@ public class Main {
         res.type("application/json");
         try {
             JsonObject jsonRequest = JsonParser.parseString(req.body()).getAsJsonObject();
-            System.out.println("Received appointment request: " + jsonRequest);
+            Log.debug(() -> "Received appointment request: " + jsonRequest);
 
             // Create new appointment
             Appointment appointment = new Appointment();
@@ -2396,12 +2397,12 @@ public class Main {
             
             appointment.setStatus("scheduled");
             
-            AppointmentDAO appointmentDAO = new AppointmentDAO();
+            AppointmentDAO appointmentDAO = new AppointmentDAO(database);
             appointmentDAO.insertAppointment(appointment);
             
             return gson.toJson(new ApiResponse("success", "Appointment created successfully"));
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.error("Unhandled exception", e);
             res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to create appointment: " + e.getMessage()));
             }
@@ -2413,7 +2414,7 @@ public class Main {
                 int appointmentId = Integer.parseInt(req.params(":id"));
                 JsonObject jsonRequest = JsonParser.parseString(req.body()).getAsJsonObject();
                 
-                AppointmentDAO appointmentDAO = new AppointmentDAO();
+                AppointmentDAO appointmentDAO = new AppointmentDAO(database);
                 Appointment appointment = appointmentDAO.getAppointmentById(appointmentId);
                 
                 if (appointment == null) {
@@ -2438,7 +2439,7 @@ public class Main {
                 appointmentDAO.updateAppointment(appointment);
                 return gson.toJson(new ApiResponse("success", "Appointment updated successfully"));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to update appointment: " + e.getMessage()));
             }
@@ -2448,11 +2449,11 @@ public class Main {
             res.type("application/json");
             try {
                 int appointmentId = Integer.parseInt(req.params(":id"));
-                AppointmentDAO appointmentDAO = new AppointmentDAO();
+                AppointmentDAO appointmentDAO = new AppointmentDAO(database);
                 appointmentDAO.deleteAppointment(appointmentId);
                 return gson.toJson(new ApiResponse("success", "Appointment deleted successfully"));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to delete appointment: " + e.getMessage()));
             }
@@ -2462,48 +2463,25 @@ public class Main {
             res.type("application/json");
             try {
                 String instituteId = req.queryParams("instituteId");
-                System.out.println("Fetching dashboard stats for institute: " + instituteId);
+                Log.debug(() -> "Fetching dashboard stats for institute: " + instituteId);
                 
-                Map<String, Object> stats = new HashMap<>();
-
-                // Modified SQL to handle timestamp format
-                String countSql = """
-                    SELECT COUNT(*) as count 
-                    FROM Appointment 
-                    WHERE Health_Institute_Number = ? 
-                    AND datetime(Appointment_Date/1000, 'unixepoch') LIKE '2024-11-12%'
-                    AND Status != 'cancelled'
-                """;
+                return AnalyticsCache.get(AnalyticsRollup.INSTITUTE, instituteId, "dashboard-stats", () -> {
+                    Map<String, Object> stats = new HashMap<>();
 
-                try (Connection conn = getConnection();
-                     PreparedStatement countStmt = conn.prepareStatement(countSql)) {
-                    countStmt.setString(1, instituteId);
-                    ResultSet countRs = countStmt.executeQuery();
-                    int count = countRs.next() ? countRs.getInt("count") : 0;
-                    stats.put("todayCount", count);
-                    System.out.println("Today's appointment count for institute " + instituteId + ": " + count);
-                    
-                    // Debug query
-                    String debugSql = """
-                        SELECT 
-                            Appointment_Date,
-                            datetime(Appointment_Date/1000, 'unixepoch') as formatted_date
-                        FROM Appointment 
-                        WHERE Health_Institute_Number = ?
-                    """;
-                    try (PreparedStatement debugStmt = conn.prepareStatement(debugSql)) {
-                        debugStmt.setString(1, instituteId);
-                        ResultSet debugRs = debugStmt.executeQuery();
-                        while (debugRs.next()) {
-                            System.out.println("Raw date: " + debugRs.getString("Appointment_Date") + 
-                                             " Formatted: " + debugRs.getString("formatted_date"));
-                        }
+                    try (Connection conn = getReadConnection();
+                         PreparedStatement countStmt = conn.prepareStatement(AppointmentDAO.TODAY_COUNT_SQL)) {
+                        countStmt.setString(1, instituteId);
+                        countStmt.setLong(2, AppointmentDAO.today());
+                        ResultSet countRs = countStmt.executeQuery();
+                        int count = countRs.next() ? countRs.getInt("count") : 0;
+                        stats.put("todayCount", count);
+                        Log.debug(() -> "Today's appointment count for institute " + instituteId + ": " + count);
                     }
-                }
 
-                return gson.toJson(stats);
+                    return stats;
+                });
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch dashboard stats: " + e.getMessage()));
             }
@@ -2539,8 +2517,11 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Invalid number format for height or weight"));
                 }
 
-                PatientDAO patientDAO = new PatientDAO(connHolder[0]);
-                boolean updated = patientDAO.updatePatientProfile(patient);
+                boolean updated;
+                try (Connection conn = getWriteConnection()) {
+                    PatientDAO patientDAO = new PatientDAO(conn);
+                    updated = patientDAO.updatePatientProfile(patient);
+                }
                 
                 if (updated) {
                     return gson.toJson(new ApiResponse("success", "Profile updated successfully"));
@@ -2549,7 +2530,7 @@ public class Main {
                     return gson.toJson(new ApiResponse("error", "Failed to update profile"));
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Server error: " + e.getMessage()));
             }
@@ -2570,27 +2551,28 @@ public class Main {
                 }
 
                 String sql = "DELETE FROM Appointment WHERE Appointment_ID = ?";
-                
-                try (Connection conn = getConnection();
-                     PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                    
-                    pstmt.setInt(1, Integer.parseInt(appointmentId));
-                    int affectedRows = pstmt.executeUpdate();
-                    
-                    if (affectedRows > 0) {
-                        Map<String, String> response = new HashMap<>();
-                        response.put("message", "Appointment deleted successfully");
-                        return gson.toJson(response);
-                    } else {
-                        res.status(404);
-                        Map<String, String> error = new HashMap<>();
-                        error.put("error", "Appointment not found");
-                        return gson.toJson(error);
+                int id = Integer.parseInt(appointmentId);
+
+                int affectedRows = database.inWriteTransaction(conn -> {
+                    AnalyticsRollup.removeAppointment(conn, id);
+                    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                        pstmt.setInt(1, id);
+                        return pstmt.executeUpdate();
                     }
+                });
+
+                if (affectedRows > 0) {
+                    Map<String, String> response = new HashMap<>();
+                    response.put("message", "Appointment deleted successfully");
+                    return gson.toJson(response);
+                } else {
+                    res.status(404);
+                    Map<String, String> error = new HashMap<>();
+                    error.put("error", "Appointment not found");
+                    return gson.toJson(error);
                 }
             } catch (SQLException e) {
-                System.err.println("Database error: " + e.getMessage());
-                e.printStackTrace();
+                Log.error("Database error: " + e.getMessage(), e);
                 res.status(500);
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "Failed to delete appointment: " + e.getMessage());
@@ -2606,12 +2588,11 @@ public class Main {
         // endpoint for healthcare professionals to add medical records
         post("/api/professional/medical-records", (req, res) -> {
             res.type("application/json");
-            Connection conn = null;
             
             try {
                 // Get request body and parse it
                 String requestBody = req.body();
-                System.out.println("Received medical record data: " + requestBody);
+                Log.debug(() -> "Received medical record data: " + requestBody);
                 
                 // Create a custom Gson instance that ignores the recordId field
                 Gson customGson = new GsonBuilder()
@@ -2620,39 +2601,16 @@ public class Main {
                 
                 MedicalRecord record = customGson.fromJson(requestBody, MedicalRecord.class);
                 
-                // Get a fresh connection
-                conn = getConnection();
-                conn.setAutoCommit(false);
-                
-                // Create DAO and insert record
-                MedicalRecordDAO recordDAO = new MedicalRecordDAO(conn);
-                recordDAO.insertMedicalRecord(record);
-                
-                // Commit the transaction
-                conn.commit();
+                // Concurrent inserts are batched into one commit by the group commit writer
+                int recordId = MedicalRecordDAO.insertMedicalRecordGrouped(database.getGroupCommitWriter(), record).get();
                 
                 // Return success response with the new record ID
-                return gson.toJson(new ApiResponse("success", "Record added successfully"));
+                return gson.toJson(new ApiResponse("success", "Record added successfully", recordId));
                 
             } catch (Exception e) {
-                if (conn != null) {
-                    try {
-                        conn.rollback();
-                    } catch (SQLException ex) {
-                        ex.printStackTrace();
-                    }
-                }
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to add record: " + e.getMessage()));
-            } finally {
-                if (conn != null) {
-                    try {
-                        conn.close();
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                    }
-                }
             }
         });
 
@@ -2661,65 +2619,173 @@ public class Main {
             res.type("application/json");
             String phn = req.params(":phn");
             
-            try (Connection conn = getConnection()) {
+            try (Connection conn = getReadConnection()) {
                 String sql = "SELECT * FROM Medical_Record WHERE Personal_Health_No = ?";
                 try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                     pstmt.setString(1, phn);
                     ResultSet rs = pstmt.executeQuery();
                     
-                    System.out.println("\nChecking records for PHN: " + phn);
+                    Log.debug(() -> "Checking records for PHN: " + phn);
                     while (rs.next()) {
-                        System.out.println("Record ID: " + rs.getInt("Record_ID"));
-                        System.out.println("Summary: " + rs.getString("Summary"));
-                        System.out.println("Date: " + rs.getDate("Date_of_Visit"));
-                        System.out.println("Type: " + rs.getString("Type"));
-                        System.out.println("--------------------");
+                        Log.debug("Record ID: " + rs.getInt("Record_ID"));
+                        Log.debug("Summary: " + rs.getString("Summary"));
+                        Log.debug("Date: " + rs.getDate("Date_of_Visit"));
+                        Log.debug("Type: " + rs.getString("Type"));
+                        Log.debug("--------------------");
                     }
                 }
                 return gson.toJson(
                     new ApiResponse("success", "Records checked - see server console"));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to check records: " + e.getMessage()));
             }
         });
 
-        // After database initialization
-        initializeDataSource();
-        
-        try (Connection conn = getConnection()) {
-            // Create indexes
-            createIndexes(conn);
-            
-            // Optimize database
-            try (Statement stmt = conn.createStatement()) {
-                // Enable memory-mapped I/O
-                stmt.execute("PRAGMA mmap_size = 30000000000");
-                
-                // Set page size for better performance
-                stmt.execute("PRAGMA page_size = 4096");
-                
-                // Enable Write-Ahead Logging
-                stmt.execute("PRAGMA journal_mode = WAL");
-                
-                // Set cache size (in pages)
-                stmt.execute("PRAGMA cache_size = -2000");
-                
-                // Set synchronous mode
-                stmt.execute("PRAGMA synchronous = NORMAL");
-                
-                // Store temp tables and indices in memory
-                stmt.execute("PRAGMA temp_store = MEMORY");
-                
-                // Analyze the database for query optimization
-                stmt.execute("ANALYZE");
+        // Connection pool metrics, used to size the pool for each hospital
+        get("/api/admin/db-metrics", (req, res) -> {
+            res.type("application/json");
+            return gson.toJson(database.getPoolMetrics());
+        });
+
+        // Dashboard cache hit ratio and footprint, to check -Dumrs.analytics.cache* sizing
+        get("/api/admin/analytics-cache-metrics", (req, res) -> {
+            res.type("application/json");
+            return gson.toJson(AnalyticsCache.getMetrics());
+        });
+
+        // Cross-institute month-end reports, served from the in-memory column store when the
+        // server runs with -Dumrs.analytics.columnar=true.
+        // ?from=YYYY-MM&to=YYYY-MM, default the last 12 months
+        get("/api/admin/reports/monthly-trends", (req, res) -> {
+            res.type("application/json");
+            if (columnarStore == null) {
+                res.status(404);
+                return gson.toJson(new ApiResponse("error", "Columnar reports are disabled"));
             }
-            
-        } catch (SQLException e) {
-            System.err.println("Error optimizing database: " + e.getMessage());
-            e.printStackTrace();
-        }
+            try {
+                YearMonth to = req.queryParams("to") != null ? YearMonth.parse(req.queryParams("to")) : YearMonth.now();
+                YearMonth from = req.queryParams("from") != null ? YearMonth.parse(req.queryParams("from")) : to.minusMonths(11);
+                Map<String, Object> report = new HashMap<>();
+                report.put("monthlyTrends", columnarStore.getMonthlyTrends(from, to));
+                report.put("snapshot", columnarStore.getMetrics());
+                return gson.toJson(report);
+            } catch (java.time.format.DateTimeParseException e) {
+                res.status(400);
+                return gson.toJson(new ApiResponse("error", "from and to must be YYYY-MM"));
+            } catch (SQLException e) {
+                Log.error("Unhandled exception", e);
+                res.status(500);
+                return gson.toJson(new ApiResponse("error", "Failed to build report: " + e.getMessage()));
+            }
+        });
+
+        // ?from=YYYY-MM-DD&to=YYYY-MM-DD, default the last 30 days
+        get("/api/admin/reports/department-stats", (req, res) -> {
+            res.type("application/json");
+            if (columnarStore == null) {
+                res.status(404);
+                return gson.toJson(new ApiResponse("error", "Columnar reports are disabled"));
+            }
+            try {
+                LocalDate to = req.queryParams("to") != null ? LocalDate.parse(req.queryParams("to")) : LocalDate.now();
+                LocalDate from = req.queryParams("from") != null ? LocalDate.parse(req.queryParams("from")) : to.minusDays(30);
+                Map<String, Object> report = new HashMap<>();
+                report.put("departmentStats", columnarStore.getDepartmentStats(from, to));
+                report.put("snapshot", columnarStore.getMetrics());
+                return gson.toJson(report);
+            } catch (java.time.format.DateTimeParseException e) {
+                res.status(400);
+                return gson.toJson(new ApiResponse("error", "from and to must be YYYY-MM-DD"));
+            } catch (SQLException e) {
+                Log.error("Unhandled exception", e);
+                res.status(500);
+                return gson.toJson(new ApiResponse("error", "Failed to build report: " + e.getMessage()));
+            }
+        });
+
+        // Password hashing pool: queue depth, rejections and hash latency histograms
+        get("/api/admin/auth-metrics", (req, res) -> {
+            res.type("application/json");
+            Map<String, Object> metrics = PasswordHasher.getMetrics();
+            metrics.put("twoFactor", TwoFactorStore.getMetrics());
+            return gson.toJson(metrics);
+        });
+
+        // EXPLAIN QUERY PLAN of the hot DAO reads, with full scans and temp B-trees called out
+        get("/api/admin/query-plans", (req, res) -> {
+            res.type("application/json");
+            try (Connection conn = getReadConnection()) {
+                List<Map<String, Object>> plans = new ArrayList<>();
+                for (QueryPlanAdvisor.Finding finding : QueryPlanAdvisor.explainAll(conn)) {
+                    plans.add(finding.toMap());
+                }
+                return gson.toJson(plans);
+            } catch (SQLException e) {
+                Log.error("Unhandled exception", e);
+                res.status(500);
+                return gson.toJson(new ApiResponse("error", "Failed to explain queries: " + e.getMessage()));
+            }
+        });
+
+        // Jetty worker pool usage, to check -Dumrs.http.* sizing under load
+        get("/api/admin/http-metrics", (req, res) -> {
+            res.type("application/json");
+            return gson.toJson(HttpServerConfig.getMetrics());
+        });
+
+        // Bulk import for onboarding: POST NDJSON (default) or CSV (?format=csv or text/csv)
+        // to /api/admin/import/patients or /api/admin/import/medical-records.
+        // ?onConflict=skip ignores rows that collide with existing keys; pass ?importId=... to
+        // poll GET /api/admin/imports/:id while the upload is still streaming.
+        // Imports write patients and records wholesale, so they need an admin or institute session.
+        before("/api/admin/import/*", (req, res) -> requireSession(req, res, "admin", "institute"));
+        before("/api/admin/imports/*", (req, res) -> requireSession(req, res, "admin", "institute"));
+        post("/api/admin/import/:target", (req, res) -> {
+            res.type("application/json");
+            String target = req.params(":target");
+            if (!BulkImporter.isSupportedTarget(target)) {
+                res.status(404);
+                return gson.toJson(new ApiResponse("error", "Unsupported import target: " + target));
+            }
+
+            String format = req.queryParams("format");
+            if (format == null) {
+                String contentType = req.contentType();
+                format = contentType != null && contentType.startsWith("text/csv") ? "csv" : "ndjson";
+            }
+            boolean skipConflicts = "skip".equalsIgnoreCase(req.queryParams("onConflict"));
+
+            try (java.io.Reader body = new java.io.InputStreamReader(
+                    req.raw().getInputStream(), java.nio.charset.StandardCharsets.UTF_8)) {
+                BulkImporter.ImportProgress progress = bulkImporter.importRows(
+                    req.queryParams("importId"), target, format, body, skipConflicts);
+                return gson.toJson(progress.toMap());
+            } catch (BulkImporter.ImportRunning e) {
+                res.status(409);
+                return gson.toJson(new ApiResponse("error", e.getMessage()));
+            } catch (IllegalArgumentException | com.google.gson.JsonParseException e) {
+                res.status(400);
+                return gson.toJson(new ApiResponse("error", "Import failed: " + e.getMessage()));
+            } catch (Exception e) {
+                Log.error("Unhandled exception", e);
+                res.status(500);
+                return gson.toJson(new ApiResponse("error", "Import failed: " + e.getMessage()));
+            }
+        });
+
+        // Progress of a running or finished import
+        get("/api/admin/imports/:id", (req, res) -> {
+            res.type("application/json");
+            BulkImporter.ImportProgress progress = bulkImporter.getProgress(req.params(":id"));
+            if (progress == null) {
+                res.status(404);
+                return gson.toJson(new ApiResponse("error", "Import not found"));
+            }
+            return gson.toJson(progress.toMap());
+        });
+
 
         // Update the analytics endpoint
         get("/api/professional/analytics", (req, res) -> {
@@ -2727,13 +2793,17 @@ public class Main {
             String slmcNo = req.queryParams("slmcNo");
             String timeRange = req.queryParams("range");
             int months = timeRange != null ? Integer.parseInt(timeRange.replace("m", "")) : 12;
+            // ?exact=true counts distinct patients exactly instead of from the sketches
+            boolean exact = req.queryParams("exact") != null
+                ? Boolean.parseBoolean(req.queryParams("exact"))
+                : AnalyticsRollup.EXACT_DISTINCT_DEFAULT;
             
             try {
-                AnalyticsDAO analyticsDAO = new AnalyticsDAO();
-                Map<String, Object> analytics = analyticsDAO.getAnalytics(slmcNo, months);
-                return gson.toJson(analytics);
+                AnalyticsDAO analyticsDAO = new AnalyticsDAO(database);
+                return AnalyticsCache.get(AnalyticsRollup.PROFESSIONAL, slmcNo, "analytics:" + months + ":" + exact,
+                    () -> analyticsDAO.getAnalytics(slmcNo, months, exact));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to generate analytics: " + e.getMessage()));
             }
@@ -2746,16 +2816,22 @@ public class Main {
             
             try {
                 // Get patient details first
-                PatientDAO patientDAO = new PatientDAO(connHolder[0]);
-                Patient patient = patientDAO.getPatient(personalHealthNo);
+                Patient patient;
+                try (Connection conn = getReadConnection()) {
+                    PatientDAO patientDAO = new PatientDAO(conn);
+                    patient = patientDAO.getPatient(personalHealthNo);
+                }
                 dashboardData.put("patient", patient);  // Added this line
                 
                 // Get recent medical records (limited to 3)
-                MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(connHolder[0]);
-                List<MedicalRecord> recentRecords = medicalRecordDAO.getRecentRecords(personalHealthNo, 3);
+                List<MedicalRecord> recentRecords;
+                try (Connection conn = getReadConnection()) {
+                    MedicalRecordDAO medicalRecordDAO = new MedicalRecordDAO(conn);
+                    recentRecords = medicalRecordDAO.getRecentRecords(personalHealthNo, 3);
+                }
                 
                 // Get upcoming appointments (limited to 3)
-                AppointmentDAO appointmentDAO = new AppointmentDAO();
+                AppointmentDAO appointmentDAO = new AppointmentDAO(database);
                 Vector<Appointment> upcomingAppointments = appointmentDAO.getUpcomingAppointmentsForPatient(personalHealthNo);
                 
                 // Format the records to match frontend expectations
@@ -2788,7 +2864,7 @@ public class Main {
                 return gson.toJson(dashboardData);
                 
             } catch (SQLException e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Database error: " + e.getMessage()));
             }
@@ -2799,38 +2875,22 @@ public class Main {
             res.type("application/json");
             String instituteId = req.queryParams("instituteId");
             int days = Integer.parseInt(req.queryParams("days"));
+            boolean exact = req.queryParams("exact") != null
+                ? Boolean.parseBoolean(req.queryParams("exact"))
+                : AnalyticsRollup.EXACT_DISTINCT_DEFAULT;
             
             try {
-                AnalyticsDAO analyticsDAO = new AnalyticsDAO();
-                Map<String, Object> analytics = analyticsDAO.getInstituteAnalytics(instituteId, days);
-                return gson.toJson(analytics);
+                AnalyticsDAO analyticsDAO = new AnalyticsDAO(database);
+                return AnalyticsCache.get(AnalyticsRollup.INSTITUTE, instituteId, "analytics:" + days + ":" + exact,
+                    () -> analyticsDAO.getInstituteAnalytics(instituteId, days, exact));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.error("Unhandled exception", e);
                 res.status(500);
                 return gson.toJson(new ApiResponse("error", "Failed to fetch institute analytics: " + e.getMessage()));
             }
         });
     }
 
-    private static void createIndexes(Connection conn) throws SQLException {
-        String[] indexes = {
-            "CREATE INDEX IF NOT EXISTS idx_medical_record_phn ON Medical_Record(Personal_Health_No)",
-            "CREATE INDEX IF NOT EXISTS idx_medical_record_slmc ON Medical_Record(SLMC_No)",
-            "CREATE INDEX IF NOT EXISTS idx_medical_record_date ON Medical_Record(Date_of_Visit)",
-            "CREATE INDEX IF NOT EXISTS idx_appointment_phn ON Appointment(Personal_Health_No)",
-            "CREATE INDEX IF NOT EXISTS idx_appointment_date ON Appointment(Appointment_Date)",
-            "CREATE INDEX IF NOT EXISTS idx_record_access_phn ON Record_Access_Requests(Personal_Health_No)",
-            "CREATE INDEX IF NOT EXISTS idx_record_access_slmc ON Record_Access_Requests(SLMC_No)"
-        };
-        
-        try (Statement stmt = conn.createStatement()) {
-            for (String index : indexes) {
-                stmt.execute(index);
-            }
-        }
-    }
-
-
     // Simple API response class
     private static class ApiResponse {
         private String status;
@@ -2876,12 +2936,116 @@ public class Main {
         }
     }
 
+    // Signed session token for the Login_2FA row a login was verified against
+    private static String issueToken(Login2FA userLogin) {
+        return SessionTokens.issue(userLogin.getUserType(), userLogin.getUserIdentifier(), userLogin.getLoginUsername());
+    }
+
+    // Patients matching ?search= by PHN, NIC or name. The best match stays at the top level
+    // for the portals' single-result lookup; every match up to ?limit= is under candidates.
+    private static Object patientLookup(spark.Request req, spark.Response res) {
+        res.type("application/json");
+        String searchTerm = req.queryParams("search");
+        if (searchTerm == null || searchTerm.trim().isEmpty()) {
+            res.status(400);
+            return gson.toJson(new ApiResponse("error", "Search term is required"));
+        }
+
+        try {
+            int limit = req.queryParams("limit") == null ? PatientSearch.DEFAULT_LIMIT : Page.size(req.queryParams("limit"));
+            List<TextIndex.Hit<PatientSearch.Candidate>> hits = PatientSearch.search(database, searchTerm, limit);
+            if (hits.isEmpty()) {
+                res.status(404);
+                return gson.toJson(new ApiResponse("error", "Patient not found"));
+            }
+
+            List<Map<String, Object>> candidates = new ArrayList<>();
+            for (TextIndex.Hit<PatientSearch.Candidate> hit : hits) {
+                Map<String, Object> candidate = new LinkedHashMap<>();
+                candidate.put("personalHealthNo", hit.value.getPersonalHealthNo());
+                candidate.put("name", hit.value.getName());
+                candidate.put("dateOfBirth", hit.value.getDateOfBirth());
+                candidate.put("score", hit.score);
+                candidates.add(candidate);
+            }
+            // The top-level patient is what the portals open, so it is only filled in when the
+            // search names one patient by identifier; otherwise the client picks a candidate
+            Map<String, Object> response = new LinkedHashMap<>();
+            PatientSearch.Candidate identified = PatientSearch.identifiedBy(hits, searchTerm);
+            if (identified != null) {
+                response.put("personalHealthNo", identified.getPersonalHealthNo());
+                response.put("name", identified.getName());
+                response.put("dateOfBirth", identified.getDateOfBirth());
+            }
+            response.put("candidates", candidates);
+            return gson.toJson(response);
+        } catch (Exception e) {
+            Log.error("Unhandled exception", e);
+            res.status(500);
+            return gson.toJson(new ApiResponse("error", "Database error: " + e.getMessage()));
+        }
+    }
+
+    // One row of AppointmentDAO.instituteListSql as an /api/institute/appointments entry
+    private static void writeInstituteAppointment(JsonWriter writer, ResultSet rs, DateTimeFormatter isoUtc)
+            throws IOException, SQLException {
+        writer.beginObject();
+        writer.name("id").value(rs.getInt("Appointment_ID"));
+        writer.name("patientPHN").value(rs.getString("Personal_Health_No"));
+        writer.name("patientName").value(rs.getString("patient_name"));
+        writer.name("professionalId").value(rs.getString("SLMC_No"));
+        writer.name("professionalName").value(rs.getString("professional_name"));
+        writer.name("purpose").value(rs.getString("Purpose"));
+        writer.name("status").value(rs.getString("Status"));
+
+        // Local date and time of the appointment as an ISO instant
+        long day = rs.getLong("Appointment_Day");
+        int minute = rs.getInt("Appointment_Minute");
+        if (day != AppointmentDAO.UNKNOWN && minute != AppointmentDAO.UNKNOWN) {
+            LocalDateTime dateTime = LocalDate.ofEpochDay(day).atTime(minute / 60, minute % 60);
+            writer.name("dateTime").value(isoUtc.format(dateTime.atZone(ZoneId.systemDefault())));
+        }
+        writer.endObject();
+    }
+
+    // Halts with 401 when the request has no session and 403 when the session's user type is
+    // not one of userTypes
+    private static SessionTokens.Session requireSession(spark.Request req, spark.Response res, String... userTypes) {
+        SessionTokens.Session session = SessionTokens.fromRequest(req);
+        res.type("application/json");
+        if (session == null) {
+            halt(401, gson.toJson(new ApiResponse("error", "Authentication required")));
+        }
+        for (String userType : userTypes) {
+            if (userType.equals(session.getUserType())) {
+                return session;
+            }
+        }
+        halt(403, gson.toJson(new ApiResponse("error", "Not allowed for " + session.getUserType() + " accounts")));
+        return null;
+    }
+
+    // The password hashing queue is full; ask the client to back off briefly
+    private static String tooManyRequests(spark.Response res, PasswordHasher.Busy e) {
+        Log.warn("password hashing queue full");
+        res.status(429);
+        res.header("Retry-After", "1");
+        return gson.toJson(new ApiResponse("error", e.getMessage()));
+    }
+
+    // Too many login attempts from this client or for this username
+    private static String tooManyRequests(spark.Response res, LoginService.RateLimited e) {
+        res.status(429);
+        res.header("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+        return gson.toJson(new ApiResponse("error", e.getMessage()));
+    }
+
     private static String getStringFromJson(JsonObject json, String key) {
         try {
             JsonElement element = json.get(key);
             return (element != null && !element.isJsonNull()) ? element.getAsString() : null;
         } catch (Exception e) {
-            System.err.println("Error getting " + key + " from JSON: " + e.getMessage());
+            Log.error("Error getting " + key + " from JSON: " + e.getMessage());
             return null;
         }
     }
@@ -2891,20 +3055,21 @@ public class Main {
 
     private static int getTodayAppointmentsCount(String slmcNo) {
         String sql = "SELECT COUNT(*) as count FROM Appointment " +
-                     "WHERE SLMC_No = ? AND Appointment_Date = DATE('now') " +
+                     "WHERE SLMC_No = ? AND Appointment_Day = ? " +
                      "AND Status != 'cancelled'";
         
-        try (Connection conn = getConnection();
+        try (Connection conn = getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, slmcNo);
+            pstmt.setLong(2, AppointmentDAO.today());
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
                 return rs.getInt("count");
             }
         } catch (SQLException e) {
-            System.out.println("Error getting today's appointments count: " + e.getMessage());
+            Log.error("Error getting today's appointments count: " + e.getMessage());
         }
         return 0;
     }
@@ -2913,7 +3078,7 @@ public class Main {
         String sql = "SELECT COUNT(*) as count FROM Record_Access_Requests " +
                      "WHERE SLMC_No = ? AND Status = 'pending'";
         
-        try (Connection conn = getConnection();
+        try (Connection conn = getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, slmcNo);
@@ -2923,7 +3088,7 @@ public class Main {
                 return rs.getInt("count");
             }
         } catch (SQLException e) {
-            System.out.println("Error getting pending reports count: " + e.getMessage());
+            Log.error("Error getting pending reports count: " + e.getMessage());
         }
         return 0;
     }
@@ -2933,20 +3098,21 @@ public class Main {
         String sql = "SELECT COUNT(DISTINCT Personal_Health_No) as count " +
                      "FROM Appointment " +
                      "WHERE SLMC_No = ? " +
-                     "AND Appointment_Date >= date('now', '-30 days') " +
+                     "AND Appointment_Day >= ? " +
                      "AND Status != 'cancelled'";
         
-        try (Connection conn = getConnection();
+        try (Connection conn = getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, slmcNo);
+            pstmt.setLong(2, AppointmentDAO.today() - 30);
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
                 return rs.getInt("count");
             }
         } catch (SQLException e) {
-            System.out.println("Error getting active patients count: " + e.getMessage());
+            Log.error("Error getting active patients count: " + e.getMessage());
         }
         return 0;
     }
@@ -2961,10 +3127,10 @@ public class Main {
     }
 
     // Add this method to Main class
-    public static HikariDataSource getDataSource() {
-        if (dataSource == null) {
-            throw new IllegalStateException("DataSource has not been initialized");
+    public static Database getDatabase() {
+        if (database == null) {
+            throw new IllegalStateException("Database has not been initialized");
         }
-        return dataSource;
+        return database;
     }
 }
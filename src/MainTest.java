@@ -7,7 +7,15 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.junit.jupiter.api.DisplayName;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -47,14 +55,7 @@ public class MainTest {
             loginData.addProperty("password", "testpass");
             loginData.addProperty("portalType", "patient");
 
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(BASE_URL + "/api/auth/login"))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(loginData.toString()))
-                .timeout(Duration.ofSeconds(10))
-                .build();
-                
-            HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
+            HttpResponse<String> response = login(loginData);
             
             System.out.println("Response Status: " + response.statusCode());
             System.out.println("Response Body: " + response.body());
@@ -436,14 +437,7 @@ public class MainTest {
             loginData.addProperty("password", "invalid");
             loginData.addProperty("portalType", "patient");
 
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(BASE_URL + "/api/auth/login"))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(loginData.toString()))
-                .timeout(Duration.ofSeconds(10))
-                .build();
-                
-            HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
+            HttpResponse<String> response = login(loginData);
             assertEquals(401, response.statusCode(), "Should return 401 Unauthorized");
         } catch (Exception e) {
             fail("Login test failed: " + e.getMessage());
@@ -586,4 +580,136 @@ public class MainTest {
             fail("Update patient profile test failed: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    @Test
+    @DisplayName("Concurrent requests - 200 parallel, no cross-talk")
+    void testConcurrentRequestsNoCrossTalk() {
+        String[] phns = {"PHN7115075", "10000111", "1010101010", "10120203030", "P000", "P123"};
+        String[] institutes = {"INS256", "INS001"};
+        int requestCount = 200;
+
+        try {
+            // Every lookup made once on its own first; under load each caller must get exactly
+            // that answer back, never another identifier's data
+            Map<String, HttpResponse<String>> alone = new HashMap<>();
+            for (String phn : phns) {
+                for (String path : new String[] {
+                        "/api/patient/medical-records/by-phn/" + phn, "/api/patient/dashboard?personalHealthNo=" + phn}) {
+                    alone.put(path, client.send(get(path), BodyHandlers.ofString()));
+                }
+            }
+            for (String institute : institutes) {
+                String path = "/api/institute/appointments?instituteId=" + institute;
+                alone.put(path, client.send(get(path), BodyHandlers.ofString()));
+            }
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < requestCount; i++) {
+                String phn = phns[i % phns.length];
+                String path;
+                switch (i % 4) {
+                    case 0:
+                        path = "/api/patient/medical-records/by-phn/" + phn;
+                        futures.add(client.sendAsync(get(path), BodyHandlers.ofString())
+                            .thenAccept(response -> {
+                                assertEquals(200, response.statusCode(), "Records lookup should succeed");
+                                JsonArray records = JsonParser.parseString(response.body()).getAsJsonArray();
+                                for (JsonElement record : records) {
+                                    assertEquals(phn, record.getAsJsonObject().get("personalHealthNo").getAsString(),
+                                        "Records must belong to the requested patient");
+                                }
+                                assertSameAsAlone(alone.get(path), response, path);
+                            }));
+                        break;
+                    case 1:
+                        path = "/api/patient/dashboard?personalHealthNo=" + phn;
+                        futures.add(client.sendAsync(get(path), BodyHandlers.ofString())
+                            .thenAccept(response -> {
+                                assertTrue(response.statusCode() == 200 || response.statusCode() == 404,
+                                    "Dashboard should return 200 or 404");
+                                if (response.statusCode() == 200) {
+                                    JsonObject patient = JsonParser.parseString(response.body())
+                                        .getAsJsonObject().getAsJsonObject("patient");
+                                    assertEquals(phn, patient.get("personalHealthNo").getAsString(),
+                                        "Dashboard must belong to the requested patient");
+                                }
+                                assertSameAsAlone(alone.get(path), response, path);
+                            }));
+                        break;
+                    case 2:
+                        path = "/api/institute/appointments?instituteId=" + institutes[(i / 4) % institutes.length];
+                        futures.add(client.sendAsync(get(path), BodyHandlers.ofString())
+                            .thenAccept(response -> {
+                                assertEquals(200, response.statusCode(), "Institute appointments should succeed");
+                                assertTrue(JsonParser.parseString(response.body()).getAsJsonObject().has("appointments"),
+                                    "Response should contain appointments");
+                                assertSameAsAlone(alone.get(path), response, path);
+                            }));
+                        break;
+                    default:
+                        JsonObject loginData = new JsonObject();
+                        loginData.addProperty("username", phn);
+                        loginData.addProperty("password", "wrong-password");
+                        loginData.addProperty("portalType", "patient");
+                        HttpRequest request = HttpRequest.newBuilder()
+                            .uri(URI.create(BASE_URL + "/api/auth/login"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(loginData.toString()))
+                            .timeout(Duration.ofSeconds(30))
+                            .build();
+                        // LoginService throttles repeated failures from one client and for one
+                        // user (-Dumrs.auth.*), so most of these are refused before the check
+                        futures.add(client.sendAsync(request, BodyHandlers.ofString())
+                            .thenAccept(response -> assertTrue(
+                                response.statusCode() == 401 || response.statusCode() == 429,
+                                "Wrong password should be rejected or rate limited")));
+                        break;
+                }
+            }
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AssertionError) {
+                throw (AssertionError) e.getCause();
+            }
+            fail("Concurrent request test failed: " + e.getMessage());
+        } catch (Exception e) {
+            fail("Concurrent request test failed: " + e.getMessage());
+        }
+    }
+
+    // POST /api/auth/login, waiting out LoginService's rate limit: the concurrent test's wrong
+    // passwords can drain the bucket for 127.0.0.1, and a 429 says nothing about the credentials
+    private static HttpResponse<String> login(JsonObject loginData) throws Exception {
+        long deadline = System.currentTimeMillis() + 120_000;
+        while (true) {
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(BASE_URL + "/api/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(loginData.toString()))
+                .timeout(Duration.ofSeconds(10))
+                .build();
+            HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
+            if (response.statusCode() != 429 || System.currentTimeMillis() > deadline) {
+                return response;
+            }
+            long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1);
+            Thread.sleep(Math.max(1, retryAfter) * 1000);
+        }
+    }
+
+    private static HttpRequest get(String path) {
+        return HttpRequest.newBuilder()
+            .uri(URI.create(BASE_URL + path))
+            .GET()
+            .timeout(Duration.ofSeconds(30))
+            .build();
+    }
+
+    // A response under load must be the one the same request got on its own
+    private static void assertSameAsAlone(HttpResponse<String> alone, HttpResponse<String> response, String path) {
+        assertEquals(alone.statusCode(), response.statusCode(), path + " status differs under load");
+        assertEquals(JsonParser.parseString(alone.body()), JsonParser.parseString(response.body()),
+            path + " body differs under load");
+    }
+}
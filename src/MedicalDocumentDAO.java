@@ -20,9 +20,9 @@ public class MedicalDocumentDAO {
             pstmt.setString(5, medicalDocument.getUploadedBy());
             pstmt.setString(6, medicalDocument.getDetails());
             pstmt.executeUpdate();
-            System.out.println("Medical Document inserted successfully.");
+            Log.debug("Medical Document inserted successfully.");
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
     }
 
@@ -46,7 +46,7 @@ public class MedicalDocumentDAO {
                 documents.add(document);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
         return documents;
     }
@@ -62,9 +62,9 @@ public class MedicalDocumentDAO {
             pstmt.setString(5, medicalDocument.getDetails());
             pstmt.setInt(6, medicalDocument.getDocumentID());
             pstmt.executeUpdate();
-            System.out.println("Medical Document updated successfully.");
+            Log.debug("Medical Document updated successfully.");
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
     }
 
@@ -74,9 +74,9 @@ public class MedicalDocumentDAO {
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, documentID);
             pstmt.executeUpdate();
-            System.out.println("Medical Document deleted successfully.");
+            Log.debug("Medical Document deleted successfully.");
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
     }
 }
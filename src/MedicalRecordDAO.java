@@ -1,26 +1,32 @@
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 
 public class MedicalRecordDAO {
 
     private Connection conn;
 
+    // The hot reads, kept here so QueryPlanAdvisor can check their plans at startup
+    static final String MOST_RECENT_SQL =
+        "SELECT * FROM Medical_Record WHERE Personal_Health_No = ? ORDER BY Date_of_Visit DESC LIMIT 1";
+    static final String STREAM_BY_PHN_SQL = """
+            SELECT * FROM Medical_Record 
+            WHERE Personal_Health_No = ? AND Record_ID < ?
+            ORDER BY Record_ID DESC
+            LIMIT ?
+        """;
+    static final String INSTITUTE_COUNT_SQL = "SELECT COUNT(*) FROM Medical_Record WHERE Health_Institute_Number = ?";
+
     public MedicalRecordDAO(Connection conn) {
         this.conn = conn; // persistent connection
     }
 
     // Insert a new medical record
     public void insertMedicalRecord(MedicalRecord record) throws SQLException {
-        System.out.println("Starting medical record insertion for PHN: " + record.getPersonalHealthNo());
-        
-        String sql = """
-            INSERT INTO Medical_Record (
-                Personal_Health_No, SLMC_No, Health_Institute_Number, 
-                Date_of_Visit, Diagnosis, Treatment, Notes, Type, Summary
-            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
-        """;
+        Log.debug(() -> "Starting medical record insertion for PHN: " + record.getPersonalHealthNo());
         
         boolean originalAutoCommit = conn.getAutoCommit();
         try {
@@ -28,40 +34,20 @@ public class MedicalRecordDAO {
             conn.setAutoCommit(false);
             
             // Perform the insert
-            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                pstmt.setString(1, record.getPersonalHealthNo());
-                pstmt.setString(2, record.getSlmcNo());
-                pstmt.setString(3, record.getHealthInstituteNumber());
-                pstmt.setDate(4, java.sql.Date.valueOf(record.getDateOfVisit()));
-                pstmt.setString(5, record.getDiagnosis());
-                pstmt.setString(6, record.getTreatment());
-                pstmt.setString(7, record.getNotes());
-                pstmt.setString(8, record.getType());
-                pstmt.setString(9, record.getSummary());
-
-                int affectedRows = pstmt.executeUpdate();
-                System.out.println("Affected rows after insertion: " + affectedRows);
-                
-                if (affectedRows > 0) {
-                    try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                        if (generatedKeys.next()) {
-                            record.setRecordId(generatedKeys.getInt(1));
-                            System.out.println("Generated Record ID: " + record.getRecordId());
-                        }
-                    }
-                }
-            }
+            insertRow(conn, record);
             
             // Commit the transaction
             conn.commit();
-            System.out.println("Record insertion completed successfully");
+            Database.runAfterCommit();
+            Log.debug("Record insertion completed successfully");
             
         } catch (SQLException e) {
-            System.err.println("Error inserting medical record: " + e.getMessage());
+            Database.discardAfterCommit();
+            Log.error("Error inserting medical record: " + e.getMessage());
             try {
                 conn.rollback();
             } catch (SQLException re) {
-                System.err.println("Error during rollback: " + re.getMessage());
+                Log.error("Error during rollback: " + re.getMessage());
             }
             throw e;
         } finally {
@@ -69,11 +55,55 @@ public class MedicalRecordDAO {
             try {
                 conn.setAutoCommit(originalAutoCommit);
             } catch (SQLException e) {
-                System.err.println("Error restoring auto-commit mode: " + e.getMessage());
+                Log.error("Error restoring auto-commit mode: " + e.getMessage());
             }
         }
     }
 
+    // Queue a new medical record on the group commit writer; the future completes
+    // with the generated Record_ID once the batch it landed in has committed
+    public static CompletableFuture<Integer> insertMedicalRecordGrouped(GroupCommitWriter writer, MedicalRecord record) {
+        return writer.submit(conn -> insertRow(conn, record));
+    }
+
+    // Writes one row on a connection whose transaction is managed by the caller
+    static int insertRow(Connection conn, MedicalRecord record) throws SQLException {
+        String sql = """
+            INSERT INTO Medical_Record (
+                Personal_Health_No, SLMC_No, Health_Institute_Number, 
+                Date_of_Visit, Diagnosis, Treatment, Notes, Type, Summary
+            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, record.getPersonalHealthNo());
+            pstmt.setString(2, record.getSlmcNo());
+            pstmt.setString(3, record.getHealthInstituteNumber());
+            pstmt.setDate(4, java.sql.Date.valueOf(record.getDateOfVisit()));
+            pstmt.setString(5, record.getDiagnosis());
+            pstmt.setString(6, record.getTreatment());
+            pstmt.setString(7, record.getNotes());
+            pstmt.setString(8, record.getType());
+            pstmt.setString(9, record.getSummary());
+
+            int affectedRows = pstmt.executeUpdate();
+            Log.debug(() -> "Affected rows after insertion: " + affectedRows);
+            
+            if (affectedRows > 0) {
+                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        int recordId = generatedKeys.getInt(1);
+                        record.setRecordId(recordId);
+                        Log.debug(() -> "Generated Record ID: " + recordId);
+                        AnalyticsRollup.addRecord(conn, recordId);
+                        return recordId;
+                    }
+                }
+            }
+            throw new SQLException("Inserting medical record returned no generated key");
+        }
+    }
+
     // Read all medical records for a specific patient using Vector
     public Vector<MedicalRecord> getMedicalRecordsByPatient(String personalHealthNo) {
         Vector<MedicalRecord> records = new Vector<>();
@@ -98,7 +128,7 @@ public class MedicalRecordDAO {
                 records.add(record);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
 
         return records;
@@ -108,12 +138,17 @@ public class MedicalRecordDAO {
     public void deleteMedicalRecord(int recordID) {
         String sql = "DELETE FROM Medical_Record WHERE Record_ID = ?";
 
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, recordID);
-            pstmt.executeUpdate();
-            System.out.println("Medical record deleted successfully.");
+        try {
+            Database.inTransaction(conn, c -> {
+                AnalyticsRollup.removeRecord(c, recordID);
+                try (PreparedStatement pstmt = c.prepareStatement(sql)) {
+                    pstmt.setInt(1, recordID);
+                    return pstmt.executeUpdate();
+                }
+            });
+            Log.debug("Medical record deleted successfully.");
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
     }
 
@@ -128,14 +163,14 @@ public class MedicalRecordDAO {
                 return createMedicalRecordFromResultSet(rs);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
         return null;
     }
 
     // New method to get the most recent medical record
     public MedicalRecord getMostRecentMedicalRecord(String personalHealthNo) {
-        String sql = "SELECT * FROM Medical_Record WHERE Personal_Health_No = ? ORDER BY Date_of_Visit DESC LIMIT 1";
+        String sql = MOST_RECENT_SQL;
         
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, personalHealthNo);
@@ -145,7 +180,7 @@ public class MedicalRecordDAO {
                 return createMedicalRecordFromResultSet(rs);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
         return null;
     }
@@ -238,8 +273,7 @@ public class MedicalRecordDAO {
             record.setSummary(rs.getString("Summary"));
             return record;
         } catch (SQLException e) {
-            System.err.println("Error creating MedicalRecord from ResultSet: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error creating MedicalRecord from ResultSet: " + e.getMessage(), e);
             throw e;
         }
     }
@@ -256,13 +290,12 @@ public class MedicalRecordDAO {
                     MedicalRecord record = createMedicalRecordFromResultSet(rs);
                     records.add(record);
                 } catch (SQLException e) {
-                    System.err.println("Error processing row: " + e.getMessage());
+                    Log.error("Error processing row: " + e.getMessage());
                     // Continue to next row instead of breaking the loop
                 }
             }
         } catch (SQLException e) {
-            System.err.println("Database error: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Database error: " + e.getMessage(), e);
         }
         
         return records;
@@ -280,14 +313,12 @@ public class MedicalRecordDAO {
                         MedicalRecord record = createMedicalRecordFromResultSet(rs);
                         records.add(record);
                     } catch (SQLException e) {
-                        System.err.println("Error processing row: " + e.getMessage());
-                        e.printStackTrace();
+                        Log.error("Error processing row: " + e.getMessage(), e);
                     }
                 }
             }
         } catch (SQLException e) {
-            System.err.println("Database error: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Database error: " + e.getMessage(), e);
             throw new RuntimeException("Error fetching medical records", e);
         }
         
@@ -310,28 +341,43 @@ public class MedicalRecordDAO {
         // Update a medical record
     public boolean updateMedicalRecord(MedicalRecord record) throws SQLException {
         String sql = "UPDATE Medical_Record SET SLMC_No = ?, Health_Institute_Number = ?, Date_of_Visit = ?, Diagnosis = ?, Treatment = ?, Notes = ?, Type = ?, Summary = ? WHERE Record_ID = ?";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, record.getSlmcNo());
-            pstmt.setString(2, record.getHealthInstituteNumber());
-            pstmt.setDate(3, java.sql.Date.valueOf(record.getDateOfVisit()));
-            pstmt.setString(4, record.getDiagnosis());
-            pstmt.setString(5, record.getTreatment());
-            pstmt.setString(6, record.getNotes());
-            pstmt.setString(7, record.getType());
-            pstmt.setString(8, record.getSummary());
-            pstmt.setInt(9, record.getRecordId());
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
-        }
+        int recordId = record.getRecordId();
+        // The old row leaves the analytics rollups and the new one enters them in the same transaction
+        return Database.inTransaction(conn, c -> {
+            AnalyticsRollup.removeRecord(c, recordId);
+            try (PreparedStatement pstmt = c.prepareStatement(sql)) {
+                pstmt.setString(1, record.getSlmcNo());
+                pstmt.setString(2, record.getHealthInstituteNumber());
+                pstmt.setDate(3, java.sql.Date.valueOf(record.getDateOfVisit()));
+                pstmt.setString(4, record.getDiagnosis());
+                pstmt.setString(5, record.getTreatment());
+                pstmt.setString(6, record.getNotes());
+                pstmt.setString(7, record.getType());
+                pstmt.setString(8, record.getSummary());
+                pstmt.setInt(9, recordId);
+                int affectedRows = pstmt.executeUpdate();
+                AnalyticsRollup.addRecord(c, recordId);
+                return affectedRows > 0;
+            }
+        });
     }
 
     public boolean deleteMedicalRecord(String id) throws SQLException {
         String sql = "DELETE FROM Medical_Record WHERE Record_ID = ?";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, id);
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
+        int recordId;
+        try {
+            recordId = Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            return false; // no such record
         }
+        return Database.inTransaction(conn, c -> {
+            AnalyticsRollup.removeRecord(c, recordId);
+            try (PreparedStatement pstmt = c.prepareStatement(sql)) {
+                pstmt.setInt(1, recordId);
+                int affectedRows = pstmt.executeUpdate();
+                return affectedRows > 0;
+            }
+        });
     }
 
     private MedicalRecord extractMedicalRecordFromResultSet(ResultSet rs) throws SQLException {
@@ -351,51 +397,129 @@ public class MedicalRecordDAO {
 
     public List<MedicalRecord> getRecordsByPHN(String personalHealthNo) throws SQLException {
         List<MedicalRecord> records = new ArrayList<>();
-        String sql = """
-            SELECT * FROM Medical_Record 
-            WHERE Personal_Health_No = ? 
-            ORDER BY Record_ID DESC
-        """;
+        try {
+            streamRecordsByPHN(personalHealthNo, null, -1, records::add);
+        } catch (IOException e) {
+            throw new SQLException(e); // records::add never throws
+        }
+        Log.debug(() -> "Total records found: " + records.size());
+        return records;
+    }
+
+    // Callback for streamed rows; lets routes write each record out as soon as it is read
+    public interface RecordHandler {
+        void handle(MedicalRecord record) throws IOException;
+    }
+
+    // Same query as getRecordsByPHN, but hands rows over one at a time instead of building a list.
+    // cursor/limit select one keyset page (null cursor = first page, limit -1 = everything).
+    // Returns the number of rows passed to the handler.
+    public int streamRecordsByPHN(String personalHealthNo, String cursor, int limit, RecordHandler handler)
+            throws SQLException, IOException {
+        String sql = STREAM_BY_PHN_SQL;
         
-        System.out.println("Executing query for PHN: " + personalHealthNo);
+        Log.debug(() -> "Executing query for PHN: " + personalHealthNo);
         
+        Object[] after = Page.decodeCursor(cursor, 1);
+        int count = 0;
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, personalHealthNo);
+            pstmt.setObject(2, after != null ? after[0] : Long.MAX_VALUE);
+            pstmt.setInt(3, limit);
             
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    MedicalRecord record = new MedicalRecord();
-                    record.setRecordId(rs.getInt("Record_ID"));
-                    record.setPersonalHealthNo(rs.getString("Personal_Health_No"));
-                    record.setSlmcNo(rs.getString("SLMC_No"));
-                    record.setHealthInstituteNumber(rs.getString("Health_Institute_Number"));
-                    record.setDateOfVisit(rs.getDate("Date_of_Visit") != null ? 
-                        rs.getDate("Date_of_Visit").toLocalDate() : null);
-                    record.setDiagnosis(rs.getString("Diagnosis"));
-                    record.setTreatment(rs.getString("Treatment"));
-                    record.setNotes(rs.getString("Notes"));
-                    record.setType(rs.getString("Type"));
-                    record.setSummary(rs.getString("Summary"));
-                    
-                    System.out.println("Found record: ID=" + record.getRecordId());
-                    records.add(record);
+                    handler.handle(mapRecordRow(rs));
+                    count++;
                 }
             }
         }
-        
-        System.out.println("Total records found: " + records.size());
-        return records;
+        return count;
+    }
+
+    // One keyset page of the records a professional wrote or was granted access to,
+    // newest visit first. The access check is a subquery so no DISTINCT is needed and
+    // the (SLMC_No, Date_of_Visit) index can drive the scan.
+    public Page<MedicalRecord> getRecordsByProfessionalPage(String slmcNo, String cursor, int limit)
+            throws SQLException {
+        Object[] after = Page.decodeCursor(cursor, 2);
+        String sql = professionalPageSql(after != null);
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int paramIndex = 1;
+            pstmt.setString(paramIndex++, slmcNo);
+            pstmt.setString(paramIndex++, slmcNo);
+            if (after != null) {
+                pstmt.setObject(paramIndex++, after[0]);
+                pstmt.setObject(paramIndex++, after[1]);
+            }
+            pstmt.setInt(paramIndex, limit + 1);
+            return readRecordPage(pstmt, limit);
+        }
+    }
+
+    static String professionalPageSql(boolean afterCursor) {
+        return """
+            SELECT mr.* 
+            FROM Medical_Record mr 
+            WHERE (mr.SLMC_No = ? 
+                OR mr.Personal_Health_No IN (
+                    SELECT rar.Personal_Health_No FROM Record_Access_Requests rar
+                    WHERE rar.SLMC_No = ? AND rar.Status = 'approved'))
+        """ + (afterCursor ? " AND (mr.Date_of_Visit, mr.Record_ID) < (?, ?)" : "") + """
+            ORDER BY mr.Date_of_Visit DESC, mr.Record_ID DESC
+            LIMIT ?
+        """;
+    }
+
+    // Reads up to limit rows from a query that asked for limit + 1; the extra row only
+    // tells us whether a next page exists
+    private static Page<MedicalRecord> readRecordPage(PreparedStatement pstmt, int limit) throws SQLException {
+        List<MedicalRecord> records = new ArrayList<>();
+        Object lastDate = null;
+        Object lastId = null;
+        boolean hasMore = false;
+
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                if (records.size() == limit) {
+                    hasMore = true;
+                    break;
+                }
+                records.add(mapRecordRow(rs));
+                lastDate = rs.getObject("Date_of_Visit");
+                lastId = rs.getObject("Record_ID");
+            }
+        }
+        return new Page<>(records, hasMore ? Page.encodeCursor(lastDate, lastId) : null);
+    }
+
+    private static MedicalRecord mapRecordRow(ResultSet rs) throws SQLException {
+        MedicalRecord record = new MedicalRecord();
+        record.setRecordId(rs.getInt("Record_ID"));
+        record.setPersonalHealthNo(rs.getString("Personal_Health_No"));
+        record.setSlmcNo(rs.getString("SLMC_No"));
+        record.setHealthInstituteNumber(rs.getString("Health_Institute_Number"));
+        record.setDateOfVisit(rs.getDate("Date_of_Visit") != null ? 
+            rs.getDate("Date_of_Visit").toLocalDate() : null);
+        record.setDiagnosis(rs.getString("Diagnosis"));
+        record.setTreatment(rs.getString("Treatment"));
+        record.setNotes(rs.getString("Notes"));
+        record.setType(rs.getString("Type"));
+        record.setSummary(rs.getString("Summary"));
+        return record;
     }
 
     public List<Appointment> getUpcomingAppointments(String personalHealthNo) {
         List<Appointment> appointments = new ArrayList<>();
         String sql = "SELECT * FROM Appointment " +
                     "WHERE Personal_Health_No = ? " +
-                    "AND Appointment_Date >= CURRENT_DATE " +
-                    "ORDER BY Appointment_Date ASC, Appointment_Time ASC";
+                    "AND Appointment_Day >= ? " +
+                    "ORDER BY Appointment_Day ASC, Appointment_Minute ASC";
 
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, personalHealthNo);
+            pstmt.setLong(2, AppointmentDAO.today());
             ResultSet rs = pstmt.executeQuery();
 
             while (rs.next()) {
@@ -412,8 +536,7 @@ public class MedicalRecordDAO {
                 appointments.add(appointment);
             }
         } catch (SQLException e) {
-            System.err.println("Error getting upcoming appointments: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error getting upcoming appointments: " + e.getMessage(), e);
         }
         return appointments;
     }
@@ -430,19 +553,18 @@ public class MedicalRecordDAO {
 
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, personalHealthNo);
-            System.out.println("Executing prescription query for PHN: " + personalHealthNo); // Debug log
+            Log.debug(() -> "Executing prescription query for PHN: " + personalHealthNo); // Debug log
             
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 MedicalRecord record = createMedicalRecordFromResultSet(rs);
-                System.out.println("Found prescription record: " + record.getType()); // Debug log
+                Log.debug(() -> "Found prescription record: " + record.getType()); // Debug log
                 prescriptions.add(record);
             }
             
-            System.out.println("Total prescriptions found: " + prescriptions.size()); // Debug log
+            Log.debug(() -> "Total prescriptions found: " + prescriptions.size()); // Debug log
         } catch (SQLException e) {
-            System.err.println("Error getting recent prescriptions: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error getting recent prescriptions: " + e.getMessage(), e);
         }
         return prescriptions;
     }
@@ -464,14 +586,13 @@ public class MedicalRecordDAO {
                 tests.add(record);
             }
         } catch (SQLException e) {
-            System.err.println("Error getting recent tests: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error getting recent tests: " + e.getMessage(), e);
         }
         return tests;
     }
 
     public int getPendingReportsCount(String instituteNumber) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM Medical_Record WHERE Health_Institute_Number = ?";
+        String sql = INSTITUTE_COUNT_SQL;
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, instituteNumber);
             ResultSet rs = pstmt.executeQuery();
@@ -509,8 +630,7 @@ public class MedicalRecordDAO {
                 records.add(record);
             }
         } catch (SQLException e) {
-            System.err.println("Error getting records by institute: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error getting records by institute: " + e.getMessage(), e);
         }
         return records;
     }
@@ -546,7 +666,7 @@ public class MedicalRecordDAO {
                     record.setType(rs.getString("Type"));
                     record.setSummary(rs.getString("Summary"));
                     
-                    System.out.println("Found record: ID=" + record.getRecordId() + 
+                    Log.debug(() -> "Found record: ID=" + record.getRecordId() + 
                         ", PHN=" + record.getPersonalHealthNo());
                     
                     records.add(record);
@@ -557,7 +677,7 @@ public class MedicalRecordDAO {
     }
 
     public List<MedicalRecord> getAllRecordsByPHN(String personalHealthNo) throws SQLException {
-        System.out.println("Fetching all records for PHN: " + personalHealthNo);
+        Log.debug(() -> "Fetching all records for PHN: " + personalHealthNo);
         List<MedicalRecord> records = new ArrayList<>();
         
         // Force a fresh read
@@ -592,7 +712,7 @@ public class MedicalRecordDAO {
                     record.setType(rs.getString("Type"));
                     record.setSummary(rs.getString("Summary"));
                     
-                    System.out.println("Found record: ID=" + record.getRecordId() + 
+                    Log.debug(() -> "Found record: ID=" + record.getRecordId() + 
                         ", Type=" + record.getType() + ", PHN=" + record.getPersonalHealthNo());
                     
                     records.add(record);
@@ -600,7 +720,7 @@ public class MedicalRecordDAO {
             }
         }
         
-        System.out.println("Total records found: " + records.size());
+        Log.debug(() -> "Total records found: " + records.size());
         return records;
     }
 
@@ -616,19 +736,18 @@ public class MedicalRecordDAO {
 
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, personalHealthNo);
-            System.out.println("Executing diagnosis query for PHN: " + personalHealthNo); // Debug log
+            Log.debug(() -> "Executing diagnosis query for PHN: " + personalHealthNo); // Debug log
             
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 MedicalRecord record = createMedicalRecordFromResultSet(rs);
-                System.out.println("Found diagnosis record: " + record.getType()); // Debug log
+                Log.debug(() -> "Found diagnosis record: " + record.getType()); // Debug log
                 diagnoses.add(record);
             }
             
-            System.out.println("Total diagnoses found: " + diagnoses.size()); // Debug log
+            Log.debug(() -> "Total diagnoses found: " + diagnoses.size()); // Debug log
         } catch (SQLException e) {
-            System.err.println("Error getting recent diagnoses: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error getting recent diagnoses: " + e.getMessage(), e);
         }
         return diagnoses;
     }
@@ -0,0 +1,407 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Numbered schema migrations for db/umrs.db, applied once each at startup before any route
+// is registered.
+//
+// Schema_Version records every applied migration with a SHA-256 checksum of its steps. A
+// migration that was edited after it ran fails startup, since the database no longer matches
+// what the code says it went through; -Dumrs.db.ignoreMigrationChecksums=true downgrades that
+// to a warning. Once everything is applied, startup costs one read of Schema_Version.
+//
+// Migration 1 is db/schema.sql as it stands, so do not edit that file: add a migration here.
+// Column additions check PRAGMA table_info first, because databases created before this
+// engine had some of the old commented-out ALTERs applied by hand and others not.
+public class Migrations {
+    private static final Path BASELINE = Paths.get("db", "schema.sql");
+
+    static final boolean IGNORE_CHECKSUMS = Boolean.getBoolean("umrs.db.ignoreMigrationChecksums");
+
+    private static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "baseline schema from db/schema.sql")
+            .script(BASELINE),
+        new Migration(2, "activity entity columns")
+            .addColumn("Activity", "Entity_Type", "TEXT DEFAULT 'patient'")
+            .addColumn("Activity", "Entity_ID", "TEXT")
+            .addColumn("Activity", "Type", "TEXT DEFAULT 'general'")
+            .addColumn("Activity", "Status", "TEXT DEFAULT 'completed'")
+            .addColumn("Activity", "User_ID", "TEXT")
+            .sql("UPDATE Activity SET Entity_ID = Personal_Health_No WHERE Entity_ID IS NULL")
+            .sql("CREATE INDEX IF NOT EXISTS idx_activity_entity ON Activity(Entity_Type, Entity_ID)"),
+        new Migration(3, "medical record summary and type")
+            .addColumn("Medical_Record", "Summary", "TEXT")
+            .addColumn("Medical_Record", "Type", "TEXT"),
+        // SQLite cannot add a constraint to an existing table, so the old ALTER ... ADD
+        // CONSTRAINT becomes a REFERENCES clause on the new column
+        new Migration(4, "medical document patient")
+            .addColumn("Medical_Document", "Personal_Health_No",
+                "TEXT REFERENCES PATIENT(Personal_Health_No) ON DELETE CASCADE")
+            .sql("CREATE INDEX IF NOT EXISTS idx_medical_document_phn ON Medical_Document(Personal_Health_No)"),
+        // Composite indexes matching the hot DAO reads; QueryPlanAdvisor checks they are used.
+        // Record_ID and Appointment_ID are the rowid, which SQLite appends to every index, so
+        // (X) is also an index on (X, Record_ID) and a keyset tiebreaker needs no column.
+        new Migration(5, "composite indexes for hot reads")
+            // Prefixes of the indexes below, so they only cost writes
+            .sql("DROP INDEX IF EXISTS idx_medical_record_slmc")
+            .sql("DROP INDEX IF EXISTS idx_appointment_phn")
+            .sql("DROP INDEX IF EXISTS idx_record_access_slmc")
+            // getRecordsByPHN keyset pages, as (Personal_Health_No, Record_ID)
+            .sql("CREATE INDEX IF NOT EXISTS idx_medical_record_phn ON Medical_Record(Personal_Health_No)")
+            // getMostRecentMedicalRecord
+            .sql("CREATE INDEX IF NOT EXISTS idx_medical_record_phn_date ON Medical_Record(Personal_Health_No, Date_of_Visit)")
+            .sql("CREATE INDEX IF NOT EXISTS idx_medical_record_date ON Medical_Record(Date_of_Visit)")
+            // Institute and professional record pages, newest first, and the institute record count
+            .sql("CREATE INDEX IF NOT EXISTS idx_medical_record_institute_date ON Medical_Record(Health_Institute_Number, Date_of_Visit)")
+            .sql("CREATE INDEX IF NOT EXISTS idx_medical_record_slmc_date ON Medical_Record(SLMC_No, Date_of_Visit)")
+            // A patient's appointments in schedule order
+            .sql("CREATE INDEX IF NOT EXISTS idx_appointment_phn_date ON Appointment(Personal_Health_No, Appointment_Date, Appointment_Time)")
+            .sql("CREATE INDEX IF NOT EXISTS idx_appointment_date ON Appointment(Appointment_Date)")
+            // A professional's schedule, and the keyset pages over it
+            .sql("CREATE INDEX IF NOT EXISTS idx_appointment_slmc_date ON Appointment(SLMC_No, Appointment_Date, Appointment_Time)")
+            // A professional's pending requests in schedule order
+            .sql("CREATE INDEX IF NOT EXISTS idx_appointment_slmc_status ON Appointment(SLMC_No, Status, Appointment_Date, Appointment_Time)")
+            // Today's count (covering) and the institute appointment list, newest first
+            .sql("CREATE INDEX IF NOT EXISTS idx_appointment_institute_date ON Appointment(Health_Institute_Number, Appointment_Date, Appointment_Time, Status)")
+            .sql("CREATE INDEX IF NOT EXISTS idx_record_access_phn ON Record_Access_Requests(Personal_Health_No)")
+            // Covers the approved-patients subquery of the professional record pages and the pending count
+            .sql("CREATE INDEX IF NOT EXISTS idx_record_access_slmc_status ON Record_Access_Requests(SLMC_No, Status, Personal_Health_No)")
+            // Bookkeeping of the index set before migrations existed
+            .sql("DROP TABLE IF EXISTS Schema_Index_State"),
+        // Typed appointment dates (see AppointmentDAO); the date-keyed indexes give way to
+        // the same shapes keyed on the new columns
+        new Migration(6, "appointment epoch day and minute of day")
+            .addColumn("Appointment", "Appointment_Day", "INTEGER")
+            .addColumn("Appointment", "Appointment_Minute", "INTEGER")
+            .run("AppointmentDAO.backfillDayColumns", AppointmentDAO::backfillDayColumns)
+            .sql("DROP INDEX IF EXISTS idx_appointment_date")
+            .sql("DROP INDEX IF EXISTS idx_appointment_phn_date")
+            .sql("DROP INDEX IF EXISTS idx_appointment_slmc_date")
+            .sql("DROP INDEX IF EXISTS idx_appointment_slmc_status")
+            .sql("DROP INDEX IF EXISTS idx_appointment_institute_date")
+            // A patient's appointments in schedule order, and their upcoming ones
+            .sql("CREATE INDEX IF NOT EXISTS idx_appointment_phn_day ON Appointment(Personal_Health_No, Appointment_Day, Appointment_Minute)")
+            // A professional's schedule and keyset pages over it; Appointment_ID before Status so
+            // the (day, minute, id) page order is index order
+            .sql("CREATE INDEX IF NOT EXISTS idx_appointment_slmc_day ON Appointment(SLMC_No, Appointment_Day, Appointment_Minute, Appointment_ID, Status)")
+            // A professional's pending requests in schedule order
+            .sql("CREATE INDEX IF NOT EXISTS idx_appointment_slmc_status_day ON Appointment(SLMC_No, Status, Appointment_Day, Appointment_Minute)")
+            // Today's count (covering) and the institute appointment list, newest first
+            .sql("CREATE INDEX IF NOT EXISTS idx_appointment_institute_day ON Appointment(Health_Institute_Number, Appointment_Day, Appointment_Minute, Appointment_ID, Status)"),
+        // The analytics rollup tables come from migration 1; fill them from the base tables.
+        // Analytics_Rollup_State tracked whether that had happened before migrations existed.
+        new Migration(7, "analytics rollups from the base tables")
+            .run("AnalyticsRollup.rebuild", AnalyticsRollup::rebuild)
+            .sql("DROP TABLE IF EXISTS Analytics_Rollup_State")
+    );
+
+    // One numbered change to the schema, as an ordered list of steps
+    static class Migration {
+        final int version;
+        final String description;
+        final List<Step> steps = new ArrayList<>();
+
+        Migration(int version, String description) {
+            this.version = version;
+            this.description = description;
+        }
+
+        Migration sql(String statement) {
+            steps.add(new SqlStep(statement));
+            return this;
+        }
+
+        Migration addColumn(String table, String column, String definition) {
+            steps.add(new AddColumnStep(table, column, definition));
+            return this;
+        }
+
+        // Every statement of a SQL file, read when the migration is checked or applied
+        Migration script(Path path) {
+            steps.add(new ScriptStep(path));
+            return this;
+        }
+
+        // Data changes SQL cannot express. The name is what the checksum covers, so rename
+        // it whenever the code changes what it does.
+        Migration run(String name, Database.SqlWork<?> work) {
+            steps.add(new CodeStep(name, work));
+            return this;
+        }
+
+        // Statements with the file scripts expanded
+        List<Step> expand() throws IOException {
+            List<Step> expanded = new ArrayList<>();
+            for (Step step : steps) {
+                if (!(step instanceof ScriptStep)) {
+                    expanded.add(step);
+                    continue;
+                }
+                String text = new String(Files.readAllBytes(((ScriptStep) step).path), StandardCharsets.UTF_8);
+                for (String statement : splitStatements(text)) {
+                    expanded.add(new SqlStep(statement));
+                }
+            }
+            return expanded;
+        }
+
+        String checksum(List<Step> expanded) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                for (Step step : expanded) {
+                    digest.update(step.describe().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) '\n');
+                }
+                StringBuilder hex = new StringBuilder();
+                for (byte b : digest.digest()) {
+                    hex.append(String.format("%02x", b));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+    }
+
+    private interface Step {
+        // What the checksum covers
+        String describe();
+
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static class SqlStep implements Step {
+        final String statement;
+
+        SqlStep(String statement) {
+            this.statement = statement;
+        }
+
+        public String describe() {
+            return statement;
+        }
+
+        public void apply(Connection conn) throws SQLException {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(statement);
+            }
+        }
+    }
+
+    private static class AddColumnStep implements Step {
+        final String table;
+        final String column;
+        final String definition;
+
+        AddColumnStep(String table, String column, String definition) {
+            this.table = table;
+            this.column = column;
+            this.definition = definition;
+        }
+
+        public String describe() {
+            return "add column " + table + "." + column + " " + definition;
+        }
+
+        public void apply(Connection conn) throws SQLException {
+            if (!hasColumn(conn, table, column)) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+                }
+            }
+        }
+    }
+
+    private static class ScriptStep implements Step {
+        final Path path;
+
+        ScriptStep(Path path) {
+            this.path = path;
+        }
+
+        public String describe() {
+            return "script " + path;
+        }
+
+        public void apply(Connection conn) {
+            throw new IllegalStateException("Scripts are expanded before they run");
+        }
+    }
+
+    private static class CodeStep implements Step {
+        final String name;
+        final Database.SqlWork<?> work;
+
+        CodeStep(String name, Database.SqlWork<?> work) {
+            this.name = name;
+            this.work = work;
+        }
+
+        public String describe() {
+            return "run " + name;
+        }
+
+        public void apply(Connection conn) throws SQLException {
+            work.run(conn);
+        }
+    }
+
+    // Applies every migration the database has not seen yet, in order, one transaction each.
+    // Returns the number applied.
+    static int migrate(Database database) throws SQLException {
+        try (Connection conn = database.getWriteConnection()) {
+            return migrate(conn);
+        }
+    }
+
+    static int migrate(Connection conn) throws SQLException {
+        return migrate(conn, Integer.MAX_VALUE);
+    }
+
+    // Stops after targetVersion; benchmarks use this to build a database as it was before a change
+    static int migrate(Connection conn, int targetVersion) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS Schema_Version (Version INTEGER PRIMARY KEY, "
+                + "Description TEXT NOT NULL, Checksum TEXT NOT NULL, Applied_At INTEGER NOT NULL, "
+                + "Duration_Ms INTEGER NOT NULL)");
+        }
+        Map<Integer, String> applied = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT Version, Checksum FROM Schema_Version");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                applied.put(rs.getInt("Version"), rs.getString("Checksum"));
+            }
+        }
+
+        int count = 0;
+        int latest = MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version > targetVersion) {
+                break;
+            }
+            List<Step> steps;
+            try {
+                steps = migration.expand();
+            } catch (IOException e) {
+                throw new SQLException("Cannot read migration " + migration.version + ": " + e.getMessage(), e);
+            }
+            String checksum = migration.checksum(steps);
+            String recorded = applied.get(migration.version);
+            if (recorded != null) {
+                if (!recorded.equals(checksum)) {
+                    String message = "Migration " + migration.version + " (" + migration.description
+                        + ") changed after it was applied";
+                    if (!IGNORE_CHECKSUMS) {
+                        throw new IllegalStateException(message);
+                    }
+                    Log.warn(message, "recorded", recorded, "current", checksum);
+                }
+                continue;
+            }
+
+            long start = System.nanoTime();
+            Database.inTransaction(conn, c -> {
+                for (Step step : steps) {
+                    step.apply(c);
+                }
+                try (PreparedStatement pstmt = c.prepareStatement("INSERT INTO Schema_Version "
+                        + "(Version, Description, Checksum, Applied_At, Duration_Ms) VALUES (?, ?, ?, ?, ?)")) {
+                    pstmt.setInt(1, migration.version);
+                    pstmt.setString(2, migration.description);
+                    pstmt.setString(3, checksum);
+                    pstmt.setLong(4, System.currentTimeMillis());
+                    pstmt.setLong(5, (System.nanoTime() - start) / 1_000_000);
+                    pstmt.executeUpdate();
+                }
+                return null;
+            });
+            Log.info("migration applied", "version", migration.version, "description", migration.description,
+                "ms", (System.nanoTime() - start) / 1_000_000);
+            count++;
+        }
+
+        for (int version : applied.keySet()) {
+            if (version > latest) {
+                Log.warn("database has a migration this build does not know", "version", version);
+            }
+        }
+        return count;
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Splits a script on the semicolons that end statements, dropping comments. Knows about
+    // quoted strings and identifiers and -- / /* */ comments, which is all schema.sql uses.
+    static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int i = 0;
+        while (i < script.length()) {
+            char c = script.charAt(i);
+            if (c == '-' && script.startsWith("--", i)) {
+                int end = script.indexOf('\n', i);
+                i = end < 0 ? script.length() : end;
+            } else if (c == '/' && script.startsWith("/*", i)) {
+                int end = script.indexOf("*/", i + 2);
+                i = end < 0 ? script.length() : end + 2;
+                current.append(' ');
+            } else if (c == '\'' || c == '"' || c == '`') {
+                int end = i + 1;
+                while (end < script.length()) {
+                    if (script.charAt(end) == c) {
+                        // A doubled quote is an escaped quote
+                        if (end + 1 < script.length() && script.charAt(end + 1) == c) {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                end = Math.min(end + 1, script.length());
+                current.append(script, i, end);
+                i = end;
+            } else if (c == ';') {
+                addStatement(statements, current);
+                i++;
+            } else {
+                current.append(c);
+                i++;
+            }
+        }
+        addStatement(statements, current);
+        return statements;
+    }
+
+    private static void addStatement(List<String> statements, StringBuilder current) {
+        // Whitespace is collapsed so reformatting a script does not change its checksum
+        String statement = current.toString().trim().replaceAll("\\s+", " ");
+        if (!statement.isEmpty()) {
+            statements.add(statement);
+        }
+        current.setLength(0);
+    }
+}
@@ -0,0 +1,112 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+// One page of a keyset-paginated list. The cursor is an opaque token holding the sort key
+// of the last row returned (e.g. Date_of_Visit and Record_ID); the next query continues with
+// WHERE (sort key) < (cursor), so it walks the index from that point instead of skipping
+// OFFSET rows, and page 500 costs the same as page 1.
+public class Page<T> {
+    public static final int DEFAULT_SIZE = Integer.getInteger("umrs.page.defaultSize", 100);
+    public static final int MAX_SIZE = Integer.getInteger("umrs.page.maxSize", 500);
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    // Null on the last page
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    // Size for a request with neither ?limit nor ?cursor: the whole list, as the lists returned
+    // before they were paged, so clients that never read the next cursor still see every row.
+    // One below Integer.MAX_VALUE so the limit + 1 look-ahead query does not overflow.
+    public static final int ALL = Integer.MAX_VALUE - 1;
+
+    // Page size for a paged list route: ALL when the client asks for neither a limit nor a
+    // cursor, otherwise size(limitParam)
+    public static int size(String limitParam, String cursor) {
+        if ((limitParam == null || limitParam.isEmpty()) && (cursor == null || cursor.isEmpty())) {
+            return ALL;
+        }
+        return size(limitParam);
+    }
+
+    // Page size from a ?limit= parameter, clamped to MAX_SIZE
+    public static int size(String limitParam) {
+        if (limitParam == null || limitParam.isEmpty()) {
+            return DEFAULT_SIZE;
+        }
+        try {
+            return Math.max(1, Math.min(MAX_SIZE, Integer.parseInt(limitParam)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("limit must be a number");
+        }
+    }
+
+    // Sort key values are kept as stored (dates are integer millis in this database),
+    // so the comparison in the next query sees exactly what the index holds
+    public static String encodeCursor(Object... keys) {
+        JsonArray array = new JsonArray();
+        for (Object key : keys) {
+            if (key == null) {
+                array.add((String) null);
+            } else if (key instanceof Number) {
+                array.add((Number) key);
+            } else {
+                array.add(key.toString());
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(array.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns null for a missing cursor (first page). Throws IllegalArgumentException when the
+    // token was not produced by encodeCursor with the same number of keys.
+    public static Object[] decodeCursor(String cursor, int keyCount) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            JsonArray array = JsonParser.parseString(json).getAsJsonArray();
+            if (array.size() != keyCount) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            Object[] keys = new Object[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                keys[i] = toKey(array.get(i));
+            }
+            return keys;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private static Object toKey(JsonElement element) {
+        if (element.isJsonNull()) {
+            return null;
+        }
+        JsonPrimitive primitive = element.getAsJsonPrimitive();
+        if (primitive.isNumber()) {
+            String text = primitive.getAsString();
+            return text.contains(".") || text.contains("e") || text.contains("E")
+                ? (Object) primitive.getAsDouble()
+                : (Object) primitive.getAsLong();
+        }
+        return primitive.getAsString();
+    }
+}
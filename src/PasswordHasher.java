@@ -0,0 +1,232 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// PBKDF2 password hashing off the HTTP worker threads.
+//
+// Hashing is deliberately expensive, so a burst of logins or signups used to tie up every
+// Jetty worker and stall unrelated requests behind it. Hashes now run on a small dedicated
+// pool with a bounded queue: callers wait for their hash, and once the queue is full they get
+// Busy straight away, which the routes answer with 429 so clients back off.
+//
+// Each pool thread keeps its own SecretKeyFactory instead of looking one up per hash.
+//
+// Tune with -Dumrs.auth.hashThreads=N (default: cores), -Dumrs.auth.hashQueue=N (default 64)
+// and -Dumrs.auth.pbkdf2Iterations=N, the work factor for new hashes (default 1000). Stored
+// hashes carry their own iteration count, so raising it keeps old passwords valid and they
+// are re-hashed at the new cost on the user's next successful login.
+public class PasswordHasher {
+    static final int ITERATIONS = Integer.getInteger("umrs.auth.pbkdf2Iterations", 1000);
+    // Hashes stored before the work factor was recorded are plain hex at this cost
+    static final int LEGACY_ITERATIONS = 1000;
+    private static final int KEY_SIZE = 256;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<SecretKeyFactory> factories = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    });
+
+    private static final ThreadPoolExecutor executor = newExecutor(
+        Integer.getInteger("umrs.auth.hashThreads", Runtime.getRuntime().availableProcessors()),
+        Integer.getInteger("umrs.auth.hashQueue", 64));
+
+    private static final LongAdder completed = new LongAdder();
+    private static final LongAdder rejected = new LongAdder();
+    private static final Histogram hashMillis = new Histogram();
+    private static final Histogram waitMillis = new Histogram();
+
+    // Thrown when the hashing queue is full; the request should be retried later
+    public static class Busy extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Busy() {
+            super("Too many password checks in progress, try again shortly");
+        }
+    }
+
+    // Hash in the stored format at the configured work factor
+    static String hash(String password, byte[] salt) {
+        return PREFIX + ITERATIONS + "$" + toHex(pbkdf2(password, salt, ITERATIONS));
+    }
+
+    // Derives the key the same way the stored hash was made and compares the raw bytes in
+    // constant time, so neither a hex string nor the comparison time depends on the guess
+    static boolean verify(String password, String storedHash, byte[] salt) {
+        if (storedHash == null) {
+            return false;
+        }
+        int iterations = iterationsOf(storedHash);
+        byte[] expected = iterations > 0 ? fromHex(storedHash, hexStart(storedHash)) : null;
+        if (expected == null) {
+            return false;
+        }
+        byte[] derived = pbkdf2(password, salt, iterations);
+        try {
+            return MessageDigest.isEqual(derived, expected);
+        } finally {
+            Arrays.fill(derived, (byte) 0);
+        }
+    }
+
+    // True when the stored hash was made with fewer iterations than currently configured
+    static boolean needsRehash(String storedHash) {
+        return storedHash != null && iterationsOf(storedHash) < ITERATIONS;
+    }
+
+    private static int hexStart(String storedHash) {
+        return storedHash.startsWith(PREFIX) ? storedHash.indexOf('$', PREFIX.length()) + 1 : 0;
+    }
+
+    private static int iterationsOf(String storedHash) {
+        if (!storedHash.startsWith(PREFIX)) {
+            return LEGACY_ITERATIONS;
+        }
+        int end = storedHash.indexOf('$', PREFIX.length());
+        try {
+            return end < 0 ? -1 : Integer.parseInt(storedHash.substring(PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Runs one PBKDF2 derivation on the hashing pool and waits for the raw key
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        long queuedAt = System.nanoTime();
+        Future<byte[]> result;
+        try {
+            result = executor.submit(() -> {
+                long started = System.nanoTime();
+                waitMillis.record(started - queuedAt);
+                try {
+                    PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_SIZE);
+                    try {
+                        return factories.get().generateSecret(spec).getEncoded();
+                    } finally {
+                        spec.clearPassword();
+                    }
+                } finally {
+                    hashMillis.record(System.nanoTime() - started);
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new Busy();
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InvalidKeySpecException) {
+                throw new IllegalArgumentException("Cannot hash password: " + cause.getMessage(), cause);
+            }
+            throw new IllegalStateException("Password hashing failed", cause);
+        }
+    }
+
+    public static Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("iterations", ITERATIONS);
+        metrics.put("threads", executor.getMaximumPoolSize());
+        metrics.put("activeThreads", executor.getActiveCount());
+        metrics.put("queueDepth", executor.getQueue().size());
+        metrics.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        metrics.put("completed", completed.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("hashMillis", hashMillis.snapshot());
+        metrics.put("queueWaitMillis", waitMillis.snapshot());
+        return metrics;
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads, int queue) {
+        AtomicInteger counter = new AtomicInteger();
+        int size = Math.max(1, threads);
+        return new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queue)), runnable -> {
+                Thread thread = new Thread(runnable, "umrs-password-hash-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(out);
+    }
+
+    // Lower- or upper-case hex from offset to the end, or null if it is not valid hex
+    static byte[] fromHex(String hex, int offset) {
+        int length = hex.length() - offset;
+        if (offset < 0 || length <= 0 || length % 2 != 0) {
+            return null;
+        }
+        byte[] out = new byte[length / 2];
+        for (int i = 0; i < out.length; i++) {
+            int high = Character.digit(hex.charAt(offset + i * 2), 16);
+            int low = Character.digit(hex.charAt(offset + i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            out[i] = (byte) ((high << 4) | low);
+        }
+        return out;
+    }
+
+    // Counts per latency bucket, upper bounds in milliseconds
+    private static class Histogram {
+        private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+        private final LongAdder[] counts = new LongAdder[BOUNDS.length + 1];
+
+        Histogram() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < BOUNDS.length && millis >= BOUNDS[bucket]) {
+                bucket++;
+            }
+            counts[bucket].increment();
+        }
+
+        Map<String, Long> snapshot() {
+            Map<String, Long> buckets = new LinkedHashMap<>();
+            for (int i = 0; i < BOUNDS.length; i++) {
+                buckets.put("<" + BOUNDS[i], counts[i].sum());
+            }
+            buckets.put(">=" + BOUNDS[BOUNDS.length - 1], counts[BOUNDS.length].sum());
+            return buckets;
+        }
+    }
+}
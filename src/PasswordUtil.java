@@ -1,39 +1,19 @@
-import java.security.spec.KeySpec;
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
-
+// Password hashing entry points for the DAOs; the work runs on PasswordHasher's pool.
+// Both methods throw PasswordHasher.Busy when too many hashes are already queued.
 public class PasswordUtil {
-    private static final int ITERATIONS = 1000;
-    private static final int KEY_SIZE = 256;
 
-    // Hash the password using PBKDF2
+    // Hash the password using PBKDF2 at the configured work factor
     public static String hashPassword(String password, byte[] salt) {
-        System.out.println("PasswordUtil: Hashing password...");
-        try {
-            KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, ITERATIONS, KEY_SIZE);
-            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            byte[] hash = factory.generateSecret(spec).getEncoded();
-            System.out.println("PasswordUtil: Password hashed successfully");
-            return bytesToHex(hash);
-        } catch (Exception e) {
-            System.out.println("PasswordUtil: Error hashing password: " + e.getMessage());
-            throw new RuntimeException(e);
-        }
+        return PasswordHasher.hash(password, salt);
     }
 
-    // Verify password
+    // Verify password against a stored hash of any work factor
     public static boolean verifyPassword(String inputPassword, String storedHash, byte[] salt) {
-        String hashedInput = hashPassword(inputPassword, salt);
-        return hashedInput.equals(storedHash);
+        return PasswordHasher.verify(inputPassword, storedHash, salt);
     }
 
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : bytes) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) hexString.append('0');
-            hexString.append(hex);
-        }
-        return hexString.toString();
+    // Whether a verified password should be re-hashed at the current work factor
+    public static boolean needsRehash(String storedHash) {
+        return PasswordHasher.needsRehash(storedHash);
     }
 }
@@ -0,0 +1,105 @@
+import java.lang.management.ManagementFactory;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Cost of the password comparison step: the old hex-string path (StringBuilder of
+// Integer.toHexString, then String.equals) against decoding the stored hash and comparing
+// raw bytes with MessageDigest.isEqual. Reports time and heap allocation per operation, and
+// how much each comparison's time depends on where the first wrong byte is.
+//
+//   javac -d bin -cp "lib/*" src/*.java
+//   java -cp "bin;lib/*" PasswordVerifyBenchmark [iterations]
+public class PasswordVerifyBenchmark {
+    private static volatile boolean sink;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        byte[] salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        byte[] derived = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+            .generateSecret(new PBEKeySpec("correct horse".toCharArray(), salt, 1000, 256)).getEncoded();
+        String storedHex = PasswordHasher.toHex(derived);
+
+        // Warm up both paths before measuring
+        measure("warm-up", iterations / 4, () -> legacyCompare(derived, storedHex));
+        measure("warm-up", iterations / 4, () -> constantTimeCompare(derived, storedHex));
+
+        System.out.println("Comparison of a correct 32-byte key, " + iterations + " iterations");
+        measure("hex string + equals", iterations, () -> legacyCompare(derived, storedHex)).print();
+        measure("decode + isEqual", iterations, () -> constantTimeCompare(derived, storedHex)).print();
+
+        // A guess that is wrong in the first byte vs. one that is only wrong in the last
+        byte[] wrongFirst = derived.clone();
+        wrongFirst[0] ^= 1;
+        byte[] wrongLast = derived.clone();
+        wrongLast[wrongLast.length - 1] ^= 1;
+        System.out.println();
+        System.out.println("Timing by position of the first wrong byte (closer is better)");
+        Result legacyFirst = measure("hex + equals, first byte wrong", iterations, () -> legacyCompare(wrongFirst, storedHex));
+        Result legacyLast = measure("hex + equals, last byte wrong", iterations, () -> legacyCompare(wrongLast, storedHex));
+        Result fixedFirst = measure("isEqual, first byte wrong", iterations, () -> constantTimeCompare(wrongFirst, storedHex));
+        Result fixedLast = measure("isEqual, last byte wrong", iterations, () -> constantTimeCompare(wrongLast, storedHex));
+        legacyFirst.print();
+        legacyLast.print();
+        fixedFirst.print();
+        fixedLast.print();
+        System.out.println(String.format("hex + equals spread: %6.1f ns   isEqual spread: %6.1f ns",
+            Math.abs(legacyLast.nanosPerOp - legacyFirst.nanosPerOp),
+            Math.abs(fixedLast.nanosPerOp - fixedFirst.nanosPerOp)));
+    }
+
+    // What Login2FADAO.login used to do after deriving the key
+    private static boolean legacyCompare(byte[] derived, String storedHex) {
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : derived) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) hexString.append('0');
+            hexString.append(hex);
+        }
+        return storedHex.equals(hexString.toString());
+    }
+
+    // What PasswordHasher.verify does now
+    private static boolean constantTimeCompare(byte[] derived, String storedHex) {
+        return MessageDigest.isEqual(derived, PasswordHasher.fromHex(storedHex, 0));
+    }
+
+    private static Result measure(String name, int iterations, Check check) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        boolean result = false;
+        for (int i = 0; i < iterations; i++) {
+            result ^= check.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        sink = result;
+        return new Result(name, elapsed / (double) iterations, allocated / (double) iterations);
+    }
+
+    private interface Check {
+        boolean run();
+    }
+
+    private static class Result {
+        final String name;
+        final double nanosPerOp;
+        final double bytesPerOp;
+
+        Result(String name, double nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        void print() {
+            System.out.println(String.format("%-34s %8.1f ns/op %8.1f B/op", name, nanosPerOp, bytesPerOp));
+        }
+    }
+}
@@ -39,10 +39,12 @@ public class PatientDAO {
             if (affectedRows == 0) {
                 throw new SQLException("Creating patient failed, no rows affected.");
             }
+            PatientSearch.Candidate candidate = new PatientSearch.Candidate(patient);
+            Database.afterCommit(conn, () -> PatientSearch.patientSaved(candidate));
             
-            System.out.println("Patient record created successfully.");
+            Log.debug("Patient record created successfully.");
         } catch (SQLException e) {
-            System.err.println("Error inserting patient: " + e.getMessage());
+            Log.error("Error inserting patient: " + e.getMessage());
             throw e;  // Re-throw to be handled by the transaction
         }
     }
@@ -53,17 +55,17 @@ public class PatientDAO {
     }
 
     public Patient getPatientByPHN(String personalHealthNo) {
-        System.out.println("Fetching patient with PHN: " + personalHealthNo);
+        Log.debug(() -> "Fetching patient with PHN: " + personalHealthNo);
         String sql = "SELECT * FROM Patient WHERE Personal_Health_No = ?";
         
         try (PreparedStatement pstmt = this.conn.prepareStatement(sql)) {
             pstmt.setString(1, personalHealthNo);
-            System.out.println("Executing SQL: " + sql);
+            Log.debug(() -> "Executing SQL: " + sql);
             
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                System.out.println("Patient found in database");
+                Log.debug("Patient found in database");
                 Patient patient = new Patient();
                 patient.setPersonalHealthNo(rs.getString("Personal_Health_No"));
                 patient.setNIC(rs.getString("NIC"));
@@ -85,14 +87,13 @@ public class PatientDAO {
                 patient.setBloodType(rs.getString("Blood_Type"));
                 patient.setMedicalConditions(rs.getString("Medical_Conditions"));
                 
-                System.out.println("Successfully created patient object");
+                Log.debug("Successfully created patient object");
                 return patient;
             } else {
-                System.out.println("No patient found with PHN: " + personalHealthNo);
+                Log.debug(() -> "No patient found with PHN: " + personalHealthNo);
             }
         } catch (SQLException e) {
-            System.out.println("SQL Error in getPatientByPHN: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("SQL Error in getPatientByPHN: " + e.getMessage(), e);
         }
         return null;
     }
@@ -121,10 +122,16 @@ public class PatientDAO {
             pstmt.setString(13, patient.getBloodType());
             pstmt.setString(14, patient.getMedicalConditions());
             pstmt.setString(15, patient.getPersonalHealthNo());
-            pstmt.executeUpdate(); // Execute the update
-            System.out.println("Patient updated successfully.");
+            if (pstmt.executeUpdate() > 0) {
+                PatientSearch.Candidate candidate = new PatientSearch.Candidate(patient);
+                Database.afterCommit(conn, () -> {
+                    PatientSearch.patientSaved(candidate);
+                    ActivitySearch.patientRenamed(candidate.personalHealthNo);
+                });
+            }
+            Log.debug("Patient updated successfully.");
         } catch (SQLException e) {
-            System.out.println("Update failed: " + e.getMessage());
+            Log.error("Update failed", e);
         }
     }
 
@@ -135,9 +142,10 @@ public class PatientDAO {
         try (PreparedStatement pstmt = this.conn.prepareStatement(sql)) {             
             pstmt.setString(1, personalHealthNo);
             pstmt.executeUpdate(); // Execute the deletion
-            System.out.println("Patient deleted successfully.");
+            Database.afterCommit(conn, () -> PatientSearch.patientDeleted(personalHealthNo));
+            Log.debug("Patient deleted successfully.");
         } catch (SQLException e) {
-            System.out.println("Delete failed: " + e.getMessage());
+            Log.error("Delete failed", e);
         }
     }
 
@@ -148,7 +156,7 @@ public class PatientDAO {
                 this.conn.close();
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            Log.error(e.getMessage(), e);
         }
     }
 
@@ -183,8 +191,7 @@ public class PatientDAO {
                 return patient;
             }
         } catch (SQLException e) {
-            System.out.println("Error fetching patient: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error fetching patient: " + e.getMessage(), e);
         }
         return null;
     }
@@ -197,12 +204,12 @@ public class PatientDAO {
             pstmt.setString(1, personalHealthNo);
             pstmt.setString(2, nic);
             
-            System.out.println("Executing authentication query for PHN: " + personalHealthNo);
+            Log.debug(() -> "Executing authentication query for PHN: " + personalHealthNo);
             
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                System.out.println("Patient found, creating patient object");
+                Log.debug("Patient found, creating patient object");
                 Patient patient = new Patient();
                 patient.setPersonalHealthNo(rs.getString("Personal_Health_No"));
                 patient.setNIC(rs.getString("NIC"));
@@ -220,14 +227,13 @@ public class PatientDAO {
                 patient.setBloodType(rs.getString("Blood_Type"));
                 patient.setMedicalConditions(rs.getString("Medical_Conditions"));
                 
-                System.out.println("Authentication successful for PHN: " + personalHealthNo);
+                Log.debug(() -> "Authentication successful for PHN: " + personalHealthNo);
                 return patient;
             } else {
-                System.out.println("No patient found with PHN: " + personalHealthNo);
+                Log.debug(() -> "No patient found with PHN: " + personalHealthNo);
             }
         } catch (SQLException e) {
-            System.out.println("SQL Error during authentication:");
-            e.printStackTrace();
+            Log.error("SQL Error during authentication:", e);
         }
         
         return null;
@@ -242,8 +248,7 @@ public class PatientDAO {
             ResultSet rs = pstmt.executeQuery();
             return rs.next();
         } catch (SQLException e) {
-            System.out.println("Error checking patient existence: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error checking patient existence: " + e.getMessage(), e);
             return false;
         }
     }
@@ -278,7 +283,7 @@ public class PatientDAO {
             int affectedRows = pstmt.executeUpdate();
             return affectedRows > 0;
         } catch (SQLException e) {
-            e.printStackTrace();
+            Log.error("Unhandled exception", e);
             return false;
         }
     }
@@ -0,0 +1,165 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Patient lookup for the professional and institute portals, served from a TextIndex over
+// PHN, NIC and name instead of `LIKE '%x%'` scans of PATIENT.
+//
+// The index is loaded from PATIENT by the first search and kept current by PatientDAO, which
+// hands over each inserted, updated or deleted patient once its transaction commits. A bulk
+// import of patients bypasses the DAO, so it asks for a full reload instead. Changes that
+// arrive while a reload is reading the table are replayed onto the new index before it
+// replaces the old one.
+public class PatientSearch {
+    static final int DEFAULT_LIMIT = 10;
+    static final int MAX_LIMIT = 50;
+
+    private static volatile TextIndex<Candidate> index = newIndex();
+    private static volatile boolean reloadRequested = true;
+    private static final Object loadLock = new Object();
+    // Guards index swaps and the changes buffered while a reload runs
+    private static final Object changeLock = new Object();
+    private static List<Consumer<TextIndex<Candidate>>> pending;
+
+    public static class Candidate {
+        final String personalHealthNo;
+        final String nic;
+        final String name;
+        final String dateOfBirth;
+
+        Candidate(String personalHealthNo, String nic, String name, String dateOfBirth) {
+            this.personalHealthNo = personalHealthNo;
+            this.nic = nic;
+            this.name = name;
+            this.dateOfBirth = dateOfBirth;
+        }
+
+        Candidate(Patient patient) {
+            this(patient.getPersonalHealthNo(), patient.getNIC(), patient.getName(), patient.getDateOfBirth());
+        }
+
+        public String getPersonalHealthNo() {
+            return personalHealthNo;
+        }
+
+        public String getNic() {
+            return nic;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDateOfBirth() {
+            return dateOfBirth;
+        }
+    }
+
+    // Patients matching every word of the query by PHN, NIC or name, best match first
+    static List<TextIndex.Hit<Candidate>> search(Database database, String query, int limit) throws SQLException {
+        if (reloadRequested) {
+            load(database);
+        }
+        return index.search(query, Math.max(1, Math.min(limit, MAX_LIMIT)));
+    }
+
+    // The hit a portal may open directly: one whose PHN or NIC equals the query, else the only
+    // hit whose PHN or NIC starts with it. Null when the query only matched names or fuzzily,
+    // since opening that hit could show the wrong patient's records.
+    static Candidate identifiedBy(List<TextIndex.Hit<Candidate>> hits, String query) {
+        String term = query.trim().toLowerCase();
+        Candidate prefixMatch = null;
+        int prefixMatches = 0;
+        for (TextIndex.Hit<Candidate> hit : hits) {
+            Candidate candidate = hit.value;
+            for (String identifier : new String[] {candidate.personalHealthNo, candidate.nic}) {
+                if (identifier == null) {
+                    continue;
+                }
+                String id = identifier.toLowerCase();
+                if (id.equals(term)) {
+                    return candidate;
+                }
+                if (id.startsWith(term)) {
+                    prefixMatch = candidate;
+                    prefixMatches++;
+                    break;
+                }
+            }
+        }
+        return prefixMatches == 1 ? prefixMatch : null;
+    }
+
+    // Called by PatientDAO after the write commits
+    static void patientSaved(Candidate candidate) {
+        apply(target -> target.put(candidate.personalHealthNo, candidate));
+    }
+
+    static void patientDeleted(String personalHealthNo) {
+        apply(target -> target.remove(personalHealthNo));
+    }
+
+    static void reloadAll() {
+        reloadRequested = true;
+    }
+
+    private static void apply(Consumer<TextIndex<Candidate>> change) {
+        synchronized (changeLock) {
+            if (pending != null) {
+                pending.add(change);
+            }
+            change.accept(index);
+        }
+    }
+
+    private static void load(Database database) throws SQLException {
+        synchronized (loadLock) {
+            if (!reloadRequested) {
+                return;
+            }
+            reloadRequested = false;
+            synchronized (changeLock) {
+                pending = new ArrayList<>();
+            }
+            long start = System.nanoTime();
+            TextIndex<Candidate> fresh = newIndex();
+            try {
+                database.inReadTransaction(conn -> {
+                    try (PreparedStatement pstmt = conn.prepareStatement(
+                            "SELECT Personal_Health_No, NIC, Name, Date_of_Birth FROM PATIENT");
+                         ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            Candidate candidate = new Candidate(rs.getString("Personal_Health_No"),
+                                rs.getString("NIC"), rs.getString("Name"), rs.getString("Date_of_Birth"));
+                            fresh.put(candidate.personalHealthNo, candidate);
+                        }
+                    }
+                    return null;
+                });
+            } catch (SQLException | RuntimeException e) {
+                reloadRequested = true;
+                synchronized (changeLock) {
+                    pending = null;
+                }
+                throw e;
+            }
+            synchronized (changeLock) {
+                for (Consumer<TextIndex<Candidate>> change : pending) {
+                    change.accept(fresh);
+                }
+                pending = null;
+                index = fresh;
+            }
+            Log.info("patient search index loaded", "patients", fresh.size(),
+                "ms", (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private static TextIndex<Candidate> newIndex() {
+        // An identifier match outranks a name match of the same kind
+        return new TextIndex<>(c -> new String[] {c.personalHealthNo, c.nic, c.name}, 4f, 4f, 2f);
+    }
+}
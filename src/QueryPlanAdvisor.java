@@ -0,0 +1,142 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs EXPLAIN QUERY PLAN over the hot DAO reads and reports the ones SQLite cannot answer
+// from an index: full table scans, full index scans and sorts into a temp B-tree. It runs once
+// at startup, after Migrations, so a query change or a dropped index shows up as a warning
+// in the log instead of as a slow dashboard. /api/admin/query-plans runs it on demand.
+//
+// Turn the startup check off with -Dumrs.db.queryPlanAdvisor=false.
+public class QueryPlanAdvisor {
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("umrs.db.queryPlanAdvisor", "true"));
+
+    // name -> statement; parameters are bound to NULL, which does not change the plan
+    private static final Map<String, String> STATEMENTS = new LinkedHashMap<>();
+
+    static {
+        register("appointments.byProfessionalPage", AppointmentDAO.professionalPageSql(false));
+        register("appointments.byProfessionalPage.after", AppointmentDAO.professionalPageSql(true));
+        register("appointments.byInstitute", AppointmentDAO.instituteListSql(false, false));
+        register("appointments.byInstitute.after", AppointmentDAO.instituteListSql(false, true));
+        register("appointments.byInstituteStatus", AppointmentDAO.instituteListSql(true, false));
+        register("appointments.byInstituteStatus.after", AppointmentDAO.instituteListSql(true, true));
+        // instituteListByIdsSql is left out: it reads at most 500 rows by primary key and always sorts them
+        register("appointments.pending", AppointmentDAO.PENDING_SQL);
+        register("appointments.byPatient", AppointmentDAO.BY_PATIENT_SQL);
+        register("appointments.todayCount", AppointmentDAO.TODAY_COUNT_SQL);
+        register("appointments.upcoming", AppointmentDAO.UPCOMING_SQL);
+        register("appointments.upcomingForPatient", AppointmentDAO.UPCOMING_FOR_PATIENT_SQL);
+        register("records.mostRecent", MedicalRecordDAO.MOST_RECENT_SQL);
+        register("records.byPatient", MedicalRecordDAO.STREAM_BY_PHN_SQL);
+        register("records.byProfessionalPage", MedicalRecordDAO.professionalPageSql(false));
+        register("records.byProfessionalPage.after", MedicalRecordDAO.professionalPageSql(true));
+        register("records.instituteCount", MedicalRecordDAO.INSTITUTE_COUNT_SQL);
+    }
+
+    static synchronized void register(String name, String sql) {
+        STATEMENTS.put(name, sql);
+    }
+
+    // One statement's plan and what is wrong with it, if anything
+    static class Finding {
+        final String name;
+        final List<String> plan;
+        final List<String> problems;
+
+        Finding(String name, List<String> plan, List<String> problems) {
+            this.name = name;
+            this.plan = plan;
+            this.problems = problems;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", name);
+            map.put("plan", plan);
+            map.put("problems", problems);
+            return map;
+        }
+    }
+
+    // Logs every statement with a problem; called at startup
+    static void check(Connection conn) {
+        if (!ENABLED) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<Finding> findings = explainAll(conn);
+        int flagged = 0;
+        for (Finding finding : findings) {
+            if (!finding.problems.isEmpty()) {
+                flagged++;
+                Log.warn("query plan needs an index", "statement", finding.name,
+                    "problems", String.join("; ", finding.problems));
+            }
+        }
+        Log.info("query plans checked", "statements", findings.size(), "flagged", flagged,
+            "ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    static List<Finding> explainAll(Connection conn) {
+        Map<String, String> statements;
+        synchronized (QueryPlanAdvisor.class) {
+            statements = new LinkedHashMap<>(STATEMENTS);
+        }
+        List<Finding> findings = new ArrayList<>();
+        for (Map.Entry<String, String> statement : statements.entrySet()) {
+            findings.add(explain(conn, statement.getKey(), statement.getValue()));
+        }
+        return findings;
+    }
+
+    static Finding explain(Connection conn, String name, String sql) {
+        List<String> plan = new ArrayList<>();
+        List<String> problems = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            int parameters = pstmt.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                pstmt.setObject(i, null);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String detail = rs.getString("detail");
+                    plan.add(detail);
+                    String problem = problemOf(detail);
+                    if (problem != null) {
+                        problems.add(problem);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            problems.add("cannot explain: " + e.getMessage());
+        }
+        return new Finding(name, plan, problems);
+    }
+
+    // Plan lines look like "SEARCH t USING INDEX i (a=?)", "SCAN t", "SCAN t USING COVERING INDEX i"
+    // or "USE TEMP B-TREE FOR ORDER BY"; SQLite before 3.36 wrote "SCAN TABLE t" and "SEARCH TABLE t"
+    static String problemOf(String detail) {
+        if (detail.startsWith("USE TEMP B-TREE")) {
+            return "sorts in a temp B-tree (" + detail.substring("USE ".length()) + ")";
+        }
+        if (detail.startsWith("SCAN ")) {
+            String target = detail.substring("SCAN ".length());
+            if (target.startsWith("TABLE ")) {
+                target = target.substring("TABLE ".length());
+            }
+            // Scans of subquery results and constant rows are not table reads
+            if (target.startsWith("CONSTANT ROW") || target.startsWith("SUBQUERY")
+                    || target.startsWith("(subquery")) {
+                return null;
+            }
+            return target.contains(" USING ") ? "full index scan of " + target : "full table scan of " + target;
+        }
+        return null;
+    }
+}
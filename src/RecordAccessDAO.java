@@ -1,21 +1,20 @@
 import java.sql.*;
 import java.util.*;
-import com.zaxxer.hikari.HikariDataSource;
 
 public class RecordAccessDAO {
-    private final HikariDataSource dataSource;
+    private final Database database;
 
-    public RecordAccessDAO(HikariDataSource dataSource) {
-        this.dataSource = dataSource;
+    public RecordAccessDAO(Database database) {
+        this.database = database;
     }
 
     public boolean createAccessRequest(RecordAccess request) {
-        System.out.println("Creating access request for: " + 
+        Log.debug(() -> "Creating access request for: " + 
             (request.getSlmcNo() != null ? "Professional SLMC: " + request.getSlmcNo() 
                                         : "Institute: " + request.getInstituteNo()));
-        System.out.println("PHN: " + request.getPhn());
-        System.out.println("Purpose: " + request.getPurpose());
-        System.out.println("Emergency: " + request.isEmergency());
+        Log.debug(() -> "PHN: " + request.getPhn());
+        Log.debug(() -> "Purpose: " + request.getPurpose());
+        Log.debug(() -> "Emergency: " + request.isEmergency());
 
         String checkSql = request.getSlmcNo() != null ? 
             """
@@ -29,13 +28,13 @@ public class RecordAccessDAO {
             AND Status IN ('approved', 'pending')
             """;
         
-        try (Connection conn = dataSource.getConnection()) {
+        try (Connection conn = database.getWriteConnection()) {
             try (PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
                 checkStmt.setString(1, request.getPhn());
                 checkStmt.setString(2, request.getSlmcNo() != null ? 
                     request.getSlmcNo() : request.getInstituteNo());
                 
-                System.out.println("Checking existing request");
+                Log.debug("Checking existing request");
                 ResultSet rs = checkStmt.executeQuery();
                 
                 if (rs.next()) {
@@ -50,7 +49,7 @@ public class RecordAccessDAO {
                         try (PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
                             updateStmt.setInt(1, rs.getInt("Request_ID"));
                             updateStmt.executeUpdate();
-                            System.out.println("Updated pending request to emergency");
+                            Log.debug("Updated pending request to emergency");
                             return true;
                         }
                     }
@@ -80,25 +79,24 @@ public class RecordAccessDAO {
                 pstmt.setBoolean(5, request.isEmergency());
                 pstmt.setString(6, request.isEmergency() ? "approved" : "pending");
                 
-                System.out.println("Executing insert for " + 
+                Log.debug(() -> "Executing insert for " + 
                     (request.getSlmcNo() != null ? "professional" : "institute") + 
                     " request");
                 
                 int result = pstmt.executeUpdate();
-                System.out.println("Insert result: " + result + " rows affected");
+                Log.debug(() -> "Insert result: " + result + " rows affected");
                 
                 return result > 0;
             }
         } catch (SQLException e) {
-            System.err.println("SQL Error in createAccessRequest: " + e.getMessage());
-            System.err.println("SQL State: " + e.getSQLState());
-            e.printStackTrace();
+            Log.error("SQL Error in createAccessRequest: " + e.getMessage());
+            Log.error("SQL State: " + e.getSQLState(), e);
             return false;
         }
     }
 
     public Map<String, List<Map<String, Object>>> getRecordsData(String identifier) {
-        System.out.println("Getting records data for identifier: " + identifier);
+        Log.debug(() -> "Getting records data for identifier: " + identifier);
         Map<String, List<Map<String, Object>>> response = new HashMap<>();
         
         String sql = """
@@ -109,12 +107,12 @@ public class RecordAccessDAO {
             ORDER BY r.Request_Date DESC
         """;
         
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, identifier);
             pstmt.setString(2, identifier);
-            System.out.println("Executing query: " + sql);
+            Log.debug(() -> "Executing query: " + sql);
             ResultSet rs = pstmt.executeQuery();
             
             List<Map<String, Object>> records = new ArrayList<>();
@@ -130,13 +128,12 @@ public class RecordAccessDAO {
                 records.add(record);
             }
             
-            System.out.println("Found " + records.size() + " records");
+            Log.debug(() -> "Found " + records.size() + " records");
             response.put("accessedRecords", records);
             response.put("medicalRecords", new ArrayList<>());
             return response;
         } catch (SQLException e) {
-            System.err.println("Database error in getRecordsData: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Database error in getRecordsData: " + e.getMessage(), e);
             return response;
         }
     }
@@ -152,11 +149,11 @@ public class RecordAccessDAO {
             ORDER BY r.Request_Date DESC
         """;
         
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, instituteId);
-            System.out.println("Executing query for institute: " + instituteId);
+            Log.debug(() -> "Executing query for institute: " + instituteId);
             
             ResultSet rs = pstmt.executeQuery();
             List<Map<String, Object>> records = new ArrayList<>();
@@ -165,7 +162,7 @@ public class RecordAccessDAO {
                 String phn = rs.getString("Personal_Health_No");
                 int requestId = rs.getInt("Request_ID");
                 
-                System.out.println("Found institute record: ID=" + requestId + ", PHN=" + phn);
+                Log.debug(() -> "Found institute record: ID=" + requestId + ", PHN=" + phn);
                 
                 Map<String, Object> record = new HashMap<>();
                 record.put("id", requestId);
@@ -178,12 +175,11 @@ public class RecordAccessDAO {
                 records.add(record);
             }
             
-            System.out.println("Retrieved " + records.size() + " institute access records");
+            Log.debug(() -> "Retrieved " + records.size() + " institute access records");
             response.put("accessedRecords", records);
             return response;
         } catch (SQLException e) {
-            System.err.println("Database error in getInstituteRecordsData: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Database error in getInstituteRecordsData: " + e.getMessage(), e);
             return response;
         }
     }
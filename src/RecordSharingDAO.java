@@ -1,15 +1,14 @@
 import java.sql.*;
 import java.util.*;
-import com.zaxxer.hikari.HikariDataSource;
 
 public class RecordSharingDAO {
-    private final HikariDataSource dataSource;
+    private final Database database;
 
-    public RecordSharingDAO(HikariDataSource dataSource) {
-        if (dataSource == null) {
-            throw new IllegalArgumentException("DataSource cannot be null");
+    public RecordSharingDAO(Database database) {
+        if (database == null) {
+            throw new IllegalArgumentException("Database cannot be null");
         }
-        this.dataSource = dataSource;
+        this.database = database;
     }
 
     public List<RecordSharing> getSharedRecords(String userIdentifier, String userType) {
@@ -35,7 +34,7 @@ public class RecordSharingDAO {
         
         List<RecordSharing> records = new ArrayList<>();
         
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, userIdentifier);
@@ -57,12 +56,63 @@ public class RecordSharingDAO {
                 }
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            Log.error("Unhandled exception", e);
         }
         
         return records;
     }
 
+    // One keyset page of getSharedRecords. A NULL share_date sorts as 0 so those rows
+    // are still reachable at the end instead of falling out of the keyset comparison.
+    public Page<RecordSharing> getSharedRecordsPage(String userIdentifier, String userType, String cursor, int limit)
+            throws SQLException {
+        Object[] after = Page.decodeCursor(cursor, 2);
+        String party = userType.equals("PROFESSIONAL") ? "slmc" : "institute_id";
+        String sql = """
+            SELECT *, IFNULL(share_date, 0) AS share_key FROM Shared_Records 
+            WHERE ((sender_%1$s = ? AND receiver_%1$s IS NOT NULL)
+                OR (receiver_%1$s = ? AND sender_%1$s IS NOT NULL))
+            """.formatted(party)
+            + (after != null ? " AND (IFNULL(share_date, 0), record_id) < (?, ?)" : "")
+            + " ORDER BY share_key DESC, record_id DESC LIMIT ?";
+
+        List<RecordSharing> records = new ArrayList<>();
+        Object[] last = null;
+        boolean hasMore = false;
+
+        try (Connection conn = database.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int paramIndex = 1;
+            pstmt.setString(paramIndex++, userIdentifier);
+            pstmt.setString(paramIndex++, userIdentifier);
+            if (after != null) {
+                pstmt.setObject(paramIndex++, after[0]);
+                pstmt.setObject(paramIndex++, after[1]);
+            }
+            pstmt.setInt(paramIndex, limit + 1);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (records.size() == limit) {
+                        hasMore = true;
+                        break;
+                    }
+                    RecordSharing record = new RecordSharing();
+                    record.setRecordId(rs.getInt("record_id"));
+                    record.setSenderSlmc(rs.getString("sender_slmc"));
+                    record.setReceiverSlmc(rs.getString("receiver_slmc"));
+                    record.setPatientPHN(rs.getString("patient_phn"));
+                    record.setRecordType(rs.getString("record_type"));
+                    record.setStatus(rs.getString("status"));
+                    record.setShareDate(rs.getTimestamp("share_date"));
+                    records.add(record);
+                    last = new Object[] { rs.getObject("share_key"), rs.getObject("record_id") };
+                }
+            }
+        }
+        return new Page<>(records, hasMore ? Page.encodeCursor(last) : null);
+    }
+
     public List<RecordRequest> getRecordRequests(String userIdentifier, String userType) {
         String sql = userType.equals("PROFESSIONAL") ?
             """
@@ -86,7 +136,7 @@ public class RecordSharingDAO {
         
         List<RecordRequest> requests = new ArrayList<>();
         
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, userIdentifier);
@@ -109,7 +159,7 @@ public class RecordSharingDAO {
                 }
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            Log.error("Unhandled exception", e);
         }
         
         return requests;
@@ -122,7 +172,7 @@ public class RecordSharingDAO {
                     "patient_phn, record_type, purpose, status, request_date, requester_type, receiver_type) " +
                     "VALUES (?, ?, ?, ?, ?, 'pending', CURRENT_TIMESTAMP, ?, ?)";
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getWriteConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, request.getRequesterId());
@@ -135,7 +185,7 @@ public class RecordSharingDAO {
 
             return pstmt.executeUpdate() > 0;
         } catch (SQLException e) {
-            e.printStackTrace();
+            Log.error("Unhandled exception", e);
             return false;
         }
     }
@@ -147,7 +197,7 @@ public class RecordSharingDAO {
                     "patient_phn, record_type, sub_type, file_path, status, share_date, sender_type, receiver_type) " +
                     "VALUES (?, ?, ?, ?, ?, ?, 'shared', CURRENT_TIMESTAMP, ?, ?)";
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = database.getWriteConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, record.getSenderId());
@@ -161,7 +211,7 @@ public class RecordSharingDAO {
 
             return pstmt.executeUpdate() > 0;
         } catch (SQLException e) {
-            e.printStackTrace();
+            Log.error("Unhandled exception", e);
             return false;
         }
     }
@@ -0,0 +1,154 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+// Stateless session tokens: HS256-signed JWTs carrying the user type, identifier and
+// username, so an authenticated request can be attributed to its user from the token alone
+// instead of looking the user up in Login_2FA or Patient again.
+//
+// Main's before() filter verifies the Authorization: Bearer header and stores the Session
+// as a request attribute. Logout revokes a token by its id in a small in-memory list that
+// only has to remember each id until the token would have expired anyway.
+//
+// Configure with -Dumrs.auth.tokenSecret=... (required for tokens to survive a restart or to
+// work across several servers), -Dumrs.auth.tokenTtlMinutes=N (default 720) and
+// -Dumrs.auth.requireToken=true to reject /api requests without a valid token (off by default
+// while the portals still identify users by query parameter).
+public class SessionTokens {
+    static final String ATTRIBUTE = "umrs.session";
+    static final boolean REQUIRED = Boolean.getBoolean("umrs.auth.requireToken");
+    private static final long TTL_MILLIS = Long.getLong("umrs.auth.tokenTtlMinutes", 720) * 60_000;
+    // Expired revocations are purged once the list grows past this
+    private static final int REVOCATION_PURGE_SIZE = 1024;
+
+    private static final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder decoder = Base64.getUrlDecoder();
+    private static final String HEADER = encoder.encodeToString(
+        "{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+
+    private static final byte[] secret = loadSecret();
+    private static final ThreadLocal<Mac> macs = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    });
+
+    // Token id -> expiry of the revoked token
+    private static final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    public static class Session {
+        final String tokenId;
+        final String userType;
+        final String identifier;
+        final String username;
+        final long expiresAt;
+
+        Session(String tokenId, String userType, String identifier, String username, long expiresAt) {
+            this.tokenId = tokenId;
+            this.userType = userType;
+            this.identifier = identifier;
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getUserType() {
+            return userType;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+    }
+
+    static String issue(String userType, String identifier, String username) {
+        long now = System.currentTimeMillis();
+        JsonObject claims = new JsonObject();
+        claims.addProperty("jti", UUID.randomUUID().toString());
+        claims.addProperty("sub", username);
+        claims.addProperty("typ", userType);
+        claims.addProperty("uid", identifier);
+        claims.addProperty("iat", now / 1000);
+        claims.addProperty("exp", (now + TTL_MILLIS) / 1000);
+        String signingInput = HEADER + "." + encoder.encodeToString(claims.toString().getBytes(StandardCharsets.UTF_8));
+        return signingInput + "." + encoder.encodeToString(sign(signingInput));
+    }
+
+    // The session for a token, or null if it is malformed, forged, expired or revoked
+    static Session verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        int firstDot = token.indexOf('.');
+        int lastDot = token.lastIndexOf('.');
+        if (firstDot <= 0 || lastDot == firstDot || !token.startsWith(HEADER + ".")) {
+            return null;
+        }
+        try {
+            byte[] signature = decoder.decode(token.substring(lastDot + 1));
+            if (!MessageDigest.isEqual(signature, sign(token.substring(0, lastDot)))) {
+                return null;
+            }
+            String payload = new String(decoder.decode(token.substring(firstDot + 1, lastDot)), StandardCharsets.UTF_8);
+            JsonObject claims = JsonParser.parseString(payload).getAsJsonObject();
+            long expiresAt = claims.get("exp").getAsLong() * 1000;
+            String tokenId = claims.get("jti").getAsString();
+            if (expiresAt <= System.currentTimeMillis() || revoked.containsKey(tokenId)) {
+                return null;
+            }
+            return new Session(tokenId, claims.get("typ").getAsString(), claims.get("uid").getAsString(),
+                claims.get("sub").getAsString(), expiresAt);
+        } catch (RuntimeException e) {
+            // bad base64, not JSON or missing claims
+            return null;
+        }
+    }
+
+    static void revoke(Session session) {
+        revoked.put(session.tokenId, session.expiresAt);
+        if (revoked.size() > REVOCATION_PURGE_SIZE) {
+            long now = System.currentTimeMillis();
+            for (Iterator<Long> expiries = revoked.values().iterator(); expiries.hasNext(); ) {
+                if (expiries.next() <= now) {
+                    expiries.remove();
+                }
+            }
+        }
+    }
+
+    static Session fromRequest(spark.Request request) {
+        return request.attribute(ATTRIBUTE);
+    }
+
+    private static byte[] sign(String signingInput) {
+        return macs.get().doFinal(signingInput.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] loadSecret() {
+        String configured = System.getProperty("umrs.auth.tokenSecret");
+        if (configured != null && !configured.isEmpty()) {
+            return configured.getBytes(StandardCharsets.UTF_8);
+        }
+        Log.warn("no -Dumrs.auth.tokenSecret set; using a random key, sessions end on restart");
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        return random;
+    }
+}
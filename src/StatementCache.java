@@ -0,0 +1,259 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-connection LRU cache of prepared statements, keyed by SQL text.
+//
+// DAOs call conn.prepareStatement(sql) with the same text on every request, and SQLite has
+// to parse and plan it again each time. Database wraps every borrowed connection so that
+// prepareStatement(sql) hands back a statement already compiled on that physical connection,
+// and close() resets it and returns it to the cache instead of finalizing it. DAO code does
+// not change: try-with-resources still works as before.
+//
+// Statements are prepared on the physical connection underneath Hikari's proxy, because
+// Hikari closes every statement created through its proxy when the connection goes back to
+// the pool. The cache lives as long as the physical connection does.
+//
+// Size with -Dumrs.db.statementCacheSize=N (statements per connection, 0 disables).
+public class StatementCache {
+    private static final int CAPACITY = Integer.getInteger("umrs.db.statementCacheSize", 64);
+
+    // One cache per physical connection; entries for connections Hikari has retired are
+    // purged whenever a new physical connection shows up
+    private static final Map<Connection, StatementCache> caches = new ConcurrentHashMap<>();
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    private final Connection physical;
+    // Access-ordered, so iteration starts at the least recently used statement
+    private final LinkedHashMap<String, Entry> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    private StatementCache(Connection physical) {
+        this.physical = physical;
+    }
+
+    // Wraps a connection borrowed from the pool; closing the wrapper returns it to the pool
+    static Connection wrap(Connection pooled) throws SQLException {
+        if (CAPACITY <= 0) {
+            return pooled;
+        }
+        Connection physical = pooled.unwrap(Connection.class);
+        StatementCache cache = caches.get(physical);
+        if (cache == null) {
+            caches.keySet().removeIf(StatementCache::isClosedQuietly);
+            cache = new StatementCache(physical);
+            caches.put(physical, cache);
+        }
+        return (Connection) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+            new Class<?>[] {Connection.class}, new CachingConnection(pooled, cache));
+    }
+
+    public static Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        metrics.put("capacityPerConnection", CAPACITY);
+        metrics.put("connections", caches.size());
+        metrics.put("hits", hitCount);
+        metrics.put("misses", missCount);
+        metrics.put("evictions", evictions.sum());
+        metrics.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        return metrics;
+    }
+
+    private synchronized PreparedStatement prepare(String key, String sql, Integer autoGeneratedKeys,
+                                                   Connection owner) throws SQLException {
+        Entry entry = statements.get(key);
+        if (entry != null && !entry.inUse) {
+            hits.increment();
+            entry.inUse = true;
+            return entry.handle(owner);
+        }
+        misses.increment();
+        if (entry != null) {
+            // The same SQL is still open on this connection (e.g. a nested loop), so this one
+            // is a plain uncached statement that the caller closes as usual
+            return create(sql, autoGeneratedKeys);
+        }
+
+        entry = new Entry(key, create(sql, autoGeneratedKeys));
+        entry.inUse = true;
+        statements.put(key, entry);
+        evictOverflow();
+        return entry.handle(owner);
+    }
+
+    private PreparedStatement create(String sql, Integer autoGeneratedKeys) throws SQLException {
+        return autoGeneratedKeys == null
+            ? physical.prepareStatement(sql)
+            : physical.prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> eldest = statements.values().iterator();
+        while (statements.size() > CAPACITY && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            evictions.increment();
+            if (entry.inUse) {
+                entry.evicted = true; // closed when the caller releases it
+            } else {
+                closeQuietly(entry.statement);
+            }
+        }
+    }
+
+    // Called when a DAO closes its statement: clear it for the next caller, or drop it if it
+    // was evicted meanwhile or can no longer be reset
+    private synchronized void release(Entry entry) {
+        entry.inUse = false;
+        if (!entry.evicted) {
+            try {
+                PreparedStatement stmt = entry.statement;
+                ResultSet open = stmt.getResultSet();
+                if (open != null) {
+                    open.close();
+                }
+                stmt.clearParameters();
+                stmt.clearBatch();
+                if (stmt.getMaxRows() != 0) {
+                    stmt.setMaxRows(0);
+                }
+                return;
+            } catch (SQLException e) {
+                statements.remove(entry.key);
+                evictions.increment();
+            }
+        }
+        closeQuietly(entry.statement);
+    }
+
+    private static boolean isClosedQuietly(Connection conn) {
+        try {
+            return conn.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            // already unusable; nothing else to release
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private class Entry {
+        final String key;
+        final PreparedStatement statement;
+        boolean inUse;
+        boolean evicted;
+
+        Entry(String key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+        }
+
+        PreparedStatement handle(Connection owner) {
+            return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[] {PreparedStatement.class}, new CachedStatement(this, owner));
+        }
+    }
+
+    // The connection DAOs see: prepareStatement(sql) and prepareStatement(sql, keys) go
+    // through the cache, everything else goes to Hikari's proxy
+    private static class CachingConnection implements InvocationHandler {
+        private final Connection pooled;
+        private final StatementCache cache;
+
+        CachingConnection(Connection pooled, StatementCache cache) {
+            this.pooled = pooled;
+            this.cache = cache;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("prepareStatement".equals(name)) {
+                Class<?>[] types = method.getParameterTypes();
+                if (types.length == 1) {
+                    String sql = (String) args[0];
+                    return cache.prepare(sql, sql, null, (Connection) proxy);
+                }
+                if (types.length == 2 && types[1] == int.class) {
+                    String sql = (String) args[0];
+                    int keys = (Integer) args[1];
+                    return cache.prepare(keys + ":" + sql, sql, keys, (Connection) proxy);
+                }
+            } else if ("close".equals(name) && !pooled.isClosed() && !pooled.getAutoCommit()) {
+                // Statements run on the physical connection, so Hikari cannot tell the
+                // transaction is dirty; never let an abandoned transaction reach the next borrower
+                pooled.rollback();
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            return StatementCache.invoke(pooled, method, args);
+        }
+    }
+
+    // The statement DAOs see; close() hands it back to the cache
+    private class CachedStatement implements InvocationHandler {
+        private final Entry entry;
+        private final Connection owner;
+        private boolean closed;
+
+        CachedStatement(Entry entry, Connection owner) {
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(entry);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (closed) {
+                        throw new SQLException("Statement is closed");
+                    }
+                    return StatementCache.invoke(entry.statement, method, args);
+            }
+        }
+    }
+}
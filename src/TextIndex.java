@@ -0,0 +1,567 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+// In-memory inverted index for search-as-you-type over a few short text fields per document.
+//
+// Each field has its own vocabulary: a sorted map from token to the ids of the documents that
+// contain it (prefix matches are a range of that map) and a trigram map from every three-letter
+// gram to the tokens containing it (substring and typo-tolerant matches). A query term matches
+// a token exactly, as a prefix, as a substring (3+ letters) or within one or two edits (4+
+// letters), scored in that order and multiplied by the field's weight; a document has to match
+// every term and its score is the sum of each term's best match.
+//
+// The query is driven by its most selective term: that term's matching tokens are walked from
+// the best score down, every other term is checked against the candidate document's own
+// tokens, and the walk stops as soon as no remaining candidate can reach the top `limit`.
+// Document ids only grow, so postings stay sorted by appending; removed documents are
+// tombstoned and the index is rebuilt once they outnumber the live ones.
+class TextIndex<V> {
+    private static final float EXACT = 3f;
+    private static final float PREFIX = 2f;
+    private static final float SUBSTRING = 1.5f;
+    private static final float FUZZY = 1f;
+    // Tokens a single term may expand to per field, so a one-letter prefix stays cheap
+    private static final int MAX_EXPANSIONS = 512;
+    // Tokens checked one by one for substring and typo matches per field
+    private static final int MAX_CANDIDATES = 20_000;
+    private static final int MAX_TERMS = 8;
+
+    interface Fields<V> {
+        String[] of(V value);
+    }
+
+    static class Hit<V> {
+        final V value;
+        final float score;
+
+        Hit(V value, float score) {
+            this.value = value;
+            this.score = score;
+        }
+    }
+
+    private final Fields<V> fields;
+    private final float[] weights;
+    private final float maxWeight;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Vocabulary[] vocabularies;
+    private Map<String, Integer> docOfKey;
+    private List<String> keys;
+    private List<V> values;
+    private BitSet removed;
+    private int live;
+
+    TextIndex(Fields<V> fields, float... weights) {
+        this.fields = fields;
+        this.weights = weights.clone();
+        float max = 0;
+        for (float weight : weights) {
+            max = Math.max(max, weight);
+        }
+        this.maxWeight = max;
+        reset();
+    }
+
+    // Adds the document, or replaces the one already stored under this key
+    void put(String key, V value) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+            add(key, value);
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String key) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Every live document the filter accepts, in insertion order and unscored; for callers that
+    // need exact matching semantics over the documents rather than ranked search
+    List<V> all(Predicate<V> filter) {
+        lock.readLock().lock();
+        try {
+            List<V> accepted = new ArrayList<>();
+            for (V value : values) {
+                if (value != null && filter.test(value)) {
+                    accepted.add(value);
+                }
+            }
+            return accepted;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Every live document the filter accepts with a token containing `run` (lower-cased letters
+    // and digits, 3 or more) in any field. A token containing the run holds every gram of it,
+    // so intersecting the gram lists finds those tokens without walking the documents. Used to
+    // narrow substring (LIKE) matching; the caller checks each document it gets back.
+    List<V> containing(String run, Predicate<V> filter) {
+        lock.readLock().lock();
+        try {
+            BitSet docs = new BitSet(values.size());
+            for (Vocabulary vocabulary : vocabularies) {
+                for (int token : vocabulary.tokensContaining(run)) {
+                    IdList postings = vocabulary.postings.get(token);
+                    for (int i = 0; i < postings.size; i++) {
+                        docs.set(postings.ids[i]);
+                    }
+                }
+            }
+            List<V> accepted = new ArrayList<>();
+            for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+                V value = values.get(doc);
+                if (value != null && filter.test(value)) {
+                    accepted.add(value);
+                }
+            }
+            return accepted;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Best `limit` documents matching every term of the query, highest score first
+    List<Hit<V>> search(String query, int limit) {
+        return search(query, limit, null);
+    }
+
+    // As above, counting only documents the filter accepts (e.g. one institute's)
+    List<Hit<V>> search(String query, int limit, Predicate<V> filter) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        if (terms.size() > MAX_TERMS) {
+            terms = terms.subList(0, MAX_TERMS);
+        }
+
+        lock.readLock().lock();
+        try {
+            // Pick the term whose matches cover the fewest documents to drive the search
+            List<List<Match>> termMatches = new ArrayList<>();
+            List<Match> driver = null;
+            int driverTerm = 0;
+            long driverCost = Long.MAX_VALUE;
+            for (int t = 0; t < terms.size(); t++) {
+                List<Match> matches = matches(terms.get(t));
+                if (matches.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                termMatches.add(matches);
+                long cost = 0;
+                for (Match match : matches) {
+                    cost += match.postings.size;
+                }
+                if (cost < driverCost) {
+                    driver = matches;
+                    driverTerm = t;
+                    driverCost = cost;
+                }
+            }
+            List<String> others = new ArrayList<>(terms);
+            others.remove(driverTerm);
+            // Documents matching each other term, and the most those terms can add to a score
+            List<BitSet> otherDocs = new ArrayList<>();
+            float othersBound = 0;
+            for (int t = 0; t < terms.size(); t++) {
+                if (t != driverTerm) {
+                    List<Match> matches = termMatches.get(t);
+                    otherDocs.add(docsOf(matches));
+                    othersBound += matches.get(0).score;
+                }
+            }
+
+            PriorityQueue<Hit<Integer>> top = new PriorityQueue<>(limit + 1, (a, b) -> Float.compare(a.score, b.score));
+            BitSet seen = new BitSet();
+            walk:
+            for (Match match : driver) {
+                IdList postings = match.postings;
+                for (int i = 0; i < postings.size; i++) {
+                    if (top.size() == limit && match.score + othersBound <= top.peek().score) {
+                        break walk;
+                    }
+                    int doc = postings.ids[i];
+                    if (removed.get(doc) || seen.get(doc) || !inAll(otherDocs, doc)) {
+                        continue;
+                    }
+                    if (filter != null && !filter.test(values.get(doc))) {
+                        continue;
+                    }
+                    // Matches are walked best first, so this is the doc's best score for the term
+                    seen.set(doc);
+                    float score = match.score + (others.isEmpty() ? 0 : scoreOthers(others, doc));
+                    if (top.size() < limit) {
+                        top.add(new Hit<>(doc, score));
+                    } else if (score > top.peek().score) {
+                        top.poll();
+                        top.add(new Hit<>(doc, score));
+                    }
+                }
+            }
+
+            List<Hit<V>> hits = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                Hit<Integer> hit = top.poll();
+                hits.add(new Hit<>(values.get(hit.value), hit.score));
+            }
+            Collections.reverse(hits);
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Lower-cased runs of letters and digits
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private void reset() {
+        vocabularies = new Vocabulary[weights.length];
+        for (int f = 0; f < vocabularies.length; f++) {
+            vocabularies[f] = new Vocabulary();
+        }
+        docOfKey = new HashMap<>();
+        keys = new ArrayList<>();
+        values = new ArrayList<>();
+        removed = new BitSet();
+        live = 0;
+    }
+
+    private void add(String key, V value) {
+        int doc = values.size();
+        keys.add(key);
+        values.add(value);
+        docOfKey.put(key, doc);
+        live++;
+        String[] texts = fields.of(value);
+        for (int f = 0; f < vocabularies.length && f < texts.length; f++) {
+            for (String token : tokenize(texts[f])) {
+                vocabularies[f].add(token, doc);
+            }
+        }
+    }
+
+    private void removeLocked(String key) {
+        Integer doc = docOfKey.remove(key);
+        if (doc != null) {
+            removed.set(doc);
+            values.set(doc, null);
+            live--;
+        }
+    }
+
+    // Re-indexes the live documents with dense ids once tombstones outnumber them, dropping
+    // tokens only dead documents used
+    private void compactIfSparse() {
+        if (values.size() - live <= Math.max(1024, live)) {
+            return;
+        }
+        List<String> oldKeys = keys;
+        List<V> oldValues = values;
+        reset();
+        for (int doc = 0; doc < oldValues.size(); doc++) {
+            if (oldValues.get(doc) != null) {
+                add(oldKeys.get(doc), oldValues.get(doc));
+            }
+        }
+    }
+
+    // Every (field, token) the term matches, best score first
+    private List<Match> matches(String term) {
+        List<Match> matches = new ArrayList<>();
+        for (int f = 0; f < vocabularies.length; f++) {
+            Vocabulary vocabulary = vocabularies[f];
+            Set<Integer> candidates = new LinkedHashSet<>();
+            for (int token : vocabulary.ids.tailMap(term, true).values()) {
+                if (!vocabulary.tokens.get(token).startsWith(term) || candidates.size() >= MAX_EXPANSIONS) {
+                    break;
+                }
+                candidates.add(token);
+            }
+            if (term.length() >= 3) {
+                vocabulary.gramCandidates(term, candidates);
+            }
+            for (int token : candidates) {
+                float score = matchScore(term, vocabulary.tokens.get(token));
+                if (score > 0) {
+                    matches.add(new Match(vocabulary.postings.get(token), score * weights[f]));
+                }
+            }
+        }
+        matches.sort((a, b) -> Float.compare(b.score, a.score));
+        return matches;
+    }
+
+    private BitSet docsOf(List<Match> matches) {
+        BitSet docs = new BitSet(values.size());
+        for (Match match : matches) {
+            for (int i = 0; i < match.postings.size; i++) {
+                docs.set(match.postings.ids[i]);
+            }
+        }
+        return docs;
+    }
+
+    private static boolean inAll(List<BitSet> sets, int doc) {
+        for (BitSet set : sets) {
+            if (!set.get(doc)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Sum of each term's best score in the document, or 0 if any term does not match
+    private float scoreOthers(List<String> terms, int doc) {
+        String[] texts = fields.of(values.get(doc));
+        List<List<String>> tokens = new ArrayList<>(texts.length);
+        for (String text : texts) {
+            tokens.add(tokenize(text));
+        }
+        float total = 0;
+        for (String term : terms) {
+            float best = 0;
+            for (int f = 0; f < weights.length && f < tokens.size(); f++) {
+                for (String token : tokens.get(f)) {
+                    best = Math.max(best, matchScore(term, token) * weights[f]);
+                }
+            }
+            if (best == 0) {
+                return 0;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    private static float matchScore(String term, String token) {
+        if (token.equals(term)) {
+            return EXACT;
+        }
+        if (token.startsWith(term)) {
+            return PREFIX;
+        }
+        if (term.length() >= 3 && token.contains(term)) {
+            return SUBSTRING;
+        }
+        int edits = allowedEdits(term);
+        if (edits > 0 && Math.abs(token.length() - term.length()) <= edits && withinEdits(term, token, edits)) {
+            return FUZZY;
+        }
+        return 0;
+    }
+
+    // Typos are only forgiven in words; identifiers with digits must match exactly or in part
+    private static int allowedEdits(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            if (Character.isDigit(term.charAt(i))) {
+                return 0;
+            }
+        }
+        return term.length() >= 8 ? 2 : term.length() >= 4 ? 1 : 0;
+    }
+
+    // Levenshtein distance <= max, giving up as soon as a whole row exceeds it
+    private static boolean withinEdits(String a, String b, int max) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()] <= max;
+    }
+
+    private static class Match {
+        final IdList postings;
+        final float score;
+
+        Match(IdList postings, float score) {
+            this.postings = postings;
+            this.score = score;
+        }
+    }
+
+    // Ascending ids, appended in order; document ids for postings, token ids for grams
+    private static class IdList {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    // Tokens are numbered in the order they are first seen, so gram lists stay sorted too
+    private static class Vocabulary {
+        final TreeMap<String, Integer> ids = new TreeMap<>();
+        final List<String> tokens = new ArrayList<>();
+        final List<IdList> postings = new ArrayList<>();
+        final Map<String, IdList> tokensByGram = new HashMap<>();
+
+        void add(String token, int doc) {
+            Integer id = ids.get(token);
+            if (id == null) {
+                id = tokens.size();
+                ids.put(token, id);
+                tokens.add(token);
+                postings.add(new IdList());
+                for (int i = 0; i + 3 <= token.length(); i++) {
+                    tokensByGram.computeIfAbsent(token.substring(i, i + 3), g -> new IdList()).add(id);
+                }
+            }
+            postings.get(id).add(doc);
+        }
+
+        // Adds the tokens that may contain the term or be a typo of it; the caller checks each.
+        // A token containing the term has every one of its grams, so the rarest gram list is a
+        // superset of those. A token within k edits shares at least grams - 3k of them (the
+        // q-gram lemma), so it is in at least one of the 3k + 1 rarest lists; typos in terms too
+        // short to keep a gram in common are not found.
+        void gramCandidates(String term, Set<Integer> candidates) {
+            List<IdList> lists = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            boolean allPresent = true;
+            for (int i = 0; i + 3 <= term.length(); i++) {
+                String gram = term.substring(i, i + 3);
+                if (seen.add(gram)) {
+                    IdList list = tokensByGram.get(gram);
+                    if (list == null) {
+                        allPresent = false;
+                    } else {
+                        lists.add(list);
+                    }
+                }
+            }
+            if (lists.isEmpty()) {
+                return;
+            }
+            lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+            if (allPresent) {
+                IdList rarest = lists.get(0);
+                for (int i = 0; i < rarest.size && candidates.size() < MAX_CANDIDATES; i++) {
+                    int token = rarest.ids[i];
+                    if (inAll(lists, token)) {
+                        candidates.add(token);
+                    }
+                }
+            }
+
+            int edits = allowedEdits(term);
+            if (edits > 0) {
+                int scan = Math.min(lists.size(), 3 * edits + 1);
+                for (int l = 0; l < scan; l++) {
+                    IdList list = lists.get(l);
+                    for (int i = 0; i < list.size && candidates.size() < MAX_CANDIDATES; i++) {
+                        candidates.add(list.ids[i]);
+                    }
+                }
+            }
+        }
+
+        // Every token containing run, uncapped; empty when one of its grams never occurs
+        List<Integer> tokensContaining(String run) {
+            List<IdList> lists = new ArrayList<>();
+            for (int i = 0; i + 3 <= run.length(); i++) {
+                IdList list = tokensByGram.get(run.substring(i, i + 3));
+                if (list == null) {
+                    return Collections.emptyList();
+                }
+                lists.add(list);
+            }
+            lists.sort((a, b) -> Integer.compare(a.size, b.size));
+            List<Integer> found = new ArrayList<>();
+            IdList rarest = lists.get(0);
+            for (int i = 0; i < rarest.size; i++) {
+                int token = rarest.ids[i];
+                if (inAll(lists, token) && tokens.get(token).contains(run)) {
+                    found.add(token);
+                }
+            }
+            return found;
+        }
+
+        private static boolean inAll(List<IdList> lists, int token) {
+            for (int l = 1; l < lists.size(); l++) {
+                if (!lists.get(l).contains(token)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Pending 2FA challenges, kept out of SQLite.
+//
+// Every generated code used to be an UPDATE on Login_2FA, so each 2FA step queued behind the
+// single writer. Challenges now live in memory: one per username, single use, expiring after
+// a TTL and closed after too many wrong codes. verify() checks the expiry itself and issue()
+// sweeps out expired challenges now and then, so no background thread is needed. Codes are
+// held as SHA-256 digests and compared in constant time. Pending challenges do not survive a
+// restart; the user asks for a new code.
+//
+// Tune with -Dumrs.auth.twoFactorTtlSeconds=N (default 300) and
+// -Dumrs.auth.twoFactorMaxAttempts=N (default 5).
+public class TwoFactorStore {
+    static final long TTL_MILLIS = Math.max(1, Long.getLong("umrs.auth.twoFactorTtlSeconds", 300)) * 1000;
+    static final int MAX_ATTEMPTS = Math.max(1, Integer.getInteger("umrs.auth.twoFactorMaxAttempts", 5));
+    // Issues between sweeps of expired challenges
+    private static final int SWEEP_EVERY = 1024;
+
+    public enum Outcome { VERIFIED, WRONG_CODE, EXPIRED, TOO_MANY_ATTEMPTS, NO_CHALLENGE }
+
+    private static final Map<String, Challenge> challenges = new ConcurrentHashMap<>();
+
+    private static final LongAdder issued = new LongAdder();
+    private static final LongAdder verified = new LongAdder();
+    private static final LongAdder wrongCodes = new LongAdder();
+    private static final LongAdder locked = new LongAdder();
+    private static final LongAdder expired = new LongAdder();
+
+    private static class Challenge {
+        final byte[] digest;
+        final long expiresAt;
+        int attempts;
+        boolean closed;
+
+        Challenge(byte[] digest, long expiresAt) {
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Starts a challenge for the user, replacing any pending one
+    static void issue(String username, String code) {
+        Challenge previous = challenges.put(username,
+            new Challenge(digest(code), System.currentTimeMillis() + TTL_MILLIS));
+        if (previous != null) {
+            synchronized (previous) {
+                previous.closed = true;
+            }
+        }
+        issued.increment();
+        if (issued.sum() % SWEEP_EVERY == 0) {
+            long now = System.currentTimeMillis();
+            challenges.values().removeIf(challenge -> challenge.expiresAt <= now);
+        }
+    }
+
+    // Checks a code against the user's pending challenge. The challenge is consumed when the
+    // code is right, when it has expired and when this was the last allowed attempt.
+    static Outcome verify(String username, String code) {
+        Challenge challenge = challenges.get(username);
+        if (challenge == null) {
+            return Outcome.NO_CHALLENGE;
+        }
+        synchronized (challenge) {
+            if (challenge.closed) {
+                return Outcome.NO_CHALLENGE;
+            }
+            if (System.currentTimeMillis() >= challenge.expiresAt) {
+                close(username, challenge);
+                expired.increment();
+                return Outcome.EXPIRED;
+            }
+            if (code != null && MessageDigest.isEqual(digest(code), challenge.digest)) {
+                close(username, challenge);
+                verified.increment();
+                return Outcome.VERIFIED;
+            }
+            wrongCodes.increment();
+            if (++challenge.attempts >= MAX_ATTEMPTS) {
+                close(username, challenge);
+                locked.increment();
+                return Outcome.TOO_MANY_ATTEMPTS;
+            }
+            return Outcome.WRONG_CODE;
+        }
+    }
+
+    public static Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("pending", challenges.size());
+        metrics.put("ttlSeconds", TTL_MILLIS / 1000);
+        metrics.put("maxAttempts", MAX_ATTEMPTS);
+        metrics.put("issued", issued.sum());
+        metrics.put("verified", verified.sum());
+        metrics.put("wrongCodes", wrongCodes.sum());
+        metrics.put("locked", locked.sum());
+        metrics.put("expired", expired.sum());
+        return metrics;
+    }
+
+    // Caller holds the challenge's lock
+    private static void close(String username, Challenge challenge) {
+        challenge.closed = true;
+        challenges.remove(username, challenge);
+    }
+
+    private static byte[] digest(String code) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(code.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}